@@ -57,6 +57,7 @@ public class RampartJobFileSystem {
     private File ampLogFile;
     private File reportTemplateFile;
     private File reportMergedFile;
+    private File libraryStatsFile;
 
     public RampartJobFileSystem(File jobDir) {
         this.setupFileStructure(jobDir);
@@ -89,6 +90,7 @@ public class RampartJobFileSystem {
         this.ampLogFile = new File(this.ampDir, "amp.log");
         this.reportTemplateFile = new File(this.reportDir, "template.tex");
         this.reportMergedFile = new File(this.reportDir, "report.tex");
+        this.libraryStatsFile = new File(jobDir, "library_stats.tsv");
     }
 
 
@@ -192,4 +194,7 @@ public class RampartJobFileSystem {
         return ampLogFile;
     }
 
+    public File getLibraryStatsFile() {
+        return libraryStatsFile;
+    }
 }
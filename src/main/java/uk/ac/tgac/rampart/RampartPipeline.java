@@ -287,6 +287,12 @@ public class RampartPipeline extends AbstractConanPipeline {
 
             this.stages.setArgsIfPresent(RampartStage.SELECT_MASS, this.selectMassArgs);
 
+            // If selection runs after MASS in this run, let MASS start analysing the reference early
+            if (this.massArgs != null && this.selectMassArgs != null && this.stages.get(RampartStage.SELECT_MASS) != null) {
+                this.massArgs.setRefStatsOutputDir(new File(this.rampartJobFileSystem.getSelectMassDir(), Select.REF_QUAST_DIR_NAME));
+                this.massArgs.setRefStatsCacheDir(this.selectMassArgs.getRefStatsCacheDir());
+            }
+
             // AMP
             Element ampElement = XmlHelper.getDistinctElementByName(element, KEY_ELEM_AMP);
             this.ampArgs = ampElement == null ? null :
@@ -39,6 +39,8 @@ import uk.ac.tgac.conan.core.data.Library;
 import uk.ac.tgac.conan.core.util.XmlHelper;
 import uk.ac.tgac.conan.process.asm.Assembler;
 import uk.ac.tgac.conan.process.asm.stats.KmerGenieV16;
+import uk.ac.tgac.rampart.RampartJobFileSystem;
+import uk.ac.tgac.rampart.stage.util.LibraryStatsCache;
 import uk.ac.tgac.rampart.stage.util.ReadsInput;
 
 import java.io.File;
@@ -208,11 +210,15 @@ public class CalcOptimalKmer extends AbstractConanProcess {
     }
 
     private ExecutionResult executeKmerGenie(File outputDir, File outputFile, List< Library > inputs)
-            throws InterruptedException, ProcessExecutionException {
+            throws InterruptedException, ProcessExecutionException, IOException {
 
         // Get shortcut to the args
         Args args = this.getArgs();
 
+        // Read lengths come from the job wide library statistics cache rather than the configuration
+        LibraryStatsCache statsCache = LibraryStatsCache.forFile(
+                new RampartJobFileSystem(args.getOutputDir().getParentFile()).getLibraryStatsFile());
+
         KmerGenieV16.Args kgArgs = new KmerGenieV16.Args();
         kgArgs.setThreads(args.threads);
         kgArgs.setDiploid(args.ploidy == 2 ? true : false);
@@ -222,7 +228,22 @@ public class CalcOptimalKmer extends AbstractConanProcess {
         for(Library lib : inputs) {
             inputFiles.addAll(lib.getFiles());
 
-            maxK = Math.min(lib.getReadLength() -1, maxK);
+            long readLength = 0;
+            for(File file : lib.getFiles()) {
+                readLength = Math.max(readLength, statsCache.get(file, args.threads).getMaxLength());
+            }
+
+            // An empty library tells us nothing, so fall back to the configured read length
+            if (readLength <= 1) {
+                readLength = lib.getReadLength();
+            }
+
+            if (readLength <= 1) {
+                throw new IOException("Couldn't determine the read length of library: " + lib.getName() +
+                        "; the library appears to be empty and no read length was configured");
+            }
+
+            maxK = (int)Math.min(readLength - 1, maxK);
         }
 
         kgArgs.setInputFiles(inputFiles);
@@ -43,11 +43,16 @@ import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 import uk.ac.tgac.conan.core.data.Organism;
 import uk.ac.tgac.conan.core.util.XmlHelper;
 import uk.ac.tgac.rampart.RampartCLI;
+import uk.ac.tgac.rampart.util.seq.*;
 
-import java.io.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * This is derived from Richard's FastA-to-AGP script in TGAC tools, which is in turn derived form Shaun Jackman's
@@ -59,11 +64,25 @@ public class Finalise extends AbstractConanProcess {
 
     public static final String NAME = "Finalise";
 
-    private BufferedReader reader;
-    private PrintWriter contigWriter;
-    private PrintWriter scaffoldWriter;
-    private PrintWriter agpWriter;
-    private PrintWriter translationWriter;
+    /**
+     * In parallel mode, records longer than this are not buffered in memory but are streamed straight to the output
+     * files once all preceding records have been written
+     */
+    public static final long MAX_BUFFERED_LENGTH = 4L * 1024L * 1024L;
+
+    /**
+     * In parallel mode, records are handed to the workers in batches containing roughly this many bases, so that
+     * assemblies with millions of small scaffolds are not dominated by task overhead
+     */
+    public static final long BATCH_LENGTH = 1024L * 1024L;
+
+    private static final byte[] SIZE_TAG = "-size_".getBytes();
+    private static final byte[] AGP_CONTIG_START = "\t1\t".getBytes();
+    private static final byte[] AGP_CONTIG_END = "\t+\n".getBytes();
+    private static final byte[] AGP_GAP_END = "\tscaffold\tyes\tpaired-ends\n".getBytes();
+
+    private MappedFastaReader reader;
+    private ObjectWriter output;
 
     private int scaffoldId;
     private int contigId;
@@ -80,10 +99,7 @@ public class Finalise extends AbstractConanProcess {
         super("", args, new Params(), ces);
 
         this.reader = null;
-        this.contigWriter = null;
-        this.scaffoldWriter = null;
-        this.agpWriter = null;
-        this.translationWriter = null;
+        this.output = null;
 
         this.scaffoldId = 0;
         this.contigId = 0;
@@ -121,6 +137,11 @@ public class Finalise extends AbstractConanProcess {
 
         Args args = this.getArgs();
 
+        ExecutorService pool = null;
+        ExecutorService compressionPool = null;
+        BgzfOutputStream scaffoldsOut = null;
+        BgzfOutputStream contigsOut = null;
+
         try {
 
             log.info("Starting finalising process to standardise assembly names.");
@@ -131,34 +152,54 @@ public class Finalise extends AbstractConanProcess {
             }
             args.getOutputDir().mkdir();
 
-            this.reader = new BufferedReader(new FileReader(args.getInputFile()));
-            this.contigWriter = new PrintWriter(new BufferedWriter(new FileWriter(args.getContigsFile())));
-            this.scaffoldWriter = new PrintWriter(new BufferedWriter(new FileWriter(args.getScaffoldsFile())));
-            this.agpWriter = new PrintWriter(new BufferedWriter(new FileWriter(args.getAGPFile())));
-            this.translationWriter = new PrintWriter(new BufferedWriter(new FileWriter(args.getTranslationFile())));
+            FastaWriter scaffoldWriter = null;
+            FastaWriter contigWriter = null;
 
-            String currentId = "";
-            StringBuilder currentContig = new StringBuilder();
+            if (args.isCompress()) {
+                log.info("Writing BGZF compressed output using " + args.getCompressThreads() + " compression threads");
 
-            String line = null;
-            while((line = this.reader.readLine()) != null) {
+                if (args.getCompressThreads() > 1) {
+                    compressionPool = Executors.newFixedThreadPool(args.getCompressThreads());
+                }
 
-                line = line.trim();
+                int maxPending = args.getCompressThreads() * 4;
+                scaffoldsOut = new BgzfOutputStream(new FileOutputStream(args.getScaffoldsFile()), compressionPool, maxPending);
+                contigsOut = new BgzfOutputStream(new FileOutputStream(args.getContigsFile()), compressionPool, maxPending);
+                scaffoldWriter = new FastaWriter(scaffoldsOut, new FaiIndex());
+                contigWriter = new FastaWriter(contigsOut, new FaiIndex());
+            }
+            else {
+                scaffoldWriter = new FastaWriter(new FileOutputStream(args.getScaffoldsFile()), new FaiIndex());
+                contigWriter = new FastaWriter(new FileOutputStream(args.getContigsFile()), new FaiIndex());
+            }
 
-                if (line.startsWith(">")) {
-                    if (currentContig.length() > 0) {
-                        processObject(currentId, currentContig.toString());
-                    }
-                    currentContig = new StringBuilder();
-                    currentId = line.substring(1);
-                }
-                else {
-                    currentContig.append(line);
-                }
+            this.reader = new MappedFastaReader(args.getInputFile());
+            this.output = new ObjectWriter(
+                    scaffoldWriter,
+                    contigWriter,
+                    new AsciiWriter(args.getAGPFile()),
+                    new AsciiWriter(args.getTranslationFile()),
+                    args.getOutputPrefix());
+
+            if (args.getThreads() > 1) {
+                log.info("Finalising using " + args.getThreads() + " threads");
+                pool = Executors.newFixedThreadPool(args.getThreads());
             }
 
-            if (currentContig.length() > 0) {
-                processObject(currentId, currentContig.toString());
+            this.processObjects(pool, args.getThreads() * 2);
+
+            this.output.close();
+            this.output = null;
+
+            // Indexes can only be written once all the data has been flushed
+            scaffoldWriter.getIndex().save(args.getScaffoldsIndexFile());
+            contigWriter.getIndex().save(args.getContigsIndexFile());
+
+            if (args.isCompress()) {
+                scaffoldsOut.writeGzi(args.getScaffoldsGziFile());
+                contigsOut.writeGzi(args.getContigsGziFile());
+                log.info("Output compressed to: " + args.getScaffoldsFile().getAbsolutePath() + " and " +
+                        args.getContigsFile().getAbsolutePath());
             }
 
             log.info("Finishing finalising assembly successfully.");
@@ -167,38 +208,21 @@ public class Finalise extends AbstractConanProcess {
             throw new ProcessExecutionException(3, ioe);
         }
         finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
             try {
                 if (this.reader != null) this.reader.close();
-                if (this.contigWriter != null) this.contigWriter.close();
-                if (this.scaffoldWriter != null) this.scaffoldWriter.close();
-                if (this.agpWriter != null) this.agpWriter.close();
-                if (this.translationWriter != null) this.translationWriter.close();
+                if (this.output != null) this.output.close();
             }
             catch (IOException ioe) {
                 throw new ProcessExecutionException(4, ioe);
             }
-        }
-
-        //TODO Just compresses the assembly for now... may want to include plots and results too maybe....
-        ExecutionResult result = null;
-        if (args.compress) {
-
-            log.info("Compressing output");
-
-            String pwdFull = new File(".").getAbsolutePath();
-            String pwd = pwdFull.substring(0, pwdFull.length() - 2);
-
-            String command = "cd " + args.getOutputDir().getAbsolutePath() + "; " +
-                    "tar -cvzf " + args.getCompressedFile().getName() + " " +
-                    args.getContigsFile().getName() + " " +
-                    args.getScaffoldsFile().getName() + " " +
-                    args.getAGPFile().getName() + " " +
-                    args.getTranslationFile().getName() + "; " +
-                    "cd " + pwd;
-
-            result = this.conanExecutorService.executeProcess(command, args.getOutputDir(), args.getJobPrefix() + "-compress", 1, 0, false);
-
-            log.info("Output compressed to: " + args.getCompressedFile().getAbsolutePath());
+            finally {
+                if (compressionPool != null) {
+                    compressionPool.shutdownNow();
+                }
+            }
         }
 
         stopWatch.stop();
@@ -210,50 +234,323 @@ public class Finalise extends AbstractConanProcess {
                 null,
                 -1,
                 new ResourceUsage(
-                        result != null && result.getResourceUsage() != null ? result.getResourceUsage().getMaxMem() : 0,
+                        0,
                         stopWatch.getTime() / 1000,
-                        result != null && result.getResourceUsage() != null ? result.getResourceUsage().getCpuTime() : 0));
+                        0));
     }
 
-    private void processObject(String currentHeader, String currentContig) {
+    /**
+     * Reads every record from the input, breaking each into contigs as it is found, and writes out the results.  Ids are
+     * always assigned here, in input order, so that the output is identical whether or not a worker pool is used.  When a
+     * pool is given, formatting is done by the workers into memory buffers, and the buffers are written out in input
+     * order through a bounded reorder queue.
+     */
+    private void processObjects(ExecutorService pool, int maxPending) throws IOException, InterruptedException {
 
         Args args = this.getArgs();
 
-        int scaffoldLen = currentContig.length();
-        String scaffoldHeader = args.getOutputPrefix() + "_scaffold_" + (++scaffoldId) + "-size_" + scaffoldLen;
+        ScaffoldSplitter splitter = new ScaffoldSplitter(args.getMinN());
+        Deque<Future<FormattedObject>> pending = new ArrayDeque<>();
+        FormatTask batch = null;
+
+        final MappedFastaReader input = this.reader;
+        ThreadLocal<MappedWindow> windows = new ThreadLocal<MappedWindow>() {
+            @Override
+            protected MappedWindow initialValue() {
+                return input.newWindow();
+            }
+        };
+
+        FastaRecord record = null;
+        while((record = this.reader.next(splitter)) != null) {
+
+            splitter.finish(record.getLength());
+
+            if (record.getLength() > 0) {
+
+                int scaffoldNum = ++this.scaffoldId;
+                int firstContig = this.contigId + 1;
+                this.contigId += splitter.getNbContigs();
 
-        this.scaffoldWriter.println(">" + scaffoldHeader);
-        this.scaffoldWriter.println(currentContig);
+                if (pool == null || record.getLength() > MAX_BUFFERED_LENGTH) {
+                    if (batch != null) {
+                        pending.add(pool.submit(batch));
+                        batch = null;
+                    }
+                    while (!pending.isEmpty()) {
+                        this.writeNext(pending);
+                    }
+                    this.output.write(record, this.reader.getWindow(), splitter, scaffoldNum, firstContig);
+                }
+                else {
+                    if (batch == null) {
+                        batch = new FormatTask(windows);
+                    }
+                    batch.add(record.copy(), splitter.copy(), scaffoldNum, firstContig);
+
+                    if (batch.getLength() >= BATCH_LENGTH) {
+                        pending.add(pool.submit(batch));
+                        batch = null;
+                        if (pending.size() >= maxPending) {
+                            this.writeNext(pending);
+                        }
+                    }
+                }
+            }
+
+            splitter.reset(args.getMinN());
+        }
+
+        if (batch != null) {
+            pending.add(pool.submit(batch));
+        }
+
+        while (!pending.isEmpty()) {
+            this.writeNext(pending);
+        }
+    }
+
+    private void writeNext(Deque<Future<FormattedObject>> pending) throws IOException, InterruptedException {
+
+        try {
+            pending.removeFirst().get().writeTo(this.output);
+        }
+        catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException)ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /**
+     * Formats a batch of consecutive records into memory buffers on a worker thread
+     */
+    private class FormatTask implements Callable<FormattedObject> {
+
+        private final ThreadLocal<MappedWindow> windows;
+        private final List<FastaRecord> records;
+        private final List<ScaffoldSplitter> splitters;
+        private final List<int[]> ids;
+        private long length;
+
+        public FormatTask(ThreadLocal<MappedWindow> windows) {
+            this.windows = windows;
+            this.records = new ArrayList<>();
+            this.splitters = new ArrayList<>();
+            this.ids = new ArrayList<>();
+            this.length = 0;
+        }
+
+        public void add(FastaRecord record, ScaffoldSplitter splitter, int scaffoldNum, int firstContig) {
+            this.records.add(record);
+            this.splitters.add(splitter);
+            this.ids.add(new int[]{scaffoldNum, firstContig});
+            this.length += record.getLength();
+        }
+
+        public long getLength() {
+            return length;
+        }
 
-        this.translationWriter.println(scaffoldHeader + "\t" + currentHeader);
+        @Override
+        public FormattedObject call() throws IOException {
 
-        String[] contigSeqs = currentContig.split("[Nn]{" + args.getMinN() + ",}");
+            MappedWindow window = this.windows.get();
+            FormattedObject formatted = new FormattedObject(getArgs().getOutputPrefix());
 
-        int lineNum = 1;
-        int pos = 1;
-        for(String contig : contigSeqs) {
+            for (int i = 0; i < this.records.size(); i++) {
+                int[] id = this.ids.get(i);
+                formatted.write(this.records.get(i), window, this.splitters.get(i), id[0], id[1]);
+            }
 
-            if (!contig.isEmpty()) {
-                int contigLen = contig.length();
+            formatted.close();
 
-                int end = pos + contigLen - 1;
-                this.agpWriter.print(scaffoldHeader + "\t" + pos + "\t" + end + "\t" + lineNum + "\t");
+            return formatted;
+        }
+    }
 
-                if (contig.startsWith("N") || contig.startsWith("n")) {
-                    this.agpWriter.print("N\t" + contigLen + "\tscaffold\tyes\tpaired-ends\n");
+    /**
+     * Writes the scaffold, contigs, AGP description and name translations for a record to four outputs
+     */
+    private static class ObjectWriter {
+
+        protected final FastaWriter scaffoldWriter;
+        protected final FastaWriter contigWriter;
+        protected final AsciiWriter agpWriter;
+        protected final AsciiWriter translationWriter;
+
+        private final byte[] scaffoldPrefix;
+        private final byte[] contigPrefix;
+        private final ContigEmitter contigEmitter;
+
+        public ObjectWriter(FastaWriter scaffoldWriter, FastaWriter contigWriter, AsciiWriter agpWriter,
+                            AsciiWriter translationWriter, String outputPrefix) {
+            this.scaffoldWriter = scaffoldWriter;
+            this.contigWriter = contigWriter;
+            this.agpWriter = agpWriter;
+            this.translationWriter = translationWriter;
+            this.scaffoldPrefix = (outputPrefix + "_scaffold_").getBytes();
+            this.contigPrefix = (outputPrefix + "_contig_").getBytes();
+            this.contigEmitter = new ContigEmitter();
+        }
+
+        public void write(FastaRecord record, MappedWindow window, ScaffoldSplitter splitter, int scaffoldNum, int firstContig)
+                throws IOException {
+
+            long scaffoldLen = record.getLength();
+
+            this.writeName(this.translationWriter, this.scaffoldPrefix, scaffoldNum, scaffoldLen);
+            this.translationWriter.write('\t');
+            this.translationWriter.write(record.getHeaderBytes(), 0, record.getHeaderLength());
+            this.translationWriter.write('\n');
+
+            // Copy the scaffold
+            this.scaffoldWriter.startHeader();
+            this.writeName(this.scaffoldWriter, this.scaffoldPrefix, scaffoldNum, scaffoldLen);
+            this.scaffoldWriter.endHeader();
+            record.scan(window, this.scaffoldWriter);
+            this.scaffoldWriter.endRecord();
+
+            // Describe the components in the AGP file
+            int contigNum = firstContig;
+            for (int i = 0; i < splitter.getNbComponents(); i++) {
+
+                long len = splitter.getLength(i);
+
+                this.writeName(this.agpWriter, this.scaffoldPrefix, scaffoldNum, scaffoldLen);
+                this.agpWriter.write('\t');
+                this.agpWriter.writeNumber(splitter.getStart(i) + 1);
+                this.agpWriter.write('\t');
+                this.agpWriter.writeNumber(splitter.getEnd(i));
+                this.agpWriter.write('\t');
+                this.agpWriter.writeNumber(i + 1);
+                this.agpWriter.write('\t');
+
+                if (splitter.isGap(i)) {
+                    this.agpWriter.write('N');
+                    this.agpWriter.write('\t');
+                    this.agpWriter.writeNumber(len);
+                    this.agpWriter.write(AGP_GAP_END);
                 }
                 else {
-                    String contigHeader = args.getOutputPrefix() + "_contig_" + (++contigId) + "-size_" + contigLen;
+                    this.agpWriter.write('W');
+                    this.agpWriter.write('\t');
+                    this.writeName(this.agpWriter, this.contigPrefix, contigNum, len);
+                    this.agpWriter.write(AGP_CONTIG_START);
+                    this.agpWriter.writeNumber(len);
+                    this.agpWriter.write(AGP_CONTIG_END);
+
+                    this.writeName(this.translationWriter, this.contigPrefix, contigNum, len);
+                    this.translationWriter.write('\t');
+                    this.translationWriter.write(record.getHeaderBytes(), 0, record.getHeaderLength());
+                    this.translationWriter.write('\n');
+
+                    contigNum++;
+                }
+            }
+
+            // Copy out the contigs
+            this.contigEmitter.reset(splitter, firstContig);
+            record.scan(window, this.contigEmitter);
+        }
+
+        private void writeName(AsciiWriter writer, byte[] prefix, int id, long len) throws IOException {
+            writer.write(prefix);
+            writer.writeNumber(id);
+            writer.write(SIZE_TAG);
+            writer.writeNumber(len);
+        }
+
+        public void close() throws IOException {
+            this.scaffoldWriter.close();
+            this.contigWriter.close();
+            this.agpWriter.close();
+            this.translationWriter.close();
+        }
+
+        /**
+         * Writes each contig component of the current scaffold to the contigs file as the scaffold is streamed past
+         */
+        private class ContigEmitter implements SequenceHandler {
+
+            private ScaffoldSplitter splitter;
+            private int component;
+            private int contigNum;
+
+            public void reset(ScaffoldSplitter splitter, int firstContig) {
+                this.splitter = splitter;
+                this.component = 0;
+                this.contigNum = firstContig;
+            }
+
+            @Override
+            public void bases(ByteBuffer buffer, int from, int to, long offset) throws IOException {
+
+                int i = from;
+                long base = offset;
+
+                while (i < to && this.component < this.splitter.getNbComponents()) {
+
+                    long start = this.splitter.getStart(this.component);
+                    long end = this.splitter.getEnd(this.component);
+                    boolean gap = this.splitter.isGap(this.component);
+                    int n = (int)Math.min(to - i, end - base);
+
+                    if (!gap) {
+                        if (base == start) {
+                            contigWriter.startHeader();
+                            writeName(contigWriter, contigPrefix, this.contigNum++, end - start);
+                            contigWriter.endHeader();
+                        }
+                        contigWriter.writeBases(buffer, i, i + n);
+                    }
+
+                    i += n;
+                    base += n;
 
-                    this.agpWriter.print("W\t" + contigHeader + "\t1\t" + contigLen + "\t+\n");
-                    this.contigWriter.print(">" + contigHeader + "\n" + contig + "\n");
-                    this.translationWriter.print(contigHeader + "\t" + currentHeader + "\n");
+                    if (base == end) {
+                        if (!gap) {
+                            contigWriter.endRecord();
+                        }
+                        this.component++;
+                    }
                 }
-                lineNum++;
-                pos += contigLen;
             }
         }
+    }
+
+    /**
+     * The output for a single record, held in memory until it is its turn to be written
+     */
+    private static class FormattedObject extends ObjectWriter {
+
+        private final ByteArrayOutputStream scaffolds;
+        private final ByteArrayOutputStream contigs;
+        private final ByteArrayOutputStream agp;
+        private final ByteArrayOutputStream translation;
+
+        public FormattedObject(String outputPrefix) {
+            this(new ByteArrayOutputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream(),
+                    new ByteArrayOutputStream(), outputPrefix);
+        }
+
+        private FormattedObject(ByteArrayOutputStream scaffolds, ByteArrayOutputStream contigs,
+                                ByteArrayOutputStream agp, ByteArrayOutputStream translation, String outputPrefix) {
+            super(new FastaWriter(scaffolds, new FaiIndex()), new FastaWriter(contigs, new FaiIndex()),
+                    new AsciiWriter(agp), new AsciiWriter(translation), outputPrefix);
+            this.scaffolds = scaffolds;
+            this.contigs = contigs;
+            this.agp = agp;
+            this.translation = translation;
+        }
 
+        public void writeTo(ObjectWriter output) throws IOException {
+            output.scaffoldWriter.append(this.scaffolds.toByteArray(), this.scaffoldWriter.getIndex());
+            output.contigWriter.append(this.contigs.toByteArray(), this.contigWriter.getIndex());
+            output.agpWriter.write(this.agp.toByteArray());
+            output.translationWriter.write(this.translation.toByteArray());
+        }
     }
 
     public static class Args extends AbstractProcessArgs implements RampartStageArgs {
@@ -262,8 +559,12 @@ public class Finalise extends AbstractConanProcess {
         public static final String KEY_ATTR_PREFIX = "prefix";
         public static final String KEY_ATTR_MIN_N = "min_n";
         public static final String KEY_ATTR_COMPRESS = "compress";
+        public static final String KEY_ATTR_THREADS = "threads";
+        public static final String KEY_ATTR_COMPRESS_THREADS = "compress_threads";
 
         public static final int DEFAULT_MIN_N = 10;
+        public static final int DEFAULT_THREADS = 1;
+        public static final int DEFAULT_COMPRESS_THREADS = 1;
 
         private String outputPrefix;
         private String jobPrefix;
@@ -271,6 +572,8 @@ public class Finalise extends AbstractConanProcess {
         private File outputDir;
         private int minN;
         private boolean compress;
+        private int threads;
+        private int compressThreads;
 
 
         public Args() {
@@ -282,6 +585,8 @@ public class Finalise extends AbstractConanProcess {
             this.outputDir = RampartCLI.CWD;
             this.minN = DEFAULT_MIN_N;
             this.compress = true;
+            this.threads = DEFAULT_THREADS;
+            this.compressThreads = DEFAULT_COMPRESS_THREADS;
         }
 
         public Args(Element element, File inputFile, File outputDir, String jobPrefix, Organism organism, String institution) {
@@ -294,7 +599,9 @@ public class Finalise extends AbstractConanProcess {
                     new String[] {
                         KEY_ATTR_PREFIX,
                         KEY_ATTR_MIN_N,
-                        KEY_ATTR_COMPRESS
+                        KEY_ATTR_COMPRESS,
+                        KEY_ATTR_THREADS,
+                        KEY_ATTR_COMPRESS_THREADS
                     },
                     new String[0],
                     new String[0])) {
@@ -325,6 +632,14 @@ public class Finalise extends AbstractConanProcess {
                     XmlHelper.getBooleanValue(element, KEY_ATTR_COMPRESS) :
                     true;
 
+            this.threads = element.hasAttribute(KEY_ATTR_THREADS) ?
+                    XmlHelper.getIntValue(element, KEY_ATTR_THREADS) :
+                    DEFAULT_THREADS;
+
+            this.compressThreads = element.hasAttribute(KEY_ATTR_COMPRESS_THREADS) ?
+                    XmlHelper.getIntValue(element, KEY_ATTR_COMPRESS_THREADS) :
+                    DEFAULT_COMPRESS_THREADS;
+
             if (this.outputPrefix.contains(".") || this.outputPrefix.contains("|")) {
                 throw new IllegalArgumentException("Will not use dots or pipes in the assembly headers because this can cause " +
                         "problems for downstream tools.");
@@ -398,13 +713,45 @@ public class Finalise extends AbstractConanProcess {
             this.compress = compress;
         }
 
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getCompressThreads() {
+            return compressThreads;
+        }
+
+        public void setCompressThreads(int compressThreads) {
+            this.compressThreads = compressThreads;
+        }
+
 
         public File getContigsFile() {
-            return new File(this.outputDir, this.outputPrefix + ".contigs.fa");
+            return new File(this.outputDir, this.outputPrefix + ".contigs.fa" + (this.compress ? ".gz" : ""));
+        }
+
+        public File getContigsIndexFile() {
+            return new File(this.getContigsFile().getPath() + ".fai");
+        }
+
+        public File getContigsGziFile() {
+            return new File(this.getContigsFile().getPath() + ".gzi");
         }
 
         public File getScaffoldsFile() {
-            return new File(this.outputDir, this.outputPrefix + ".scaffolds.fa");
+            return new File(this.outputDir, this.outputPrefix + ".scaffolds.fa" + (this.compress ? ".gz" : ""));
+        }
+
+        public File getScaffoldsIndexFile() {
+            return new File(this.getScaffoldsFile().getPath() + ".fai");
+        }
+
+        public File getScaffoldsGziFile() {
+            return new File(this.getScaffoldsFile().getPath() + ".gzi");
         }
 
         public File getAGPFile() {
@@ -415,10 +762,6 @@ public class Finalise extends AbstractConanProcess {
             return new File(this.outputDir, this.outputPrefix + ".translation");
         }
 
-        public File getCompressedFile() {
-            return new File(this.outputDir, this.outputPrefix + ".tar.gz");
-        }
-
         @Override
         public void parseCommandLine(CommandLine cmdLine) {
 
@@ -454,6 +797,8 @@ public class Finalise extends AbstractConanProcess {
         private ConanParameter outputDir;
         private ConanParameter minN;
         private ConanParameter compress;
+        private ConanParameter threads;
+        private ConanParameter compressThreads;
 
         public Params() {
 
@@ -481,9 +826,19 @@ public class Finalise extends AbstractConanProcess {
 
             this.compress = new ParameterBuilder()
                     .longName("compress")
-                    .description("Whether or not to compress the final output for distribution")
+                    .description("Whether or not to write the final assembly as BGZF compressed FastA files")
                     .isFlag(true)
                     .create();
+
+            this.threads = new NumericParameter(
+                    "threads",
+                    "The number of threads to use when finalising the assembly",
+                    true);
+
+            this.compressThreads = new NumericParameter(
+                    "compress_threads",
+                    "The number of threads to use when compressing the final assembly",
+                    true);
         }
 
         public ConanParameter getJobPrefix() {
@@ -506,6 +861,14 @@ public class Finalise extends AbstractConanProcess {
             return compress;
         }
 
+        public ConanParameter getThreads() {
+            return threads;
+        }
+
+        public ConanParameter getCompressThreads() {
+            return compressThreads;
+        }
+
         @Override
         public ConanParameter[] getConanParametersAsArray() {
             return new ConanParameter[]{
@@ -513,7 +876,9 @@ public class Finalise extends AbstractConanProcess {
                     this.minN,
                     this.outputDir,
                     this.inputFile,
-                    this.compress
+                    this.compress,
+                    this.threads,
+                    this.compressThreads
             };
         }
 
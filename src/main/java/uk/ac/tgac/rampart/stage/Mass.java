@@ -43,6 +43,8 @@ import uk.ac.tgac.conan.core.data.Organism;
 import uk.ac.tgac.conan.core.util.XmlHelper;
 import uk.ac.tgac.conan.process.asm.Assembler;
 import uk.ac.tgac.conan.process.asm.KmerRange;
+import uk.ac.tgac.rampart.stage.util.ReferenceStatsCache;
+import uk.ac.tgac.rampart.stage.util.SubsampleStore;
 
 import java.io.File;
 import java.io.IOException;
@@ -134,6 +136,19 @@ public class Mass extends AbstractConanProcess {
                 log.info("Loaded optimal kmer values");
             }
 
+            // If the assemblies will be compared against a reference, start analysing the reference now, so that it's
+            // ready by the time the assemblies are selected
+            if (args.getRefStatsOutputDir() != null && args.getOrganism() != null &&
+                    args.getOrganism().getReference() != null && args.getOrganism().getReference().getPath() != null) {
+
+                ReferenceStatsCache.forDir(args.getRefStatsCacheDir()).prefetch(
+                        this.conanExecutorService,
+                        args.getOrganism().getReference().getPath(),
+                        args.getOrganism().getPloidy() > 1,
+                        args.getRefStatsOutputDir(),
+                        args.getJobPrefix() + "-refquast");
+            }
+
             log.info("Starting MASS jobs");
 
             for (MassJob.Args massJobArgs : args.getMassJobArgList()) {
@@ -300,6 +315,8 @@ public class Mass extends AbstractConanProcess {
         private File mecqDir;
         private boolean runParallel;                  // Whether to run MASS groups in parallel
         private Organism organism;
+        private File refStatsOutputDir;               // Where to analyse the reference, null if not needed
+        private File refStatsCacheDir;
 
         private OutputLevel outputLevel;
 
@@ -324,6 +341,8 @@ public class Mass extends AbstractConanProcess {
             this.runParallel = DEFAULT_RUN_PARALLEL;
             this.kmerCalcArgs = null;
             this.massJobArgList = new ArrayList<>();
+            this.refStatsOutputDir = null;
+            this.refStatsCacheDir = ReferenceStatsCache.DEFAULT_CACHE_DIR;
         }
 
         public Args(Element ele, File outputDir, File mecqDir, String jobPrefix, List<Library> allLibraries, List<Mecq.EcqArgs> allMecqs, Organism organism)
@@ -368,6 +387,14 @@ public class Mass extends AbstractConanProcess {
                                 this.allLibraries, this.allMecqs, this.organism, this.runParallel, i+1, this.kmerCalcArgs != null)
                 );
             }
+
+            // Share one subsample store between all MASS jobs, so each subsample is only submitted once
+            if (!this.massJobArgList.isEmpty()) {
+                SubsampleStore subsampleStore = this.massJobArgList.get(0).getSubsampleStore();
+                for (MassJob.Args jobArgs : this.massJobArgList) {
+                    jobArgs.setSubsampleStore(subsampleStore);
+                }
+            }
         }
 
         public void initialise() {
@@ -453,6 +480,22 @@ public class Mass extends AbstractConanProcess {
             this.allMecqs = allMecqs;
         }
 
+        public File getRefStatsOutputDir() {
+            return refStatsOutputDir;
+        }
+
+        public void setRefStatsOutputDir(File refStatsOutputDir) {
+            this.refStatsOutputDir = refStatsOutputDir;
+        }
+
+        public File getRefStatsCacheDir() {
+            return refStatsCacheDir;
+        }
+
+        public void setRefStatsCacheDir(File refStatsCacheDir) {
+            this.refStatsCacheDir = refStatsCacheDir;
+        }
+
         public File getMecqDir() {
             return mecqDir;
         }
@@ -47,11 +47,16 @@ import uk.ac.tgac.conan.core.data.Organism;
 import uk.ac.tgac.conan.core.util.XmlHelper;
 import uk.ac.tgac.conan.process.asm.*;
 import uk.ac.tgac.conan.process.asm.tools.AbyssV15;
-import uk.ac.tgac.conan.process.subsampler.TgacSubsamplerV1;
 import uk.ac.tgac.rampart.RampartJobFileSystem;
 import uk.ac.tgac.rampart.stage.util.CoverageRange;
+import uk.ac.tgac.rampart.stage.util.LibraryStatsCache;
 import uk.ac.tgac.rampart.stage.util.ReadsInput;
+import uk.ac.tgac.rampart.stage.util.SubsampleProcess;
+import uk.ac.tgac.rampart.stage.util.SubsampleStore;
 import uk.ac.tgac.rampart.stage.util.VariableRange;
+import uk.ac.tgac.rampart.util.seq.FastqScanner;
+import uk.ac.tgac.rampart.util.seq.FastqStats;
+import uk.ac.tgac.rampart.util.seq.FastqSubsampler;
 
 import java.io.File;
 import java.io.IOException;
@@ -116,15 +121,9 @@ public class MassJob extends AbstractConanProcess {
 
             jobResults.clear();
 
-            Map<Integer, List<Integer>> ssResults = new HashMap<>();
-
-            // Iterate over coverage range, and do subsampling if required
-            for (Integer cvg : args.getCoverageRange()) {
-
-                // Do subsampling for this coverage level if required
-                ssResults.put(cvg, this.doSubsampling(genericAssembler.doesSubsampling(), cvg, args.getSelectedLibs(),
-                        args.isRunParallel()));
-            }
+            // Subsample all libraries to every required coverage level.  This reads each library only once.
+            Map<Integer, List<Integer>> ssJobIds = this.doSubsampling(genericAssembler.doesSubsampling(),
+                    args.getCoverageRange(), args.getSelectedLibs(), executionContext);
 
             for(Assembler assembler : args.getAssemblers()) {
 
@@ -145,7 +144,9 @@ public class MassJob extends AbstractConanProcess {
                 ExecutionResult result = this.executeAssembler(
                         assembler,
                         args.getJobPrefix() + "-assembly-" + outputDir.getName(),
-                        ssResults.get(asmArgs.getDesiredCoverage()));
+                        ssJobIds.containsKey(asmArgs.getDesiredCoverage()) ?
+                                ssJobIds.get(asmArgs.getDesiredCoverage()) :
+                                new ArrayList<Integer>());
 
                 // Add assembler id to list
                 result.setName(title);
@@ -198,97 +199,100 @@ public class MassJob extends AbstractConanProcess {
     }
 
 
-    private List<Integer> doSubsampling(boolean assemblerDoesSubsampling, int coverage,
-                                        List<Library> libraries, boolean runParallel)
+    /**
+     * Subsamples the given libraries to all the requested coverage levels.  Each library is read once, whatever the number
+     * of coverage levels, and subsamples are nested so that the reads in a lower coverage level are a subset of those in a
+     * higher one.  Paired end files are read in lockstep so that mates are always kept together.
+     *
+     * Subsampling is submitted as one job per library, producing only those levels that are neither in the subsample
+     * store already nor being produced by a job submitted for an earlier MASS job.  When running in parallel on a
+     * scheduler this returns without waiting, and the assemblers should depend on the returned job ids.
+     * @param assemblerDoesSubsampling Whether the assembler will do its own subsampling
+     * @param coverages The coverage levels to produce
+     * @param libraries The libraries to subsample
+     * @param executionContext The environment to run subsampling jobs in
+     * @return The ids of the jobs producing each coverage level, which assemblers using that level must wait for
+     * @throws IOException Thrown if there was a problem reading the subsample store
+     * @throws InterruptedException Thrown if interrupted while submitting or running a subsampling job
+     * @throws ProcessExecutionException Thrown if a subsampling job could not be run
+     * @throws ConanParameterException Thrown if a subsampling job was badly configured
+     */
+    private Map<Integer, List<Integer>> doSubsampling(boolean assemblerDoesSubsampling, List<Integer> coverages,
+                                                      List<Library> libraries, ExecutionContext executionContext)
             throws IOException, InterruptedException, ProcessExecutionException, ConanParameterException {
 
         Args args = this.getArgs();
 
-        // Check to see if we even need to do subsampling.  If not just return the current libraries.
-        if (assemblerDoesSubsampling || coverage == CoverageRange.ALL) {
-            return new ArrayList<Integer>();
-        }
-
-        // Try to create directory to contain subsampled libraries
-        File subsamplingDir = new File(args.getOutputDir(), "subsampled_libs");
+        Map<Integer, List<Integer>> jobIds = new HashMap<>();
 
-        if (!subsamplingDir.exists()) {
-            if (!subsamplingDir.mkdirs()) {
-                throw new IOException("Couldn't create subsampling directory for " + args.getName() + " in " + args.getOutputDir().getAbsolutePath());
+        // Check to see if we even need to do subsampling.  If not just return.
+        List<Integer> levels = new ArrayList<>();
+        for (Integer cvg : coverages) {
+            if (cvg != CoverageRange.ALL) {
+                levels.add(cvg);
+                jobIds.put(cvg, new ArrayList<Integer>());
             }
         }
 
-        // Subsample each library
-        List<Integer> jobIds = new ArrayList<>();
-
-        for(Library lib : libraries) {
-
-            Library subsampledLib = lib.copy();
-
-            // Subsample to this coverage level if required
-            long timestamp = System.currentTimeMillis();
-            String fileSuffix = "_cvg-" + coverage + ".fastq";
-            String jobPrefix = args.getJobPrefix() + "-subsample-" + lib.getName() + "-" + coverage + "x";
-
-            subsampledLib.setName(lib.getName() + "-" + coverage + "x");
-
-            final long genomeSize = args.getOrganism().getGenomeSize();
-
-            if (subsampledLib.isPairedEnd()) {
-
-                // This calculation is much quicker if library is uniform, in this case we just calculate from the number
-                // of entries, otherwise we have to scan the whole file.
-                long sequencedBases = lib.isUniform() ?
-                        2 * lib.getReadLength() * this.getNbEntries(lib.getFile1(), subsamplingDir, jobPrefix + "-file1-line_count") :
-                        this.getNbBases(lib.getFile1(), subsamplingDir, jobPrefix + "-file1-base_count") +
-                                this.getNbBases(lib.getFile2(), subsamplingDir, jobPrefix + "-file2-base_count");
-
-                // Calculate the probability of keeping an entry
-                double probability = (double)sequencedBases / (double)genomeSize / 2.0;
-
-                log.debug("Estimated that library: " + lib.getName() + "; has approximately " + sequencedBases + " bases.  " +
-                        "Estimated genome size is: " + genomeSize + "; so we plan only to keep " +
-                        probability + "% of the reads to achieve approximately " + coverage + "X coverage");
+        if (assemblerDoesSubsampling || levels.isEmpty()) {
+            return jobIds;
+        }
 
+        // Subsamples are shared between MASS jobs, so only produce levels that no other job has produced already
+        SubsampleStore store = args.getSubsampleStore();
 
-                subsampledLib.setFiles(
-                        new File(subsamplingDir, lib.getFile1().getName() + fileSuffix),
-                        new File(subsamplingDir, lib.getFile2().getName() + fileSuffix)
-                );
+        boolean runParallel = executionContext.usingScheduler() && (args.isMassParallel() || args.isRunParallel());
 
-                ExecutionResult f1Result = this.executeSubsampler(probability, timestamp,
-                        lib.getFile1(), subsampledLib.getFile1(), jobPrefix + "-file1", runParallel);
+        // Subsample each library
+        for(Library lib : libraries) {
 
-                ExecutionResult f2Result = this.executeSubsampler(probability, timestamp,
-                        lib.getFile2(), subsampledLib.getFile2(), jobPrefix + "-file2", runParallel);
+            List<Integer> missing = store.getMissing(lib, levels);
+            List<Integer> needed = new ArrayList<>();
 
-                jobIds.add(f1Result.getJobId());
-                jobIds.add(f2Result.getJobId());
+            for (Integer cvg : missing) {
+                Integer jobId = store.getJobId(lib, cvg);
+                if (jobId != null) {
+                    jobIds.get(cvg).add(jobId);
+                }
+                else {
+                    needed.add(cvg);
+                }
             }
-            else {
-
-                // This calculation is much quicker if library is uniform, in this case we just calculate from the number
-                // of entries, otherwise we have to scan the whole file.
-                long sequencedBases = lib.isUniform() ?
-                        lib.getReadLength() * this.getNbEntries(lib.getFile1(), subsamplingDir, jobPrefix + "-file1-line_count") :
-                        this.getNbBases(lib.getFile1(), subsamplingDir, jobPrefix + "-file1-base_count");
-
-                // Calculate the probability of keeping an entry
-                double probability = (double)sequencedBases / (double)genomeSize;
 
-                log.debug("Estimated that library: " + lib.getName() + "; has approximately " + sequencedBases + " bases.  " +
-                        "Estimated genome size is: " + genomeSize + "; so we plan only to keep " +
-                        probability + "% of the reads to achieve approximately " + coverage + "X coverage");
+            log.debug("Reusing " + (levels.size() - needed.size()) + " subsamples of library: " + lib.getName() +
+                    " for " + args.getName() + "; " + needed.size() + " to produce");
 
-                subsampledLib.setFiles(
-                        new File(subsamplingDir, lib.getFile1().getName() + fileSuffix),
-                        null
-                );
+            if (needed.isEmpty()) {
+                continue;
+            }
 
-                ExecutionResult result = this.executeSubsampler(probability, timestamp,
-                        lib.getFile1(), subsampledLib.getFile1(), jobPrefix, runParallel);
+            File libDir = store.getLibraryDir(lib);
+            if (!libDir.exists() && !libDir.mkdirs()) {
+                throw new IOException("Couldn't create subsampling directory: " + libDir.getAbsolutePath());
+            }
 
-                jobIds.add(result.getJobId());
+            SubsampleProcess.Args ssArgs = new SubsampleProcess.Args();
+            ssArgs.setStore(store);
+            ssArgs.setLibrary(lib);
+            ssArgs.setCoverages(needed);
+            ssArgs.setGenomeSize(args.getOrganism().getGenomeSize());
+            ssArgs.setThreads(args.getThreads());
+            ssArgs.setStatsFile(args.getLibraryStatsFile());
+
+            ExecutionResult result = this.conanExecutorService.executeProcess(
+                    new SubsampleProcess(this.conanExecutorService, ssArgs),
+                    libDir,
+                    args.getJobPrefix() + "-subsample-" + lib.getName(),
+                    args.getThreads(),
+                    2000,
+                    runParallel);
+
+            // If the job runs in the background, remember it so that later MASS jobs can wait for it too
+            if (runParallel) {
+                for (Integer cvg : needed) {
+                    store.setJobId(lib, cvg, result.getJobId());
+                    jobIds.get(cvg).add(result.getJobId());
+                }
             }
         }
 
@@ -406,32 +410,47 @@ public class MassJob extends AbstractConanProcess {
         return null;
     }
 
-    public long getNbEntries(File seqFile, File outputDir, String jobName) throws ProcessExecutionException, InterruptedException, IOException {
+    public long getNbBases(File seqFile) throws IOException, InterruptedException {
 
-        return getCount(seqFile, outputDir, jobName, true);
+        return this.scanReads(seqFile).getNbBases();
     }
 
-    public long getNbBases(File seqFile, File outputDir, String jobName) throws IOException, ProcessExecutionException, InterruptedException {
+    /**
+     * Counts the sequenced bases in a library.  Base counts come from the job wide library statistics cache if
+     * possible, so are exact and cheap after the first scan.  The cache also detects libraries with uniform read
+     * lengths, in which case only the first file of a pair needs scanning.
+     * @param lib The library to count
+     * @return The number of sequenced bases in the library
+     * @throws IOException Thrown if there was a problem reading the library or the cache
+     * @throws InterruptedException Thrown if interrupted while scanning
+     */
+    public long countBases(Library lib) throws IOException, InterruptedException {
 
-        return getCount(seqFile, outputDir, jobName, false);
-    }
+        Args args = this.getArgs();
+
+        File statsFile = args.getLibraryStatsFile();
 
-    protected long getCount(File seqFile, File outputDir, String jobName, boolean linesOnly) throws ProcessExecutionException, InterruptedException, IOException {
+        if (statsFile != null) {
+            return LibraryStatsCache.forFile(statsFile).countBases(lib, args.getThreads());
+        }
 
-        File outputFile = new File(outputDir, seqFile.getName() + ".nb_entries.out");
+        return this.getNbBases(lib.getFile1()) + (lib.isPairedEnd() ? this.getNbBases(lib.getFile2()) : 0);
+    }
 
-        String wcOption = linesOnly ? "-l" : "-m";
-        String command = "awk '/^@/{getline; print}' " + seqFile.getAbsolutePath() + " | wc " + wcOption + " > " + outputFile.getAbsolutePath();
+    protected FastqStats scanReads(File seqFile) throws IOException, InterruptedException {
 
-        this.conanExecutorService.executeProcess(command, outputDir, jobName, 1, 1, false);
+        Args args = this.getArgs();
 
-        List<String> lines = FileUtils.readLines(outputFile);
+        // Use the job wide cache if possible, so no library is scanned more than once
+        File statsFile = args.getLibraryStatsFile();
 
-        if (lines == null || lines.isEmpty()) {
-            throw new IOException("Failed to retrieve number of lines in file: " + seqFile.getAbsolutePath());
-        }
+        FastqStats stats = statsFile != null ?
+                LibraryStatsCache.forFile(statsFile).get(seqFile, args.getThreads()) :
+                new FastqScanner(args.getThreads()).scan(seqFile);
 
-        return Long.parseLong(lines.get(0).trim());
+        log.debug("Scanned " + seqFile.getAbsolutePath() + ": " + stats.toString());
+
+        return stats;
     }
 
     public ExecutionResult executeAssembler(Assembler assembler, String jobName, List<Integer> jobIds)
@@ -489,25 +508,6 @@ public class MassJob extends AbstractConanProcess {
     }
 
 
-    public ExecutionResult executeSubsampler(double probability, long timestamp, File input, File output, String jobName,
-                                             boolean runParallel)
-            throws ProcessExecutionException, InterruptedException, IOException, ConanParameterException {
-
-        TgacSubsamplerV1.Args ssArgs = new TgacSubsamplerV1.Args();
-        ssArgs.setInputFile(input);
-        ssArgs.setOutputFile(output);
-        ssArgs.setLogFile(new File(output.getParentFile(), output.getName() + ".log"));
-        ssArgs.setSeed(timestamp);
-        ssArgs.setProbability(probability);
-
-        TgacSubsamplerV1 ssProc = new TgacSubsamplerV1(ssArgs);
-
-        // Create process
-        return this.conanExecutorService.executeProcess(ssProc, output.getParentFile(), jobName, 1, 2000,
-                this.conanExecutorService.usingScheduler() ? runParallel : false);
-    }
-
-
     public static class Args extends AbstractProcessArgs {
 
         private static final String KEY_ELEM_INPUTS = "inputs";
@@ -530,6 +530,8 @@ public class MassJob extends AbstractConanProcess {
         public static final int DEFAULT_THREADS = 1;
         public static final int DEFAULT_MEMORY = 0;
 
+        public static final String SUBSAMPLED_LIBS_DIR = "subsampled_libs";
+
 
         // Class vars
         private File outputDir;
@@ -563,6 +565,7 @@ public class MassJob extends AbstractConanProcess {
         private List<Assembler> assemblers;
         private boolean multiCoverageJob;
         private boolean multiKmerJob;
+        private SubsampleStore subsampleStore;
 
 
         public Args() {
@@ -594,6 +597,7 @@ public class MassJob extends AbstractConanProcess {
             this.assemblers = new ArrayList<>();
             this.multiCoverageJob = false;
             this.multiKmerJob = false;
+            this.subsampleStore = null;
         }
 
 
@@ -821,39 +825,36 @@ public class MassJob extends AbstractConanProcess {
                 return this.selectedLibs;
             }
 
-            // Try to create directory to contain subsampled libraries
-            File subsamplingDir = new File(this.outputDir, "subsampled_libs");
+            // Subsampled libraries live in a store shared by all MASS jobs
+            SubsampleStore store = this.getSubsampleStore();
 
-            // Subsample each library
             List<Library> subsampledLibs = new ArrayList<>();
 
             for(Library lib : this.selectedLibs) {
+                subsampledLibs.add(store.getSubsampledLibrary(lib, coverage));
+            }
 
-                Library subsampledLib = lib.copy();
-
-                // Subsample to this coverage level if required
-                String fileSuffix = "_cvg-" + coverage + ".fastq";
-
-                subsampledLib.setName(lib.getName() + "-" + coverage + "x");
-
-                if (subsampledLib.isPairedEnd()) {
-
-                    subsampledLib.setFiles(
-                            new File(subsamplingDir, lib.getFile1().getName() + fileSuffix),
-                            new File(subsamplingDir, lib.getFile2().getName() + fileSuffix)
-                    );
-                }
-                else {
-                    subsampledLib.setFiles(
-                            new File(subsamplingDir, lib.getFile1().getName() + fileSuffix),
-                            null
-                    );
-                }
+            return subsampledLibs;
+        }
 
-                subsampledLibs.add(subsampledLib);
+        /**
+         * Gets the store of subsampled libraries, which is shared by all MASS jobs in this run
+         * @return The subsample store
+         */
+        public SubsampleStore getSubsampleStore() {
+            if (this.subsampleStore == null) {
+                this.subsampleStore = new SubsampleStore(new File(this.outputDir.getParentFile(), SUBSAMPLED_LIBS_DIR),
+                        FastqSubsampler.DEFAULT_SEED, this.threads);
             }
+            return this.subsampleStore;
+        }
 
-            return subsampledLibs;
+        /**
+         * Shares a subsample store with other MASS jobs, so that each knows which subsamples the others have submitted
+         * @param subsampleStore The subsample store
+         */
+        public void setSubsampleStore(SubsampleStore subsampleStore) {
+            this.subsampleStore = subsampleStore;
         }
 
         private static class JobVars {
@@ -1240,6 +1241,14 @@ public class MassJob extends AbstractConanProcess {
             this.assemblers = assemblers;
         }
 
+        /**
+         * Gets the job wide library statistics cache file
+         * @return The cache file, or null if the MECQ directory, and hence the job directory, is not known
+         */
+        public File getLibraryStatsFile() {
+            return this.mecqDir == null ? null : new RampartJobFileSystem(this.mecqDir.getParentFile()).getLibraryStatsFile();
+        }
+
         public List<File> getInputKmers() {
 
             RampartJobFileSystem fs = new RampartJobFileSystem(this.getMecqDir().getParentFile());
@@ -46,11 +46,16 @@ import uk.ac.tgac.conan.core.data.Organism;
 import uk.ac.tgac.conan.core.util.XmlHelper;
 import uk.ac.tgac.conan.process.asm.stats.QuastV23;
 import uk.ac.tgac.rampart.RampartCLI;
+import uk.ac.tgac.rampart.stage.analyse.asm.AssemblyFingerprints;
 import uk.ac.tgac.rampart.stage.analyse.asm.analysers.AssemblyAnalyser;
-import uk.ac.tgac.rampart.stage.analyse.asm.selector.AssemblySelector;
+import uk.ac.tgac.rampart.stage.analyse.asm.analysers.ReportIngester;
 import uk.ac.tgac.rampart.stage.analyse.asm.selector.DefaultAssemblySelector;
+import uk.ac.tgac.rampart.stage.analyse.asm.selector.ParetoAssemblySelector;
+import uk.ac.tgac.rampart.stage.analyse.asm.selector.SelectionTargets;
+import uk.ac.tgac.rampart.stage.analyse.asm.selector.WeightingRobustness;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+import uk.ac.tgac.rampart.stage.util.ReferenceStatsCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -64,6 +69,10 @@ public class Select extends AbstractConanProcess {
 
     private static Logger log = LoggerFactory.getLogger(Amp.class);
 
+    public static final String STATS_FILE_NAME = "scores.bin";
+    public static final String TARGETS_FILE_NAME = "selection.properties";
+    public static final String REF_QUAST_DIR_NAME = "ref_quast";
+
     public Select() {
         this(null);
     }
@@ -117,56 +126,107 @@ public class Select extends AbstractConanProcess {
             AssemblyStatsTable table = this.createTable();
 
             boolean cegmaSelected = false;
+            boolean katSelected = false;
 
             QuastV23.AssemblyStats refStats = null;
 
-            // If we have a reference run quast on it to get some stats
-            if (args.getOrganism().getReference() != null && args.getOrganism().getReference().getPath() != null) {
+            // Work out which analysers were used and where their reports are
+            List<File> reportDirs = new ArrayList<>();
+            for(AssemblyAnalyser analyser : args.analysers) {
 
-                File refOutDir = new File(args.getOutputDir(), "ref_quast");
-                List<File> inputFiles = new ArrayList<>();
-                inputFiles.add(args.getOrganism().getReference().getPath());
-                QuastV23.Args refArgs = new QuastV23.Args();
-                refArgs.setInputFiles(inputFiles);
-                refArgs.setFindGenes(true);
-                refArgs.setThreads(1);
-                refArgs.setEukaryote(args.getOrganism().getPloidy() > 1);
-                refArgs.setOutputDir(refOutDir);
+                File reportDir = new File(args.getMassAnalysisDir(), analyser.getName().toLowerCase());
 
-                QuastV23 refQuast = new QuastV23(this.conanExecutorService, refArgs);
+                reportDirs.add(analyser.isFast() ? new File(reportDir, "longest") : reportDir);
 
-                ExecutionResult res = this.conanExecutorService.executeProcess(refQuast, refOutDir, args.jobPrefix + "-refquast", 1, 2000, false);
+                if (analyser.getName().equalsIgnoreCase("CEGMA")) {
+                    cegmaSelected = true;
+                }
+                else if (analyser.getName().equalsIgnoreCase("KAT")) {
+                    katSelected = true;
+                }
+            }
+
+            // If we have a reference get some stats for it, either from the cache, from the analysis started during
+            // MASS, or by running quast on it now
+            if (args.getOrganism().getReference() != null && args.getOrganism().getReference().getPath() != null) {
 
-                QuastV23.Report report = new QuastV23.Report(new File(refOutDir, "report.txt"));
-                refStats = report.getAssemblyStats(0);
+                refStats = ReferenceStatsCache.forDir(args.getRefStatsCacheDir()).get(
+                        this.conanExecutorService,
+                        args.getOrganism().getReference().getPath(),
+                        args.getOrganism().getPloidy() > 1,
+                        new File(args.getOutputDir(), REF_QUAST_DIR_NAME),
+                        args.jobPrefix + "-refquast");
 
                 log.info("Reference genome size: " + refStats.getTotalLengthGt0());
                 log.info("Reference GC%: " + refStats.getGcPc());
                 log.info("Reference # Genes: " + refStats.getNbGenes());
             }
 
-            for(AssemblyAnalyser analyser : args.analysers) {
-
-                File reportDir = new File(args.getMassAnalysisDir(), analyser.getName().toLowerCase());
-
-                analyser.updateTable(
-                        table,
-                        analyser.isFast() ? new File(reportDir, "longest") : reportDir
-                );
-
-                if (analyser.getName().equalsIgnoreCase("CEGMA")) {
-                    cegmaSelected = true;
+            // Score the assemblies before any metrics are known, so that they can be re-ranked incrementally as each
+            // report is read
+            final DefaultAssemblySelector assemblySelector = args.getSelector().equalsIgnoreCase(Args.SELECTOR_PARETO) ?
+                    new ParetoAssemblySelector(args.getWeightingsFile()) :
+                    new DefaultAssemblySelector(args.getWeightingsFile());
+            assemblySelector.selectAssembly(
+                    table,
+                    SelectionTargets.create(args.getOrganism(), refStats, cegmaSelected, katSelected));
+
+            // Read the analyser reports into the table, concurrently across analysers and report files
+            ReportIngester.ingest(table, args.analysers, reportDirs, Math.max(args.getThreads(), ReportIngester.DEFAULT_THREADS),
+                    new ReportIngester.Listener() {
+
+                        private int leader = -1;
+
+                        @Override
+                        public void updated(AssemblyStatsTable table) {
+                            AssemblyStats best = assemblySelector.rescore();
+                            if (best.getRow() != leader) {
+                                leader = best.getRow();
+                                log.debug("Current leader: " + best.getDataset() + "-" + best.getDesc() +
+                                        " (" + best.getFinalScore() + ")");
+                            }
+                        }
+                    });
+
+            // Assemblies with identical content were only analysed once, so give their duplicates the same metrics
+            File fingerprintsFile = new File(args.getMassAnalysisDir(), AssemblyFingerprints.FILE_NAME);
+            if (fingerprintsFile.exists()) {
+                int duplicates = AssemblyFingerprints.load(fingerprintsFile).fanOut(table);
+                if (duplicates > 0) {
+                    log.info("Copied metrics to " + duplicates + " assemblies that were identical to another assembly");
                 }
             }
 
             // Select the assembly
-            AssemblySelector assemblySelector = new DefaultAssemblySelector(args.getWeightingsFile());
-            AssemblyStats selectedAssembly = assemblySelector.selectAssembly(
-                    table,
-                    args.getOrganism(),
-                    refStats,
-                    cegmaSelected
-                    );
+            AssemblyStats selectedAssembly = assemblySelector.rescore();
+            log.info("Best assembly stats: " + selectedAssembly.toString());
+
+            // Report the assemblies that no other assembly beats on every metric group
+            if (assemblySelector instanceof ParetoAssemblySelector) {
+                File frontFile = new File(args.getOutputDir(), "pareto_front.tsv");
+                ((ParetoAssemblySelector) assemblySelector).saveFront(frontFile);
+                log.info("Pareto front of assemblies saved to: " + frontFile.getAbsolutePath());
+            }
+
+            // Check how sensitive the selection is to the weightings
+            if (args.getRobustnessSamples() > 0) {
+
+                WeightingRobustness.Report robustness = assemblySelector.createRobustnessTest().run(
+                        args.getRobustnessSamples(),
+                        WeightingRobustness.DEFAULT_SPREAD,
+                        WeightingRobustness.DEFAULT_SEED,
+                        args.getThreads());
+
+                File robustnessFile = new File(args.getOutputDir(), "robustness.tsv");
+                robustness.save(table, robustnessFile);
+
+                AssemblyStats mostRobust = table.get(robustness.getMostFrequentWinner());
+                log.info("Selected assembly won " + robustness.getWins(selectedAssembly.getRow()) + " of " +
+                        robustness.getSamples() + " perturbed weightings.  Most frequent winner: " +
+                        mostRobust.getDataset() + "-" + mostRobust.getDesc() + " (" +
+                        robustness.getWins(robustness.getMostFrequentWinner()) + " wins).  Details saved to: " +
+                        robustnessFile.getAbsolutePath());
+            }
 
             File bestAssembly = new File(selectedAssembly.getFilePath());
 
@@ -187,6 +247,10 @@ public class Select extends AbstractConanProcess {
             }
 
             // Save table to disk
+            File finalStatsFile = new File(args.getOutputDir(), STATS_FILE_NAME);
+            table.save(finalStatsFile);
+            log.debug("Saved final results in binary format to: " + finalStatsFile.getAbsolutePath());
+
             File finalTSVFile = new File(args.getOutputDir(), "scores.tsv");
             table.saveTsv(finalTSVFile);
             log.debug("Saved final results in TSV format to: " + finalTSVFile.getAbsolutePath());
@@ -195,6 +259,11 @@ public class Select extends AbstractConanProcess {
             table.saveSummary(finalSummaryFile);
             log.debug("Saved final results in summary format to: " + finalSummaryFile.getAbsolutePath());
 
+            // Save what the assemblies were scored against so they can be re-selected later with rampart-select
+            File targetsFile = new File(args.getOutputDir(), TARGETS_FILE_NAME);
+            assemblySelector.getTargets().save(targetsFile);
+            log.debug("Saved selection targets to: " + targetsFile.getAbsolutePath());
+
 
             stopWatch.stop();
 
@@ -247,6 +316,18 @@ public class Select extends AbstractConanProcess {
     public static class Args extends AbstractProcessArgs implements RampartStageArgs {
 
         private static final String KEY_ATTR_WEIGHTINGS = "weightings_file";
+        private static final String KEY_ATTR_ROBUSTNESS_SAMPLES = "robustness_samples";
+        private static final String KEY_ATTR_THREADS = "threads";
+        private static final String KEY_ATTR_SELECTOR = "selector";
+        private static final String KEY_ATTR_REF_STATS_CACHE = "ref_stats_cache";
+
+        public static final String SELECTOR_DEFAULT = "default";
+        public static final String SELECTOR_PARETO = "pareto";
+
+        public static final int DEFAULT_ROBUSTNESS_SAMPLES = WeightingRobustness.DEFAULT_SAMPLES;
+        public static final int DEFAULT_THREADS = 1;
+        public static final String DEFAULT_SELECTOR = SELECTOR_DEFAULT;
+        public static final File DEFAULT_REF_STATS_CACHE = ReferenceStatsCache.DEFAULT_CACHE_DIR;
 
         public static final File DEFAULT_SYSTEM_WEIGHTINGS_FILE = new File(RampartCLI.ETC_DIR, "weightings.tab");
         public static final File    DEFAULT_USER_WEIGHTINGS_FILE = new File(RampartCLI.USER_DIR, "weightings.tab");
@@ -258,6 +339,10 @@ public class Select extends AbstractConanProcess {
         private File outputDir;
         private Organism organism;
         private File weightingsFile;
+        private int robustnessSamples;
+        private int threads;
+        private String selector;
+        private File refStatsCacheDir;
         private String jobPrefix;
         private List<MassJob.Args> massJobs;
         private List<AssemblyAnalyser> analysers;
@@ -269,6 +354,10 @@ public class Select extends AbstractConanProcess {
             this.assemblyLinkageFile = null;
             this.organism = null;
             this.weightingsFile = DEFAULT_WEIGHTINGS_FILE;
+            this.robustnessSamples = DEFAULT_ROBUSTNESS_SAMPLES;
+            this.threads = DEFAULT_THREADS;
+            this.selector = DEFAULT_SELECTOR;
+            this.refStatsCacheDir = DEFAULT_REF_STATS_CACHE;
             this.jobPrefix = "select-assembly";
             this.massJobs = null;
             this.analysers = null;
@@ -284,7 +373,11 @@ public class Select extends AbstractConanProcess {
             if (!XmlHelper.validate(element,
                     new String[0],
                     new String[]{
-                            KEY_ATTR_WEIGHTINGS
+                            KEY_ATTR_WEIGHTINGS,
+                            KEY_ATTR_ROBUSTNESS_SAMPLES,
+                            KEY_ATTR_THREADS,
+                            KEY_ATTR_SELECTOR,
+                            KEY_ATTR_REF_STATS_CACHE
                     },
                     new String[0],
                     new String[0]
@@ -304,6 +397,26 @@ public class Select extends AbstractConanProcess {
                     new File(XmlHelper.getTextValue(element, KEY_ATTR_WEIGHTINGS)) :
                     DEFAULT_WEIGHTINGS_FILE;
 
+            this.robustnessSamples = element.hasAttribute(KEY_ATTR_ROBUSTNESS_SAMPLES) ?
+                    XmlHelper.getIntValue(element, KEY_ATTR_ROBUSTNESS_SAMPLES) :
+                    DEFAULT_ROBUSTNESS_SAMPLES;
+
+            this.threads = element.hasAttribute(KEY_ATTR_THREADS) ?
+                    XmlHelper.getIntValue(element, KEY_ATTR_THREADS) :
+                    DEFAULT_THREADS;
+
+            this.selector = element.hasAttribute(KEY_ATTR_SELECTOR) ?
+                    XmlHelper.getTextValue(element, KEY_ATTR_SELECTOR) :
+                    DEFAULT_SELECTOR;
+
+            if (!this.selector.equalsIgnoreCase(SELECTOR_DEFAULT) && !this.selector.equalsIgnoreCase(SELECTOR_PARETO)) {
+                throw new IOException("Unknown assembly selector: \"" + this.selector + "\".  Expected \"" +
+                        SELECTOR_DEFAULT + "\" or \"" + SELECTOR_PARETO + "\"");
+            }
+
+            this.refStatsCacheDir = element.hasAttribute(KEY_ATTR_REF_STATS_CACHE) ?
+                    new File(XmlHelper.getTextValue(element, KEY_ATTR_REF_STATS_CACHE)) :
+                    DEFAULT_REF_STATS_CACHE;
         }
 
         protected Params getParams() {
@@ -350,6 +463,38 @@ public class Select extends AbstractConanProcess {
             this.weightingsFile = weightingsFile;
         }
 
+        public int getRobustnessSamples() {
+            return robustnessSamples;
+        }
+
+        public void setRobustnessSamples(int robustnessSamples) {
+            this.robustnessSamples = robustnessSamples;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public String getSelector() {
+            return selector;
+        }
+
+        public void setSelector(String selector) {
+            this.selector = selector;
+        }
+
+        public File getRefStatsCacheDir() {
+            return refStatsCacheDir;
+        }
+
+        public void setRefStatsCacheDir(File refStatsCacheDir) {
+            this.refStatsCacheDir = refStatsCacheDir;
+        }
+
         public String getJobPrefix() {
             return jobPrefix;
         }
@@ -41,6 +41,7 @@ import uk.ac.tgac.conan.core.data.Organism;
 import uk.ac.tgac.conan.core.util.XmlHelper;
 import uk.ac.tgac.rampart.stage.AmpStage;
 import uk.ac.tgac.rampart.stage.analyse.asm.analysers.AssemblyAnalyser;
+import uk.ac.tgac.rampart.stage.analyse.asm.analysers.ReportIngester;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
 import uk.ac.tgac.rampart.util.SpiFactory;
@@ -132,7 +133,7 @@ public class AnalyseAmpAssemblies extends AbstractConanProcess {
         }
 
         // Create requested services
-        Set<AssemblyAnalyser> requestedServices = new HashSet<>();
+        Set<AssemblyAnalyser> requestedServices = new LinkedHashSet<>();
         for(AnalyseAssembliesArgs.ToolArgs requestedService : this.getArgs().getTools()) {
             AssemblyAnalyser aa = this.assemblyAnalyserFactory.create(requestedService.getName(), this.conanExecutorService);
             aa.setArgs(requestedService);
@@ -156,26 +157,25 @@ public class AnalyseAmpAssemblies extends AbstractConanProcess {
             // Create the stats table with information derived from the configuration file.
             AssemblyStatsTable table = this.createTable();
 
-            // Merge all the results
-            for(AssemblyAnalyser analyser : requestedServices) {
-
-                List<File> assemblies = this.findAssemblies(analyser);
-                File outputDir = new File(args.getOutputDir(), analyser.getName().toLowerCase());
-
-                Map<String, String> asm2GroupMap = new HashMap<>();
-                for(File b : assemblies) {
-                    asm2GroupMap.put(b.getName(), "amp");
-                }
-
-                analyser.updateTable(table, outputDir);
+            // Merge all the results, reading reports concurrently across analysers and report files
+            List<AssemblyAnalyser> analysers = new ArrayList<>(requestedServices);
+            List<File> reportDirs = new ArrayList<>();
+            for(AssemblyAnalyser analyser : analysers) {
+                reportDirs.add(new File(args.getOutputDir(), analyser.getName().toLowerCase()));
             }
 
+            ReportIngester.ingest(table, analysers, reportDirs, ReportIngester.DEFAULT_THREADS);
+
             // Save table to disk
+            File finalStatsFile = new File(args.getOutputDir(), "scores.bin");
+            table.save(finalStatsFile);
+            log.debug("Saved final results in binary format to: " + finalStatsFile.getAbsolutePath());
+
             File finalTSVFile = new File(args.getOutputDir(), "scores.tsv");
             table.saveTsv(finalTSVFile);
             log.debug("Saved final results in TSV format to: " + finalTSVFile.getAbsolutePath());
 
-            File finalSummaryFile = new File(args.getOutputDir(), "scores.tsv");
+            File finalSummaryFile = new File(args.getOutputDir(), "scores.txt");
             table.saveSummary(finalSummaryFile);
             log.debug("Saved final results in summary format to: " + finalSummaryFile.getAbsolutePath());
 
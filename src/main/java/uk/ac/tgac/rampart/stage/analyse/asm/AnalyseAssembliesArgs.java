@@ -44,10 +44,12 @@ import java.util.Set;
 public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implements RampartStageArgs {
 
     private static final String KEY_ATTR_PARALLEL = "parallel";
+    private static final String KEY_ATTR_CACHE_DIR = "cache_dir";
 
     private static final String KEY_ELEM_TOOL = "tool";
 
     public static final boolean DEFAULT_RUN_PARALLEL = false;
+    public static final String DEFAULT_CACHE_DIR_NAME = "cache";
 
     private SpiFactory<AssemblyAnalyser> assemblyAnalyserFactory;
     private Set<AssemblyAnalyser> assemblyAnalysers;
@@ -60,6 +62,7 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
     private int memory;
     private boolean runParallel;
     private String jobPrefix;
+    private File cacheDir;
 
     public AnalyseAssembliesArgs(AnalyseAssembliesParams params) {
 
@@ -73,6 +76,7 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
         this.memory = 0;
         this.runParallel = false;
         this.jobPrefix = "assembly-analyses";
+        this.cacheDir = null;
 
         this.assemblyAnalyserFactory = new SpiFactory<>(AssemblyAnalyser.class);
         this.assemblyAnalysers = new HashSet<>();
@@ -88,6 +92,7 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
                 new String[]{},
                 new String[]{
                         KEY_ATTR_PARALLEL,
+                        KEY_ATTR_CACHE_DIR
                 },
                 new String[]{
                         KEY_ELEM_TOOL
@@ -106,6 +111,10 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
                 XmlHelper.getBooleanValue(element, KEY_ATTR_PARALLEL) :
                 DEFAULT_RUN_PARALLEL;
 
+        this.cacheDir = element.hasAttribute(KEY_ATTR_CACHE_DIR) ?
+                new File(XmlHelper.getTextValue(element, KEY_ATTR_CACHE_DIR)) :
+                new File(outputDir, DEFAULT_CACHE_DIR_NAME);
+
         // All libraries
         NodeList nodes = element.getElementsByTagName(KEY_ELEM_TOOL);
         for (int i = 0; i < nodes.getLength(); i++) {
@@ -113,6 +122,7 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
         }
 
         for(AnalyseAssembliesArgs.ToolArgs requestedService : this.tools) {
+            requestedService.setCacheDir(this.cacheDir);
             AssemblyAnalyser aa = this.assemblyAnalyserFactory.create(requestedService.getName());
             aa.setArgs(requestedService);
             this.assemblyAnalysers.add(aa);
@@ -191,6 +201,17 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
         this.jobPrefix = jobPrefix;
     }
 
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(File cacheDir) {
+        this.cacheDir = cacheDir;
+        for(ToolArgs tool : this.tools) {
+            tool.setCacheDir(cacheDir);
+        }
+    }
+
     @Override
     protected void setOptionFromMapEntry(ConanParameter param, String value) {
         //To change body of implemented methods use File | Settings | File Templates.
@@ -223,6 +244,10 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
         private static final String KEY_ATTR_THREADS = "threads";
         private static final String KEY_ATTR_MEMORY = "memory";
         private static final String KEY_ATTR_PARALLEL = "parallel";
+        private static final String KEY_ATTR_SHARD_SIZE = "shard_size";
+        private static final String KEY_ATTR_MAX_JOBS = "max_jobs";
+        private static final String KEY_ATTR_MERGE_READS = "merge_reads";
+        private static final String KEY_ATTR_COMP_BATCH_SIZE = "comp_batch_size";
 
 
         // **** Default values ****
@@ -230,6 +255,10 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
         public static final int DEFAULT_THREADS = 1;
         public static final int DEFAULT_MEMORY = 0;
         public static final boolean DEFAULT_RUN_PARALLEL = false;
+        public static final int DEFAULT_SHARD_SIZE = 50;
+        public static final int DEFAULT_MAX_JOBS = 0;
+        public static final boolean DEFAULT_MERGE_READS = false;
+        public static final int DEFAULT_COMP_BATCH_SIZE = 1;
 
 
         // **** Class vars ****
@@ -238,19 +267,29 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
         private int threads;
         private int memory;
         private boolean runParallel;
+        private int shardSize;
+        private int maxJobs;
+        private boolean mergeReads;
+        private int compBatchSize;
         private String jobPrefix;
         private Organism organism;
         private File outputDir;
         private File readsAnalysisDir;
+        private File cacheDir;
 
         public ToolArgs() {
             this.name = "";
             this.threads = DEFAULT_THREADS;
             this.memory = DEFAULT_MEMORY;
             this.runParallel = DEFAULT_RUN_PARALLEL;
+            this.shardSize = DEFAULT_SHARD_SIZE;
+            this.maxJobs = DEFAULT_MAX_JOBS;
+            this.mergeReads = DEFAULT_MERGE_READS;
+            this.compBatchSize = DEFAULT_COMP_BATCH_SIZE;
             this.jobPrefix = "analyse_mass_tool";
             this.outputDir = null;
             this.readsAnalysisDir = null;
+            this.cacheDir = null;
         }
 
 
@@ -269,7 +308,11 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
                     new String[] {
                             KEY_ATTR_THREADS,
                             KEY_ATTR_MEMORY,
-                            KEY_ATTR_PARALLEL
+                            KEY_ATTR_PARALLEL,
+                            KEY_ATTR_SHARD_SIZE,
+                            KEY_ATTR_MAX_JOBS,
+                            KEY_ATTR_MERGE_READS,
+                            KEY_ATTR_COMP_BATCH_SIZE
                     },
                     new String[0],
                     new String[0])) {
@@ -291,6 +334,10 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
             this.memory = ele.hasAttribute(KEY_ATTR_MEMORY) ? XmlHelper.getIntValue(ele, KEY_ATTR_MEMORY) : DEFAULT_MEMORY;
             this.runParallel = forceParallel ||
                     (ele.hasAttribute(KEY_ATTR_PARALLEL) ? XmlHelper.getBooleanValue(ele, KEY_ATTR_PARALLEL) : DEFAULT_RUN_PARALLEL);
+            this.shardSize = ele.hasAttribute(KEY_ATTR_SHARD_SIZE) ? XmlHelper.getIntValue(ele, KEY_ATTR_SHARD_SIZE) : DEFAULT_SHARD_SIZE;
+            this.maxJobs = ele.hasAttribute(KEY_ATTR_MAX_JOBS) ? XmlHelper.getIntValue(ele, KEY_ATTR_MAX_JOBS) : DEFAULT_MAX_JOBS;
+            this.mergeReads = ele.hasAttribute(KEY_ATTR_MERGE_READS) ? XmlHelper.getBooleanValue(ele, KEY_ATTR_MERGE_READS) : DEFAULT_MERGE_READS;
+            this.compBatchSize = ele.hasAttribute(KEY_ATTR_COMP_BATCH_SIZE) ? XmlHelper.getIntValue(ele, KEY_ATTR_COMP_BATCH_SIZE) : DEFAULT_COMP_BATCH_SIZE;
 
             this.jobPrefix = jobPrefix;
             this.organism = organism;
@@ -330,6 +377,54 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
             this.runParallel = runParallel;
         }
 
+        /**
+         * @return The maximum number of assemblies an analyser should process in a single job, for analysers that
+         * process several assemblies per job.  0 or less means all assemblies are processed in one job.
+         */
+        public int getShardSize() {
+            return shardSize;
+        }
+
+        public void setShardSize(int shardSize) {
+            this.shardSize = shardSize;
+        }
+
+        /**
+         * @return The maximum number of jobs an analyser should have running at once.  0 or less means no limit other
+         * than the cores and memory available when running locally.
+         */
+        public int getMaxJobs() {
+            return maxJobs;
+        }
+
+        public void setMaxJobs(int maxJobs) {
+            this.maxJobs = maxJobs;
+        }
+
+        /**
+         * @return Whether assemblies should be compared against a single merged read hash for each ECQ group, rather
+         * than against the hash of every library.  Only used by KAT.
+         */
+        public boolean isMergeReads() {
+            return mergeReads;
+        }
+
+        public void setMergeReads(boolean mergeReads) {
+            this.mergeReads = mergeReads;
+        }
+
+        /**
+         * @return The number of assemblies compared against a read hash, one after another, in a single job.  0 or less
+         * means all assemblies are compared in one job per read hash.  Only used by KAT.
+         */
+        public int getCompBatchSize() {
+            return compBatchSize;
+        }
+
+        public void setCompBatchSize(int compBatchSize) {
+            this.compBatchSize = compBatchSize;
+        }
+
         public String getJobPrefix() {
             return jobPrefix;
         }
@@ -361,5 +456,16 @@ public abstract class AnalyseAssembliesArgs extends AbstractProcessArgs implemen
         public void setReadsAnalysisDir(File readsAnalysisDir) {
             this.readsAnalysisDir = readsAnalysisDir;
         }
+
+        /**
+         * @return The directory in which to cache analysis results, or null if results should not be cached
+         */
+        public File getCacheDir() {
+            return cacheDir;
+        }
+
+        public void setCacheDir(File cacheDir) {
+            this.cacheDir = cacheDir;
+        }
     }
 }
@@ -58,6 +58,11 @@ public class AnalyseMassAssemblies extends AbstractConanProcess {
 
     private static Logger log = LoggerFactory.getLogger(AnalyseMassAssemblies.class);
 
+    public static final String UNITIGS = "unitigs";
+    public static final String CONTIGS = "contigs";
+    public static final String SCAFFOLDS = "scaffolds";
+    public static final String LONGEST = "longest";
+
 
     public AnalyseMassAssemblies() {
         this(null);
@@ -192,10 +197,10 @@ public class AnalyseMassAssemblies extends AbstractConanProcess {
             }
 
             // Make symbolic links for easy access
-            File unitigsDir = new File(args.getAssembliesDir(), "unitigs");
-            File contigsDir = new File(args.getAssembliesDir(), "contigs");
-            File scaffoldsDir = new File(args.getAssembliesDir(), "scaffolds");
-            File bestDir = new File(args.getAssembliesDir(), "longest");
+            File unitigsDir = new File(args.getAssembliesDir(), UNITIGS);
+            File contigsDir = new File(args.getAssembliesDir(), CONTIGS);
+            File scaffoldsDir = new File(args.getAssembliesDir(), SCAFFOLDS);
+            File bestDir = new File(args.getAssembliesDir(), LONGEST);
             File bubblesDir = new File(args.getAssembliesDir(), "bubbles");
 
             this.makeLinks(unitigAssemblies, unitigsDir);
@@ -207,6 +212,20 @@ public class AnalyseMassAssemblies extends AbstractConanProcess {
             // Write out linkage file
             FileUtils.writeLines(args.getAssemblyLinkageFile(), mappings);
 
+            // Fingerprint every candidate assembly so that each distinct file is only analysed once per level
+            Map<String, List<File>> levels = new LinkedHashMap<>();
+            levels.put(LONGEST, bestAssemblies);
+            levels.put(SCAFFOLDS, scaffoldAssemblies);
+            levels.put(CONTIGS, contigAssemblies);
+            levels.put(UNITIGS, unitigAssemblies);
+
+            Map<String, List<File>> uniqueLevels = AssemblyFingerprints.distinctByLevel(levels, LONGEST, args.getFingerprintsFile());
+
+            List<File> uniqueBestAssemblies = uniqueLevels.get(LONGEST);
+            List<File> uniqueScaffoldAssemblies = uniqueLevels.get(SCAFFOLDS);
+            List<File> uniqueContigAssemblies = uniqueLevels.get(CONTIGS);
+            List<File> uniqueUnitigAssemblies = uniqueLevels.get(UNITIGS);
+
             for(AssemblyAnalyser analyser : requestedServices) {
 
                 File outputDir = new File(args.getOutputDir(), analyser.getName().toLowerCase());
@@ -215,38 +234,38 @@ public class AnalyseMassAssemblies extends AbstractConanProcess {
                 // Run analysis for each assembly grouping if fast.  Otherwise just do the highest order assemblies.
                 if (analyser.isFast()) {
 
-                    if (!unitigAssemblies.isEmpty()) {
+                    if (!uniqueUnitigAssemblies.isEmpty()) {
                         jobResults.addAll(analyser.execute(
-                                unitigAssemblies,
-                                new File(outputDir, "unitigs"),
+                                uniqueUnitigAssemblies,
+                                new File(outputDir, UNITIGS),
                                 jobPrefix + "-unitigs",
                                 this.conanExecutorService
                         ));
                     }
 
-                    if (!contigAssemblies.isEmpty()) {
+                    if (!uniqueContigAssemblies.isEmpty()) {
                         jobResults.addAll(analyser.execute(
-                                contigAssemblies,
-                                new File(outputDir, "contigs"),
+                                uniqueContigAssemblies,
+                                new File(outputDir, CONTIGS),
                                 jobPrefix + "-contigs",
                                 this.conanExecutorService
                         ));
                     }
 
-                    if (!scaffoldAssemblies.isEmpty()) {
+                    if (!uniqueScaffoldAssemblies.isEmpty()) {
                         jobResults.addAll(analyser.execute(
-                                scaffoldAssemblies,
-                                new File(outputDir, "scaffolds"),
+                                uniqueScaffoldAssemblies,
+                                new File(outputDir, SCAFFOLDS),
                                 jobPrefix + "-scaffolds",
                                 this.conanExecutorService
                         ));
                     }
                 }
 
-                File bestOutDir = analyser.isFast() ? new File(outputDir, "longest") : outputDir;
+                File bestOutDir = analyser.isFast() ? new File(outputDir, LONGEST) : outputDir;
 
                 jobResults.addAll(analyser.execute(
-                        bestAssemblies,
+                        uniqueBestAssemblies,
                         bestOutDir,
                         jobPrefix,
                         this.conanExecutorService
@@ -352,6 +371,10 @@ public class AnalyseMassAssemblies extends AbstractConanProcess {
             return new File(this.getOutputDir(), "assembly_linkage.txt");
         }
 
+        public File getFingerprintsFile() {
+            return new File(this.getOutputDir(), AssemblyFingerprints.FILE_NAME);
+        }
+
         public File getMassDir() {
             return massDir;
         }
@@ -0,0 +1,241 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+import uk.ac.tgac.rampart.util.seq.XxHash64;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Tracks the content fingerprint of each candidate assembly, so that files with identical content are only analysed
+ * once.  The first file registered with a given fingerprint becomes the canonical copy that gets analysed, and any
+ * later file with the same fingerprint is recorded as a duplicate of it.  After the analysers' reports have been read,
+ * {@link #fanOut(AssemblyStatsTable)} copies each canonical assembly's metrics to its duplicates.  Files at different
+ * levels, such as contigs and scaffolds, should be tracked separately, see {@link #distinctByLevel}.
+ *
+ * A fingerprint is the file length plus the xxHash64 of the file's contents.
+ */
+public class AssemblyFingerprints {
+
+    private static Logger log = LoggerFactory.getLogger(AssemblyFingerprints.class);
+
+    public static final String FILE_NAME = "assembly_fingerprints.txt";
+
+    // File path, size and modification time to fingerprint, for every file fingerprinted in this JVM
+    private static final Map<String, String> KNOWN = new HashMap<>();
+
+    // Fingerprint to canonical file, in registration order
+    private Map<String, File> canonical;
+
+    // Every registered file, in registration order, to its fingerprint
+    private Map<File, String> fingerprints;
+
+    public AssemblyFingerprints() {
+        this.canonical = new LinkedHashMap<>();
+        this.fingerprints = new LinkedHashMap<>();
+    }
+
+    /**
+     * Creates a fingerprint from the file's length and contents.  Fingerprints are remembered for as long as the
+     * file's path, size and modification time are unchanged, so each file is only read once.
+     * @param file The file to fingerprint
+     * @return The fingerprint as a hex string
+     * @throws IOException Thrown if the file could not be read
+     */
+    public static String fingerprint(File file) throws IOException {
+
+        File target = file.getCanonicalFile();
+        String fileKey = target.getPath() + "\t" + target.length() + "\t" + target.lastModified();
+
+        synchronized (KNOWN) {
+            String fp = KNOWN.get(fileKey);
+            if (fp != null) {
+                return fp;
+            }
+        }
+
+        String fp = String.format("%016x-%x", XxHash64.hash(target), target.length());
+
+        synchronized (KNOWN) {
+            KNOWN.put(fileKey, fp);
+        }
+
+        return fp;
+    }
+
+    /**
+     * Registers the given files and returns those whose content has not been seen before, in their original order.
+     * Register the files whose results are actually used first, so that they become the canonical copies.
+     * @param files The files to register
+     * @return The files that need analysing
+     * @throws IOException Thrown if a file could not be read
+     */
+    public List<File> addAll(List<File> files) throws IOException {
+
+        List<File> unique = new ArrayList<>();
+
+        for(File file : files) {
+
+            String fp = fingerprint(file);
+
+            this.fingerprints.put(file, fp);
+
+            if (!this.canonical.containsKey(fp)) {
+                this.canonical.put(fp, file);
+                unique.add(file);
+            }
+            else {
+                log.info("Assembly " + file.getName() + " is identical to " + this.canonical.get(fp).getName() + "; it will not be analysed separately");
+            }
+        }
+
+        return unique;
+    }
+
+    /**
+     * Finds the distinct assemblies at each level, such as unitigs, contigs and scaffolds.  Each level gets its own
+     * report, so assemblies are only compared with others at the same level; an assembly identical to one at another
+     * level, as the longest assembly always is, must still be analysed at its own level.
+     * @param levels The candidate assemblies at each level
+     * @param savedLevel The level whose fingerprints are saved, which should be the level used for selection
+     * @param outputFile The file to save that level's fingerprints to
+     * @return The distinct assemblies at each level, in their original order
+     * @throws IOException Thrown if an assembly could not be read or the fingerprints could not be saved
+     */
+    public static Map<String, List<File>> distinctByLevel(Map<String, List<File>> levels, String savedLevel, File outputFile)
+            throws IOException {
+
+        Map<String, List<File>> unique = new LinkedHashMap<>();
+
+        for (Map.Entry<String, List<File>> level : levels.entrySet()) {
+
+            AssemblyFingerprints fingerprints = new AssemblyFingerprints();
+            unique.put(level.getKey(), fingerprints.addAll(level.getValue()));
+
+            log.info("Found " + fingerprints.getNbUnique() + " distinct " + level.getKey() + " assemblies out of " +
+                    fingerprints.getNbFiles() + " candidate files");
+
+            if (level.getKey().equals(savedLevel)) {
+                fingerprints.save(outputFile);
+                log.info("Fingerprints of the " + savedLevel + " assemblies saved to: " + outputFile.getAbsolutePath());
+            }
+        }
+
+        return unique;
+    }
+
+    public File getCanonical(File file) {
+        String fp = this.fingerprints.get(file);
+        return fp == null ? null : this.canonical.get(fp);
+    }
+
+    public int getNbFiles() {
+        return this.fingerprints.size();
+    }
+
+    public int getNbUnique() {
+        return this.canonical.size();
+    }
+
+    /**
+     * Copies the analysed metrics from each canonical assembly to every duplicate assembly that has a row in the
+     * table.  Rows are matched on file name without the extension, as the analysers do.
+     * @param table The table to update
+     * @return The number of rows updated
+     * @throws IOException Thrown if there was a problem looking up rows
+     */
+    public int fanOut(AssemblyStatsTable table) throws IOException {
+
+        int updated = 0;
+
+        for(Map.Entry<File, String> entry : this.fingerprints.entrySet()) {
+
+            File file = entry.getKey();
+            File canon = this.canonical.get(entry.getValue());
+
+            if (canon.equals(file)) {
+                continue;
+            }
+
+            AssemblyStats from = table.findStatsByFilename(FilenameUtils.getBaseName(canon.getName()));
+            AssemblyStats to = table.findStatsByFilename(FilenameUtils.getBaseName(file.getName()));
+
+            if (from != null && to != null && from != to) {
+                table.copyMetrics(from, to);
+                updated++;
+            }
+        }
+
+        return updated;
+    }
+
+    /**
+     * Saves the fingerprints as tab separated lines of: fingerprint, file path, canonical file path
+     * @param outputFile The file to save to
+     * @throws IOException Thrown if the file could not be written
+     */
+    public void save(File outputFile) throws IOException {
+
+        List<String> lines = new ArrayList<>();
+
+        for(Map.Entry<File, String> entry : this.fingerprints.entrySet()) {
+            lines.add(entry.getValue() + "\t" + entry.getKey().getAbsolutePath() + "\t" +
+                    this.canonical.get(entry.getValue()).getAbsolutePath());
+        }
+
+        FileUtils.writeLines(outputFile, lines);
+    }
+
+    public static AssemblyFingerprints load(File inputFile) throws IOException {
+
+        AssemblyFingerprints fingerprints = new AssemblyFingerprints();
+
+        for(String line : FileUtils.readLines(inputFile)) {
+
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] parts = line.split("\t");
+
+            if (parts.length != 3) {
+                throw new IOException("Malformed line in assembly fingerprints file " + inputFile.getAbsolutePath() + ": " + line);
+            }
+
+            File file = new File(parts[1]);
+            File canon = new File(parts[2]);
+
+            fingerprints.fingerprints.put(file, parts[0]);
+
+            if (!fingerprints.canonical.containsKey(parts[0])) {
+                fingerprints.canonical.put(parts[0], canon);
+            }
+        }
+
+        return fingerprints;
+    }
+}
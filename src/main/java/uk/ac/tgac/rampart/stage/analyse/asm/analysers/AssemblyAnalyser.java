@@ -30,6 +30,7 @@ import uk.ac.tgac.rampart.util.Service;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Created with IntelliJ IDEA.
@@ -77,6 +78,17 @@ public interface AssemblyAnalyser extends Service {
     void updateTable(AssemblyStatsTable table, File reportDir)
             throws IOException;
 
+    /**
+     * Finds the reports from this analysis and creates a reader for each of them.  Readers only parse reports, they
+     * don't touch the stats table, so they can be run concurrently.  The updates they return are then applied to the
+     * table in order.  See {@link ReportIngester}.
+     * @param reportDir The location in which reports from this analysis might be located
+     * @return A reader for each report found, which may be empty
+     * @throws IOException Thrown if there were issues finding the reports
+     */
+    List<Callable<TableUpdate>> createReportReaders(File reportDir)
+            throws IOException;
+
     /**
      * If this assembly analysis runs quickly, then we might do more work with it.
      * @return True if this process runs quickly, false if not.
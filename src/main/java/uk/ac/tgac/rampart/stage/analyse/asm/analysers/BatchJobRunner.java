@@ -0,0 +1,284 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.model.ConanProcess;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.model.context.ExitStatus;
+import uk.ac.ebi.fgpt.conan.service.ConanExecutorService;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs a batch of independent analysis jobs concurrently and waits for all of them to finish.  When using a scheduler
+ * every job is submitted straight away and then collected by a single wait job.  When running locally the jobs are run
+ * from a small pool of threads, sized so the jobs don't ask for more cores or memory than the machine has.
+ *
+ * The number of jobs in flight can also be limited with {@link #setMaxJobs(int)}.  With a scheduler, every job is
+ * still submitted straight away, but each job depends on the job submitted that many places before it, so the jobs
+ * run in that many chains and a single wait job still collects the whole batch.
+ *
+ * All jobs in a batch must have names starting with the batch's job prefix, so the scheduler wait can find them.
+ */
+public class BatchJobRunner {
+
+    private static Logger log = LoggerFactory.getLogger(BatchJobRunner.class);
+
+    private final ConanExecutorService ces;
+    private final String jobPrefix;
+    private final int threads;
+    private final int memory;
+    private final List<Job> jobs;
+    private int maxJobs;
+
+    /**
+     * Creates a runner for a batch of jobs that each need the same resources
+     * @param ces The executor service to run jobs with
+     * @param jobPrefix The prefix of every job name in this batch
+     * @param threads The number of threads each job uses
+     * @param memory The amount of memory in MB each job needs
+     */
+    public BatchJobRunner(ConanExecutorService ces, String jobPrefix, int threads, int memory) {
+        this.ces = ces;
+        this.jobPrefix = jobPrefix;
+        this.threads = threads;
+        this.memory = memory;
+        this.jobs = new ArrayList<>();
+        this.maxJobs = 0;
+    }
+
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    /**
+     * Limits the number of jobs that may be running at once
+     * @param maxJobs The maximum number of jobs in flight.  0 or less means no limit.
+     */
+    public void setMaxJobs(int maxJobs) {
+        this.maxJobs = maxJobs;
+    }
+
+    /**
+     * Adds a job to the batch
+     * @param process The process to run
+     * @param dir The directory to run the process in
+     * @param jobName The name of the job, which must start with this batch's job prefix
+     */
+    public void add(ConanProcess process, File dir, String jobName) {
+
+        if (!jobName.startsWith(this.jobPrefix)) {
+            throw new IllegalArgumentException("Job name " + jobName + " does not start with batch prefix " + this.jobPrefix);
+        }
+
+        this.jobs.add(new Job(process, dir, jobName));
+    }
+
+    public int size() {
+        return this.jobs.size();
+    }
+
+    /**
+     * Works out how many jobs can run at once on this machine without asking for more cores or memory than it has
+     * @param threads The number of threads each job uses
+     * @param memory The memory in MB each job needs, or 0 if not known
+     * @param nbJobs The number of jobs to run
+     * @return The number of jobs to run at once, at least 1
+     */
+    public static int localSlots(int threads, int memory, int nbJobs) {
+
+        int slots = Math.min(nbJobs, Runtime.getRuntime().availableProcessors() / Math.max(1, threads));
+
+        long physicalMemory = physicalMemoryMB();
+        if (memory > 0 && physicalMemory > 0) {
+            slots = (int) Math.min(slots, physicalMemory / memory);
+        }
+
+        return Math.max(1, slots);
+    }
+
+    /**
+     * @return The total physical memory of this machine in MB, or 0 if the JVM can't tell us
+     */
+    private static long physicalMemoryMB() {
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() / (1024L * 1024L);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Runs every job in the batch and waits for them all to finish.  The batch is emptied afterwards.
+     * @param waitDir The directory in which to run the scheduler's wait job
+     * @return The result of each job, in the order the jobs were added
+     * @throws ProcessExecutionException Thrown if a job could not be run
+     * @throws InterruptedException Thrown if interrupted while waiting for the jobs
+     */
+    public List<ExecutionResult> run(File waitDir) throws ProcessExecutionException, InterruptedException {
+
+        List<ExecutionResult> results = new ArrayList<>();
+
+        if (this.jobs.isEmpty()) {
+            return results;
+        }
+
+        if (this.ces.usingScheduler()) {
+
+            for(int i = 0; i < this.jobs.size(); i++) {
+
+                Job job = this.jobs.get(i);
+
+                List<Integer> dependencies = new ArrayList<>();
+                int dependency = waitFor(i, this.maxJobs);
+                if (dependency >= 0) {
+                    dependencies.add(results.get(dependency).getJobId());
+                }
+
+                results.add(this.ces.executeProcess(job.process, job.dir, job.name, this.threads, this.memory, true,
+                        dependencies, false));
+            }
+
+            log.debug("Submitted " + this.jobs.size() + " jobs with prefix " + this.jobPrefix +
+                    (this.maxJobs > 0 ? ", at most " + this.maxJobs + " running at once" : "") + ", waiting for completion");
+
+            this.ces.executeScheduledWait(
+                    results,
+                    this.jobPrefix + "*",
+                    ExitStatus.Type.COMPLETED_ANY,
+                    this.jobPrefix + "-wait",
+                    waitDir);
+        }
+        else {
+            int slots = localSlots(this.threads, this.memory, this.jobs.size());
+            results.addAll(this.runLocal(this.maxJobs > 0 ? Math.min(slots, this.maxJobs) : slots));
+        }
+
+        this.jobs.clear();
+
+        return results;
+    }
+
+    private List<ExecutionResult> runLocal(int slots) throws ProcessExecutionException, InterruptedException {
+
+        List<ExecutionResult> results = new ArrayList<>();
+
+        if (slots == 1) {
+            for(Job job : this.jobs) {
+                results.add(this.ces.executeProcess(job.process, job.dir, job.name, this.threads, this.memory, false));
+            }
+            return results;
+        }
+
+        log.debug("Running " + this.jobs.size() + " jobs with prefix " + this.jobPrefix + ", " + slots + " at a time");
+
+        ExecutorService pool = Executors.newFixedThreadPool(slots);
+
+        try {
+            List<Future<ExecutionResult>> futures = new ArrayList<>();
+
+            for(final Job job : this.jobs) {
+                futures.add(pool.submit(new Callable<ExecutionResult>() {
+                    @Override
+                    public ExecutionResult call() throws Exception {
+                        return ces.executeProcess(job.process, job.dir, job.name, threads, memory, false);
+                    }
+                }));
+            }
+
+            for(Future<ExecutionResult> future : futures) {
+                try {
+                    results.add(future.get());
+                }
+                catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof ProcessExecutionException) {
+                        throw (ProcessExecutionException) cause;
+                    }
+                    else if (cause instanceof InterruptedException) {
+                        throw (InterruptedException) cause;
+                    }
+                    throw new ProcessExecutionException(-1, e);
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Works out which earlier job a job must wait for, so that no more than the given number of jobs run at once
+     * @param index The position of the job in the batch
+     * @param maxJobs The maximum number of jobs in flight.  0 or less means no limit.
+     * @return The position of the job to wait for, or -1 if the job can start straight away
+     */
+    public static int waitFor(int index, int maxJobs) {
+        return maxJobs > 0 && index >= maxJobs ? index - maxJobs : -1;
+    }
+
+    /**
+     * Splits a list into consecutive sublists of at most the given size
+     * @param items The items to split
+     * @param size The maximum size of each sublist.  If 0 or less, all the items are put into one sublist.
+     * @param <T> The type of item
+     * @return The sublists, in order
+     */
+    public static <T> List<List<T>> partition(List<T> items, int size) {
+
+        List<List<T>> parts = new ArrayList<>();
+
+        if (size <= 0 || items.size() <= size) {
+            parts.add(new ArrayList<>(items));
+            return parts;
+        }
+
+        for(int i = 0; i < items.size(); i += size) {
+            parts.add(new ArrayList<>(items.subList(i, Math.min(items.size(), i + size))));
+        }
+
+        return parts;
+    }
+
+    private static class Job {
+
+        private final ConanProcess process;
+        private final File dir;
+        private final String name;
+
+        private Job(ConanProcess process, File dir, String name) {
+            this.process = process;
+            this.dir = dir;
+            this.name = name;
+        }
+    }
+}
@@ -30,14 +30,20 @@ import uk.ac.ebi.fgpt.conan.service.exception.ConanParameterException;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 import uk.ac.tgac.conan.process.asm.stats.CegmaV24;
 import uk.ac.tgac.rampart.stage.analyse.asm.AnalyseAssembliesArgs;
+import uk.ac.tgac.rampart.stage.analyse.asm.AssemblyFingerprints;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+import uk.ac.tgac.rampart.stage.util.AnalysisCache;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Created with IntelliJ IDEA.
@@ -55,6 +61,11 @@ public class CegmaAsmAnalyser extends AbstractConanProcess implements AssemblyAn
 
     public static final String CEGMA_DIR_NAME = "cegma";
 
+    // Identifies the tool version in analysis cache keys
+    private static final String CACHE_VERSION = "cegma-2.4";
+    // Reports are named after the assembly, so they are cached under a fixed name and renamed on the way out
+    public static final String CACHED_REPORT_NAME = "cegma.completeness_report";
+
     @Override
     public boolean isOperational(ExecutionContext executionContext) {
         return new CegmaV24(this.conanExecutorService).isOperational(executionContext);
@@ -72,6 +83,18 @@ public class CegmaAsmAnalyser extends AbstractConanProcess implements AssemblyAn
         }
         outputDir.mkdirs();
 
+        // Each assembly is cached separately, so adding assemblies to a rerun only runs CEGMA on the new ones
+        AnalysisCache cache = args.getCacheDir() != null ? new AnalysisCache(args.getCacheDir()) : null;
+
+        // CEGMA runs are independent, so they are all submitted together, up to the configured limit on jobs in
+        // flight, and collected with a single wait
+        BatchJobRunner runner = new BatchJobRunner(ces, jobPrefix, args.getThreads(), args.getMemory());
+        runner.setMaxJobs(args.getMaxJobs());
+
+        List<File> pendingAssemblies = new ArrayList<>();
+        List<CegmaV24> pendingProcs = new ArrayList<>();
+        List<String> pendingKeys = new ArrayList<>();
+
         int i = 1;
         for(File f : assemblies) {
 
@@ -83,16 +106,41 @@ public class CegmaAsmAnalyser extends AbstractConanProcess implements AssemblyAn
             }
             cegOutputDir.mkdirs();
 
+            String cacheKey = null;
+            if (cache != null) {
+
+                cacheKey = AnalysisCache.createKey(this.getName(), CACHE_VERSION,
+                        new ArrayList<String>(), Arrays.asList(AssemblyFingerprints.fingerprint(f)));
+
+                File reportFile = restoreReport(cache, cacheKey, f, cegOutputDir);
+                if (reportFile != null) {
+                    // Link the report in the same way as for a fresh run
+                    ces.getConanProcessService().createLocalSymbolicLink(reportFile, new File(cegOutputDir, f.getName() + ".cegma"));
+                    log.info("Using cached CEGMA results for: " + f.getName());
+                    continue;
+                }
+            }
+
             CegmaV24 cegmaProc = this.makeCegmaProcess(f, cegOutputDir, args.getThreads());
-            ExecutionResult result = ces.executeProcess(
-                    cegmaProc,
-                    cegOutputDir,
-                    cegmaJobName,
-                    args.getThreads(),
-                    args.getMemory(),
-                    false);
+            runner.add(cegmaProc, cegOutputDir, cegmaJobName);
 
-            jobResults.add(result);
+            pendingAssemblies.add(f);
+            pendingProcs.add(cegmaProc);
+            pendingKeys.add(cacheKey);
+        }
+
+        if (runner.size() > 0) {
+            log.info("Running CEGMA on " + runner.size() + " assemblies" +
+                    (args.getMaxJobs() > 0 ? ", at most " + args.getMaxJobs() + " at a time" : ""));
+        }
+
+        jobResults.addAll(runner.run(outputDir));
+
+        for(int j = 0; j < pendingAssemblies.size(); j++) {
+
+            File f = pendingAssemblies.get(j);
+            CegmaV24 cegmaProc = pendingProcs.get(j);
+            File cegOutputDir = new File(outputDir, f.getName().substring(0, f.getName().length() - 3));
 
             // Create symbolic links to completeness_reports
             File sourceFile = new File(((CegmaV24.Args)cegmaProc.getProcessArgs()).getOutputPrefix().getAbsolutePath() +
@@ -101,6 +149,10 @@ public class CegmaAsmAnalyser extends AbstractConanProcess implements AssemblyAn
             File destFile = new File(cegOutputDir, f.getName() + ".cegma");
 
             ces.getConanProcessService().createLocalSymbolicLink(sourceFile, destFile);
+
+            if (cache != null && sourceFile.exists()) {
+                publishReport(cache, pendingKeys.get(j), sourceFile, outputDir);
+            }
         }
 
         return jobResults;
@@ -113,23 +165,81 @@ public class CegmaAsmAnalyser extends AbstractConanProcess implements AssemblyAn
 
     @Override
     public void updateTable(AssemblyStatsTable table, File reportDir) throws IOException {
+        ReportIngester.ingest(table, this, reportDir);
+    }
+
+    @Override
+    public List<Callable<TableUpdate>> createReportReaders(File reportDir) throws IOException {
 
         log.info("Extracting stats from CEGMA runs stored in: " + reportDir.getCanonicalPath());
 
-        Collection<File> cegmaFiles = FileUtils.listFiles(reportDir, new String[]{"completeness_report"}, true);
+        List<Callable<TableUpdate>> readers = new ArrayList<>();
 
-        for(File cf : cegmaFiles) {
+        // Each assembly is analysed in its own directory, with the completeness report at the top level.  Only list
+        // those directories rather than walking everything CEGMA leaves behind.
+        File[] asmDirs = reportDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory();
+            }
+        });
 
-            String asmName = cf.getName().substring(0, cf.getName().length() - 23);
+        if (asmDirs == null) {
+            log.warn("Could not find CEGMA output directory at: " + reportDir.getCanonicalPath());
+            return readers;
+        }
+
+        for (final File asmDir : asmDirs) {
+
+            readers.add(new Callable<TableUpdate>() {
+                @Override
+                public TableUpdate call() throws IOException {
+
+                    File[] reports = asmDir.listFiles(new FilenameFilter() {
+                        @Override
+                        public boolean accept(File dir, String name) {
+                            return name.endsWith(".completeness_report");
+                        }
+                    });
+
+                    final Collection<File> cegmaFiles = reports != null && reports.length > 0 ?
+                            Arrays.asList(reports) :
+                            FileUtils.listFiles(asmDir, new String[]{"completeness_report"}, true);
+
+                    final List<String> asmNames = new ArrayList<>();
+                    final List<Double> completeness = new ArrayList<>();
+
+                    for (File cf : cegmaFiles) {
+
+                        String asmName = cf.getName().substring(0, cf.getName().length() - 23);
+
+                        log.info("Extracting CEGMA report from: " + cf.getCanonicalPath() + "; using assembly name: " + asmName);
+
+                        asmNames.add(asmName);
+                        completeness.add(new CegmaV24.Report(cf).getPcComplete());
+                    }
 
-            log.info("Extracting CEGMA report from: " + cf.getCanonicalPath() + "; using assembly name: " + asmName);
+                    return new TableUpdate() {
+                        @Override
+                        public void apply(AssemblyStatsTable table) throws IOException {
 
-            AssemblyStats stats = table.findStatsByFilename(asmName);
+                            for (int i = 0; i < asmNames.size(); i++) {
 
-            CegmaV24.Report cegmaReport = new CegmaV24.Report(cf);
+                                AssemblyStats stats = table.findStatsByFilename(asmNames.get(i));
 
-            stats.getConservation().setCegComplete(cegmaReport.getPcComplete());
+                                if (stats == null) {
+                                    throw new IOException("Couldn't find assembly stats entry for " + asmNames.get(i));
+                                }
+
+                                stats.getConservation().setCegComplete(completeness.get(i));
+                            }
+                        }
+                    };
+                }
+            });
         }
+
+        return readers;
     }
 
     @Override
@@ -147,6 +257,48 @@ public class CegmaAsmAnalyser extends AbstractConanProcess implements AssemblyAn
         return "CEGMA";
     }
 
+    /**
+     * Adds a CEGMA completeness report to the analysis cache under {@link #CACHED_REPORT_NAME}
+     * @param cache The analysis cache
+     * @param key The cache key for the assembly the report is for
+     * @param report The completeness report
+     * @param workDir A directory in which to stage the renamed report.  Must not be the report's own directory.
+     * @throws IOException Thrown if the report could not be cached
+     */
+    public static void publishReport(AnalysisCache cache, String key, File report, File workDir) throws IOException {
+
+        File toCache = new File(workDir, CACHED_REPORT_NAME);
+        FileUtils.copyFile(report, toCache);
+        try {
+            cache.publish(key, Arrays.asList(toCache));
+        }
+        finally {
+            FileUtils.deleteQuietly(toCache);
+        }
+    }
+
+    /**
+     * Restores a cached CEGMA completeness report, giving it the name CEGMA would have given it for the assembly
+     * @param cache The analysis cache
+     * @param key The cache key for the assembly
+     * @param assembly The assembly the report is for
+     * @param outputDir The CEGMA output directory for the assembly
+     * @return The restored report, or null if there is no cached report for the assembly
+     * @throws IOException Thrown if the report could not be restored
+     */
+    public static File restoreReport(AnalysisCache cache, String key, File assembly, File outputDir) throws IOException {
+
+        File cachedReport = new File(outputDir, CACHED_REPORT_NAME);
+
+        if (cache.restore(key, outputDir) == null || !cachedReport.exists()) {
+            return null;
+        }
+
+        File reportFile = new File(outputDir, assembly.getName() + ".completeness_report");
+        FileUtils.moveFile(cachedReport, reportFile);
+        return reportFile;
+    }
+
     protected CegmaV24 makeCegmaProcess(File input, File outputDir, int threads) throws IOException {
 
         // Setup CEGMA
@@ -0,0 +1,357 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.apache.commons.io.FileUtils;
+import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.service.ConanExecutorService;
+import uk.ac.ebi.fgpt.conan.service.exception.ConanParameterException;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+import uk.ac.tgac.rampart.stage.analyse.asm.AnalyseAssembliesArgs;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.*;
+import uk.ac.tgac.rampart.util.seq.FastaRecord;
+import uk.ac.tgac.rampart.util.seq.MappedFastaReader;
+import uk.ac.tgac.rampart.util.seq.SequenceHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Computes contiguity statistics, assembly size, GC% and N% for each assembly in-process, without relying on any
+ * external tools.  Each assembly is streamed once through a memory mapped reader, and assemblies are processed in
+ * parallel using the configured number of threads.  Any threads left over, when there are fewer assemblies than threads,
+ * are used to count the composition of long runs of bases, such as single line scaffolds, in parallel.  This takes
+ * seconds rather than minutes per assembly set, so it can be used to score every unitig, contig and scaffold set.
+ *
+ * To stay comparable with QUAST, N50, L50, max length, GC% and N% only consider sequences of at least
+ * {@link #MIN_SEQ_LENGTH} bases, whereas sequence and base counts consider every sequence.  Where QUAST is also used,
+ * its values for these metrics take precedence, see {@link ReportIngester}.
+ */
+@MetaInfServices(AssemblyAnalyser.class)
+public class ContiguityAsmAnalyser implements AssemblyAnalyser {
+
+    private static Logger log = LoggerFactory.getLogger(ContiguityAsmAnalyser.class);
+
+    public static final String REPORT_NAME = "report.tsv";
+
+    public static final int MIN_SEQ_LENGTH = 500;
+
+    private static final String[] REPORT_HEADER = new String[] {
+            "assembly", "nb_seqs", "nb_seqs_gt_1k", "max_len", "N50", "L50", "nb_bases", "nb_bases_gt_1k", "GC%", "N%"
+    };
+
+    private AnalyseAssembliesArgs.ToolArgs args;
+    private ConanExecutorService conanExecutorService;
+
+    @Override
+    public boolean isOperational(ExecutionContext executionContext) {
+        return true;
+    }
+
+    @Override
+    public List<ExecutionResult> execute(List<File> assemblies, File outputDir, String jobPrefix, ConanExecutorService ces)
+            throws InterruptedException, ProcessExecutionException, ConanParameterException, IOException {
+
+        if (outputDir.exists()) {
+            FileUtils.deleteDirectory(outputDir);
+        }
+        outputDir.mkdirs();
+
+        int totalThreads = Math.max(1, this.args != null ? this.args.getThreads() : 1);
+        int threads = Math.max(1, Math.min(totalThreads, assemblies.size()));
+        final int seqThreads = Math.max(1, totalThreads / threads);
+
+        log.info("Calculating contiguity stats for " + assemblies.size() + " assemblies using " + totalThreads + " threads");
+
+        List<Callable<Stats>> tasks = new ArrayList<>();
+        for (final File assembly : assemblies) {
+            tasks.add(new Callable<Stats>() {
+                @Override
+                public Stats call() throws IOException {
+                    return Stats.calculate(assembly, seqThreads);
+                }
+            });
+        }
+
+        List<String> lines = new ArrayList<>();
+        lines.add(join(REPORT_HEADER));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Stats> result : pool.invokeAll(tasks)) {
+                lines.add(result.get().toTabString());
+            }
+        }
+        catch (ExecutionException e) {
+            throw new IOException("Failed to calculate contiguity stats", e.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+
+        FileUtils.writeLines(new File(outputDir, REPORT_NAME), lines);
+
+        // Everything was done in-process so there are no jobs to report
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void setArgs(AnalyseAssembliesArgs.ToolArgs args) {
+        this.args = args;
+    }
+
+    @Override
+    public void updateTable(AssemblyStatsTable table, File reportDir) throws IOException {
+        ReportIngester.ingest(table, this, reportDir);
+    }
+
+    @Override
+    public List<Callable<TableUpdate>> createReportReaders(File reportDir) throws IOException {
+
+        List<Callable<TableUpdate>> readers = new ArrayList<>();
+
+        final File reportFile = new File(reportDir, REPORT_NAME);
+
+        if (!reportFile.exists()) {
+            log.warn("Could not find contiguity report file at: " + reportFile.getCanonicalPath() + "; Skipping contiguity result integration for this group.");
+            return readers;
+        }
+
+        readers.add(new Callable<TableUpdate>() {
+            @Override
+            public TableUpdate call() throws IOException {
+
+                List<String> lines = FileUtils.readLines(reportFile);
+
+                final List<String> names = new ArrayList<>();
+                final List<long[]> longs = new ArrayList<>();
+                final List<double[]> doubles = new ArrayList<>();
+
+                for (String line : lines.subList(1, lines.size())) {
+
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+
+                    String[] parts = line.split("\t");
+
+                    names.add(parts[0]);
+                    longs.add(new long[] {
+                            Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3]),
+                            Long.parseLong(parts[4]),
+                            Long.parseLong(parts[5]),
+                            Long.parseLong(parts[6]),
+                            Long.parseLong(parts[7])
+                    });
+                    doubles.add(new double[] {
+                            Double.parseDouble(parts[8]),
+                            Double.parseDouble(parts[9])
+                    });
+                }
+
+                return new TableUpdate() {
+                    @Override
+                    public void apply(AssemblyStatsTable table) throws IOException {
+
+                        for (int i = 0; i < names.size(); i++) {
+
+                            AssemblyStats stats = table.findStatsByFilename(names.get(i));
+
+                            if (stats == null) {
+                                throw new IOException("Couldn't find assembly stats entry for " + names.get(i));
+                            }
+
+                            long[] l = longs.get(i);
+                            double[] d = doubles.get(i);
+
+                            ContiguityMetrics contiguity = stats.getContiguity();
+                            contiguity.setNbSeqs(l[0]);
+                            contiguity.setNbSeqsGt1K(l[1]);
+                            contiguity.setMaxLen(l[2]);
+                            contiguity.setN50(l[3]);
+                            contiguity.setL50(l[4]);
+
+                            ConservationMetrics conservation = stats.getConservation();
+                            conservation.setNbBases(l[5]);
+                            conservation.setNbBasesGt1K(l[6]);
+                            conservation.setGcPercentage(d[0]);
+
+                            ProblemMetrics problems = stats.getProblems();
+                            problems.setnPercentage(d[1]);
+                        }
+                    }
+                };
+            }
+        });
+
+        return readers;
+    }
+
+    @Override
+    public boolean isFast() {
+        return true;
+    }
+
+    @Override
+    public void setConanExecutorService(ConanExecutorService ces) {
+        this.conanExecutorService = ces;
+    }
+
+    @Override
+    public String getName() {
+        return "CONTIGUITY";
+    }
+
+    private static String join(Object[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append("\t");
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Statistics for a single assembly, gathered in one pass over the file
+     */
+    protected static class Stats {
+
+        private String name;
+
+        private long nbSeqs;
+        private long nbSeqsGt1K;
+        private long nbBases;
+        private long nbBasesGt1K;
+        private long maxLen;
+        private long n50;
+        private long l50;
+        private double gcPercentage;
+        private double nPercentage;
+
+        // Composition of the current sequence, then of all sequences that pass the length filter
+        private NucleotideComposition seqComposition = new NucleotideComposition();
+        private NucleotideComposition totalComposition = new NucleotideComposition();
+
+        /**
+         * @param assembly The assembly to analyse
+         * @param threads The number of threads used to count the composition of long runs of bases
+         */
+        protected static Stats calculate(File assembly, final int threads) throws IOException {
+
+            final Stats stats = new Stats();
+
+            SequenceHandler counter = new SequenceHandler() {
+                @Override
+                public void bases(ByteBuffer buffer, int from, int to, long offset) {
+                    if (threads > 1 && to - from > NucleotideComposition.MIN_CHUNK_SIZE) {
+                        stats.seqComposition.add(NucleotideComposition.count(buffer, from, to, threads));
+                    }
+                    else {
+                        stats.seqComposition.add(buffer, from, to);
+                    }
+                }
+            };
+
+            String fileName = assembly.getName();
+            int dot = fileName.lastIndexOf('.');
+            stats.name = dot > 0 ? fileName.substring(0, dot) : fileName;
+
+            long[] lengths = new long[1024];
+            int nbLengths = 0;
+
+            try (MappedFastaReader reader = new MappedFastaReader(assembly)) {
+
+                FastaRecord record;
+                while ((record = reader.next(counter)) != null) {
+
+                    long length = record.getLength();
+
+                    stats.nbSeqs++;
+                    stats.nbBases += length;
+
+                    if (length > 1000) {
+                        stats.nbSeqsGt1K++;
+                        stats.nbBasesGt1K += length;
+                    }
+
+                    if (length >= MIN_SEQ_LENGTH) {
+                        if (nbLengths == lengths.length) {
+                            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+                        }
+                        lengths[nbLengths++] = length;
+
+                        stats.totalComposition.add(stats.seqComposition);
+                    }
+
+                    stats.seqComposition.clear();
+                }
+            }
+
+            // N50 and L50 from the sorted lengths, longest first
+            Arrays.sort(lengths, 0, nbLengths);
+
+            NucleotideComposition total = stats.totalComposition;
+            long half = (total.getTotal() + 1) / 2;
+            long sum = 0;
+            for (int i = nbLengths - 1; i >= 0; i--) {
+                sum += lengths[i];
+                if (sum >= half) {
+                    stats.n50 = lengths[i];
+                    stats.l50 = nbLengths - i;
+                    break;
+                }
+            }
+
+            stats.maxLen = nbLengths > 0 ? lengths[nbLengths - 1] : 0;
+
+            long acgt = total.getNbACGT();
+            stats.gcPercentage = acgt == 0 ? 0.0 : 100.0 * (double) total.getNbGC() / (double) acgt;
+            stats.nPercentage = total.getTotal() == 0 ? 0.0 : 100.0 * (double) total.getNbN() / (double) total.getTotal();
+
+            return stats;
+        }
+
+        protected String toTabString() {
+            return join(new Object[] {
+                    this.name,
+                    this.nbSeqs,
+                    this.nbSeqsGt1K,
+                    this.maxLen,
+                    this.n50,
+                    this.l50,
+                    this.nbBases,
+                    this.nbBasesGt1K,
+                    this.gcPercentage,
+                    this.nPercentage
+            });
+        }
+    }
+}
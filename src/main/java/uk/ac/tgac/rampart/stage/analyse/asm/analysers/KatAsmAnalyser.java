@@ -30,16 +30,22 @@ import uk.ac.ebi.fgpt.conan.service.ConanExecutorService;
 import uk.ac.ebi.fgpt.conan.service.exception.ConanParameterException;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 import uk.ac.tgac.conan.process.kmer.jellyfish.JellyfishCountV11;
+import uk.ac.tgac.conan.process.kmer.jellyfish.JellyfishMergeV11;
 import uk.ac.tgac.conan.process.kmer.kat.KatCompV1;
 import uk.ac.tgac.conan.process.kmer.kat.KatPlotSpectraCnV1;
 import uk.ac.tgac.rampart.stage.analyse.asm.AnalyseAssembliesArgs;
+import uk.ac.tgac.rampart.stage.analyse.asm.AssemblyFingerprints;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+import uk.ac.tgac.rampart.stage.analyse.reads.KmerAnalysisReads;
+import uk.ac.tgac.rampart.stage.util.AnalysisCache;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Created with IntelliJ IDEA.
@@ -55,6 +61,12 @@ public class KatAsmAnalyser extends AbstractConanProcess implements AssemblyAnal
 
     private AnalyseAssembliesArgs.ToolArgs args;
 
+    // Identifies the tool versions in analysis cache keys
+    private static final String CACHE_VERSION = "jellyfish-1.1,kat-1";
+
+    // Suffix of the merged read hash the read analysis stage makes for each ECQ group
+    private static final String MERGED_HASH_SUFFIX = "_all.jf31_0";
+
     @Override
     public boolean isOperational(ExecutionContext executionContext) {
         boolean jellyfish = new JellyfishCountV11(this.conanExecutorService).isOperational(executionContext);
@@ -67,7 +79,11 @@ public class KatAsmAnalyser extends AbstractConanProcess implements AssemblyAnal
         katPlotSpectraCn.setConanProcessService(this.getConanProcessService());
         boolean katPlot = katPlotSpectraCn.isOperational(executionContext);
 
-        return jellyfish && katComp && katPlot;
+        // Read hashes only need merging here if the user asked for it
+        boolean merge = args == null || !args.isMergeReads() ||
+                new JellyfishMergeV11(this.conanExecutorService).isOperational(executionContext);
+
+        return jellyfish && katComp && katPlot && merge;
     }
 
     @Override
@@ -90,9 +106,30 @@ public class KatAsmAnalyser extends AbstractConanProcess implements AssemblyAnal
 
         outputDir.mkdirs();
 
+        List<File> readCounts = new ArrayList<>(FileUtils.listFiles(args.getReadsAnalysisDir(), new String[] {"jf31_0"}, true));
+        Collections.sort(readCounts);
+
+        // Each assembly is cached separately.  The read hashes are large, so they are identified by their location,
+        // size and modification time rather than by their contents.
+        AnalysisCache cache = args.getCacheDir() != null ? new AnalysisCache(args.getCacheDir()) : null;
+        List<String> readSettings = new ArrayList<>();
+        readSettings.add("merge_reads=" + args.isMergeReads());
+        for(File readCount : readCounts) {
+            readSettings.add(readCount.getAbsolutePath() + ":" + readCount.length() + ":" + readCount.lastModified());
+        }
+
+        // Either compare assemblies against every read hash, or just one per ECQ group
+        List<File> readHashes = args.isMergeReads() ?
+                this.getMergedReadHashes(readCounts, outputDir, jobPrefix, ces, allJobResults) :
+                readCounts;
+
+        Map<File, String> toCache = new LinkedHashMap<>();
+        List<Integer> hashIndices = new ArrayList<>();
+
         int i = 1;
         for(File f : assemblies) {
 
+            int asmIndex = i;
             String jfJobName = jobPrefix + "-jfcount-" + i++;
 
             // Should be ok to assume that the extension is .fa as we should be working with symbolic links that we
@@ -104,6 +141,19 @@ public class KatAsmAnalyser extends AbstractConanProcess implements AssemblyAnal
             }
             katOutputDir.mkdirs();
 
+            if (cache != null) {
+
+                String cacheKey = AnalysisCache.createKey(this.getName(), CACHE_VERSION, readSettings,
+                        Arrays.asList(AssemblyFingerprints.fingerprint(f)));
+
+                if (cache.restore(cacheKey, katOutputDir) != null) {
+                    log.info("Using cached KAT results for: " + f.getName());
+                    continue;
+                }
+
+                toCache.put(katOutputDir, cacheKey);
+            }
+
             String outputPrefix = katOutputDir.getAbsolutePath() + "/" + jfJobName + ".jf31";
 
             // Setup Jellyfish for counting the assembly
@@ -130,6 +180,7 @@ public class KatAsmAnalyser extends AbstractConanProcess implements AssemblyAnal
                     args.isRunParallel());
 
             jellyfishHashes.add(new File(outputPrefix + "_0"));
+            hashIndices.add(asmIndex);
 
             // Add job id to list
             jobResults.add(result);
@@ -138,11 +189,11 @@ public class KatAsmAnalyser extends AbstractConanProcess implements AssemblyAnal
 
         // If we're using a scheduler and we have been asked to run each MECQ group for each library
         // in parallel, then we should wait for all those to complete before continueing.
-        if (ces.usingScheduler() && args.isRunParallel()) {
+        if (ces.usingScheduler() && args.isRunParallel() && !jobResults.isEmpty()) {
             log.debug("Analysing assemblies using kmers in parallel, waiting for completion");
             ces.executeScheduledWait(
                     jobResults,
-                    args.getJobPrefix() + "-kmer-count-*",
+                    jobPrefix + "-jfcount-*",
                     ExitStatus.Type.COMPLETED_ANY,
                     args.getJobPrefix() + "-k-count-wait",
                     args.getOutputDir());
@@ -150,78 +201,257 @@ public class KatAsmAnalyser extends AbstractConanProcess implements AssemblyAnal
 
         jobResults.clear();
 
-        Collection<File> readCounts = FileUtils.listFiles(args.getReadsAnalysisDir(), new String[] {"jf31_0"}, true);
-
-        log.info("Running KAT comp on " + readCounts.size() + " read hashes and " + jellyfishHashes.size() + " assembly hashes.");
+        log.info("Running KAT comp on " + readHashes.size() + " read hashes and " + jellyfishHashes.size() + " assembly hashes.");
 
-        // Loop through jellyfish hashes
-        i = 1;
-        for(File jfHash : jellyfishHashes) {
+        // Each comp job compares one read hash against a batch of assemblies, running kat comp once per assembly.  With
+        // batches of more than one this means fewer jobs, and the read hash is likely to stay in the node's page cache
+        // between comparisons.
+        BatchJobRunner compRunner = new BatchJobRunner(ces, jobPrefix + "-katcomp", args.getThreads(), args.getMemory());
+        compRunner.setMaxJobs(args.getMaxJobs());
 
-            // Loop through each read count for this assembly
-            int j = 1;
-            for(File readCount : readCounts) {
+        List<Integer> hashPositions = new ArrayList<>();
+        for(int h = 0; h < jellyfishHashes.size(); h++) {
+            hashPositions.add(h);
+        }
 
-                String outputPrefix = "katcomp-" + i + "-" + j;
-                String jobName = jobPrefix + "-" + outputPrefix;
+        List<List<Integer>> batches = BatchJobRunner.partition(hashPositions, args.getCompBatchSize());
 
-                // Setup kat comp
-                KatCompV1.Args katCompArgs = new KatCompV1.Args();
-                katCompArgs.setJellyfishHash1(readCount);
-                katCompArgs.setJellyfishHash2(jfHash);
-                katCompArgs.setOutputPrefix(new File(jfHash.getParentFile(), outputPrefix).getAbsolutePath());
-                katCompArgs.setThreads(args.getThreads());
+        int j = 1;
+        for(File readCount : readHashes) {
 
-                KatCompV1 katCompProcess = new KatCompV1(katCompArgs);
+            int b = 1;
+            for(List<Integer> batch : batches) {
 
-                File matrixFile = new File(katCompArgs.getOutputPrefix() + "_main.mx");
+                KatCompV1 batchProcess = null;
 
-                // Setup kat comp
-                KatPlotSpectraCnV1.Args katPlotSpectraCnArgs = new KatPlotSpectraCnV1.Args();
-                katPlotSpectraCnArgs.setInput(matrixFile);
-                katPlotSpectraCnArgs.setOutput(new File(matrixFile.getAbsolutePath() + ".png"));
-                katPlotSpectraCnArgs.setUncheckedArgs("--x_max=200");
+                for(int h : batch) {
 
-                KatPlotSpectraCnV1 katPlotSpectraCnProcess = new KatPlotSpectraCnV1(katPlotSpectraCnArgs);
+                    File jfHash = jellyfishHashes.get(h);
+                    File outputPrefix = new File(jfHash.getParentFile(), "katcomp-" + hashIndices.get(h) + "-" + j);
+                    KatCompV1 katCompProcess = this.makeKatComp(readCount, jfHash, outputPrefix);
 
-                // Add the plot command to the kat-comp command, to save some scheduling hassle
-                katCompProcess.addPostCommand(katPlotSpectraCnProcess.getCommand());
+                    if (batchProcess == null) {
+                        batchProcess = katCompProcess;
+                    }
+                    else {
+                        batchProcess.addPostCommand(katCompProcess.getCommand());
+                    }
 
-                ExecutionResult result = ces.executeProcess(
-                        katCompProcess,
-                        jfHash.getParentFile(),
-                        jobName,
-                        args.getThreads(),
-                        args.getMemory(),
-                        args.isRunParallel());
+                    // Add the plot command to the kat-comp command, to save some scheduling hassle
+                    batchProcess.addPostCommand(this.makeKatPlotCommand(outputPrefix));
+                }
 
-                // Add job id to list
-                jobResults.add(result);
-                allJobResults.add(result);
-                j++;
+                if (batchProcess != null) {
+                    compRunner.add(batchProcess, outputDir, jobPrefix + "-katcomp-" + j + "-" + b++);
+                }
             }
-            i++;
+
+            j++;
         }
 
+        allJobResults.addAll(compRunner.run(outputDir));
 
-        // If we're using a scheduler and we have been asked to run each MECQ group for each library
-        // in parallel, then we should wait for all those to complete before continueing.
-        if (ces.usingScheduler() && args.isRunParallel()) {
-            log.debug("Analysing assemblies using kmers in parallel, waiting for completion");
-            ces.executeScheduledWait(
-                    jobResults,
-                    args.getJobPrefix() + "-katcomp*",
-                    ExitStatus.Type.COMPLETED_ANY,
-                    args.getJobPrefix() + "-katcomp-wait",
-                    args.getOutputDir());
+        // Cache the kat comp results, but not the assembly hashes, which are large and only needed by kat comp
+        for(Map.Entry<File, String> entry : toCache.entrySet()) {
+
+            File[] katFiles = entry.getKey().listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith("katcomp-");
+                }
+            });
+
+            // Don't cache anything from assemblies where kat comp failed to produce a matrix
+            boolean complete = false;
+            if (katFiles != null) {
+                for(File katFile : katFiles) {
+                    complete = complete || katFile.getName().endsWith("_main.mx");
+                }
+            }
+
+            if (complete) {
+                cache.publish(entry.getValue(), Arrays.asList(katFiles));
+            }
         }
 
         return allJobResults;
     }
 
+    /**
+     * Creates a kat comp process that compares an assembly hash against a read hash
+     */
+    private KatCompV1 makeKatComp(File readHash, File asmHash, File outputPrefix) {
+
+        KatCompV1.Args katCompArgs = new KatCompV1.Args();
+        katCompArgs.setJellyfishHash1(readHash);
+        katCompArgs.setJellyfishHash2(asmHash);
+        katCompArgs.setOutputPrefix(outputPrefix.getAbsolutePath());
+        katCompArgs.setThreads(args.getThreads());
+
+        return new KatCompV1(katCompArgs);
+    }
+
+    /**
+     * Creates the command that plots the spectra-cn matrix produced by kat comp with the given output prefix
+     */
+    private String makeKatPlotCommand(File outputPrefix) throws ConanParameterException {
+
+        File matrixFile = new File(outputPrefix.getAbsolutePath() + "_main.mx");
+
+        // Setup kat plot
+        KatPlotSpectraCnV1.Args katPlotSpectraCnArgs = new KatPlotSpectraCnV1.Args();
+        katPlotSpectraCnArgs.setInput(matrixFile);
+        katPlotSpectraCnArgs.setOutput(new File(matrixFile.getAbsolutePath() + ".png"));
+        katPlotSpectraCnArgs.setUncheckedArgs("--x_max=200");
+
+        return new KatPlotSpectraCnV1(katPlotSpectraCnArgs).getCommand();
+    }
+
+    /**
+     * Picks one read hash for each ECQ group.  The read analysis stage already merges the hashes of all libraries in a
+     * group into a single "_all" hash, with low count kmers filtered out, so that is used if present.  If a group only
+     * has one library its hash is used directly.  Otherwise the group's library hashes are merged here.
+     * @param readCounts All read hashes found in the read analysis directory
+     * @return One read hash per ECQ group
+     */
+    private List<File> getMergedReadHashes(List<File> readCounts, File outputDir, String jobPrefix, ConanExecutorService ces,
+                                           List<ExecutionResult> jobResults)
+            throws IOException, InterruptedException, ProcessExecutionException {
+
+        // Read hashes for each ECQ group are stored in a directory named after the group
+        Map<File, List<File>> groups = new TreeMap<>();
+        for(File readCount : readCounts) {
+            File group = readCount.getParentFile();
+            if (!groups.containsKey(group)) {
+                groups.put(group, new ArrayList<File>());
+            }
+            groups.get(group).add(readCount);
+        }
+
+        BatchJobRunner mergeRunner = new BatchJobRunner(ces, jobPrefix + "-jfmerge", args.getThreads(), args.getMemory());
+        List<File> readHashes = new ArrayList<>();
+
+        for(Map.Entry<File, List<File>> group : groups.entrySet()) {
+
+            File merged = null;
+            for(File readCount : group.getValue()) {
+                if (readCount.getName().endsWith(MERGED_HASH_SUFFIX)) {
+                    merged = readCount;
+                }
+            }
+
+            if (merged == null && group.getValue().size() == 1) {
+                merged = group.getValue().get(0);
+            }
+
+            if (merged == null) {
+
+                File mergeDir = new File(outputDir, "reads");
+                mergeDir.mkdirs();
+
+                merged = new File(mergeDir, "jellyfish_" + group.getKey().getName() + MERGED_HASH_SUFFIX);
+
+                JellyfishMergeV11.Args mergeArgs = new JellyfishMergeV11.Args();
+                mergeArgs.setBufferSize(KmerAnalysisReads.guessJellyfishHashSize(args.getOrganism()) * group.getValue().size());
+                mergeArgs.setOutputFile(merged);
+                mergeArgs.setInputFiles(group.getValue());
+
+                mergeRunner.add(new JellyfishMergeV11(ces, mergeArgs), mergeDir, jobPrefix + "-jfmerge-" + group.getKey().getName());
+            }
+
+            readHashes.add(merged);
+        }
+
+        if (mergeRunner.size() > 0) {
+            log.info("Merging read hashes for " + mergeRunner.size() + " ECQ groups");
+            jobResults.addAll(mergeRunner.run(outputDir));
+        }
+
+        return readHashes;
+    }
+
     @Override
-    public void updateTable(AssemblyStatsTable table, File reportDir) {
-        log.info("Currently KAT data cannot be used for updating the stats table");
+    public void updateTable(AssemblyStatsTable table, File reportDir) throws IOException {
+        ReportIngester.ingest(table, this, reportDir);
+    }
+
+    @Override
+    public List<Callable<TableUpdate>> createReportReaders(File reportDir) throws IOException {
+
+        log.info("Extracting k-mer metrics from KAT matrices stored in: " + reportDir.getCanonicalPath());
+
+        List<Callable<TableUpdate>> readers = new ArrayList<>();
+
+        // Each assembly has its own directory, named after the assembly, containing one matrix per read hash
+        File[] asmDirs = reportDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory();
+            }
+        });
+
+        if (asmDirs == null) {
+            log.warn("Could not find KAT output directory at: " + reportDir.getCanonicalPath());
+            return readers;
+        }
+
+        for (final File asmDir : asmDirs) {
+
+            final File[] matrixFiles = asmDir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith("katcomp-") && name.endsWith("_main.mx");
+                }
+            });
+
+            if (matrixFiles == null || matrixFiles.length == 0) {
+                continue;
+            }
+
+            readers.add(new Callable<TableUpdate>() {
+                @Override
+                public TableUpdate call() throws IOException {
+
+                    final String asmName = asmDir.getName();
+
+                    // Use the read set that best explains the assembly, as assemblies may have been made from any of them
+                    KatCompMatrix best = null;
+                    File bestFile = null;
+                    for (File matrixFile : matrixFiles) {
+
+                        KatCompMatrix matrix = KatCompMatrix.load(matrixFile);
+
+                        if (best == null || matrix.getCompleteness() > best.getCompleteness() ||
+                                (matrix.getCompleteness() == best.getCompleteness() && matrix.getCnError() < best.getCnError())) {
+                            best = matrix;
+                            bestFile = matrixFile;
+                        }
+                    }
+
+                    log.info("Extracted KAT metrics from: " + bestFile.getCanonicalPath() + "; using assembly name: " + asmName);
+
+                    final double completeness = best.getCompleteness();
+                    final double cnError = best.getCnError();
+
+                    return new TableUpdate() {
+                        @Override
+                        public void apply(AssemblyStatsTable table) throws IOException {
+
+                            AssemblyStats stats = table.findStatsByFilename(asmName);
+
+                            if (stats == null) {
+                                throw new IOException("Couldn't find assembly stats entry for " + asmName);
+                            }
+
+                            stats.getConservation().setKmerComplete(completeness);
+                            stats.getProblems().setKmerCnError(cnError);
+                        }
+                    };
+                }
+            });
+        }
+
+        return readers;
     }
 
     @Override
@@ -0,0 +1,334 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The main matrix produced by kat comp when comparing a read hash against an assembly hash, i.e. the "_main.mx" file.
+ * Each row is a k-mer multiplicity in the reads and each column a copy number in the assembly, with each cell holding
+ * the number of distinct k-mers seen that many times in each.  The last row and column hold everything beyond them.
+ *
+ * Files are parsed in a single pass over their bytes into a primitive array, as there may be hundreds of them to read.
+ * Two metrics are derived from the matrix:
+ * <ul>
+ *     <li>K-mer completeness: the percentage of distinct read k-mers, excluding those likely to be sequencing errors,
+ *     that are present in the assembly.  Error k-mers are those below the first minimum in the read spectrum.</li>
+ *     <li>K-mer copy number error: the percentage of distinct assembly k-mers whose copy number in the assembly differs
+ *     from what the reads suggest, i.e. their multiplicity divided by that of the main spectrum peak.  K-mers that
+ *     are absent from the reads, or only appear at error levels, count as errors too.  K-mers in the last row can't be
+ *     judged and are assumed to be correct.</li>
+ * </ul>
+ */
+public class KatCompMatrix {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int nbRows;
+    private final int nbColumns;
+    private final long[] counts;
+
+    private final int errorCutoff;
+    private final int peak;
+    private final double completeness;
+    private final double cnError;
+
+    /**
+     * @param nbRows Number of read multiplicities
+     * @param nbColumns Number of assembly copy numbers
+     * @param counts The matrix in row major order
+     */
+    public KatCompMatrix(int nbRows, int nbColumns, long[] counts) {
+
+        if (nbRows < 1 || nbColumns < 1 || counts.length < nbRows * nbColumns) {
+            throw new IllegalArgumentException("Matrix of " + counts.length + " values does not have " + nbRows +
+                    " rows and " + nbColumns + " columns");
+        }
+
+        this.nbRows = nbRows;
+        this.nbColumns = nbColumns;
+        this.counts = counts;
+
+        // Distinct k-mers in the reads and in both, for each read multiplicity
+        long[] rowTotals = new long[nbRows];
+        long[] rowPresent = new long[nbRows];
+        for (int i = 0; i < nbRows; i++) {
+            int offset = i * nbColumns;
+            long total = 0;
+            for (int j = 0; j < nbColumns; j++) {
+                total += counts[offset + j];
+            }
+            rowTotals[i] = total;
+            rowPresent[i] = total - counts[offset];
+        }
+
+        this.errorCutoff = findErrorCutoff(rowTotals);
+        this.peak = findPeak(rowTotals, this.errorCutoff);
+
+        long solid = 0;
+        long solidPresent = 0;
+        long asmKmers = 0;
+        long errors = 0;
+
+        for (int i = 0; i < nbRows; i++) {
+
+            asmKmers += rowPresent[i];
+
+            if (i < this.errorCutoff) {
+                errors += rowPresent[i];
+                continue;
+            }
+
+            solid += rowTotals[i];
+            solidPresent += rowPresent[i];
+
+            if (i < nbRows - 1 && nbColumns > 1) {
+                // The last column holds all higher copy numbers
+                long expected = Math.max(1L, Math.round((double) i / (double) this.peak));
+                int column = (int) Math.min(expected, (long) (nbColumns - 1));
+                errors += rowPresent[i] - counts[i * nbColumns + column];
+            }
+        }
+
+        this.completeness = solid == 0 ? 0.0 : 100.0 * solidPresent / solid;
+        this.cnError = asmKmers == 0 ? 0.0 : 100.0 * errors / asmKmers;
+    }
+
+    /**
+     * Finds the first multiplicity that isn't dominated by sequencing errors, i.e. the bottom of the trough after the
+     * error peak at the start of the spectrum.  If the spectrum has no such trough, for example because the reads were
+     * already filtered, then the first multiplicity with any k-mers is used.
+     */
+    private static int findErrorCutoff(long[] rowTotals) {
+
+        // Row 0 is k-mers found in the assembly but not the reads
+        int start = 1;
+        while (start < rowTotals.length - 1 && rowTotals[start] == 0) {
+            start++;
+        }
+
+        int i = start;
+        while (i < rowTotals.length - 2 && rowTotals[i + 1] < rowTotals[i]) {
+            i++;
+        }
+
+        return i == rowTotals.length - 2 ? Math.min(start, rowTotals.length - 1) : i;
+    }
+
+    /**
+     * Finds the most common multiplicity at or above the error cutoff, ignoring the last row
+     */
+    private static int findPeak(long[] rowTotals, int from) {
+
+        int peak = Math.max(1, from);
+
+        for (int i = peak + 1; i < rowTotals.length - 1; i++) {
+            if (rowTotals[i] > rowTotals[peak]) {
+                peak = i;
+            }
+        }
+
+        return peak;
+    }
+
+    public int getNbRows() {
+        return nbRows;
+    }
+
+    public int getNbColumns() {
+        return nbColumns;
+    }
+
+    /**
+     * @return The number of distinct k-mers seen row times in the reads and column times in the assembly
+     */
+    public long get(int row, int column) {
+        return this.counts[row * this.nbColumns + column];
+    }
+
+    /**
+     * @return The lowest read multiplicity of k-mers not considered to be sequencing errors
+     */
+    public int getErrorCutoff() {
+        return errorCutoff;
+    }
+
+    /**
+     * @return The read multiplicity with the most distinct k-mers, at or above the error cutoff
+     */
+    public int getPeak() {
+        return peak;
+    }
+
+    /**
+     * @return Percentage of distinct non-error read k-mers found in the assembly
+     */
+    public double getCompleteness() {
+        return completeness;
+    }
+
+    /**
+     * @return Percentage of distinct assembly k-mers whose copy number isn't supported by the reads
+     */
+    public double getCnError() {
+        return cnError;
+    }
+
+    /**
+     * Parses a kat comp matrix file.  Header lines start with '#', and each following line is a row of whitespace
+     * separated counts.  The dimensions are taken from the "Rows" and "Columns" header fields if present, otherwise
+     * from the data.
+     * @param file The "_main.mx" file to parse
+     * @return The parsed matrix
+     * @throws IOException Thrown if the file couldn't be read or isn't a valid matrix
+     */
+    public static KatCompMatrix load(File file) throws IOException {
+
+        int nbRows = 0;
+        int nbColumns = -1;
+        int expectedRows = 0;
+        int expectedColumns = 0;
+
+        long[] counts = new long[0];
+        int size = 0;
+        int rowStart = 0;
+
+        StringBuilder header = null;
+        boolean lineStart = true;
+        boolean inNumber = false;
+        long value = 0;
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (InputStream in = new FileInputStream(file)) {
+
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+
+                for (int p = 0; p < read; p++) {
+
+                    byte b = buffer[p];
+
+                    if (header != null) {
+                        if (b == '\n') {
+                            String field = header.toString();
+                            if (field.startsWith("Rows:")) {
+                                expectedRows = parseDimension(field, file);
+                            }
+                            else if (field.startsWith("Columns:")) {
+                                expectedColumns = parseDimension(field, file);
+                            }
+                            header = null;
+                            lineStart = true;
+                        }
+                        else if (b != '#' || header.length() > 0) {
+                            if (b != ' ' || header.length() > 0) {
+                                header.append((char) b);
+                            }
+                        }
+                        continue;
+                    }
+
+                    if (lineStart && b == '#') {
+                        header = new StringBuilder();
+                        continue;
+                    }
+
+                    lineStart = false;
+
+                    if (b >= '0' && b <= '9') {
+                        value = value * 10 + (b - '0');
+                        inNumber = true;
+                        continue;
+                    }
+
+                    if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                        throw new IOException("Unexpected character '" + (char) b + "' in KAT matrix: " + file.getAbsolutePath());
+                    }
+
+                    if (inNumber) {
+                        if (size == counts.length) {
+                            int capacity = counts.length == 0 ?
+                                    Math.max(1, expectedRows) * Math.max(1, expectedColumns) :
+                                    counts.length * 2;
+                            counts = Arrays.copyOf(counts, Math.max(capacity, size + 1));
+                        }
+                        counts[size++] = value;
+                        value = 0;
+                        inNumber = false;
+                    }
+
+                    if (b == '\n') {
+                        if (size > rowStart) {
+                            nbColumns = endRow(size - rowStart, nbColumns, nbRows, file);
+                            nbRows++;
+                            rowStart = size;
+                        }
+                        lineStart = true;
+                    }
+                }
+            }
+        }
+
+        // The last row may not end with a new line
+        if (inNumber) {
+            counts = Arrays.copyOf(counts, size + 1);
+            counts[size++] = value;
+        }
+        if (size > rowStart) {
+            nbColumns = endRow(size - rowStart, nbColumns, nbRows, file);
+            nbRows++;
+        }
+
+        if (nbRows == 0) {
+            throw new IOException("KAT matrix contains no data: " + file.getAbsolutePath());
+        }
+
+        if ((expectedRows > 0 && expectedRows != nbRows) || (expectedColumns > 0 && expectedColumns != nbColumns)) {
+            throw new IOException("KAT matrix has " + nbRows + " rows and " + nbColumns + " columns but its header says " +
+                    expectedRows + " rows and " + expectedColumns + " columns: " + file.getAbsolutePath());
+        }
+
+        return new KatCompMatrix(nbRows, nbColumns, counts);
+    }
+
+    private static int endRow(int length, int nbColumns, int row, File file) throws IOException {
+
+        if (nbColumns != -1 && length != nbColumns) {
+            throw new IOException("Row " + row + " of KAT matrix has " + length + " values but previous rows have " +
+                    nbColumns + ": " + file.getAbsolutePath());
+        }
+
+        return length;
+    }
+
+    private static int parseDimension(String field, File file) throws IOException {
+
+        try {
+            return Integer.parseInt(field.substring(field.indexOf(':') + 1).trim());
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid header field \"" + field + "\" in KAT matrix: " + file.getAbsolutePath());
+        }
+    }
+}
@@ -30,14 +30,18 @@ import uk.ac.ebi.fgpt.conan.service.exception.ConanParameterException;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 import uk.ac.tgac.conan.process.asm.stats.QuastV23;
 import uk.ac.tgac.rampart.stage.analyse.asm.AnalyseAssembliesArgs;
+import uk.ac.tgac.rampart.stage.analyse.asm.AssemblyFingerprints;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.*;
+import uk.ac.tgac.rampart.stage.util.AnalysisCache;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Created with IntelliJ IDEA.
@@ -57,6 +61,10 @@ public class QuastAsmAnalyser extends AbstractConanProcess implements AssemblyAn
 
     public static final String QUAST_DIR_NAME = "quast";
     public static final String QUAST_REPORT_NAME = "report.txt";
+    public static final String QUAST_TSV_REPORT_NAME = "report.tsv";
+
+    // Identifies the tool version in analysis cache keys
+    private static final String CACHE_VERSION = "quast-2.3";
 
     @Override
     public boolean isOperational(ExecutionContext executionContext) {
@@ -83,7 +91,7 @@ public class QuastAsmAnalyser extends AbstractConanProcess implements AssemblyAn
         this.assemblies = new HashMap<>();
 
         for(File assembly : assemblies) {
-            this.assemblies.put(assembly.getName().substring(0, assembly.getName().length() - 3), assembly.getCanonicalFile());
+            this.assemblies.put(quastName(assembly), assembly.getCanonicalFile());
         }
 
         // Add quast job id to list
@@ -93,73 +101,220 @@ public class QuastAsmAnalyser extends AbstractConanProcess implements AssemblyAn
 
         long estGenomeSize = reference != null ? 0 : args.getOrganism().getGenomeSize();
 
+        AnalysisCache cache = args.getCacheDir() != null ? new AnalysisCache(args.getCacheDir()) : null;
 
-        QuastV23 quastProcess = this.makeQuast(
-                assemblies,
-                outputDir,
-                estGenomeSize,
-                args.getOrganism().getPloidy() > 1,
-                reference,
-                args.getThreads(),
-                false // Assume all sequences are not scaffolds... I don't like this options much in Quast.
-        );
+        if (cache == null) {
+            jobResults.addAll(this.runQuast(assemblies, outputDir, jobPrefix, ces, estGenomeSize, reference));
+            return jobResults;
+        }
 
-        ExecutionResult result = ces.executeProcess(
-                quastProcess,
-                outputDir,
-                jobPrefix,
-                args.getThreads(),
-                args.getMemory(),
-                false);
+        // Quast analyses each assembly independently, so results are cached per assembly and merged back into a single
+        // report.  This means only new or changed assemblies are analysed when the set changes.  Assembly names are
+        // part of the key because they appear in the report.
+        List<String> settings = new ArrayList<>();
+        settings.add(Long.toString(estGenomeSize));
+        settings.add(Boolean.toString(args.getOrganism().getPloidy() > 1));
+        settings.add(reference != null ? AssemblyFingerprints.fingerprint(reference) : "no_reference");
 
-        jobResults.add(result);
+        File assembliesDir = new File(outputDir, "assemblies");
+        List<File> assemblyDirs = new ArrayList<>();
+        Map<File, String> cacheKeys = new HashMap<>();
+        List<File> missing = new ArrayList<>();
 
-        return jobResults;
-    }
+        for(File assembly : assemblies) {
 
-    @Override
-    public void updateTable(AssemblyStatsTable table, File reportDir) throws IOException {
+            String name = quastName(assembly);
+            File assemblyDir = new File(assembliesDir, name);
+            String cacheKey = AnalysisCache.createKey(this.getName(), CACHE_VERSION, settings,
+                    Arrays.asList(name + ":" + AssemblyFingerprints.fingerprint(assembly)));
 
-        File quastReportFile = new File(reportDir, QUAST_REPORT_NAME);
+            assemblyDirs.add(assemblyDir);
 
-        if (quastReportFile.exists()) {
-            QuastV23.Report quastReport = new QuastV23.Report(quastReportFile);
-            for(QuastV23.AssemblyStats qStats : quastReport.getStatList()) {
+            if (cache.restore(cacheKey, assemblyDir) == null) {
+                cacheKeys.put(assembly, cacheKey);
+                missing.add(assembly);
+            }
+        }
 
-                if (!qStats.getName().endsWith("broken")) {
+        log.info("Using cached Quast results for " + (assemblies.size() - missing.size()) + " of " + assemblies.size() +
+                " assemblies");
 
-                    AssemblyStats stats = table.findStatsByFilename(qStats.getName());
+        if (!missing.isEmpty()) {
 
-                    // If not found then create a new entry
-                    if (stats == null) {
-                        throw new IOException("Couldn't find assembly stats entry for " + qStats.getName());
-                    }
+            File runDir = new File(outputDir, "run");
+            runDir.mkdirs();
+            jobResults.addAll(this.runQuast(missing, runDir, jobPrefix, ces, estGenomeSize, reference));
+
+            // Split the run's report into one report per assembly, and cache each one
+            for(File assembly : missing) {
+
+                File assemblyDir = new File(assembliesDir, quastName(assembly));
 
-                    // Override attributes
-                    ContiguityMetrics contiguity = stats.getContiguity();
-
-                    contiguity.setN50(qStats.getN50());
-                    contiguity.setL50(qStats.getL50());
-                    contiguity.setMaxLen(qStats.getLargestContig());
-                    contiguity.setNbSeqs(qStats.getNbContigsGt0());
-                    contiguity.setNbSeqsGt1K(qStats.getNbContigsGt1k());
-                    contiguity.setNA50(qStats.getNA50());
-
-                    ProblemMetrics problems = stats.getProblems();
-                    problems.setnPercentage(qStats.getNsPer100k() / 1000.0);
-                    problems.setNbMisassembliesFromRef(qStats.getNbMisassemblies());
-
-                    ConservationMetrics conservation = stats.getConservation();
-                    conservation.setGcPercentage(qStats.getGcPc());
-                    conservation.setNbBases(qStats.getTotalLengthGt0());
-                    conservation.setNbBasesGt1K(qStats.getTotalLengthGt1k());
-                    conservation.setNbGenes(qStats.getNbGenes());
+                if (QuastReportMerger.extract(runDir, quastName(assembly), assemblyDir)) {
+                    cache.publish(cacheKeys.get(assembly), Arrays.asList(
+                            new File(assemblyDir, QUAST_REPORT_NAME),
+                            new File(assemblyDir, QUAST_TSV_REPORT_NAME)));
+                }
+                else {
+                    log.warn("Quast did not report on " + assembly.getAbsolutePath() + "; possibly it does not contain valid contigs");
+                    assemblyDirs.remove(assemblyDir);
                 }
             }
         }
+
+        if (assemblyDirs.isEmpty()) {
+            log.warn("Quast did not report on any assemblies");
+            return jobResults;
+        }
+
+        QuastReportMerger.merge(assemblyDirs, outputDir);
+
+        return jobResults;
+    }
+
+    /**
+     * Runs quast over the given assemblies, writing a single report to the output directory.  Quast doesn't scale well
+     * to large numbers of assemblies in a single run, so large sets are split into shards that are run concurrently.
+     * Quast analyses each assembly independently, so the merged report is the same as that from a single run.
+     */
+    private List<ExecutionResult> runQuast(List<File> assemblies, File outputDir, String jobPrefix, ConanExecutorService ces,
+                                           long estGenomeSize, File reference)
+            throws InterruptedException, ProcessExecutionException, ConanParameterException, IOException {
+
+        List<ExecutionResult> jobResults = new ArrayList<>();
+
+        List<List<File>> shards = BatchJobRunner.partition(assemblies, args.getShardSize());
+
+        if (shards.size() == 1) {
+
+            QuastV23 quastProcess = this.makeQuast(
+                    assemblies,
+                    outputDir,
+                    estGenomeSize,
+                    args.getOrganism().getPloidy() > 1,
+                    reference,
+                    args.getThreads(),
+                    false // Assume all sequences are not scaffolds... I don't like this options much in Quast.
+            );
+
+            ExecutionResult result = ces.executeProcess(
+                    quastProcess,
+                    outputDir,
+                    jobPrefix,
+                    args.getThreads(),
+                    args.getMemory(),
+                    false);
+
+            jobResults.add(result);
+        }
         else {
+
+            log.info("Running Quast on " + assemblies.size() + " assemblies in " + shards.size() + " shards");
+
+            BatchJobRunner runner = new BatchJobRunner(ces, jobPrefix + "-shard", args.getThreads(), args.getMemory());
+            List<File> shardDirs = new ArrayList<>();
+
+            for(int i = 0; i < shards.size(); i++) {
+
+                File shardDir = new File(outputDir, "shard-" + (i + 1));
+                shardDir.mkdirs();
+                shardDirs.add(shardDir);
+
+                runner.add(
+                        this.makeQuast(
+                                shards.get(i),
+                                shardDir,
+                                estGenomeSize,
+                                args.getOrganism().getPloidy() > 1,
+                                reference,
+                                args.getThreads(),
+                                false),
+                        shardDir,
+                        jobPrefix + "-shard-" + (i + 1));
+            }
+
+            jobResults.addAll(runner.run(outputDir));
+
+            QuastReportMerger.merge(shardDirs, outputDir);
+        }
+
+        return jobResults;
+    }
+
+    /**
+     * @return The name quast gives the assembly in its reports, i.e. the file name without the extension
+     */
+    private static String quastName(File assembly) {
+        return assembly.getName().substring(0, assembly.getName().length() - 3);
+    }
+
+    @Override
+    public void updateTable(AssemblyStatsTable table, File reportDir) throws IOException {
+        ReportIngester.ingest(table, this, reportDir);
+    }
+
+    @Override
+    public List<Callable<TableUpdate>> createReportReaders(File reportDir) throws IOException {
+
+        List<Callable<TableUpdate>> readers = new ArrayList<>();
+
+        final File quastReportFile = new File(reportDir, QUAST_REPORT_NAME);
+
+        if (!quastReportFile.exists()) {
             log.warn("Could not find Quast report file at: " + quastReportFile.getCanonicalPath() + "; possibly one of the assemblies does not contain valid contigs.  Skipping quast result integration for this group.");
+            return readers;
         }
+
+        readers.add(new Callable<TableUpdate>() {
+            @Override
+            public TableUpdate call() throws IOException {
+
+                final QuastV23.Report quastReport = new QuastV23.Report(quastReportFile);
+
+                return new TableUpdate() {
+                    @Override
+                    public void apply(AssemblyStatsTable table) throws IOException {
+                        for (QuastV23.AssemblyStats qStats : quastReport.getStatList()) {
+                            if (!qStats.getName().endsWith("broken")) {
+                                updateStats(table, qStats);
+                            }
+                        }
+                    }
+                };
+            }
+        });
+
+        return readers;
+    }
+
+    private static void updateStats(AssemblyStatsTable table, QuastV23.AssemblyStats qStats) throws IOException {
+
+        AssemblyStats stats = table.findStatsByFilename(qStats.getName());
+
+        // If not found then create a new entry
+        if (stats == null) {
+            throw new IOException("Couldn't find assembly stats entry for " + qStats.getName());
+        }
+
+        // Override attributes
+        ContiguityMetrics contiguity = stats.getContiguity();
+
+        contiguity.setN50(qStats.getN50());
+        contiguity.setL50(qStats.getL50());
+        contiguity.setMaxLen(qStats.getLargestContig());
+        contiguity.setNbSeqs(qStats.getNbContigsGt0());
+        contiguity.setNbSeqsGt1K(qStats.getNbContigsGt1k());
+        contiguity.setNA50(qStats.getNA50());
+
+        ProblemMetrics problems = stats.getProblems();
+        problems.setnPercentage(qStats.getNsPer100k() / 1000.0);
+        problems.setNbMisassembliesFromRef(qStats.getNbMisassemblies());
+
+        ConservationMetrics conservation = stats.getConservation();
+        conservation.setGcPercentage(qStats.getGcPc());
+        conservation.setNbBases(qStats.getTotalLengthGt0());
+        conservation.setNbBasesGt1K(qStats.getTotalLengthGt1k());
+        conservation.setNbGenes(qStats.getNbGenes());
     }
 
     @Override
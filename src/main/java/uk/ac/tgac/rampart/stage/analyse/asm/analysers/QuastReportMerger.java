@@ -0,0 +1,253 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Merges the reports from several QUAST runs over disjoint sets of assemblies into a single report, as if all the
+ * assemblies had been analysed by one run.  QUAST analyses each assembly independently, so the merged values are the
+ * same as those from a single run.
+ *
+ * The merge reads each run's report.tsv, and writes both report.tsv and report.txt.  report.txt is laid out as QUAST
+ * lays it out: each cell left aligned to the width of its column, with two spaces between columns, after the preamble
+ * from the first run's report.txt.
+ *
+ * The reverse, pulling a single assembly's results out of a run, is done by {@link #extract}, so that results can be
+ * stored per assembly and merged back together later.
+ */
+public class QuastReportMerger {
+
+    public static final String TXT_REPORT_NAME = "report.txt";
+    public static final String TSV_REPORT_NAME = "report.tsv";
+
+    private static final String HEADER_NAME = "Assembly";
+    private static final String MISSING_VALUE = "-";
+
+    /**
+     * Merges the reports found in each of the QUAST output directories
+     * @param runDirs The QUAST output directories, in the order their assemblies should appear in the merged report
+     * @param outputDir The directory to write the merged report.txt and report.tsv to
+     * @throws IOException Thrown if any of the runs did not produce a TSV report, or the merged report could not be
+     * written
+     */
+    public static void merge(List<File> runDirs, File outputDir) throws IOException {
+
+        List<String> assemblies = new ArrayList<>();
+        Map<String, String[]> rows = new LinkedHashMap<>();
+
+        for(File runDir : runDirs) {
+
+            File tsv = new File(runDir, TSV_REPORT_NAME);
+            List<String> lines = readTsv(tsv);
+
+            String[] header = lines.get(0).split("\t", -1);
+            int offset = assemblies.size();
+            int nbRunAssemblies = header.length - 1;
+            assemblies.addAll(Arrays.asList(header).subList(1, header.length));
+
+            // Widen all the existing rows for the new assemblies
+            for(Map.Entry<String, String[]> entry : rows.entrySet()) {
+                entry.setValue(widen(entry.getValue(), assemblies.size()));
+            }
+
+            for(String line : lines.subList(1, lines.size())) {
+
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                String[] parts = line.split("\t", -1);
+                if (parts.length != nbRunAssemblies + 1) {
+                    throw new IOException("Row has " + (parts.length - 1) + " values but report has " + nbRunAssemblies +
+                            " assemblies in: " + tsv.getAbsolutePath() + "; row: " + line);
+                }
+
+                String[] values = rows.get(parts[0]);
+                if (values == null) {
+                    values = widen(new String[0], assemblies.size());
+                    rows.put(parts[0], values);
+                }
+
+                System.arraycopy(parts, 1, values, offset, nbRunAssemblies);
+            }
+        }
+
+        write(outputDir, assemblies, rows, preamble(new File(runDirs.get(0), TXT_REPORT_NAME)));
+    }
+
+    /**
+     * Extracts the results for one assembly from the report of a QUAST run over several assemblies
+     * @param runDir The QUAST output directory
+     * @param assembly The name of the assembly as it appears in the report
+     * @param outputDir The directory to write the assembly's report.txt and report.tsv to
+     * @return True if the assembly was in the report, false if QUAST didn't report on it
+     * @throws IOException Thrown if the run did not produce a TSV report, or the extracted report could not be written
+     */
+    public static boolean extract(File runDir, String assembly, File outputDir) throws IOException {
+
+        File tsv = new File(runDir, TSV_REPORT_NAME);
+        List<String> lines = readTsv(tsv);
+
+        // Include the broken version of the assembly, which QUAST adds when analysing scaffolds
+        String[] header = lines.get(0).split("\t", -1);
+        List<Integer> columns = new ArrayList<>();
+        List<String> assemblies = new ArrayList<>();
+        for(int i = 1; i < header.length; i++) {
+            if (header[i].equals(assembly) || header[i].equals(assembly + " broken")) {
+                columns.add(i);
+                assemblies.add(header[i]);
+            }
+        }
+
+        if (columns.isEmpty()) {
+            return false;
+        }
+
+        Map<String, String[]> rows = new LinkedHashMap<>();
+
+        for(String line : lines.subList(1, lines.size())) {
+
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            String[] parts = line.split("\t", -1);
+            if (parts.length != header.length) {
+                throw new IOException("Row has " + (parts.length - 1) + " values but report has " + (header.length - 1) +
+                        " assemblies in: " + tsv.getAbsolutePath() + "; row: " + line);
+            }
+
+            String[] values = new String[columns.size()];
+            for(int i = 0; i < values.length; i++) {
+                values[i] = parts[columns.get(i)];
+            }
+            rows.put(parts[0], values);
+        }
+
+        write(outputDir, assemblies, rows, preamble(new File(runDir, TXT_REPORT_NAME)));
+
+        return true;
+    }
+
+    private static List<String> readTsv(File tsv) throws IOException {
+
+        if (!tsv.exists()) {
+            throw new IOException("Could not find QUAST report at: " + tsv.getAbsolutePath());
+        }
+
+        List<String> lines = FileUtils.readLines(tsv);
+        if (lines.isEmpty() || !lines.get(0).startsWith(HEADER_NAME)) {
+            throw new IOException("Unexpected header in QUAST report: " + tsv.getAbsolutePath());
+        }
+
+        return lines;
+    }
+
+    private static void write(File outputDir, List<String> assemblies, Map<String, String[]> rows, List<String> preamble)
+            throws IOException {
+
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+
+        // Write the TSV report
+        List<String> tsvLines = new ArrayList<>();
+        tsvLines.add(join(HEADER_NAME, assemblies.toArray(new String[assemblies.size()])));
+        for(Map.Entry<String, String[]> entry : rows.entrySet()) {
+            tsvLines.add(join(entry.getKey(), entry.getValue()));
+        }
+        FileUtils.writeLines(new File(outputDir, TSV_REPORT_NAME), tsvLines);
+
+        // Work out column widths for the text report
+        int[] widths = new int[assemblies.size() + 1];
+        widths[0] = HEADER_NAME.length();
+        for(int i = 0; i < assemblies.size(); i++) {
+            widths[i + 1] = assemblies.get(i).length();
+        }
+        for(Map.Entry<String, String[]> entry : rows.entrySet()) {
+            widths[0] = Math.max(widths[0], entry.getKey().length());
+            String[] values = entry.getValue();
+            for(int i = 0; i < values.length; i++) {
+                widths[i + 1] = Math.max(widths[i + 1], values[i].length());
+            }
+        }
+
+        List<String> txtLines = new ArrayList<>(preamble);
+        txtLines.add(align(widths, HEADER_NAME, assemblies.toArray(new String[assemblies.size()])));
+        for(Map.Entry<String, String[]> entry : rows.entrySet()) {
+            txtLines.add(align(widths, entry.getKey(), entry.getValue()));
+        }
+        FileUtils.writeLines(new File(outputDir, TXT_REPORT_NAME), txtLines);
+    }
+
+    /**
+     * Gets the lines before the table in a QUAST text report
+     */
+    private static List<String> preamble(File txtReport) throws IOException {
+
+        List<String> preamble = new ArrayList<>();
+
+        if (txtReport.exists()) {
+            for(String line : FileUtils.readLines(txtReport)) {
+                if (line.startsWith(HEADER_NAME)) {
+                    break;
+                }
+                preamble.add(line);
+            }
+        }
+
+        return preamble;
+    }
+
+    private static String[] widen(String[] values, int size) {
+        String[] wider = Arrays.copyOf(values, size);
+        Arrays.fill(wider, values.length, size, MISSING_VALUE);
+        return wider;
+    }
+
+    private static String join(String name, String[] values) {
+        StringBuilder sb = new StringBuilder(name);
+        for(String value : values) {
+            sb.append('\t').append(value);
+        }
+        return sb.toString();
+    }
+
+    private static String align(int[] widths, String name, String[] values) {
+        StringBuilder sb = new StringBuilder();
+        pad(sb, name, widths[0]);
+        for(int i = 0; i < values.length; i++) {
+            sb.append("  ");
+            pad(sb, values[i], widths[i + 1]);
+        }
+        return sb.toString();
+    }
+
+    private static void pad(StringBuilder sb, String value, int width) {
+        sb.append(value);
+        for(int i = value.length(); i < width; i++) {
+            sb.append(' ');
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Reads the reports of several assembly analysers into a stats table.  Reports are found and parsed concurrently,
+ * across analysers and across the report files of each analyser, but the resulting updates are applied to the table
+ * one at a time, under the table's lock, and in analyser order.  So where two analysers provide the same metric, the
+ * later one wins, just as if they had been read one after the other.  The one exception is CONTIGUITY, whose updates
+ * are always applied first.  Its metrics overlap with QUAST's, so this means QUAST's values are kept whenever both
+ * analysers are used, whatever order they are configured in.  A {@link Listener} can be told after each update, for
+ * example to re-rank the assemblies as their metrics arrive.
+ */
+public class ReportIngester {
+
+    private static Logger log = LoggerFactory.getLogger(ReportIngester.class);
+
+    /**
+     * Reading reports is mostly waiting on the file system, so a few threads help even on a small machine
+     */
+    public static final int DEFAULT_THREADS = Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Told after each update is applied to the table, while the table's lock is still held
+     */
+    public interface Listener {
+        void updated(AssemblyStatsTable table) throws IOException;
+    }
+
+    /**
+     * Reads the reports from each analyser into the table
+     * @param table The table to update
+     * @param analysers The analysers whose reports should be read, in the order their updates should be applied, apart
+     *                  from CONTIGUITY which always goes first
+     * @param reportDirs The report directory for each analyser
+     * @param threads The number of threads to read reports with
+     * @throws IOException Thrown if a report could not be read, or refers to an assembly that is not in the table
+     * @throws InterruptedException Thrown if interrupted while waiting for reports to be read
+     */
+    public static void ingest(AssemblyStatsTable table, List<AssemblyAnalyser> analysers, List<File> reportDirs, int threads)
+            throws IOException, InterruptedException {
+        ingest(table, analysers, reportDirs, threads, null);
+    }
+
+    /**
+     * Reads the reports from each analyser into the table, telling the listener after each update
+     * @param table The table to update
+     * @param analysers The analysers whose reports should be read, in the order their updates should be applied, apart
+     *                  from CONTIGUITY which always goes first
+     * @param reportDirs The report directory for each analyser
+     * @param threads The number of threads to read reports with
+     * @param listener Told after each update is applied, may be null
+     * @throws IOException Thrown if a report could not be read, or refers to an assembly that is not in the table
+     * @throws InterruptedException Thrown if interrupted while waiting for reports to be read
+     */
+    public static void ingest(AssemblyStatsTable table, List<AssemblyAnalyser> analysers, List<File> reportDirs, int threads,
+                              Listener listener) throws IOException, InterruptedException {
+
+        if (analysers.size() != reportDirs.size()) {
+            throw new IllegalArgumentException("Need one report directory per analyser");
+        }
+
+        // Apply CONTIGUITY's updates first, so external tools that provide the same metrics take precedence
+        List<AssemblyAnalyser> ordered = new ArrayList<>();
+        List<File> orderedDirs = new ArrayList<>();
+        for (int i = 0; i < analysers.size(); i++) {
+            if (analysers.get(i) instanceof ContiguityAsmAnalyser) {
+                ordered.add(analysers.get(i));
+                orderedDirs.add(reportDirs.get(i));
+            }
+        }
+        for (int i = 0; i < analysers.size(); i++) {
+            if (!(analysers.get(i) instanceof ContiguityAsmAnalyser)) {
+                ordered.add(analysers.get(i));
+                orderedDirs.add(reportDirs.get(i));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+
+        try {
+            // Find the reports of all analysers at once
+            List<Future<List<Callable<TableUpdate>>>> found = new ArrayList<>();
+            for (int i = 0; i < ordered.size(); i++) {
+                final AssemblyAnalyser analyser = ordered.get(i);
+                final File reportDir = orderedDirs.get(i);
+                found.add(executor.submit(new Callable<List<Callable<TableUpdate>>>() {
+                    @Override
+                    public List<Callable<TableUpdate>> call() throws IOException {
+                        return analyser.createReportReaders(reportDir);
+                    }
+                }));
+            }
+
+            // Read all reports concurrently
+            List<Future<TableUpdate>> updates = new ArrayList<>();
+            for (Future<List<Callable<TableUpdate>>> readers : found) {
+                for (Callable<TableUpdate> reader : get(readers)) {
+                    updates.add(executor.submit(reader));
+                }
+            }
+
+            log.info("Reading " + updates.size() + " reports from " + analysers.size() + " analysers using " +
+                    threads + " threads");
+
+            // Apply the updates in order as they become available
+            for (Future<TableUpdate> update : updates) {
+                TableUpdate u = get(update);
+                synchronized (table) {
+                    u.apply(table);
+                    if (listener != null) {
+                        listener.updated(table);
+                    }
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the reports from a single analyser into the table, in the calling thread
+     * @param table The table to update
+     * @param analyser The analyser whose reports should be read
+     * @param reportDir The location of the analyser's reports
+     * @throws IOException Thrown if a report could not be read, or refers to an assembly that is not in the table
+     */
+    public static void ingest(AssemblyStatsTable table, AssemblyAnalyser analyser, File reportDir) throws IOException {
+
+        for (Callable<TableUpdate> reader : analyser.createReportReaders(reportDir)) {
+
+            TableUpdate u;
+            try {
+                u = reader.call();
+            }
+            catch (IOException | RuntimeException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            synchronized (table) {
+                u.apply(table);
+            }
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.IOException;
+
+/**
+ * A set of changes to the stats table, read from an analyser's reports and ready to be applied.
+ */
+public interface TableUpdate {
+
+    /**
+     * Applies these changes to the table.  Callers must hold the table's lock if other threads may access it.
+     * @param table The table to update
+     * @throws IOException Thrown if the table doesn't contain an assembly mentioned in the reports
+     */
+    void apply(AssemblyStatsTable table) throws IOException;
+}
@@ -36,5 +36,6 @@ public interface AssemblySelector {
             AssemblyStatsTable table,
             Organism organism,
             QuastV23.AssemblyStats refStats,
-            boolean cegmaEnabled);
+            boolean cegmaEnabled,
+            boolean katEnabled);
 }
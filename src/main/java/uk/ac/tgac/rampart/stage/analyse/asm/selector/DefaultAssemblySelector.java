@@ -34,6 +34,10 @@ import java.util.Arrays;
 import java.util.List;
 
 /**
+ * Scores each assembly from its weighted, normalised metrics and selects the assembly with the highest score.  The
+ * normalised metrics are kept between calls, so once an assembly has been selected the table can be re-ranked with
+ * {@link #rescore()} as rows are added or analysers fill in metrics, rescaling only what has changed.
+ *
  * User: maplesod
  * Date: 01/02/13
  * Time: 12:39
@@ -47,6 +51,13 @@ public class DefaultAssemblySelector implements AssemblySelector {
     private double[] problemWeightings;
     private double[] conservationWeightings;
 
+    // Scoring state from the last selection
+    private AssemblyStatsTable table;
+    private SelectionTargets targets;
+    private ContiguityMetrics.Matrix contiguity;
+    private ProblemMetrics.Matrix problems;
+    private ConservationMetrics.Matrix conservation;
+
     public DefaultAssemblySelector(File weightingsFile) throws IOException {
 
         // Initially set to defaults
@@ -63,88 +74,141 @@ public class DefaultAssemblySelector implements AssemblySelector {
     public AssemblyStats selectAssembly(AssemblyStatsTable table,
                                Organism organism,
                                QuastV23.AssemblyStats refStats,
-                               boolean cegmaEnabled) {
+                               boolean cegmaEnabled,
+                               boolean katEnabled) {
+
+        return this.selectAssembly(table, SelectionTargets.create(organism, refStats, cegmaEnabled, katEnabled));
+    }
 
-        boolean referenceProvided = refStats != null;
-        boolean estimatesProvided = organism.getEstimated() != null;
+    /**
+     * Selects the best assembly given the expected genome properties directly, rather than from an organism and
+     * reference.  Useful for re-selecting from saved stats without the original job configuration.
+     * @param table The assemblies to select from
+     * @param targets The reference or estimated genome properties to score against
+     * @return The best assembly
+     */
+    public AssemblyStats selectAssembly(AssemblyStatsTable table, SelectionTargets targets) {
 
         // Acquire metric groups
-        ContiguityMetrics.Matrix contiguity = new ContiguityMetrics.Matrix(table, referenceProvided);
-        ProblemMetrics.Matrix problems = new ProblemMetrics.Matrix(table, referenceProvided);
+        ContiguityMetrics.Matrix contiguity = new ContiguityMetrics.Matrix(table, targets.isReferenceProvided());
+        ProblemMetrics.Matrix problems = new ProblemMetrics.Matrix(table, targets.isReferenceProvided(), targets.isKatEnabled());
         ConservationMetrics.Matrix conservation = new ConservationMetrics.Matrix(table,
-                referenceProvided ? refStats.getTotalLengthGt0() : estimatesProvided ? organism.getEstimated().getEstGenomeSize() : 0,
-                referenceProvided ? refStats.getGcPc() : estimatesProvided ? organism.getEstimated().getEstGcPercentage() : 0.0,
-                referenceProvided ? refStats.getNbGenes() : estimatesProvided ? organism.getEstimated().getEstNbGenes() : 0,
-                cegmaEnabled);
+                targets.getGenomeSize(),
+                targets.getGcPercentage(),
+                targets.getNbGenes(),
+                targets.isCegmaEnabled(),
+                targets.isKatEnabled());
         log.info("Acquired metrics");
 
-        log.debug("Contiguity");
-        log.debug(contiguity.toString());
-
-        log.debug("Problems");
-        log.debug(problems.toString());
-
-        log.debug("Conservation");
-        log.debug(conservation.toString());
-
-        // Normalise matrices
-        contiguity.normalise();
-        problems.normalise();
-        conservation.normalise();
-        log.info("Scaled metrics");
-
-        log.debug("Contiguity");
-        log.debug(contiguity.toString());
+        this.table = table;
+        this.targets = targets;
+        this.contiguity = contiguity;
+        this.problems = problems;
+        this.conservation = conservation;
 
-        log.debug("Problems");
-        log.debug(problems.toString());
+        return this.rescore();
+    }
 
-        log.debug("Conservation");
-        log.debug(conservation.toString());
+    /**
+     * Re-ranks the table given to the last call of {@link #selectAssembly}, after assemblies have been added to it or
+     * their metrics have changed.  Only metric columns that have changed are rescaled, and within those only the
+     * changed rows, unless a change alters the scaling of the whole column.
+     * @return The best assembly
+     */
+    public AssemblyStats rescore() {
 
+        if (this.table == null) {
+            throw new IllegalStateException("No assemblies have been selected yet");
+        }
 
-        // Apply weightings
-        contiguity.weight(contiguityWeightings);
-        problems.weight(problemWeightings);
-        conservation.weight(conservationWeightings);
-        log.info("Applied weightings");
+        // Normalise, weight and score the metric groups
+        double[] contiguityScores = this.contiguity.update(contiguityWeightings);
+        double[] problemScores = this.problems.update(problemWeightings);
+        double[] conservationsScores = this.conservation.update(conservationWeightings);
+        log.debug("Calculated scores for each metric group");
 
         log.debug("Contiguity");
-        log.debug(contiguity.toString());
+        log.debug(this.contiguity.toString());
 
         log.debug("Problems");
-        log.debug(problems.toString());
+        log.debug(this.problems.toString());
 
         log.debug("Conservation");
-        log.debug(conservation.toString());
-
-        // Calc scores for groups
-        double[] contiguityScores = contiguity.calcScores();
-        double[] problemScores = problems.calcScores();
-        double[] conservationsScores = conservation.calcScores();
-        log.info("Calculated scores for each metric group");
+        log.debug(this.conservation.toString());
 
         log.debug("Contiguity: " + Arrays.toString(contiguityScores));
         log.debug("Problems: " + Arrays.toString(problemScores));
         log.debug("Conservation: " + Arrays.toString(conservationsScores));
 
-        table.addGroupScores(contiguityScores, problemScores, conservationsScores);
+        this.table.addGroupScores(contiguityScores, problemScores, conservationsScores);
 
         AssemblyGroupStats.Matrix finalScores = new AssemblyGroupStats.Matrix(contiguityScores, problemScores, conservationsScores);
         finalScores.weight(groupWeightings);
         double[] scores = finalScores.calcScores();
-        log.info("Weightings applied to group scores.  Final scores calculated.");
+        log.debug("Weightings applied to group scores.  Final scores calculated.");
 
         // Save merged matrix with added scores
-        table.addScores(scores);
+        this.table.addScores(scores);
         log.debug("Final scores are: " + ArrayUtils.toString(scores));
 
         // Report best assembly stats
-        log.info("Best assembly stats: " + table.getBest().toString());
+        AssemblyStats best = this.table.getBest();
+        log.debug("Best assembly stats: " + best.toString());
+
+        return best;
+    }
+
 
-        return table.getBest();
+    /**
+     * @return The table given to the last call of {@link #selectAssembly}
+     */
+    protected AssemblyStatsTable getTable() {
+        return this.table;
     }
 
+    /**
+     * @return The genome properties used in the last call of {@link #selectAssembly}
+     */
+    public SelectionTargets getTargets() {
+        return this.targets;
+    }
+
+    /**
+     * Creates a weighting robustness test over the table given to the last call of {@link #selectAssembly}, using the
+     * same normalised metrics and weightings
+     * @return A robustness test ready to run
+     */
+    public WeightingRobustness createRobustnessTest() {
+
+        if (this.table == null) {
+            throw new IllegalStateException("No assemblies have been selected yet");
+        }
+
+        MetricMatrix[] groups = new MetricMatrix[] { this.contiguity, this.problems, this.conservation };
+        double[][] weightings = new double[][] { this.contiguityWeightings, this.problemWeightings, this.conservationWeightings };
+
+        int nbMetrics = 0;
+        for (MetricMatrix group : groups) {
+            nbMetrics += group.getNbMetrics();
+        }
+
+        double[][] values = new double[nbMetrics][];
+        double[] metricWeights = new double[nbMetrics];
+        int[] metricGroups = new int[nbMetrics];
+
+        int m = 0;
+        for (int g = 0; g < groups.length; g++) {
+            double[][] normalised = groups[g].getNormalised();
+            for (int j = 0; j < normalised.length; j++) {
+                values[m] = normalised[j];
+                metricWeights[m] = weightings[g][j];
+                metricGroups[m] = g;
+                m++;
+            }
+        }
+
+        return new WeightingRobustness(values, metricWeights, metricGroups, this.groupWeightings);
+    }
 
     protected void loadWeightings(File weightingsFile) throws IOException {
 
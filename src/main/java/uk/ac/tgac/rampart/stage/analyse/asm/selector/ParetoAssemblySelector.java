@@ -0,0 +1,199 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.selector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Selects the assembly with the best weighted score, as {@link DefaultAssemblySelector} does, and also finds the
+ * Pareto front of assemblies over the contiguity, problem and conservation group scores.  An assembly is on the front
+ * if no other assembly is at least as good in all three groups and better in at least one.  The front is a shortlist
+ * of good candidates that doesn't depend on how the three groups are weighted against each other.
+ *
+ * The front is found with a sweep in O(n log n): assemblies are visited in decreasing order of contiguity, and a
+ * staircase of the best (problems, conservation) pairs seen so far is kept in a sorted map, so each assembly is checked
+ * against all previously visited assemblies with a single lookup.
+ */
+public class ParetoAssemblySelector extends DefaultAssemblySelector {
+
+    private static Logger log = LoggerFactory.getLogger(ParetoAssemblySelector.class);
+
+    private List<AssemblyStats> front;
+
+    public ParetoAssemblySelector(File weightingsFile) throws IOException {
+        super(weightingsFile);
+        this.front = new ArrayList<>();
+    }
+
+    @Override
+    public AssemblyStats rescore() {
+
+        AssemblyStats best = super.rescore();
+
+        this.front = findFront(this.getTable());
+
+        log.debug("Found " + this.front.size() + " assemblies on the Pareto front out of " + this.getTable().size());
+
+        return best;
+    }
+
+    /**
+     * @return The assemblies on the Pareto front from the last scoring, in table order
+     */
+    public List<AssemblyStats> getFront() {
+        return this.front;
+    }
+
+    /**
+     * Finds the non-dominated assemblies in the table, using the group scores from the last scoring
+     * @param table The scored table
+     * @return The assemblies on the Pareto front, in table order
+     */
+    public static List<AssemblyStats> findFront(AssemblyStatsTable table) {
+
+        int n = table.size();
+
+        // Collapse identical points, which never dominate each other
+        Map<Point, List<Integer>> points = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            AssemblyStats stats = table.get(i);
+            Point p = new Point(
+                    stats.getContiguity().getScore(),
+                    stats.getProblems().getScore(),
+                    stats.getConservation().getScore());
+
+            List<Integer> rows = points.get(p);
+            if (rows == null) {
+                rows = new ArrayList<>();
+                points.put(p, rows);
+            }
+            rows.add(i);
+        }
+
+        List<Point> sorted = new ArrayList<>(points.keySet());
+        Collections.sort(sorted);
+
+        // Staircase of non-dominated (y, z) pairs seen so far, y increasing and z strictly decreasing
+        TreeMap<Double, Double> staircase = new TreeMap<>();
+
+        List<Integer> frontRows = new ArrayList<>();
+
+        for (Point p : sorted) {
+
+            // All points seen so far have x >= p.x.  The highest z among those with y >= p.y is at the lowest such y.
+            Map.Entry<Double, Double> above = staircase.ceilingEntry(p.y);
+            if (above != null && above.getValue() >= p.z) {
+                continue;
+            }
+
+            frontRows.addAll(points.get(p));
+
+            // Remove steps now dominated in (y, z) by this point
+            Map.Entry<Double, Double> below = staircase.floorEntry(p.y);
+            while (below != null && below.getValue() <= p.z) {
+                staircase.remove(below.getKey());
+                below = staircase.floorEntry(p.y);
+            }
+
+            staircase.put(p.y, p.z);
+        }
+
+        Collections.sort(frontRows);
+
+        List<AssemblyStats> front = new ArrayList<>();
+        for (int row : frontRows) {
+            front.add(table.get(row));
+        }
+
+        return front;
+    }
+
+    /**
+     * Writes the assemblies on the Pareto front from the last selection as a tab separated file
+     * @param outputFile The file to write
+     * @throws IOException Thrown if there was a problem writing the file
+     */
+    public void saveFront(File outputFile) throws IOException {
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8)))) {
+
+            writer.println("index\tdesc\tdataset\tasm_path\tcontiguity_score\tproblems_score\tconservation_score\tfinal_score");
+
+            for (AssemblyStats stats : this.front) {
+                writer.println(stats.getIndex() + "\t" + stats.getDesc() + "\t" + stats.getDataset() + "\t" +
+                        stats.getFilePath() + "\t" +
+                        stats.getContiguity().getScore() + "\t" +
+                        stats.getProblems().getScore() + "\t" +
+                        stats.getConservation().getScore() + "\t" +
+                        stats.getFinalScore());
+            }
+        }
+    }
+
+    /**
+     * A point in group score space.  Sorts by decreasing x, then y, then z.
+     */
+    private static class Point implements Comparable<Point> {
+
+        private final double x;
+        private final double y;
+        private final double z;
+
+        private Point(double x, double y, double z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int compareTo(Point o) {
+            int c = Double.compare(o.x, this.x);
+            if (c == 0) {
+                c = Double.compare(o.y, this.y);
+            }
+            if (c == 0) {
+                c = Double.compare(o.z, this.z);
+            }
+            return c;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Point)) {
+                return false;
+            }
+            Point p = (Point) o;
+            return Double.compare(p.x, this.x) == 0 && Double.compare(p.y, this.y) == 0 && Double.compare(p.z, this.z) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = Double.doubleToLongBits(this.x);
+            h = h * 31 + Double.doubleToLongBits(this.y);
+            h = h * 31 + Double.doubleToLongBits(this.z);
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
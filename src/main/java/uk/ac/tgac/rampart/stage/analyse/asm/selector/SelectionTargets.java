@@ -0,0 +1,135 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.selector;
+
+import uk.ac.tgac.conan.core.data.Organism;
+import uk.ac.tgac.conan.process.asm.stats.QuastV23;
+
+import java.io.*;
+import java.util.Properties;
+
+/**
+ * The expected properties of the genome that assemblies are scored against during selection, taken either from a
+ * reference or from the organism estimates.  These are saved alongside the selection results so that assemblies can be
+ * re-selected later from the saved stats alone.
+ */
+public class SelectionTargets {
+
+    private static final String KEY_REFERENCE_PROVIDED = "reference_provided";
+    private static final String KEY_GENOME_SIZE = "genome_size";
+    private static final String KEY_GC_PERCENTAGE = "gc_percentage";
+    private static final String KEY_NB_GENES = "nb_genes";
+    private static final String KEY_CEGMA_ENABLED = "cegma_enabled";
+    private static final String KEY_KAT_ENABLED = "kat_enabled";
+
+    private boolean referenceProvided;
+    private long genomeSize;
+    private double gcPercentage;
+    private int nbGenes;
+    private boolean cegmaEnabled;
+    private boolean katEnabled;
+
+    public SelectionTargets(boolean referenceProvided, long genomeSize, double gcPercentage, int nbGenes, boolean cegmaEnabled,
+                            boolean katEnabled) {
+        this.referenceProvided = referenceProvided;
+        this.genomeSize = genomeSize;
+        this.gcPercentage = gcPercentage;
+        this.nbGenes = nbGenes;
+        this.cegmaEnabled = cegmaEnabled;
+        this.katEnabled = katEnabled;
+    }
+
+    /**
+     * Creates targets from the reference stats if available, otherwise from the organism's estimates.  If neither are
+     * available the targets are left at 0.
+     */
+    public static SelectionTargets create(Organism organism, QuastV23.AssemblyStats refStats, boolean cegmaEnabled,
+                                          boolean katEnabled) {
+
+        boolean referenceProvided = refStats != null;
+        boolean estimatesProvided = organism != null && organism.getEstimated() != null;
+
+        return new SelectionTargets(
+                referenceProvided,
+                referenceProvided ? refStats.getTotalLengthGt0() : estimatesProvided ? organism.getEstimated().getEstGenomeSize() : 0,
+                referenceProvided ? refStats.getGcPc() : estimatesProvided ? organism.getEstimated().getEstGcPercentage() : 0.0,
+                referenceProvided ? refStats.getNbGenes() : estimatesProvided ? organism.getEstimated().getEstNbGenes() : 0,
+                cegmaEnabled,
+                katEnabled);
+    }
+
+    public static SelectionTargets load(File file) throws IOException {
+
+        Properties properties = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            properties.load(in);
+        }
+
+        try {
+            return new SelectionTargets(
+                    Boolean.parseBoolean(properties.getProperty(KEY_REFERENCE_PROVIDED, "false")),
+                    Long.parseLong(properties.getProperty(KEY_GENOME_SIZE, "0")),
+                    Double.parseDouble(properties.getProperty(KEY_GC_PERCENTAGE, "0.0")),
+                    Integer.parseInt(properties.getProperty(KEY_NB_GENES, "0")),
+                    Boolean.parseBoolean(properties.getProperty(KEY_CEGMA_ENABLED, "false")),
+                    Boolean.parseBoolean(properties.getProperty(KEY_KAT_ENABLED, "false")));
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid selection targets in " + file.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    public void save(File file) throws IOException {
+
+        Properties properties = new Properties();
+        properties.setProperty(KEY_REFERENCE_PROVIDED, Boolean.toString(this.referenceProvided));
+        properties.setProperty(KEY_GENOME_SIZE, Long.toString(this.genomeSize));
+        properties.setProperty(KEY_GC_PERCENTAGE, Double.toString(this.gcPercentage));
+        properties.setProperty(KEY_NB_GENES, Integer.toString(this.nbGenes));
+        properties.setProperty(KEY_CEGMA_ENABLED, Boolean.toString(this.cegmaEnabled));
+        properties.setProperty(KEY_KAT_ENABLED, Boolean.toString(this.katEnabled));
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            properties.store(out, "RAMPART assembly selection targets");
+        }
+    }
+
+    public boolean isReferenceProvided() {
+        return referenceProvided;
+    }
+
+    public long getGenomeSize() {
+        return genomeSize;
+    }
+
+    public double getGcPercentage() {
+        return gcPercentage;
+    }
+
+    public int getNbGenes() {
+        return nbGenes;
+    }
+
+    public boolean isCegmaEnabled() {
+        return cegmaEnabled;
+    }
+
+    public boolean isKatEnabled() {
+        return katEnabled;
+    }
+}
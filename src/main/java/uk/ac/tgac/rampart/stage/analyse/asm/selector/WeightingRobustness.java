@@ -0,0 +1,361 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.selector;
+
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tests how much the choice of best assembly depends on the exact weightings used.  Thousands of weighting vectors are
+ * sampled around the configured weightings, each metric and group weighting being scaled by log-normal noise and then
+ * renormalised so each group keeps its original total.  All assemblies are scored against every sampled vector, and
+ * the distribution of each assembly's rank and how often it comes first are reported.
+ *
+ * Samples are split across a fork/join pool.  Each sample draws its noise from its own seed, so results do not depend
+ * on the number of threads.
+ */
+public class WeightingRobustness {
+
+    public static final int DEFAULT_SAMPLES = 1000;
+    public static final double DEFAULT_SPREAD = 0.25;
+    public static final long DEFAULT_SEED = 0x524f42555354L;
+    public static final int TOP_N = 10;
+
+    private static final int SAMPLES_PER_TASK = 64;
+
+    // Normalised, unweighted metric values: [metric][assembly]
+    private final double[][] values;
+    private final double[] metricWeights;
+    private final int[] metricGroups;
+    private final double[] groupWeights;
+    private final int nbAssemblies;
+
+    /**
+     * @param values Normalised but unweighted values for each metric, indexed by metric then assembly
+     * @param metricWeights The configured weighting for each metric
+     * @param metricGroups The group each metric belongs to
+     * @param groupWeights The configured weighting for each group
+     */
+    public WeightingRobustness(double[][] values, double[] metricWeights, int[] metricGroups, double[] groupWeights) {
+
+        if (values.length == 0 || values.length != metricWeights.length || values.length != metricGroups.length) {
+            throw new IllegalArgumentException("Need one weighting and one group for each metric");
+        }
+
+        this.values = values;
+        this.metricWeights = metricWeights;
+        this.metricGroups = metricGroups;
+        this.groupWeights = groupWeights;
+        this.nbAssemblies = values[0].length;
+    }
+
+    /**
+     * Scores all assemblies against the given number of sampled weighting vectors
+     * @param samples Number of weighting vectors to sample
+     * @param spread Standard deviation of the log-normal noise applied to each weighting
+     * @param seed Seed for the sampled weightings
+     * @param threads Number of threads to use
+     * @return Rank statistics for each assembly
+     */
+    public Report run(int samples, double spread, long seed, int threads) {
+
+        if (samples < 1) {
+            throw new IllegalArgumentException("Need at least one sample");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            Report report = pool.invoke(new SampleTask(0, samples, spread, seed));
+            report.samples = samples;
+            return report;
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Draws the effective (group * metric) weighting of each metric for one sample
+     */
+    protected double[] sampleWeights(Random rng, double spread) {
+
+        int nbGroups = this.groupWeights.length;
+
+        double[] groups = new double[nbGroups];
+        double groupTotal = 0.0;
+        double sampledGroupTotal = 0.0;
+        for (int g = 0; g < nbGroups; g++) {
+            groups[g] = this.groupWeights[g] * Math.exp(spread * rng.nextGaussian());
+            groupTotal += this.groupWeights[g];
+            sampledGroupTotal += groups[g];
+        }
+
+        double[] metricTotals = new double[nbGroups];
+        double[] sampledMetricTotals = new double[nbGroups];
+        double[] metrics = new double[this.metricWeights.length];
+        for (int m = 0; m < metrics.length; m++) {
+            int g = this.metricGroups[m];
+            metrics[m] = this.metricWeights[m] * Math.exp(spread * rng.nextGaussian());
+            metricTotals[g] += this.metricWeights[m];
+            sampledMetricTotals[g] += metrics[m];
+        }
+
+        double[] effective = new double[metrics.length];
+        for (int m = 0; m < metrics.length; m++) {
+            int g = this.metricGroups[m];
+            double group = sampledGroupTotal == 0.0 ? 0.0 : groups[g] * groupTotal / sampledGroupTotal;
+            double metric = sampledMetricTotals[g] == 0.0 ? 0.0 : metrics[m] * metricTotals[g] / sampledMetricTotals[g];
+            effective[m] = group * metric;
+        }
+
+        return effective;
+    }
+
+    /**
+     * Weighted sum of the metrics for every assembly.  Loops over metrics then assemblies so the inner loop runs over
+     * contiguous arrays.
+     */
+    protected void score(double[] weights, double[] scores) {
+
+        Arrays.fill(scores, 0.0);
+
+        for (int m = 0; m < weights.length; m++) {
+
+            double w = weights[m];
+            if (w == 0.0) {
+                continue;
+            }
+
+            double[] column = this.values[m];
+            for (int i = 0; i < this.nbAssemblies; i++) {
+                scores[i] += w * column[i];
+            }
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private class SampleTask extends RecursiveTask<Report> {
+
+        private final int from;
+        private final int to;
+        private final double spread;
+        private final long seed;
+
+        private SampleTask(int from, int to, double spread, long seed) {
+            this.from = from;
+            this.to = to;
+            this.spread = spread;
+            this.seed = seed;
+        }
+
+        @Override
+        protected Report compute() {
+
+            if (this.to - this.from > SAMPLES_PER_TASK) {
+                int mid = this.from + (this.to - this.from) / 2;
+                SampleTask left = new SampleTask(this.from, mid, this.spread, this.seed);
+                left.fork();
+                Report right = new SampleTask(mid, this.to, this.spread, this.seed).compute();
+                Report result = left.join();
+                result.merge(right);
+                return result;
+            }
+
+            Report report = new Report(nbAssemblies);
+            double[] scores = new double[nbAssemblies];
+            double[] sorted = new double[nbAssemblies];
+
+            for (int s = this.from; s < this.to; s++) {
+
+                Random rng = new Random(mix(this.seed + s * 0x9e3779b97f4a7c15L));
+
+                score(sampleWeights(rng, this.spread), scores);
+
+                System.arraycopy(scores, 0, sorted, 0, nbAssemblies);
+                Arrays.sort(sorted);
+
+                int winner = 0;
+                for (int i = 0; i < nbAssemblies; i++) {
+
+                    // Rank 1 is best.  Tied assemblies share the best rank of the tie.
+                    int rank = nbAssemblies - upperBound(sorted, scores[i]) + 1;
+                    report.add(i, rank);
+
+                    if (scores[i] > scores[winner]) {
+                        winner = i;
+                    }
+                }
+
+                report.wins[winner]++;
+            }
+
+            return report;
+        }
+    }
+
+    /**
+     * @return The number of values in the sorted array that are less than or equal to the key
+     */
+    private static int upperBound(double[] sorted, double key) {
+
+        int lo = 0;
+        int hi = sorted.length;
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= key) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+
+        return lo;
+    }
+
+    /**
+     * Rank statistics for each assembly over all samples
+     */
+    public static class Report {
+
+        private int samples;
+        private final long[] wins;
+        private final long[] topN;
+        private final double[] rankSum;
+        private final double[] rankSumSq;
+        private final int[] bestRank;
+        private final int[] worstRank;
+
+        private Report(int nbAssemblies) {
+            this.samples = 0;
+            this.wins = new long[nbAssemblies];
+            this.topN = new long[nbAssemblies];
+            this.rankSum = new double[nbAssemblies];
+            this.rankSumSq = new double[nbAssemblies];
+            this.bestRank = new int[nbAssemblies];
+            this.worstRank = new int[nbAssemblies];
+            Arrays.fill(this.bestRank, Integer.MAX_VALUE);
+        }
+
+        private void add(int assembly, int rank) {
+            this.rankSum[assembly] += rank;
+            this.rankSumSq[assembly] += (double) rank * rank;
+            this.bestRank[assembly] = Math.min(this.bestRank[assembly], rank);
+            this.worstRank[assembly] = Math.max(this.worstRank[assembly], rank);
+            if (rank <= TOP_N) {
+                this.topN[assembly]++;
+            }
+        }
+
+        private void merge(Report other) {
+            for (int i = 0; i < this.wins.length; i++) {
+                this.wins[i] += other.wins[i];
+                this.topN[i] += other.topN[i];
+                this.rankSum[i] += other.rankSum[i];
+                this.rankSumSq[i] += other.rankSumSq[i];
+                this.bestRank[i] = Math.min(this.bestRank[i], other.bestRank[i]);
+                this.worstRank[i] = Math.max(this.worstRank[i], other.worstRank[i]);
+            }
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+
+        public long getWins(int assembly) {
+            return this.wins[assembly];
+        }
+
+        public double getWinFrequency(int assembly) {
+            return (double) this.wins[assembly] / (double) this.samples;
+        }
+
+        public double getTopNFrequency(int assembly) {
+            return (double) this.topN[assembly] / (double) this.samples;
+        }
+
+        public double getMeanRank(int assembly) {
+            return this.rankSum[assembly] / this.samples;
+        }
+
+        public double getRankStdDev(int assembly) {
+            double mean = this.getMeanRank(assembly);
+            return Math.sqrt(Math.max(0.0, this.rankSumSq[assembly] / this.samples - mean * mean));
+        }
+
+        public int getBestRank(int assembly) {
+            return this.bestRank[assembly];
+        }
+
+        public int getWorstRank(int assembly) {
+            return this.worstRank[assembly];
+        }
+
+        /**
+         * @return The assembly that won the most samples
+         */
+        public int getMostFrequentWinner() {
+            int best = 0;
+            for (int i = 1; i < this.wins.length; i++) {
+                if (this.wins[i] > this.wins[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Writes the rank statistics for each assembly as a tab separated file
+         * @param table The table the assemblies were scored from, used to name them
+         * @param outputFile The file to write
+         * @throws IOException Thrown if there was a problem writing the file
+         */
+        public void save(AssemblyStatsTable table, File outputFile) throws IOException {
+
+            try (PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8)))) {
+
+                writer.println("index\tdesc\tdataset\twins\twin_freq\ttop" + TOP_N + "_freq\tmean_rank\tsd_rank\tbest_rank\tworst_rank");
+
+                for (int i = 0; i < this.wins.length; i++) {
+                    AssemblyStats stats = table.get(i);
+                    writer.println(stats.getIndex() + "\t" + stats.getDesc() + "\t" + stats.getDataset() + "\t" +
+                            this.wins[i] + "\t" +
+                            this.getWinFrequency(i) + "\t" +
+                            this.getTopNFrequency(i) + "\t" +
+                            this.getMeanRank(i) + "\t" +
+                            this.getRankStdDev(i) + "\t" +
+                            this.bestRank[i] + "\t" +
+                            this.worstRank[i]);
+                }
+            }
+        }
+    }
+}
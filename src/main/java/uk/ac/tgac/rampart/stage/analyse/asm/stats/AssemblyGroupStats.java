@@ -96,8 +96,8 @@ public class AssemblyGroupStats {
 
 
         @Override
-        public void normalise() {
-
+        protected Scaling.Method getScaling(int metric) {
+            return Scaling.NONE;
         }
 
         @Override
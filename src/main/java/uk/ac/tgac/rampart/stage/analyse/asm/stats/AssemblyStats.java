@@ -23,91 +23,128 @@ import uk.ac.ebi.fgpt.conan.util.StringJoiner;
 import java.util.Comparator;
 
 /**
+ * A single row of an {@link AssemblyStatsTable}.  All values are read from and written to the table's columns.  Stats
+ * created on their own get a private single row table, which is replaced by the destination table's row when the
+ * stats are added to a table.
+ *
  * User: maplesod
  * Date: 22/04/13
  * Time: 15:04
  */
 public class AssemblyStats implements Comparable<AssemblyStats> {
 
-    private int index;
-    private String desc;
-    private String dataset;
-    private String filePath;
-    private String bubblePath;
+    private AssemblyStatsTable table;
+    private int row;
+    private boolean detached;
 
     private ContiguityMetrics contiguity;
     private ProblemMetrics problems;
     private ConservationMetrics conservation;
 
-    private double finalScore;
-
     public AssemblyStats()
     {
-        this.index = 0;
-        this.desc = "";
-        this.dataset = "";
-        this.filePath = "";
-        this.bubblePath = "";
-        this.contiguity = new ContiguityMetrics();
-        this.problems = new ProblemMetrics();
-        this.conservation = new ConservationMetrics();
-        this.finalScore = 0.0;
+        AssemblyStatsTable own = new AssemblyStatsTable(1);
+        int ownRow = own.addRow();
+
+        this.contiguity = new ContiguityMetrics(own, ownRow);
+        this.problems = new ProblemMetrics(own, ownRow);
+        this.conservation = new ConservationMetrics(own, ownRow);
+        this.table = own;
+        this.row = ownRow;
+        this.detached = true;
+    }
+
+    AssemblyStats(AssemblyStatsTable table, int row) {
+        this.contiguity = new ContiguityMetrics(table, row);
+        this.problems = new ProblemMetrics(table, row);
+        this.conservation = new ConservationMetrics(table, row);
+        this.table = table;
+        this.row = row;
+        this.detached = false;
     }
 
     public AssemblyStats(String[] stats) {
         this();
 
         int i = 0;
-        this.index = Integer.parseInt(stats[i++]);
-        this.desc = stats[i++];
-        this.dataset = stats[i++];
-        this.filePath = stats[i++];
-        this.bubblePath = stats[i++];
+        this.setIndex(Integer.parseInt(stats[i++]));
+        this.setDesc(stats[i++]);
+        this.setDataset(stats[i++]);
+        this.setFilePath(stats[i++]);
+        this.setBubblePath(stats[i++]);
         this.contiguity.parseStrings((String[])ArrayUtils.subarray(stats, i, i + this.contiguity.getNbMetrics()));      i += this.contiguity.getNbMetrics();
         this.problems.parseStrings((String[])ArrayUtils.subarray(stats, i, i + this.problems.getNbMetrics()));          i += this.problems.getNbMetrics();
         this.conservation.parseStrings((String[])ArrayUtils.subarray(stats, i, i + this.conservation.getNbMetrics()));  i += this.conservation.getNbMetrics();
-        this.finalScore = Double.parseDouble(stats[i++]);
+        this.setFinalScore(Double.parseDouble(stats[i++]));
+    }
+
+    AssemblyStatsTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return The position of this row in its table
+     */
+    public int getRow() {
+        return row;
     }
 
+    boolean isDetached() {
+        return detached;
+    }
+
+    /**
+     * Makes this object a view of a row in another table
+     */
+    void bind(AssemblyStatsTable table, int row) {
+        this.table = table;
+        this.row = row;
+        this.detached = false;
+        this.contiguity.bind(table, row);
+        this.problems.bind(table, row);
+        this.conservation.bind(table, row);
+    }
 
     public int getIndex() {
-        return index;
+        return table.index[row];
     }
 
     public void setIndex(int index) {
-        this.index = index;
+        table.index[row] = index;
     }
 
     public String getDesc() {
-        return desc;
+        return table.desc[row];
     }
 
     public void setDesc(String desc) {
-        this.desc = desc;
+        table.desc[row] = desc;
+        table.invalidateNameIndex();
     }
 
     public String getDataset() {
-        return dataset;
+        return table.dataset[row];
     }
 
     public void setDataset(String dataset) {
-        this.dataset = dataset;
+        table.dataset[row] = dataset;
+        table.invalidateNameIndex();
     }
 
     public String getFilePath() {
-        return filePath;
+        return table.filePath[row];
     }
 
     public void setFilePath(String filePath) {
-        this.filePath = filePath;
+        table.filePath[row] = filePath;
     }
 
     public String getBubblePath() {
-        return bubblePath;
+        return table.bubblePath[row];
     }
 
     public void setBubblePath(String bubblePath) {
-        this.bubblePath = bubblePath;
+        table.bubblePath[row] = bubblePath;
     }
 
     public ContiguityMetrics getContiguity() {
@@ -115,7 +152,7 @@ public class AssemblyStats implements Comparable<AssemblyStats> {
     }
 
     public void setContiguity(ContiguityMetrics contiguity) {
-        this.contiguity = contiguity;
+        this.contiguity.copyFrom(contiguity);
     }
 
     public ProblemMetrics getProblems() {
@@ -123,7 +160,7 @@ public class AssemblyStats implements Comparable<AssemblyStats> {
     }
 
     public void setProblems(ProblemMetrics problems) {
-        this.problems = problems;
+        this.problems.copyFrom(problems);
     }
 
     public ConservationMetrics getConservation() {
@@ -131,15 +168,15 @@ public class AssemblyStats implements Comparable<AssemblyStats> {
     }
 
     public void setConservation(ConservationMetrics conservation) {
-        this.conservation = conservation;
+        this.conservation.copyFrom(conservation);
     }
 
     public double getFinalScore() {
-        return finalScore;
+        return table.finalScore[row];
     }
 
     public void setFinalScore(double finalScore) {
-        this.finalScore = finalScore;
+        table.finalScore[row] = finalScore;
     }
 
     public String getStatsFileHeader() {
@@ -172,10 +209,10 @@ public class AssemblyStats implements Comparable<AssemblyStats> {
     public String toString() {
 
         StringJoiner sj = new StringJoiner("\n");
-        sj.add("Assembly #: " + this.index);
-        sj.add("Description: " + this.desc);
-        sj.add("Dataset: " + this.dataset);
-        sj.add("Path to Assembly: " + this.filePath);
+        sj.add("Assembly #: " + this.getIndex());
+        sj.add("Description: " + this.getDesc());
+        sj.add("Dataset: " + this.getDataset());
+        sj.add("Path to Assembly: " + this.getFilePath());
         sj.add("Path to Bubble file (if present): " + (this.getBubblePath() == null || this.getBubblePath().trim().isEmpty() ? "NA" : this.getBubblePath()));
         sj.add(this.contiguity.toString());
         sj.add(this.problems.toString());
@@ -189,7 +226,7 @@ public class AssemblyStats implements Comparable<AssemblyStats> {
     @Override
     public int compareTo(AssemblyStats o) {
 
-        Double thisScore = this.finalScore;
+        Double thisScore = this.getFinalScore();
         Double thatScore = o.getFinalScore();
 
         return thisScore.compareTo(thatScore);
@@ -0,0 +1,391 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.stats;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary, memory mapped storage for an {@link AssemblyStatsTable}.  The file holds a header followed by one fixed width
+ * column per metric, so any cell can be located without reading the rest of the file.  Opening a file only reads the
+ * header; values are decoded from the mapping as they are requested.
+ *
+ * Layout (big endian):
+ * <pre>
+ * int     magic ("RSTB")
+ * int     version
+ * int     number of rows
+ * int     number of columns
+ * per column: modified UTF-8 name, byte type ('L' = integer, 'D' = floating point, 'S' = string)
+ * padding to an 8 byte boundary
+ * per column: 8 bytes per row.  Strings are stored as a 32 bit offset into the string heap followed by a 32 bit length
+ * string heap: UTF-8 bytes
+ * </pre>
+ *
+ * Columns are matched to the table by name, so files written before a metric was added can still be read; the missing
+ * metric is left at zero.
+ */
+public class AssemblyStatsFile {
+
+    public static final int MAGIC = 0x52535442;
+    public static final int VERSION = 1;
+
+    public static final byte TYPE_LONG = 'L';
+    public static final byte TYPE_DOUBLE = 'D';
+    public static final byte TYPE_STRING = 'S';
+
+    private static final int CELL_SIZE = 8;
+
+    private final File file;
+    private final ByteBuffer data;
+    private final int nbRows;
+    private final List<String> columnNames;
+    private final byte[] columnTypes;
+    private final int dataStart;
+    private final int heapStart;
+
+    private AssemblyStatsFile(File file, ByteBuffer data) throws IOException {
+
+        this.file = file;
+        this.data = data;
+
+        try {
+            if (data.getInt(0) != MAGIC) {
+                throw new IOException("Not a RAMPART stats file: " + file.getAbsolutePath());
+            }
+
+            int version = data.getInt(4);
+            if (version > VERSION) {
+                throw new IOException("Stats file " + file.getAbsolutePath() + " has version " + version +
+                        "; this version of RAMPART only supports up to version " + VERSION);
+            }
+
+            this.nbRows = data.getInt(8);
+            int nbColumns = data.getInt(12);
+
+            ByteBufferInputStream headerStream = new ByteBufferInputStream(data, 16);
+            DataInputStream header = new DataInputStream(headerStream);
+
+            List<String> names = new ArrayList<>();
+            this.columnTypes = new byte[nbColumns];
+            for (int i = 0; i < nbColumns; i++) {
+                String name = header.readUTF();
+                names.add(name);
+                this.columnTypes[i] = header.readByte();
+            }
+            this.columnNames = Collections.unmodifiableList(names);
+
+            this.dataStart = align(headerStream.position());
+            this.heapStart = this.dataStart + nbColumns * this.nbRows * CELL_SIZE;
+
+            if (this.heapStart > data.limit()) {
+                throw new IOException("Stats file is truncated: " + file.getAbsolutePath());
+            }
+        }
+        catch (EOFException | IndexOutOfBoundsException e) {
+            throw new IOException("Stats file is truncated: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Maps the given file and reads its header
+     * @param file The binary stats file
+     * @return The opened file
+     * @throws IOException Thrown if the file could not be read or is not a stats file
+     */
+    public static AssemblyStatsFile open(File file) throws IOException {
+
+        try (FileInputStream fis = new FileInputStream(file); FileChannel channel = fis.getChannel()) {
+
+            // The mapping remains valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            return new AssemblyStatsFile(file, buffer);
+        }
+    }
+
+    /**
+     * Checks whether the given file starts with the binary stats magic number
+     */
+    public static boolean isStatsFile(File file) throws IOException {
+
+        if (!file.isFile() || file.length() < 16) {
+            return false;
+        }
+
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            return dis.readInt() == MAGIC;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getNbRows() {
+        return nbRows;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    public byte getColumnType(int column) {
+        return this.columnTypes[column];
+    }
+
+    /**
+     * @return The index of the named column, ignoring case, or -1 if the file does not contain it
+     */
+    public int findColumn(String name) {
+
+        for (int i = 0; i < this.columnNames.size(); i++) {
+            if (this.columnNames.get(i).equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int cell(int column, int row) {
+
+        if (row < 0 || row >= this.nbRows) {
+            throw new IndexOutOfBoundsException("Row: " + row + "; Rows: " + this.nbRows);
+        }
+
+        return this.dataStart + (column * this.nbRows + row) * CELL_SIZE;
+    }
+
+    public long getLong(int column, int row) {
+        int pos = this.cell(column, row);
+        return this.columnTypes[column] == TYPE_DOUBLE ? (long)this.data.getDouble(pos) : this.data.getLong(pos);
+    }
+
+    public double getDouble(int column, int row) {
+        int pos = this.cell(column, row);
+        return this.columnTypes[column] == TYPE_DOUBLE ? this.data.getDouble(pos) : (double)this.data.getLong(pos);
+    }
+
+    public String getString(int column, int row) {
+
+        int pos = this.cell(column, row);
+
+        if (this.columnTypes[column] != TYPE_STRING) {
+            return this.columnTypes[column] == TYPE_DOUBLE ?
+                    Double.toString(this.data.getDouble(pos)) :
+                    Long.toString(this.data.getLong(pos));
+        }
+
+        int offset = this.data.getInt(pos);
+        int length = this.data.getInt(pos + 4);
+
+        byte[] bytes = new byte[length];
+        ByteBuffer dup = this.data.duplicate();
+        dup.position(this.heapStart + offset);
+        dup.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the whole file into a new table
+     * @return A table containing all rows in this file
+     * @throws IOException Thrown if a column in the file can't be converted to the table's type for that column
+     */
+    public AssemblyStatsTable toTable() throws IOException {
+
+        AssemblyStatsTable table = new AssemblyStatsTable(this.nbRows);
+        for (int i = 0; i < this.nbRows; i++) {
+            table.addRow();
+        }
+
+        String[] names = table.getColumnNames();
+        Object[] columns = table.getColumns();
+
+        for (int c = 0; c < names.length; c++) {
+
+            int fc = this.findColumn(names[c]);
+
+            if (fc == -1 || this.nbRows == 0) {
+                continue;
+            }
+
+            Object column = columns[c];
+
+            if (column instanceof String[]) {
+                String[] col = (String[]) column;
+                for (int i = 0; i < this.nbRows; i++) {
+                    col[i] = this.getString(fc, i);
+                }
+            }
+            else if (column instanceof long[]) {
+                long[] col = (long[]) column;
+                if (this.columnTypes[fc] == TYPE_LONG) {
+                    ByteBuffer dup = this.data.duplicate();
+                    dup.position(this.cell(fc, 0));
+                    dup.asLongBuffer().get(col, 0, this.nbRows);
+                }
+                else {
+                    for (int i = 0; i < this.nbRows; i++) {
+                        col[i] = this.getLong(fc, i);
+                    }
+                }
+            }
+            else if (column instanceof double[]) {
+                double[] col = (double[]) column;
+                if (this.columnTypes[fc] == TYPE_DOUBLE) {
+                    ByteBuffer dup = this.data.duplicate();
+                    dup.position(this.cell(fc, 0));
+                    dup.asDoubleBuffer().get(col, 0, this.nbRows);
+                }
+                else {
+                    for (int i = 0; i < this.nbRows; i++) {
+                        col[i] = this.getDouble(fc, i);
+                    }
+                }
+            }
+            else if (column instanceof int[]) {
+                int[] col = (int[]) column;
+                for (int i = 0; i < this.nbRows; i++) {
+                    col[i] = (int)this.getLong(fc, i);
+                }
+            }
+            else {
+                throw new IOException("Unsupported column type for " + names[c]);
+            }
+        }
+
+        table.invalidateNameIndex();
+        table.modifiedAll();
+
+        return table;
+    }
+
+    /**
+     * Writes the given table in binary format.  The file is written to a temporary file first and then atomically
+     * moved over the old one, so readers always see either the old or the new file in full.
+     * @param table The table to write
+     * @param file The file to write to
+     * @throws IOException Thrown if there was a problem writing the file
+     */
+    public static void write(AssemblyStatsTable table, File file) throws IOException {
+
+        String[] names = table.getColumnNames();
+        Object[] columns = table.getColumns();
+        int nbRows = table.size();
+
+        // Header
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(nbRows);
+        header.writeInt(names.length);
+        for (int c = 0; c < names.length; c++) {
+            header.writeUTF(names[c]);
+            header.writeByte(typeOf(columns[c]));
+        }
+        header.flush();
+        while (headerBytes.size() % CELL_SIZE != 0) {
+            headerBytes.write(0);
+        }
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+            headerBytes.writeTo(out);
+
+            ByteArrayOutputStream heap = new ByteArrayOutputStream();
+
+            for (Object column : columns) {
+
+                if (column instanceof String[]) {
+                    String[] col = (String[]) column;
+                    for (int i = 0; i < nbRows; i++) {
+                        byte[] bytes = (col[i] == null ? "" : col[i]).getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(heap.size());
+                        out.writeInt(bytes.length);
+                        heap.write(bytes);
+                    }
+                }
+                else if (column instanceof long[]) {
+                    long[] col = (long[]) column;
+                    for (int i = 0; i < nbRows; i++) {
+                        out.writeLong(col[i]);
+                    }
+                }
+                else if (column instanceof double[]) {
+                    double[] col = (double[]) column;
+                    for (int i = 0; i < nbRows; i++) {
+                        out.writeDouble(col[i]);
+                    }
+                }
+                else {
+                    int[] col = (int[]) column;
+                    for (int i = 0; i < nbRows; i++) {
+                        out.writeLong(col[i]);
+                    }
+                }
+            }
+
+            heap.writeTo(out);
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte typeOf(Object column) {
+        return column instanceof String[] ? TYPE_STRING : column instanceof double[] ? TYPE_DOUBLE : TYPE_LONG;
+    }
+
+    private static int align(int pos) {
+        return (pos + CELL_SIZE - 1) / CELL_SIZE * CELL_SIZE;
+    }
+
+    /**
+     * Reads a buffer from a given position without altering the buffer's own position
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer, int position) {
+            this.buffer = buffer.duplicate();
+            this.buffer.position(position);
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        private int position() {
+            return this.buffer.position();
+        }
+    }
+}
@@ -17,36 +17,372 @@
  */
 package uk.ac.tgac.rampart.stage.analyse.asm.stats;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-
-import static org.apache.commons.io.FileUtils.readLines;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 /**
+ * A table of assembly statistics, stored column-wise so that each metric lives in a single primitive array.  Rows are
+ * exposed as {@link AssemblyStats} views which read and write straight through to the columns, and the metric
+ * matrices used for scoring read the columns directly rather than copying every row.  Assemblies are indexed by
+ * their case-insensitive "dataset-description" name, so lookups do not need to scan the table.
+ *
+ * Tables are stored in the binary format described in {@link AssemblyStatsFile}.  The TSV and summary formats are
+ * exports for people to read, although TSV files can still be loaded.
+ *
+ * Tables are not thread safe.  Threads that share a table must synchronise on the table itself while using it, as
+ * {@link uk.ac.tgac.rampart.stage.analyse.asm.analysers.ReportIngester} does when merging reports.
+ *
  * User: maplesod
  * Date: 01/02/13
  * Time: 13:47
  */
-public class AssemblyStatsTable extends ArrayList<AssemblyStats> {
+public class AssemblyStatsTable implements Iterable<AssemblyStats> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Column positions, in the same order as the TSV header and getColumns()
+    static final int COL_INDEX = 0;
+    static final int COL_DESC = 1;
+    static final int COL_DATASET = 2;
+    static final int COL_ASM_PATH = 3;
+    static final int COL_BUBBLE_PATH = 4;
+    static final int COL_NB_SEQS = 5;
+    static final int COL_NB_SEQS_GT_1K = 6;
+    static final int COL_MAX_LEN = 7;
+    static final int COL_N50 = 8;
+    static final int COL_NA50 = 9;
+    static final int COL_L50 = 10;
+    static final int COL_CONTIGUITY_SCORE = 11;
+    static final int COL_N_PERC = 12;
+    static final int COL_NB_MA_REF = 13;
+    static final int COL_KMER_CN_ERROR = 14;
+    static final int COL_PROBLEMS_SCORE = 15;
+    static final int COL_NB_BASES = 16;
+    static final int COL_NB_BASES_GT_1K = 17;
+    static final int COL_GC_PERC = 18;
+    static final int COL_NB_GENES = 19;
+    static final int COL_CEG_COMPLETE = 20;
+    static final int COL_KMER_COMPLETE = 21;
+    static final int COL_CONSERVATION_SCORE = 22;
+    static final int COL_FINAL_SCORE = 23;
+    static final int NB_COLUMNS = 24;
+
+    // Columns added since the TSV layout was first used, which older TSV files don't have
+    private static final int[] ADDED_COLUMNS = new int[] { COL_KMER_CN_ERROR, COL_KMER_COMPLETE };
+
+    private int size;
+    private AssemblyStats[] rows;
+
+    // Identity columns
+    int[] index;
+    String[] desc;
+    String[] dataset;
+    String[] filePath;
+    String[] bubblePath;
+
+    // Contiguity columns
+    long[] nbSeqs;
+    long[] nbSeqsGt1K;
+    long[] maxLen;
+    long[] n50;
+    long[] na50;
+    long[] l50;
+    double[] contiguityScore;
+
+    // Problem columns
+    double[] nPercentage;
+    long[] nbMisassembliesFromRef;
+    double[] kmerCnError;
+    double[] problemsScore;
+
+    // Conservation columns
+    long[] nbBases;
+    long[] nbBasesGt1K;
+    double[] gcPercentage;
+    long[] nbGenes;
+    double[] cegComplete;
+    double[] kmerComplete;
+    double[] conservationScore;
+
+    double[] finalScore;
+
+    // Incremented whenever a value in the column changes, so scorers can tell which columns need rescaling
+    private final long[] columnVersions = new long[NB_COLUMNS];
+
+    // Lower case "dataset-desc" to row.  Rebuilt lazily after an assembly is renamed.
+    private Map<String, Integer> nameIndex;
+    private boolean nameIndexValid;
 
     public AssemblyStatsTable() {
-        super();
+        this(DEFAULT_CAPACITY);
+    }
+
+    public AssemblyStatsTable(int capacity) {
+        this.size = 0;
+        this.nameIndex = new HashMap<>();
+        this.nameIndexValid = true;
+        this.allocate(Math.max(1, capacity));
     }
 
     public AssemblyStatsTable(File statsFile) throws IOException {
-        super();
+        this();
         this.load(statsFile);
     }
 
     public AssemblyStatsTable(List<AssemblyStatsTable> tables) {
-        super();
+        this();
         this.mergeAll(tables);
     }
 
+    private void allocate(int capacity) {
+
+        this.rows = this.rows == null ? new AssemblyStats[capacity] : Arrays.copyOf(this.rows, capacity);
+
+        this.index = this.index == null ? new int[capacity] : Arrays.copyOf(this.index, capacity);
+        this.desc = this.desc == null ? new String[capacity] : Arrays.copyOf(this.desc, capacity);
+        this.dataset = this.dataset == null ? new String[capacity] : Arrays.copyOf(this.dataset, capacity);
+        this.filePath = this.filePath == null ? new String[capacity] : Arrays.copyOf(this.filePath, capacity);
+        this.bubblePath = this.bubblePath == null ? new String[capacity] : Arrays.copyOf(this.bubblePath, capacity);
+
+        this.nbSeqs = grow(this.nbSeqs, capacity);
+        this.nbSeqsGt1K = grow(this.nbSeqsGt1K, capacity);
+        this.maxLen = grow(this.maxLen, capacity);
+        this.n50 = grow(this.n50, capacity);
+        this.na50 = grow(this.na50, capacity);
+        this.l50 = grow(this.l50, capacity);
+        this.contiguityScore = grow(this.contiguityScore, capacity);
+
+        this.nPercentage = grow(this.nPercentage, capacity);
+        this.nbMisassembliesFromRef = grow(this.nbMisassembliesFromRef, capacity);
+        this.kmerCnError = grow(this.kmerCnError, capacity);
+        this.problemsScore = grow(this.problemsScore, capacity);
+
+        this.nbBases = grow(this.nbBases, capacity);
+        this.nbBasesGt1K = grow(this.nbBasesGt1K, capacity);
+        this.gcPercentage = grow(this.gcPercentage, capacity);
+        this.nbGenes = grow(this.nbGenes, capacity);
+        this.cegComplete = grow(this.cegComplete, capacity);
+        this.kmerComplete = grow(this.kmerComplete, capacity);
+        this.conservationScore = grow(this.conservationScore, capacity);
+
+        this.finalScore = grow(this.finalScore, capacity);
+    }
+
+    private static long[] grow(long[] column, int capacity) {
+        return column == null ? new long[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    private static double[] grow(double[] column, int capacity) {
+        return column == null ? new double[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public AssemblyStats get(int row) {
+
+        if (row < 0 || row >= this.size) {
+            throw new IndexOutOfBoundsException("Row: " + row + "; Size: " + this.size);
+        }
+
+        if (this.rows[row] == null) {
+            this.rows[row] = new AssemblyStats(this, row);
+        }
+
+        return this.rows[row];
+    }
+
+    /**
+     * Adds a new, empty row to the table
+     * @return The index of the new row
+     */
+    int addRow() {
+
+        if (this.size == this.rows.length) {
+            this.allocate(this.rows.length * 2);
+        }
+
+        int row = this.size++;
+
+        this.index[row] = 0;
+        this.desc[row] = "";
+        this.dataset[row] = "";
+        this.filePath[row] = "";
+        this.bubblePath[row] = "";
+
+        return row;
+    }
+
+    /**
+     * Copies the given stats into a new row at the end of this table.  If the stats object was created on its own,
+     * i.e. it does not belong to another table, then it becomes a view of the new row, so any changes made to it
+     * after adding are reflected in this table, as they would be for a list.
+     * @param stats The stats to add
+     * @return True
+     */
+    public boolean add(AssemblyStats stats) {
+
+        int row = this.addRow();
+
+        this.copyRow(stats.getTable(), stats.getRow(), row);
+        this.modifiedAll();
+
+        if (stats.isDetached()) {
+            stats.bind(this, row);
+            this.rows[row] = stats;
+        }
+
+        this.indexName(row);
+
+        return true;
+    }
+
+    public boolean addAll(AssemblyStatsTable table) {
+
+        for(int i = 0; i < table.size(); i++) {
+            int row = this.addRow();
+            this.copyRow(table, i, row);
+            this.indexName(row);
+        }
+
+        this.modifiedAll();
+
+        return table.size() > 0;
+    }
+
+    public void clear() {
+        Arrays.fill(this.rows, 0, this.size, null);
+        this.size = 0;
+        this.nameIndex.clear();
+        this.nameIndexValid = true;
+    }
+
+    private void copyRow(AssemblyStatsTable src, int srcRow, int destRow) {
+
+        this.index[destRow] = src.index[srcRow];
+        this.desc[destRow] = src.desc[srcRow];
+        this.dataset[destRow] = src.dataset[srcRow];
+        this.filePath[destRow] = src.filePath[srcRow];
+        this.bubblePath[destRow] = src.bubblePath[srcRow];
+
+        this.nbSeqs[destRow] = src.nbSeqs[srcRow];
+        this.nbSeqsGt1K[destRow] = src.nbSeqsGt1K[srcRow];
+        this.maxLen[destRow] = src.maxLen[srcRow];
+        this.n50[destRow] = src.n50[srcRow];
+        this.na50[destRow] = src.na50[srcRow];
+        this.l50[destRow] = src.l50[srcRow];
+        this.contiguityScore[destRow] = src.contiguityScore[srcRow];
+
+        this.nPercentage[destRow] = src.nPercentage[srcRow];
+        this.nbMisassembliesFromRef[destRow] = src.nbMisassembliesFromRef[srcRow];
+        this.kmerCnError[destRow] = src.kmerCnError[srcRow];
+        this.problemsScore[destRow] = src.problemsScore[srcRow];
+
+        this.nbBases[destRow] = src.nbBases[srcRow];
+        this.nbBasesGt1K[destRow] = src.nbBasesGt1K[srcRow];
+        this.gcPercentage[destRow] = src.gcPercentage[srcRow];
+        this.nbGenes[destRow] = src.nbGenes[srcRow];
+        this.cegComplete[destRow] = src.cegComplete[srcRow];
+        this.kmerComplete[destRow] = src.kmerComplete[srcRow];
+        this.conservationScore[destRow] = src.conservationScore[srcRow];
+
+        this.finalScore[destRow] = src.finalScore[srcRow];
+    }
+
+    /**
+     * Copies the analysed metrics, but not the identity columns or scores, from one row of this table to another.
+     * Used when two assemblies have identical content and only one of them was analysed.
+     * @param from The row to copy from
+     * @param to The row to copy to
+     */
+    public void copyMetrics(AssemblyStats from, AssemblyStats to) {
+
+        if (from.getTable() != this || to.getTable() != this) {
+            throw new IllegalArgumentException("Can only copy metrics between rows of the same table");
+        }
+
+        int src = from.getRow();
+        int dest = to.getRow();
+
+        this.nbSeqs[dest] = this.nbSeqs[src];
+        this.nbSeqsGt1K[dest] = this.nbSeqsGt1K[src];
+        this.maxLen[dest] = this.maxLen[src];
+        this.n50[dest] = this.n50[src];
+        this.na50[dest] = this.na50[src];
+        this.l50[dest] = this.l50[src];
+
+        this.nPercentage[dest] = this.nPercentage[src];
+        this.nbMisassembliesFromRef[dest] = this.nbMisassembliesFromRef[src];
+        this.kmerCnError[dest] = this.kmerCnError[src];
+
+        this.nbBases[dest] = this.nbBases[src];
+        this.nbBasesGt1K[dest] = this.nbBasesGt1K[src];
+        this.gcPercentage[dest] = this.gcPercentage[src];
+        this.nbGenes[dest] = this.nbGenes[src];
+        this.cegComplete[dest] = this.cegComplete[src];
+        this.kmerComplete[dest] = this.kmerComplete[src];
+
+        this.modifiedAll();
+    }
+
+    /**
+     * Records that a value in the given column has changed
+     */
+    void modified(int column) {
+        this.columnVersions[column]++;
+    }
+
+    void modifiedAll() {
+        for (int i = 0; i < NB_COLUMNS; i++) {
+            this.columnVersions[i]++;
+        }
+    }
+
+    long getColumnVersion(int column) {
+        return this.columnVersions[column];
+    }
+
+    private static String nameKey(String dataset, String desc) {
+        return (dataset + "-" + desc).toLowerCase(Locale.ENGLISH);
+    }
+
+    private void indexName(int row) {
+        if (this.nameIndexValid) {
+            String key = nameKey(this.dataset[row], this.desc[row]);
+            if (!this.nameIndex.containsKey(key)) {
+                this.nameIndex.put(key, row);
+            }
+        }
+    }
+
+    /**
+     * Called by row views when an assembly's dataset or description changes
+     */
+    void invalidateNameIndex() {
+        this.nameIndexValid = false;
+    }
+
+    private Map<String, Integer> getNameIndex() {
+
+        if (!this.nameIndexValid) {
+            this.nameIndex.clear();
+            this.nameIndexValid = true;
+            for(int i = 0; i < this.size; i++) {
+                this.indexName(i);
+            }
+        }
+
+        return this.nameIndex;
+    }
+
     public void mergeAll(List<AssemblyStatsTable> tables) {
 
         this.clear();
@@ -56,97 +392,162 @@ public class AssemblyStatsTable extends ArrayList<AssemblyStats> {
         }
     }
 
+    /**
+     * @return The names of the table's columns, in the same order as the TSV header and {@link #getColumns()}
+     */
+    String[] getColumnNames() {
+        return new AssemblyStats().getStatsFileHeader().split("\t");
+    }
+
+    /**
+     * @return The table's column arrays, which may be longer than the table itself
+     */
+    Object[] getColumns() {
+        return new Object[] {
+                this.index, this.desc, this.dataset, this.filePath, this.bubblePath,
+                this.nbSeqs, this.nbSeqsGt1K, this.maxLen, this.n50, this.na50, this.l50, this.contiguityScore,
+                this.nPercentage, this.nbMisassembliesFromRef, this.kmerCnError, this.problemsScore,
+                this.nbBases, this.nbBasesGt1K, this.gcPercentage, this.nbGenes, this.cegComplete, this.kmerComplete,
+                this.conservationScore,
+                this.finalScore
+        };
+    }
+
     protected final void load(File statsFile) throws IOException {
 
         if (statsFile == null || !statsFile.exists())
             throw new IOException("Stats File doesn't exist");
 
-        List<String> lines = readLines(statsFile);
+        if (AssemblyStatsFile.isStatsFile(statsFile)) {
+            this.addAll(AssemblyStatsFile.open(statsFile).toTable());
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(statsFile), StandardCharsets.UTF_8))) {
 
-        for(String line : lines.subList(1, lines.size())) {
+            // Skip the header
+            String line = reader.readLine();
 
-            String trimmedLine = line.trim();
+            while ((line = reader.readLine()) != null) {
 
-            if (!trimmedLine.isEmpty()) {
-                String[] parts = trimmedLine.split("\t");
+                String trimmedLine = line.trim();
 
-                AssemblyStats stats = new AssemblyStats(parts);
+                if (!trimmedLine.isEmpty()) {
+                    String[] parts = trimmedLine.split("\t");
 
-                this.add(stats);
+                    // Rows written before the k-mer metrics were added are missing those columns
+                    AssemblyStats stats = new AssemblyStats(parts.length == NB_COLUMNS - ADDED_COLUMNS.length ?
+                            addMissingColumns(parts) :
+                            parts);
+
+                    this.add(stats);
+                }
             }
         }
     }
 
+    /**
+     * Converts a TSV row from before the k-mer metrics were added into the current layout, with those metrics at zero.
+     * Header names have varied between versions, so rows are matched on their number of columns rather than names.
+     */
+    private static String[] addMissingColumns(String[] parts) {
+
+        String[] row = new String[NB_COLUMNS];
+
+        int pos = 0;
+        for (int c = 0; c < NB_COLUMNS; c++) {
+            row[c] = Arrays.binarySearch(ADDED_COLUMNS, c) >= 0 ? "0" : parts[pos++];
+        }
+
+        return row;
+    }
+
+    /**
+     * Saves this table in binary format, see {@link AssemblyStatsFile}
+     * @param outputFile The file to write
+     * @throws IOException Thrown if there was a problem writing the file
+     */
+    public void save(File outputFile) throws IOException {
+        AssemblyStatsFile.write(this, outputFile);
+    }
+
     public void saveTsv(File outputFile) throws IOException {
 
-        List<String> lines = new ArrayList<>();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
 
-        // Add the header line
-        lines.add(new AssemblyStats().getStatsFileHeader());
+            // Add the header line
+            writer.write(new AssemblyStats().getStatsFileHeader());
+            writer.write(IOUtils.LINE_SEPARATOR);
 
-        // Add the data
-        for(AssemblyStats stats : this) {
-            lines.add(stats.toTabString());
+            // Add the data
+            for(AssemblyStats stats : this) {
+                writer.write(stats.toTabString());
+                writer.write(IOUtils.LINE_SEPARATOR);
+            }
         }
-
-        // Write data to disk
-        FileUtils.writeLines(outputFile, lines);
     }
 
 
     public void saveSummary(File outputFile) throws IOException {
 
-        List<String> lines = new ArrayList<>();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
 
-        // Add the data
-        for(AssemblyStats stats : this) {
-            lines.add(stats.toString() + "\n");
+            // Add the data
+            for(AssemblyStats stats : this) {
+                writer.write(stats.toString());
+                writer.write("\n");
+                writer.write(IOUtils.LINE_SEPARATOR);
+            }
         }
-
-        // Write data to disk
-        FileUtils.writeLines(outputFile, lines);
     }
 
     public void addGroupScores(double[] contiguity, double[] problems, double[] conservation) {
 
-        int i = 0;
-        for(AssemblyStats stats : this) {
-            stats.getContiguity().setScore(contiguity[i]);
-            stats.getProblems().setScore(problems[i]);
-            stats.getConservation().setScore(conservation[i]);
-            i++;
-        }
+        System.arraycopy(contiguity, 0, this.contiguityScore, 0, this.size);
+        System.arraycopy(problems, 0, this.problemsScore, 0, this.size);
+        System.arraycopy(conservation, 0, this.conservationScore, 0, this.size);
+        this.modified(COL_CONTIGUITY_SCORE);
+        this.modified(COL_PROBLEMS_SCORE);
+        this.modified(COL_CONSERVATION_SCORE);
     }
 
     public void addScores(double[] scores) {
 
-        int i = 0;
-        for(AssemblyStats stats : this) {
-            stats.setFinalScore(scores[i++]);
-        }
+        System.arraycopy(scores, 0, this.finalScore, 0, this.size);
+        this.modified(COL_FINAL_SCORE);
     }
 
     public AssemblyStats getBest() {
 
         double max = -1.0;
-        AssemblyStats best = null;
+        int best = -1;
 
-        for(AssemblyStats stats : this) {
+        for(int i = 0; i < this.size; i++) {
 
-            if (stats.getFinalScore() > max) {
-                best = stats;
-                max = stats.getFinalScore();
+            if (this.finalScore[i] > max) {
+                best = i;
+                max = this.finalScore[i];
             }
         }
 
-        return best;
+        return best == -1 ? null : this.get(best);
     }
 
     public AssemblyStats findStats(String group, String description) {
 
-        for(AssemblyStats stats : this) {
-            if (stats.getDataset().equalsIgnoreCase(group) && stats.getDesc().equalsIgnoreCase(description)) {
-                return stats;
+        Integer row = this.getNameIndex().get(nameKey(group, description));
+
+        if (row != null && this.dataset[row].equalsIgnoreCase(group) && this.desc[row].equalsIgnoreCase(description)) {
+            return this.get(row);
+        }
+
+        // The hashed name is ambiguous if datasets or descriptions contain dashes, so fall back to a scan if the
+        // indexed row doesn't match on both fields
+        if (row != null) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.dataset[i].equalsIgnoreCase(group) && this.desc[i].equalsIgnoreCase(description)) {
+                    return this.get(i);
+                }
             }
         }
 
@@ -157,8 +558,8 @@ public class AssemblyStatsTable extends ArrayList<AssemblyStats> {
 
         List<File> assemblies = new ArrayList<>();
 
-        for(AssemblyStats as : this) {
-            assemblies.add(new File(as.getFilePath()));
+        for(int i = 0; i < this.size; i++) {
+            assemblies.add(new File(this.filePath[i]));
         }
 
         return assemblies;
@@ -166,16 +567,35 @@ public class AssemblyStatsTable extends ArrayList<AssemblyStats> {
 
     public AssemblyStats findStatsByFilename(String asmName) throws IOException {
 
-        for(AssemblyStats stats : this) {
+        Integer row = this.getNameIndex().get(asmName.toLowerCase(Locale.ENGLISH));
+
+        return row == null ? null : this.get(row);
+    }
+
+    @Override
+    public Iterator<AssemblyStats> iterator() {
 
-            String statsAsmName = stats.getDataset() + "-" + stats.getDesc();
+        return new Iterator<AssemblyStats>() {
 
-            if (statsAsmName.equalsIgnoreCase(asmName)) {
-                return stats;
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < size;
             }
-        }
 
-        return null;
-    }
+            @Override
+            public AssemblyStats next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(this.next++);
+            }
 
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Rows can't be removed from an assembly stats table");
+            }
+        };
+    }
 }
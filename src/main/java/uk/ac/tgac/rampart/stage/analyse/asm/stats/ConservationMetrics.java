@@ -33,22 +33,30 @@ public class ConservationMetrics extends MetricGroup {
     private static final String M_GC_PERC = "GC%";
     private static final String M_NB_GENES = "nb_genes";
     private static final String M_CEG_COMPLETE = "ceg_completeness";
+    private static final String M_KMER_COMPLETE = "kmer_completeness";
     private static final String M_SCORE = "conservation_score";
 
-    private long nbBases;
-    private long nbBasesGt1K;
-    private double gcPercentage;
-    private int nbGenes;
-    private double cegComplete;
-
     public ConservationMetrics() {
         super();
+    }
+
+    ConservationMetrics(AssemblyStatsTable table, int row) {
+        super(table, row);
+    }
 
-        this.nbBases = 0L;
-        this.nbBasesGt1K = 0L;
-        this.gcPercentage = 0.0;
-        this.nbGenes = 0;
-        this.cegComplete = 0.0;
+    @Override
+    protected double[] getScoreColumn() {
+        return this.table.conservationScore;
+    }
+
+    public void copyFrom(ConservationMetrics other) {
+        this.setNbBases(other.getNbBases());
+        this.setNbBasesGt1K(other.getNbBasesGt1K());
+        this.setGcPercentage(other.getGcPercentage());
+        this.setNbGenes(other.getNbGenes());
+        this.setCegComplete(other.getCegComplete());
+        this.setKmerComplete(other.getKmerComplete());
+        this.setScore(other.getScore());
     }
 
 
@@ -60,6 +68,7 @@ public class ConservationMetrics extends MetricGroup {
                 M_GC_PERC,
                 M_NB_GENES,
                 M_CEG_COMPLETE,
+                M_KMER_COMPLETE,
                 M_SCORE
         };
     }
@@ -68,52 +77,71 @@ public class ConservationMetrics extends MetricGroup {
     public void parseStrings(String[] values) {
 
         int i = 0;
-        this.nbBases = Long.parseLong(values[i++]);
-        this.nbBasesGt1K = Long.parseLong(values[i++]);
-        this.gcPercentage = Double.parseDouble(values[i++]);
-        this.nbGenes = Integer.parseInt(values[i++]);
-        this.cegComplete = Double.parseDouble(values[i++]);
+        this.setNbBases(Long.parseLong(values[i++]));
+        this.setNbBasesGt1K(Long.parseLong(values[i++]));
+        this.setGcPercentage(Double.parseDouble(values[i++]));
+        this.setNbGenes(Integer.parseInt(values[i++]));
+        this.setCegComplete(Double.parseDouble(values[i++]));
+        this.setKmerComplete(Double.parseDouble(values[i++]));
         this.setScore(Double.parseDouble(values[i++]));
     }
 
     public long getNbBases() {
-        return nbBases;
+        return this.table.nbBases[this.row];
     }
 
     public void setNbBases(long nbBases) {
-        this.nbBases = nbBases;
+        this.table.nbBases[this.row] = nbBases;
+        this.table.modified(AssemblyStatsTable.COL_NB_BASES);
     }
 
     public long getNbBasesGt1K() {
-        return nbBasesGt1K;
+        return this.table.nbBasesGt1K[this.row];
     }
 
     public void setNbBasesGt1K(long nbBasesGt1K) {
-        this.nbBasesGt1K = nbBasesGt1K;
+        this.table.nbBasesGt1K[this.row] = nbBasesGt1K;
+        this.table.modified(AssemblyStatsTable.COL_NB_BASES_GT_1K);
     }
 
     public double getGcPercentage() {
-        return gcPercentage;
+        return this.table.gcPercentage[this.row];
     }
 
     public void setGcPercentage(double gcPercentage) {
-        this.gcPercentage = gcPercentage;
+        this.table.gcPercentage[this.row] = gcPercentage;
+        this.table.modified(AssemblyStatsTable.COL_GC_PERC);
     }
 
     public int getNbGenes() {
-        return nbGenes;
+        return (int)this.table.nbGenes[this.row];
     }
 
     public void setNbGenes(int nbGenes) {
-        this.nbGenes = nbGenes;
+        this.table.nbGenes[this.row] = nbGenes;
+        this.table.modified(AssemblyStatsTable.COL_NB_GENES);
     }
 
     public double getCegComplete() {
-        return cegComplete;
+        return this.table.cegComplete[this.row];
     }
 
     public void setCegComplete(double cegComplete) {
-        this.cegComplete = cegComplete;
+        this.table.cegComplete[this.row] = cegComplete;
+        this.table.modified(AssemblyStatsTable.COL_CEG_COMPLETE);
+    }
+
+    /**
+     * @return Percentage of the distinct k-mers from the reads, excluding those likely to be sequencing errors, that
+     * are found in the assembly.  Requires KAT.
+     */
+    public double getKmerComplete() {
+        return this.table.kmerComplete[this.row];
+    }
+
+    public void setKmerComplete(double kmerComplete) {
+        this.table.kmerComplete[this.row] = kmerComplete;
+        this.table.modified(AssemblyStatsTable.COL_KMER_COMPLETE);
     }
 
     @Override
@@ -124,6 +152,7 @@ public class ConservationMetrics extends MetricGroup {
         sj.add(this.getGcPercentage());
         sj.add(this.getNbGenes());
         sj.add(this.getCegComplete());
+        sj.add(this.getKmerComplete());
         sj.add(this.getScore());
 
         return sj.toString();
@@ -132,11 +161,12 @@ public class ConservationMetrics extends MetricGroup {
     @Override
     public double[] toMatrixRow() {
         return new double[] {
-                this.nbBases,
-                this.nbBasesGt1K,
-                this.gcPercentage,
-                this.nbGenes,
-                this.cegComplete
+                this.getNbBases(),
+                this.getNbBasesGt1K(),
+                this.getGcPercentage(),
+                this.getNbGenes(),
+                this.getCegComplete(),
+                this.getKmerComplete()
         };
     }
 
@@ -144,11 +174,12 @@ public class ConservationMetrics extends MetricGroup {
     public String toString() {
         StringJoiner sj = new StringJoiner("\n");
         sj.add("Conservation Metrics:");
-        sj.add(" - Total assembly size: " + this.nbBases);
-        sj.add(" - Assembly size from sequences > 1KB: " + this.nbBasesGt1K);
-        sj.add(" - GC%: " + this.gcPercentage);
-        sj.add(" - Number of genes: " + this.nbGenes);
-        sj.add(" - CEG Completeness %: " + this.cegComplete);
+        sj.add(" - Total assembly size: " + this.getNbBases());
+        sj.add(" - Assembly size from sequences > 1KB: " + this.getNbBasesGt1K());
+        sj.add(" - GC%: " + this.getGcPercentage());
+        sj.add(" - Number of genes: " + this.getNbGenes());
+        sj.add(" - CEG Completeness %: " + this.getCegComplete());
+        sj.add(" - K-mer Completeness %: " + this.getKmerComplete());
         sj.add(" = Conservation score: " + this.getScore());
 
         return sj.toString();
@@ -162,12 +193,14 @@ public class ConservationMetrics extends MetricGroup {
         private static final int IDX_GC_PERC = 2;
         private static final int IDX_NB_GENES = 3;
         private static final int IDX_CEG_COMPLETE = 4;
-        private static final int IDX_SCORE = 5;
+        private static final int IDX_KMER_COMPLETE = 5;
+        private static final int IDX_SCORE = 6;
 
         private long estimatedGenomeSize;
         private double estimatedGCPercentage;
         private int estimatedNbGenes;
         private boolean cegmaEnabled;
+        private boolean katEnabled;
 
         public Matrix(int nbEntries) {
 
@@ -177,23 +210,32 @@ public class ConservationMetrics extends MetricGroup {
             this.estimatedGCPercentage = 0.0;
             this.estimatedNbGenes = 0;
             this.cegmaEnabled = false;
+            this.katEnabled = false;
         }
 
 
         public Matrix(AssemblyStatsTable table) {
 
-            this(table.size());
-
-            for(int i = 0; i < table.size(); i++) {
+            super(IDX_SCORE, table);
 
-                ConservationMetrics m = table.get(i).getConservation();
+            this.estimatedGenomeSize = 0L;
+            this.estimatedGCPercentage = 0.0;
+            this.estimatedNbGenes = 0;
+            this.cegmaEnabled = false;
+            this.katEnabled = false;
+        }
 
-                this.matrix[IDX_NB_BASES][i] = m.getNbBases();
-                this.matrix[IDX_NB_BASES_GT_1KB][i] = m.getNbBasesGt1K();
-                this.matrix[IDX_GC_PERC][i] = m.getGcPercentage();
-                this.matrix[IDX_NB_GENES][i] = m.getNbGenes();
-                this.matrix[IDX_CEG_COMPLETE][i] = m.getCegComplete();
-                this.matrix[IDX_SCORE][i] = m.getScore();
+        @Override
+        protected int getTableColumn(int metric) {
+
+            switch (metric) {
+                case IDX_NB_BASES: return AssemblyStatsTable.COL_NB_BASES;
+                case IDX_NB_BASES_GT_1KB: return AssemblyStatsTable.COL_NB_BASES_GT_1K;
+                case IDX_GC_PERC: return AssemblyStatsTable.COL_GC_PERC;
+                case IDX_NB_GENES: return AssemblyStatsTable.COL_NB_GENES;
+                case IDX_CEG_COMPLETE: return AssemblyStatsTable.COL_CEG_COMPLETE;
+                case IDX_KMER_COMPLETE: return AssemblyStatsTable.COL_KMER_COMPLETE;
+                default: throw new IllegalArgumentException("Unknown conservation metric: " + metric);
             }
         }
 
@@ -207,37 +249,31 @@ public class ConservationMetrics extends MetricGroup {
             this.cegmaEnabled = cegmaEnabled;
         }
 
-        @Override
-        public void normalise() {
+        public Matrix(AssemblyStatsTable table, long estimatedGenomeSize, double estimatedGCPercentage, int estimatedNbGenes,
+                      boolean cegmaEnabled, boolean katEnabled) {
 
-            if (estimatedGenomeSize != 0L) {
-                Scaling.deviationScale(this.matrix[IDX_NB_BASES], (double) estimatedGenomeSize);
-                Scaling.deviationScale(this.matrix[IDX_NB_BASES_GT_1KB], (double) estimatedGenomeSize);
-            }
-            else {
-                Scaling.clear(this.matrix[IDX_NB_BASES]);
-                Scaling.clear(this.matrix[IDX_NB_BASES_GT_1KB]);
-            }
+            this(table, estimatedGenomeSize, estimatedGCPercentage, estimatedNbGenes, cegmaEnabled);
 
-            if (estimatedGCPercentage != 0.0) {
-                Scaling.deviationScale(this.matrix[IDX_GC_PERC], estimatedGCPercentage);
-            }
-            else {
-                Scaling.clear(this.matrix[IDX_GC_PERC]);
-            }
-
-            if (estimatedNbGenes != 0) {
-                Scaling.deviationScale(this.matrix[IDX_NB_GENES], estimatedNbGenes);
-            }
-            else {
-                Scaling.clear(this.matrix[IDX_NB_GENES]);
-            }
+            this.katEnabled = katEnabled;
+        }
 
-            if (cegmaEnabled) {
-                Scaling.percentageScale(this.matrix[IDX_CEG_COMPLETE], false);
-            }
-            else {
-                Scaling.clear(this.matrix[IDX_CEG_COMPLETE]);
+        @Override
+        protected Scaling.Method getScaling(int metric) {
+
+            switch (metric) {
+                case IDX_NB_BASES:
+                case IDX_NB_BASES_GT_1KB:
+                    return estimatedGenomeSize != 0L ? Scaling.deviation((double) estimatedGenomeSize) : Scaling.CLEAR;
+                case IDX_GC_PERC:
+                    return estimatedGCPercentage != 0.0 ? Scaling.deviation(estimatedGCPercentage) : Scaling.CLEAR;
+                case IDX_NB_GENES:
+                    return estimatedNbGenes != 0 ? Scaling.deviation(estimatedNbGenes) : Scaling.CLEAR;
+                case IDX_CEG_COMPLETE:
+                    return cegmaEnabled ? Scaling.percentage(false) : Scaling.CLEAR;
+                case IDX_KMER_COMPLETE:
+                    return katEnabled ? Scaling.percentage(false) : Scaling.CLEAR;
+                default:
+                    throw new IllegalArgumentException("Unknown conservation metric: " + metric);
             }
         }
 
@@ -266,6 +302,9 @@ public class ConservationMetrics extends MetricGroup {
                 else if (key.equalsIgnoreCase(M_CEG_COMPLETE)) {
                     weightings[IDX_CEG_COMPLETE] = value;
                 }
+                else if (key.equalsIgnoreCase(M_KMER_COMPLETE)) {
+                    weightings[IDX_KMER_COMPLETE] = value;
+                }
             }
 
             return weightings;
@@ -36,22 +36,27 @@ public class ContiguityMetrics extends MetricGroup {
     private static final String M_L50 = "L50";
     private static final String M_SCORE = "contiguity_score";
 
-    private long nbSeqs;
-    private long nbSeqsGt1K;
-    private long maxLen;
-    private long n50;
-    private long na50;
-    private long l50;
-
     public ContiguityMetrics() {
         super();
+    }
+
+    ContiguityMetrics(AssemblyStatsTable table, int row) {
+        super(table, row);
+    }
+
+    @Override
+    protected double[] getScoreColumn() {
+        return this.table.contiguityScore;
+    }
 
-        this.nbSeqs = 0;
-        this.nbSeqsGt1K = 0;
-        this.maxLen = 0L;
-        this.n50 = 0L;
-        this.na50 = 0L;
-        this.l50 = 0L;
+    public void copyFrom(ContiguityMetrics other) {
+        this.setNbSeqs(other.getNbSeqs());
+        this.setNbSeqsGt1K(other.getNbSeqsGt1K());
+        this.setMaxLen(other.getMaxLen());
+        this.setN50(other.getN50());
+        this.setNA50(other.getNA50());
+        this.setL50(other.getL50());
+        this.setScore(other.getScore());
     }
 
     @Override
@@ -72,61 +77,67 @@ public class ContiguityMetrics extends MetricGroup {
     public void parseStrings(String[] values) {
 
         int i = 0;
-        this.nbSeqs = Long.parseLong(values[i++]);
-        this.nbSeqsGt1K = Long.parseLong(values[i++]);
-        this.maxLen = Long.parseLong(values[i++]);
-        this.n50 = Long.parseLong(values[i++]);
-        this.na50 = Long.parseLong(values[i++]);
-        this.l50 = Long.parseLong(values[i++]);
+        this.setNbSeqs(Long.parseLong(values[i++]));
+        this.setNbSeqsGt1K(Long.parseLong(values[i++]));
+        this.setMaxLen(Long.parseLong(values[i++]));
+        this.setN50(Long.parseLong(values[i++]));
+        this.setNA50(Long.parseLong(values[i++]));
+        this.setL50(Long.parseLong(values[i++]));
         this.setScore(Double.parseDouble(values[i++]));
     }
 
     public long getNbSeqs() {
-        return nbSeqs;
+        return this.table.nbSeqs[this.row];
     }
 
     public void setNbSeqs(long nbSeqs) {
-        this.nbSeqs = nbSeqs;
+        this.table.nbSeqs[this.row] = nbSeqs;
+        this.table.modified(AssemblyStatsTable.COL_NB_SEQS);
     }
 
     public long getNbSeqsGt1K() {
-        return nbSeqsGt1K;
+        return this.table.nbSeqsGt1K[this.row];
     }
 
     public void setNbSeqsGt1K(long nbSeqsGt1K) {
-        this.nbSeqsGt1K = nbSeqsGt1K;
+        this.table.nbSeqsGt1K[this.row] = nbSeqsGt1K;
+        this.table.modified(AssemblyStatsTable.COL_NB_SEQS_GT_1K);
     }
 
     public long getMaxLen() {
-        return maxLen;
+        return this.table.maxLen[this.row];
     }
 
     public void setMaxLen(long maxLen) {
-        this.maxLen = maxLen;
+        this.table.maxLen[this.row] = maxLen;
+        this.table.modified(AssemblyStatsTable.COL_MAX_LEN);
     }
 
     public long getN50() {
-        return n50;
+        return this.table.n50[this.row];
     }
 
     public void setN50(long n50) {
-        this.n50 = n50;
+        this.table.n50[this.row] = n50;
+        this.table.modified(AssemblyStatsTable.COL_N50);
     }
 
     public long getNA50() {
-        return na50;
+        return this.table.na50[this.row];
     }
 
     public void setNA50(long na50) {
-        this.na50 = na50;
+        this.table.na50[this.row] = na50;
+        this.table.modified(AssemblyStatsTable.COL_NA50);
     }
 
     public long getL50() {
-        return l50;
+        return this.table.l50[this.row];
     }
 
     public void setL50(long l50) {
-        this.l50 = l50;
+        this.table.l50[this.row] = l50;
+        this.table.modified(AssemblyStatsTable.COL_L50);
     }
 
 
@@ -147,12 +158,12 @@ public class ContiguityMetrics extends MetricGroup {
     @Override
     public double[] toMatrixRow() {
         return new double[] {
-                this.nbSeqs,
-                this.nbSeqsGt1K,
-                this.maxLen,
-                this.n50,
-                this.na50,
-                this.l50
+                this.getNbSeqs(),
+                this.getNbSeqsGt1K(),
+                this.getMaxLen(),
+                this.getN50(),
+                this.getNA50(),
+                this.getL50()
         };
     }
 
@@ -193,19 +204,22 @@ public class ContiguityMetrics extends MetricGroup {
 
         public Matrix(AssemblyStatsTable table) {
 
-            this(table.size());
-
-            for(int i = 0; i < table.size(); i++) {
+            super(IDX_SCORE, table);
 
-                ContiguityMetrics m = table.get(i).getContiguity();
+            this.referenceProvided = false;
+        }
 
-                this.matrix[IDX_NB_SEQS][i] = m.getNbSeqs();
-                this.matrix[IDX_NB_SEQS_GT_1KB][i] = m.getNbSeqsGt1K();
-                this.matrix[IDX_MAX_LEN][i] = m.getMaxLen();
-                this.matrix[IDX_N50][i] = m.getN50();
-                this.matrix[IDX_NA50][i] = m.getNA50();
-                this.matrix[IDX_L50][i] = m.getL50();
-                this.matrix[IDX_SCORE][i] = m.getScore();
+        @Override
+        protected int getTableColumn(int metric) {
+
+            switch (metric) {
+                case IDX_NB_SEQS: return AssemblyStatsTable.COL_NB_SEQS;
+                case IDX_NB_SEQS_GT_1KB: return AssemblyStatsTable.COL_NB_SEQS_GT_1K;
+                case IDX_MAX_LEN: return AssemblyStatsTable.COL_MAX_LEN;
+                case IDX_N50: return AssemblyStatsTable.COL_N50;
+                case IDX_NA50: return AssemblyStatsTable.COL_NA50;
+                case IDX_L50: return AssemblyStatsTable.COL_L50;
+                default: throw new IllegalArgumentException("Unknown contiguity metric: " + metric);
             }
         }
 
@@ -217,14 +231,17 @@ public class ContiguityMetrics extends MetricGroup {
         }
 
         @Override
-        public void normalise() {
-
-            Scaling.standardScale(this.matrix[IDX_NB_SEQS], true);
-            Scaling.standardScale(this.matrix[IDX_NB_SEQS_GT_1KB], true);
-            Scaling.standardScale(this.matrix[IDX_MAX_LEN], false);
-            Scaling.standardScale(this.matrix[IDX_N50], false);
-            Scaling.standardScale(this.matrix[IDX_NA50], false);
-            Scaling.standardScale(this.matrix[IDX_L50], true);
+        protected Scaling.Method getScaling(int metric) {
+
+            switch (metric) {
+                case IDX_NB_SEQS: return Scaling.standard(true);
+                case IDX_NB_SEQS_GT_1KB: return Scaling.standard(true);
+                case IDX_MAX_LEN: return Scaling.standard(false);
+                case IDX_N50: return Scaling.standard(false);
+                case IDX_NA50: return Scaling.standard(false);
+                case IDX_L50: return Scaling.standard(true);
+                default: throw new IllegalArgumentException("Unknown contiguity metric: " + metric);
+            }
         }
 
 
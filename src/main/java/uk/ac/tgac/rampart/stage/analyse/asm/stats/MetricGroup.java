@@ -25,27 +25,45 @@ import uk.ac.ebi.fgpt.conan.util.StringJoiner;
  */
 public abstract class MetricGroup implements Comparable<MetricGroup> {
 
-    private double score;
+    // The table row holding this group's values
+    protected AssemblyStatsTable table;
+    protected int row;
 
     protected MetricGroup() {
-        this.score = 0.0;
+        this.table = new AssemblyStatsTable(1);
+        this.row = this.table.addRow();
     }
 
+    protected MetricGroup(AssemblyStatsTable table, int row) {
+        this.table = table;
+        this.row = row;
+    }
+
+    void bind(AssemblyStatsTable table, int row) {
+        this.table = table;
+        this.row = row;
+    }
+
+    /**
+     * @return The table column holding the score for this group
+     */
+    protected abstract double[] getScoreColumn();
+
     public double getScore() {
-        return score;
+        return this.getScoreColumn()[this.row];
     }
 
     public void setScore(double score) {
-        this.score = score;
+        this.getScoreColumn()[this.row] = score;
     }
 
     public double getWeightedScore(double weighting) {
-        return this.score * weighting;
+        return this.getScore() * weighting;
     }
 
     @Override
     public int compareTo(MetricGroup o) {
-        Double thisScore = this.score;
+        Double thisScore = this.getScore();
         Double thatScore = o.getScore();
 
         return thisScore.compareTo(thatScore);
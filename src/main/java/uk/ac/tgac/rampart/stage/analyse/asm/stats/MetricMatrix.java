@@ -21,6 +21,7 @@ package uk.ac.tgac.rampart.stage.analyse.asm.stats;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -31,6 +32,11 @@ public abstract class MetricMatrix {
     protected int nbMetrics;
     protected int nbEntries;
 
+    // The table whose columns this matrix views, or null if the matrix was built from arrays
+    protected AssemblyStatsTable table;
+
+    // Working copy of the metrics plus a row for the scores.  For table views this is only created when the values
+    // are first needed, so the table's own columns are never scaled or weighted.
     protected double[][] matrix;
 
     protected MetricMatrix(int nbMetrics, int nbEntries) {
@@ -41,12 +47,109 @@ public abstract class MetricMatrix {
 
         this.nbMetrics = nbMetrics;
         this.nbEntries = nbEntries;
+        this.table = null;
 
         // Add one to metrics to include score
         this.matrix = new double[nbMetrics + 1][nbEntries];
     }
 
-    public abstract void normalise();
+    protected MetricMatrix(int nbMetrics, AssemblyStatsTable table) {
+
+        if (nbMetrics < 1 || table.size() < 1) {
+            throw new IllegalArgumentException("Can't have zero sized matrix");
+        }
+
+        this.nbMetrics = nbMetrics;
+        this.nbEntries = table.size();
+        this.table = table;
+        this.matrix = null;
+    }
+
+    /**
+     * @param metric The index of a metric in this matrix
+     * @return The position of the metric's column in the table
+     */
+    protected int getTableColumn(int metric) {
+        throw new IllegalStateException("This matrix is not backed by a stats table");
+    }
+
+    private void checkTable() {
+        if (this.table == null) {
+            throw new IllegalStateException("This matrix is not backed by a stats table");
+        }
+    }
+
+    /**
+     * @param metric The index of a metric in this matrix
+     * @return How the metric should be scaled
+     */
+    protected abstract Scaling.Method getScaling(int metric);
+
+    /**
+     * Copies the first dest.length values of a metric column from the table into the given array
+     */
+    protected void copyColumn(int metric, double[] dest) {
+
+        Object column = this.table.getColumns()[this.getTableColumn(metric)];
+
+        if (column instanceof long[]) {
+            long[] col = (long[]) column;
+            for (int i = 0; i < dest.length; i++) {
+                dest[i] = col[i];
+            }
+        }
+        else {
+            System.arraycopy((double[]) column, 0, dest, 0, dest.length);
+        }
+    }
+
+    /**
+     * @return The working copy of this matrix, copying it from the table's columns if this hasn't happened yet
+     */
+    protected double[][] getWorkingMatrix() {
+
+        if (this.matrix == null) {
+            double[][] m = new double[this.nbMetrics + 1][this.nbEntries];
+            for (int j = 0; j < this.nbMetrics; j++) {
+                this.copyColumn(j, m[j]);
+            }
+            this.matrix = m;
+        }
+
+        return this.matrix;
+    }
+
+    /**
+     * Scales each metric column from the table without weighting it, leaving this matrix untouched
+     * @return The normalised values, indexed by metric then entry
+     */
+    public double[][] getNormalised() {
+
+        this.checkTable();
+
+        int n = this.table.size();
+        double[][] normalised = new double[this.nbMetrics][n];
+
+        for (int j = 0; j < this.nbMetrics; j++) {
+            this.copyColumn(j, normalised[j]);
+            this.getScaling(j).apply(normalised[j]);
+        }
+
+        return normalised;
+    }
+
+    public int getNbMetrics() {
+        return nbMetrics;
+    }
+
+    public void normalise() {
+
+        double[][] m = this.getWorkingMatrix();
+
+        for (int j = 0; j < this.nbMetrics; j++) {
+            this.getScaling(j).apply(m[j]);
+        }
+    }
 
     public void weight(double[] weights) {
 
@@ -54,20 +157,123 @@ public abstract class MetricMatrix {
             throw new IllegalArgumentException("Not the same number of weightings as their are metrics in this matrix");
         }
 
+        double[][] m = this.getWorkingMatrix();
+
         for (int j = 0; j < this.nbMetrics; j++) {
-            Scaling.weight(this.matrix[j], weights[j]);
+            Scaling.weight(m[j], weights[j]);
         }
     }
 
+    /**
+     * Sums the (normalised and weighted) metrics for each entry.  Can be called repeatedly.
+     * @return The score for each entry
+     */
     public double[] calcScores() {
 
+        double[][] m = this.getWorkingMatrix();
+
         for (int i = 0; i < this.nbEntries; i++) {
+            double score = 0.0;
             for (int j = 0; j < this.nbMetrics; j++) {
-                this.matrix[this.nbMetrics][i] += this.matrix[j][i];
+                score += m[j][i];
             }
+            m[this.nbMetrics][i] = score;
         }
 
-        return this.matrix[this.nbMetrics];
+        return m[this.nbMetrics];
+    }
+
+
+    // Incremental scoring state, see update().  This is kept apart from the working matrix, so normalise() and weight()
+    // can't disturb it.
+    private double[][] scaled;
+    private int nbScaled;
+    private double[][] raw;
+    private double[][] params;
+    private long[] versions;
+    private double[] weights;
+
+    /**
+     * Normalises, weights and scores the table, reusing the work done by the previous call where possible.  A metric
+     * column that hasn't changed since the last call is skipped.  For a changed column, only the rows that changed
+     * (or were added) are rescaled, unless the change moved the scaling parameters, e.g. a new maximum N50, in which
+     * case that one column is rescaled.  Scores are then recomputed for the affected rows only.
+     * @param weights The weightings for each metric
+     * @return The score for each entry in the table
+     */
+    public double[] update(double[] weights) {
+
+        if (weights.length != this.nbMetrics) {
+            throw new IllegalArgumentException("Not the same number of weightings as their are metrics in this matrix");
+        }
+
+        this.checkTable();
+
+        int n = this.table.size();
+        // Start from scratch on the first call, if the weightings change or if the table was cleared
+        int previous = this.raw == null || !Arrays.equals(weights, this.weights) || n < this.nbScaled ?
+                0 : this.nbScaled;
+
+        if (previous == 0) {
+            this.raw = new double[this.nbMetrics][];
+            this.params = new double[this.nbMetrics][];
+            this.versions = new long[this.nbMetrics];
+            this.weights = weights.clone();
+            this.scaled = new double[this.nbMetrics + 1][];
+        }
+
+        for (int j = 0; j <= this.nbMetrics; j++) {
+            if (this.scaled[j] == null || this.scaled[j].length < n) {
+                this.scaled[j] = this.scaled[j] == null ? new double[n] : Arrays.copyOf(this.scaled[j], n);
+            }
+        }
+
+        this.nbScaled = n;
+
+        boolean[] dirty = new boolean[n];
+        Arrays.fill(dirty, previous, n, true);
+
+        double[] values = new double[n];
+
+        for (int j = 0; j < this.nbMetrics; j++) {
+
+            long version = this.table.getColumnVersion(this.getTableColumn(j));
+
+            if (previous > 0 && previous == n && version == this.versions[j]) {
+                continue;
+            }
+
+            this.copyColumn(j, values);
+
+            Scaling.Method method = this.getScaling(j);
+            double[] p = method.params(values, n);
+            boolean rescaleAll = previous == 0 || !Arrays.equals(p, this.params[j]);
+            double[] lastRaw = this.raw[j];
+
+            for (int i = 0; i < n; i++) {
+                if (rescaleAll || i >= previous || values[i] != lastRaw[i]) {
+                    this.scaled[j][i] = method.scale(values[i], p) * weights[j];
+                    dirty[i] = true;
+                }
+            }
+
+            this.params[j] = p;
+            this.versions[j] = version;
+            this.raw[j] = values.clone();
+        }
+
+        double[] scores = this.scaled[this.nbMetrics];
+        for (int i = 0; i < n; i++) {
+            if (dirty[i]) {
+                double score = 0.0;
+                for (int j = 0; j < this.nbMetrics; j++) {
+                    score += this.scaled[j][i];
+                }
+                scores[i] = score;
+            }
+        }
+
+        return Arrays.copyOf(scores, n);
     }
 
     public abstract double[] parseWeightings(List<Pair<String, Double>> list);
@@ -75,11 +281,15 @@ public abstract class MetricMatrix {
     @Override
     public String toString() {
 
+        // Show the result of the last update if there was one
+        double[][] m = this.scaled != null ? this.scaled : this.getWorkingMatrix();
+        int n = this.scaled != null ? this.nbScaled : this.nbEntries;
+
         StringBuilder sb = new StringBuilder();
         sb.append("\n");
-        for(int i = 0; i < this.nbEntries; i++) {
+        for(int i = 0; i < n; i++) {
             for(int j = 0; j < this.nbMetrics; j++) {
-                sb.append(new DecimalFormat("0.###").format(this.matrix[j][i]));
+                sb.append(new DecimalFormat("0.###").format(m[j][i]));
                 sb.append("\t");
             }
             sb.append("\n");
@@ -19,13 +19,45 @@ package uk.ac.tgac.rampart.stage.analyse.asm.stats;
 
 import uk.ac.ebi.fgpt.conan.util.StringJoiner;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
 /**
+ * Counts the nucleotides in a sequence.  Bytes are classified case insensitively using a 256 entry lookup table, so
+ * sequences can be counted straight out of byte arrays or (memory mapped) byte buffers without any copying or case
+ * conversion.  Counts from separate chunks can be combined with {@link #add(NucleotideComposition)}, which allows
+ * large sequences to be counted in parallel, see {@link #count(ByteBuffer, int, int, int)}.  Bytes other than A, C, G, T
+ * and N, including the other IUPAC ambiguity codes, are counted as unknown.
+ *
  * User: maplesod
  * Date: 23/08/13
  * Time: 09:05
  */
 public class NucleotideComposition {
 
+    private static final int IDX_A = 0;
+    private static final int IDX_C = 1;
+    private static final int IDX_G = 2;
+    private static final int IDX_T = 3;
+    private static final int IDX_N = 4;
+    private static final int IDX_UNKNOWN = 5;
+
+    /** Chunks smaller than this are not split any further when counting in parallel */
+    public static final int MIN_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final byte[] LOOKUP = new byte[256];
+
+    static {
+        for (int i = 0; i < LOOKUP.length; i++) {
+            LOOKUP[i] = IDX_UNKNOWN;
+        }
+        LOOKUP['A'] = LOOKUP['a'] = IDX_A;
+        LOOKUP['C'] = LOOKUP['c'] = IDX_C;
+        LOOKUP['G'] = LOOKUP['g'] = IDX_G;
+        LOOKUP['T'] = LOOKUP['t'] = IDX_T;
+        LOOKUP['N'] = LOOKUP['n'] = IDX_N;
+    }
 
     private long nbA;
     private long nbC;
@@ -87,6 +119,14 @@ public class NucleotideComposition {
         return nbUnknown;
     }
 
+    public long getNbGC() {
+        return nbG + nbC;
+    }
+
+    public long getNbACGT() {
+        return nbA + nbC + nbG + nbT;
+    }
+
     public long getTotal() {
         return nbA + nbC + nbG + nbT + nbN + nbUnknown;
     }
@@ -115,45 +155,148 @@ public class NucleotideComposition {
         return (double)nbUnknown / (double)getTotal();
     }
 
-    protected final void processSeq(String seq) {
-
-        String ucSeq = seq.toUpperCase();
-
-        for(int i = 0; i < ucSeq.length(); i++) {
-            char c = ucSeq.charAt(i);
-
-            switch (c) {
-                case 'A':
-                    this.nbA++;
-                    break;
-                case 'C':
-                    this.nbC++;
-                    break;
-                case 'G':
-                    this.nbG++;
-                    break;
-                case 'T':
-                    this.nbT++;
-                    break;
-                case 'N':
-                    this.nbN++;
-                    break;
-
-                default:
-                    this.nbUnknown++;
-            }
+    protected final void processSeq(CharSequence seq) {
+
+        long[] counts = new long[6];
+
+        for(int i = 0; i < seq.length(); i++) {
+            char c = seq.charAt(i);
+            counts[c < 256 ? LOOKUP[c] : IDX_UNKNOWN]++;
         }
+
+        this.add(counts);
     }
 
     public void add(String seq) {
-        NucleotideComposition nc = new NucleotideComposition(seq);
-
-        this.nbA += nc.getNbA();
-        this.nbC += nc.getNbC();
-        this.nbG += nc.getNbG();
-        this.nbT += nc.getNbT();
-        this.nbN += nc.getNbN();
-        this.nbUnknown += this.getNbUnknown();
+        this.processSeq(seq);
+    }
+
+    /**
+     * Counts the bytes in the given range of an array
+     * @param seq The array containing the sequence
+     * @param from The index of the first byte to count
+     * @param to The index after the last byte to count
+     */
+    public void add(byte[] seq, int from, int to) {
+
+        long[] counts = new long[6];
+
+        for(int i = from; i < to; i++) {
+            counts[LOOKUP[seq[i] & 0xff]]++;
+        }
+
+        this.add(counts);
+    }
+
+    /**
+     * Counts the bytes in the given range of a buffer, using absolute gets so the buffer's position is untouched
+     * @param seq The buffer containing the sequence
+     * @param from The index of the first byte to count
+     * @param to The index after the last byte to count
+     */
+    public void add(ByteBuffer seq, int from, int to) {
+
+        if (seq.hasArray()) {
+            this.add(seq.array(), seq.arrayOffset() + from, seq.arrayOffset() + to);
+            return;
+        }
+
+        long[] counts = new long[6];
+
+        for(int i = from; i < to; i++) {
+            counts[LOOKUP[seq.get(i) & 0xff]]++;
+        }
+
+        this.add(counts);
+    }
+
+    /**
+     * Adds the counts from another composition into this one
+     * @param other The composition to merge into this one
+     */
+    public void add(NucleotideComposition other) {
+        this.nbA += other.getNbA();
+        this.nbC += other.getNbC();
+        this.nbG += other.getNbG();
+        this.nbT += other.getNbT();
+        this.nbN += other.getNbN();
+        this.nbUnknown += other.getNbUnknown();
+    }
+
+    private void add(long[] counts) {
+        this.nbA += counts[IDX_A];
+        this.nbC += counts[IDX_C];
+        this.nbG += counts[IDX_G];
+        this.nbT += counts[IDX_T];
+        this.nbN += counts[IDX_N];
+        this.nbUnknown += counts[IDX_UNKNOWN];
+    }
+
+    /**
+     * Resets all counts to zero
+     */
+    public void clear() {
+        this.nbA = 0;
+        this.nbC = 0;
+        this.nbG = 0;
+        this.nbT = 0;
+        this.nbN = 0;
+        this.nbUnknown = 0;
+    }
+
+    /**
+     * Counts the bytes in the given range of a buffer, splitting the work into chunks which are counted in parallel
+     * @param seq The buffer containing the sequence, which must not be modified while counting
+     * @param from The index of the first byte to count
+     * @param to The index after the last byte to count
+     * @param threads The number of threads to use
+     * @return The composition of the given range
+     */
+    public static NucleotideComposition count(ByteBuffer seq, int from, int to, int threads) {
+
+        if (threads <= 1 || to - from <= MIN_CHUNK_SIZE) {
+            NucleotideComposition nc = new NucleotideComposition();
+            nc.add(seq, from, to);
+            return nc;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new CountTask(seq, from, to));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class CountTask extends RecursiveTask<NucleotideComposition> {
+
+        private final ByteBuffer seq;
+        private final int from;
+        private final int to;
+
+        private CountTask(ByteBuffer seq, int from, int to) {
+            this.seq = seq;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected NucleotideComposition compute() {
+
+            if (this.to - this.from <= MIN_CHUNK_SIZE) {
+                NucleotideComposition nc = new NucleotideComposition();
+                nc.add(this.seq, this.from, this.to);
+                return nc;
+            }
+
+            int mid = this.from + (this.to - this.from) / 2;
+            CountTask left = new CountTask(this.seq, this.from, mid);
+            left.fork();
+            NucleotideComposition result = new CountTask(this.seq, mid, this.to).compute();
+            result.add(left.join());
+            return result;
+        }
     }
 
     public static String getStatsFileHeaderCounts() {
@@ -30,16 +30,27 @@ public class ProblemMetrics extends MetricGroup {
 
     private static final String M_N_PERC = "N%";
     private static final String M_NB_MA_REF = "nb_ma_ref";
+    private static final String M_KMER_CN_ERROR = "kmer_cn_error";
     private static final String M_SCORE = "problems_score";
 
-    private double nPercentage;
-    private int nbMisassembliesFromRef;
-
     public ProblemMetrics() {
         super();
+    }
+
+    ProblemMetrics(AssemblyStatsTable table, int row) {
+        super(table, row);
+    }
+
+    @Override
+    protected double[] getScoreColumn() {
+        return this.table.problemsScore;
+    }
 
-        this.nPercentage = 0.0;
-        this.nbMisassembliesFromRef = 0;
+    public void copyFrom(ProblemMetrics other) {
+        this.setnPercentage(other.getnPercentage());
+        this.setNbMisassembliesFromRef(other.getNbMisassembliesFromRef());
+        this.setKmerCnError(other.getKmerCnError());
+        this.setScore(other.getScore());
     }
 
     @Override
@@ -47,6 +58,7 @@ public class ProblemMetrics extends MetricGroup {
         return new String[] {
                 M_N_PERC,
                 M_NB_MA_REF,
+                M_KMER_CN_ERROR,
                 M_SCORE
         };
     }
@@ -56,25 +68,41 @@ public class ProblemMetrics extends MetricGroup {
     public void parseStrings(String[] values) {
 
         int i = 0;
-        this.nPercentage = Double.parseDouble(values[i++]);
-        this.nbMisassembliesFromRef = Integer.parseInt(values[i++]);
+        this.setnPercentage(Double.parseDouble(values[i++]));
+        this.setNbMisassembliesFromRef(Integer.parseInt(values[i++]));
+        this.setKmerCnError(Double.parseDouble(values[i++]));
         this.setScore(Double.parseDouble(values[i++]));
     }
 
     public double getnPercentage() {
-        return nPercentage;
+        return this.table.nPercentage[this.row];
     }
 
     public void setnPercentage(double nPercentage) {
-        this.nPercentage = nPercentage;
+        this.table.nPercentage[this.row] = nPercentage;
+        this.table.modified(AssemblyStatsTable.COL_N_PERC);
     }
 
     public int getNbMisassembliesFromRef() {
-        return nbMisassembliesFromRef;
+        return (int)this.table.nbMisassembliesFromRef[this.row];
     }
 
     public void setNbMisassembliesFromRef(int nbMisassembliesFromRef) {
-        this.nbMisassembliesFromRef = nbMisassembliesFromRef;
+        this.table.nbMisassembliesFromRef[this.row] = nbMisassembliesFromRef;
+        this.table.modified(AssemblyStatsTable.COL_NB_MA_REF);
+    }
+
+    /**
+     * @return Percentage of the assembly's distinct k-mers that appear in the assembly a different number of times to
+     * what the reads suggest, including k-mers that are not supported by the reads at all.  Requires KAT.
+     */
+    public double getKmerCnError() {
+        return this.table.kmerCnError[this.row];
+    }
+
+    public void setKmerCnError(double kmerCnError) {
+        this.table.kmerCnError[this.row] = kmerCnError;
+        this.table.modified(AssemblyStatsTable.COL_KMER_CN_ERROR);
     }
 
     @Override
@@ -82,6 +110,7 @@ public class ProblemMetrics extends MetricGroup {
         StringJoiner sj = new StringJoiner("\t");
         sj.add(this.getnPercentage());
         sj.add(this.getNbMisassembliesFromRef());
+        sj.add(this.getKmerCnError());
         sj.add(this.getScore());
 
         return sj.toString();
@@ -90,8 +119,9 @@ public class ProblemMetrics extends MetricGroup {
     @Override
     public double[] toMatrixRow() {
         return new double[] {
-                this.nPercentage,
-                this.nbMisassembliesFromRef
+                this.getnPercentage(),
+                this.getNbMisassembliesFromRef(),
+                this.getKmerCnError()
         };
     }
 
@@ -99,8 +129,9 @@ public class ProblemMetrics extends MetricGroup {
     public String toString() {
         StringJoiner sj = new StringJoiner("\n");
         sj.add("Assembly Problem Metrics:");
-        sj.add(" - Percent gaps: " + this.nPercentage);
-        sj.add(" - Number of misassemblies from reference: " + this.nbMisassembliesFromRef);
+        sj.add(" - Percent gaps: " + this.getnPercentage());
+        sj.add(" - Number of misassemblies from reference: " + this.getNbMisassembliesFromRef());
+        sj.add(" - K-mer copy number errors %: " + this.getKmerCnError());
         sj.add(" = Problem score: " + this.getScore());
 
         return sj.toString();
@@ -111,29 +142,37 @@ public class ProblemMetrics extends MetricGroup {
 
         private static final int IDX_N_PERC = 0;
         private static final int IDX_NB_MA_REF = 1;
-        private static final int IDX_SCORE = 2;
+        private static final int IDX_KMER_CN_ERROR = 2;
+        private static final int IDX_SCORE = 3;
 
         private boolean referenceProvided;
+        private boolean katEnabled;
 
         public Matrix(int nbEntries) {
 
             super(IDX_SCORE, nbEntries);
 
             this.referenceProvided = false;
+            this.katEnabled = false;
         }
 
 
         public Matrix(AssemblyStatsTable table) {
 
-            this(table.size());
+            super(IDX_SCORE, table);
 
-            for(int i = 0; i < table.size(); i++) {
+            this.referenceProvided = false;
+            this.katEnabled = false;
+        }
 
-                ProblemMetrics m = table.get(i).getProblems();
+        @Override
+        protected int getTableColumn(int metric) {
 
-                this.matrix[IDX_N_PERC][i] = m.getnPercentage();
-                this.matrix[IDX_NB_MA_REF][i] = m.getNbMisassembliesFromRef();
-                this.matrix[IDX_SCORE][i] = m.getScore();
+            switch (metric) {
+                case IDX_N_PERC: return AssemblyStatsTable.COL_N_PERC;
+                case IDX_NB_MA_REF: return AssemblyStatsTable.COL_NB_MA_REF;
+                case IDX_KMER_CN_ERROR: return AssemblyStatsTable.COL_KMER_CN_ERROR;
+                default: throw new IllegalArgumentException("Unknown problem metric: " + metric);
             }
         }
 
@@ -144,11 +183,22 @@ public class ProblemMetrics extends MetricGroup {
             this.referenceProvided = referenceProvided;
         }
 
+        public Matrix(AssemblyStatsTable table, boolean referenceProvided, boolean katEnabled) {
+
+            this(table, referenceProvided);
+
+            this.katEnabled = katEnabled;
+        }
+
         @Override
-        public void normalise() {
+        protected Scaling.Method getScaling(int metric) {
 
-            Scaling.percentageScale(this.matrix[IDX_N_PERC], true);
-            Scaling.standardScale(this.matrix[IDX_NB_MA_REF], true);
+            switch (metric) {
+                case IDX_N_PERC: return Scaling.percentage(true);
+                case IDX_NB_MA_REF: return Scaling.standard(true);
+                case IDX_KMER_CN_ERROR: return katEnabled ? Scaling.percentage(true) : Scaling.CLEAR;
+                default: throw new IllegalArgumentException("Unknown problem metric: " + metric);
+            }
         }
 
         @Override
@@ -167,6 +217,9 @@ public class ProblemMetrics extends MetricGroup {
                 else if (key.equalsIgnoreCase(M_NB_MA_REF)) {
                     weightings[IDX_NB_MA_REF] = value;
                 }
+                else if (key.equalsIgnoreCase(M_KMER_CN_ERROR)) {
+                    weightings[IDX_KMER_CN_ERROR] = value;
+                }
             }
 
             return weightings;
@@ -58,52 +58,164 @@ public class Scaling {
     }
 
     public static void standardScale(double[] a, boolean invert) {
+        standard(invert).apply(a);
+    }
 
-        double min = min(a);
-        double max = max(a);
+    public static void deviationScale(double[] a, double mean) {
+        deviation(mean).apply(a);
+    }
 
-        for (int i = 0; i < a.length; i++) {
+    public static void percentageScale(double[] a, boolean invert) {
+        percentage(invert).apply(a);
+    }
 
-            double delta = a[i] - min;
+    /**
+     * A way of scaling a metric column.  Scaling is split into the parameters derived from the whole column, such as
+     * its range, and a per value transform using those parameters.  This allows a column to be rescaled one value
+     * at a time as long as its parameters do not change.
+     */
+    public static abstract class Method {
 
-            double diff = max - min;
+        /**
+         * Derives the scaling parameters from the first n values in a column
+         */
+        public abstract double[] params(double[] a, int n);
 
-            double norm = delta / diff;
+        /**
+         * Scales a single value using parameters from {@link #params(double[], int)}
+         */
+        public abstract double scale(double value, double[] params);
 
-            double newVal = diff == 0.0 ? 0.5 : norm;
+        public void apply(double[] a) {
 
-            a[i] = invert ? 1.0 - newVal : newVal;
+            double[] params = this.params(a, a.length);
+
+            for (int i = 0; i < a.length; i++) {
+                a[i] = this.scale(a[i], params);
+            }
         }
     }
 
-    public static void deviationScale(double[] a, double mean) {
-
-        double max = 0.0;
+    private static final double[] NO_PARAMS = new double[0];
 
-        for (int i = 0; i < a.length; i++) {
+    /**
+     * Leaves values unchanged
+     */
+    public static final Method NONE = new Method() {
+        @Override
+        public double[] params(double[] a, int n) {
+            return NO_PARAMS;
+        }
 
-            double dev = Math.abs(a[i] - mean);
+        @Override
+        public double scale(double value, double[] params) {
+            return value;
+        }
+    };
+
+    /**
+     * Sets all values to zero, used for metrics that are not available
+     */
+    public static final Method CLEAR = new Method() {
+        @Override
+        public double[] params(double[] a, int n) {
+            return NO_PARAMS;
+        }
 
-            max = Math.max(max, dev);
+        @Override
+        public double scale(double value, double[] params) {
+            return 0.0;
         }
+    };
 
-        for (int i = 0; i < a.length; i++) {
+    /**
+     * Scales values linearly between the column's min and max, where the range always includes 0.  If all values are
+     * the same then they are scaled to 0.5.
+     */
+    public static Method standard(final boolean invert) {
 
-            double dev = Math.abs(a[i] - mean);
+        return new Method() {
+            @Override
+            public double[] params(double[] a, int n) {
 
-            double norm = 1.0 - (dev / max);
+                double min = 0.0;
+                double max = 0.0;
 
-            a[i] = 1.0 - norm;
-        }
+                for (int i = 0; i < n; i++) {
+                    min = Math.min(a[i], min);
+                    max = Math.max(a[i], max);
+                }
+
+                return new double[] { min, max };
+            }
+
+            @Override
+            public double scale(double value, double[] params) {
+
+                double delta = value - params[0];
+
+                double diff = params[1] - params[0];
+
+                double norm = delta / diff;
+
+                double newVal = diff == 0.0 ? 0.5 : norm;
+
+                return invert ? 1.0 - newVal : newVal;
+            }
+        };
     }
 
-    public static void percentageScale(double[] a, boolean invert) {
+    /**
+     * Scales values by their distance from an expected mean, relative to the value furthest from that mean
+     */
+    public static Method deviation(final double mean) {
 
-        for (int i = 0; i < a.length; i++) {
+        return new Method() {
+            @Override
+            public double[] params(double[] a, int n) {
 
-            double norm = a[i] / 100.0;
+                double max = 0.0;
 
-            a[i] = invert ? 1.0 - norm : norm;
-        }
+                for (int i = 0; i < n; i++) {
+
+                    double dev = Math.abs(a[i] - mean);
+
+                    max = Math.max(max, dev);
+                }
+
+                return new double[] { max };
+            }
+
+            @Override
+            public double scale(double value, double[] params) {
+
+                double dev = Math.abs(value - mean);
+
+                double norm = 1.0 - (dev / params[0]);
+
+                return 1.0 - norm;
+            }
+        };
+    }
+
+    /**
+     * Scales percentages to values between 0 and 1
+     */
+    public static Method percentage(final boolean invert) {
+
+        return new Method() {
+            @Override
+            public double[] params(double[] a, int n) {
+                return NO_PARAMS;
+            }
+
+            @Override
+            public double scale(double value, double[] params) {
+
+                double norm = value / 100.0;
+
+                return invert ? 1.0 - norm : norm;
+            }
+        };
     }
 }
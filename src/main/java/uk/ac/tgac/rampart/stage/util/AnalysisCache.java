@@ -0,0 +1,192 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Caches the report files produced by assembly analysers, so that rerunning an analysis only runs external tools for
+ * assemblies that are new or have changed.  Entries are keyed on the analyser, the version of the tool, any settings
+ * that affect the results and the content fingerprints of the assemblies analysed, see {@link #createKey}.  Analysers
+ * should create an entry per assembly wherever the tool analyses each assembly independently, even if it reports on a
+ * whole set at once, so that adding an assembly to the set doesn't invalidate the results for the others.
+ *
+ * Each entry is a directory containing copies of the report files.  Entries are written to a temporary directory first
+ * and then renamed, so concurrent users of the cache never see a partial entry.
+ */
+public class AnalysisCache {
+
+    private static Logger log = LoggerFactory.getLogger(AnalysisCache.class);
+
+    // Bump this if the layout of cache entries changes
+    private static final String FORMAT_VERSION = "1";
+
+    private final File cacheDir;
+
+    /**
+     * Creates a cache stored in the given directory.  The directory is created when the first entry is added.
+     * @param cacheDir The directory storing the cache
+     */
+    public AnalysisCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Creates the key for a cache entry
+     * @param analyser The name of the analyser
+     * @param version The version of the tool the analyser runs
+     * @param settings Any settings that affect the analysis results, in a fixed order
+     * @param fingerprints The content fingerprints of the assemblies analysed, along with anything else that identifies
+     *                     the inputs, in the order they were analysed
+     * @return The cache key
+     */
+    public static String createKey(String analyser, String version, List<String> settings, List<String> fingerprints) {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not supported", e);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT_VERSION).append('\n').append(analyser.toLowerCase()).append('\n').append(version).append('\n');
+        for(String setting : settings) {
+            sb.append(setting).append('\t');
+        }
+        sb.append('\n');
+        for(String fingerprint : fingerprints) {
+            sb.append(fingerprint).append('\t');
+        }
+
+        StringBuilder key = new StringBuilder(analyser.toLowerCase()).append('-');
+        for (byte b : digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8))) {
+            key.append(String.format("%02x", b & 0xff));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets the directory holding the given entry
+     * @param key The cache key
+     * @return The entry directory, or null if there is no such entry
+     */
+    public File getEntry(String key) {
+        File entryDir = new File(this.cacheDir, key);
+        return entryDir.isDirectory() ? entryDir : null;
+    }
+
+    /**
+     * Copies the files in a cache entry to the given directory
+     * @param key The cache key
+     * @param outputDir The directory to copy the files to.  Created if necessary.
+     * @return The restored files, or null if there is no such entry
+     * @throws IOException Thrown if the files could not be copied
+     */
+    public List<File> restore(String key, File outputDir) throws IOException {
+
+        File entryDir = this.getEntry(key);
+
+        if (entryDir == null) {
+            return null;
+        }
+
+        File[] files = entryDir.listFiles();
+        if (files == null) {
+            return null;
+        }
+
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+
+        List<File> restored = new ArrayList<>();
+        for(File file : files) {
+            File dest = new File(outputDir, file.getName());
+            FileUtils.copyFile(file, dest);
+            restored.add(dest);
+        }
+
+        log.debug("Restored " + restored.size() + " files from analysis cache entry: " + entryDir.getAbsolutePath());
+
+        return restored;
+    }
+
+    /**
+     * Adds files to the cache under the given key.  Files that don't exist are skipped, so an entry is only made if
+     * at least one of the files exists.  If the entry already exists it is left alone.
+     * @param key The cache key
+     * @param files The files to store.  Names must be unique.  Symbolic links are followed.
+     * @return The entry directory, or null if none of the files existed
+     * @throws IOException Thrown if the files could not be copied into the cache
+     */
+    public File publish(String key, Collection<File> files) throws IOException {
+
+        File entryDir = new File(this.cacheDir, key);
+
+        if (entryDir.exists()) {
+            return entryDir;
+        }
+
+        if (!this.cacheDir.exists() && !this.cacheDir.mkdirs() && !this.cacheDir.exists()) {
+            throw new IOException("Couldn't create analysis cache directory: " + this.cacheDir.getAbsolutePath());
+        }
+
+        File tmpDir = new File(this.cacheDir, key + ".tmp-" + UUID.randomUUID().toString());
+
+        int count = 0;
+        for(File file : files) {
+            if (file.exists()) {
+                FileUtils.copyFile(file, new File(tmpDir, file.getName()));
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            FileUtils.deleteQuietly(tmpDir);
+            return null;
+        }
+
+        if (!tmpDir.renameTo(entryDir)) {
+            // Most likely another job cached the same analysis first
+            FileUtils.deleteDirectory(tmpDir);
+            if (!entryDir.exists()) {
+                throw new IOException("Couldn't add analysis results to cache: " + entryDir.getAbsolutePath());
+            }
+        }
+
+        log.debug("Cached " + count + " files in: " + entryDir.getAbsolutePath());
+
+        return entryDir;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.tgac.conan.core.data.Library;
+import uk.ac.tgac.rampart.util.seq.FastqScanner;
+import uk.ac.tgac.rampart.util.seq.FastqStats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches facts about input sequence files, such as the number of reads, number of bases, read length histogram and
+ * whether all reads have the same length, in a file under the job directory.  Entries are keyed on the file's path, size and modification time, so any change to
+ * a file causes it to be rescanned.  The first stage to ask about a file pays for a single parallel scan, every other
+ * stage, and any rerun of the job, gets the answer from the cache.
+ *
+ * There is one instance per cache file, shared across the JVM, see {@link #forFile(File)}.  Different files can be
+ * scanned concurrently, whereas concurrent requests for the same file wait for a single scan.
+ */
+public class LibraryStatsCache {
+
+    private static Logger log = LoggerFactory.getLogger(LibraryStatsCache.class);
+
+    private static final String HEADER = "#path\tsize\tmtime\trecords\tbases\tuniform\thistogram";
+
+    private static final Map<String, LibraryStatsCache> INSTANCES = new HashMap<>();
+
+    private final File cacheFile;
+    private final Map<String, Entry> entries;
+    private final Map<String, Future<Entry>> pending;
+    private boolean loaded;
+
+    private LibraryStatsCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+        this.entries = new HashMap<>();
+        this.pending = new HashMap<>();
+        this.loaded = false;
+    }
+
+    /**
+     * Gets the cache stored in the given file
+     * @param cacheFile The file storing the cache
+     * @return The cache instance shared by all users of this file
+     */
+    public static LibraryStatsCache forFile(File cacheFile) {
+        synchronized (INSTANCES) {
+            String key = cacheFile.getAbsolutePath();
+            LibraryStatsCache cache = INSTANCES.get(key);
+            if (cache == null) {
+                cache = new LibraryStatsCache(cacheFile);
+                INSTANCES.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * Gets statistics for the given sequence file, scanning it if it is not in the cache or has changed since it was
+     * cached.
+     * @param seqFile The FastQ file to describe
+     * @param threads The number of threads to use if the file needs scanning
+     * @return Statistics for the file
+     * @throws IOException Thrown if the cache or sequence file could not be read, or the cache could not be saved
+     * @throws InterruptedException Thrown if interrupted while scanning
+     */
+    public FastqStats get(File seqFile, int threads) throws IOException, InterruptedException {
+        return this.lookup(seqFile, threads).stats;
+    }
+
+    /**
+     * Finds out whether every read in the given sequence file has the same length, scanning the file if it is not in
+     * the cache or has changed since it was cached.
+     * @param seqFile The FastQ file to describe
+     * @param threads The number of threads to use if the file needs scanning
+     * @return True if all reads in the file have the same length
+     * @throws IOException Thrown if the cache or sequence file could not be read, or the cache could not be saved
+     * @throws InterruptedException Thrown if interrupted while scanning
+     */
+    public boolean isUniform(File seqFile, int threads) throws IOException, InterruptedException {
+        return this.lookup(seqFile, threads).uniform;
+    }
+
+    /**
+     * Counts the sequenced bases in a library.  Where the first file of a paired end library has uniform read lengths,
+     * and the second file hasn't already been scanned, the second file is assumed to mirror the first, so only the
+     * first file needs scanning.
+     * @param lib The library to count
+     * @param threads The number of threads to use if a file needs scanning
+     * @return The number of sequenced bases in the library
+     * @throws IOException Thrown if the cache or sequence files could not be read, or the cache could not be saved
+     * @throws InterruptedException Thrown if interrupted while scanning
+     */
+    public long countBases(Library lib, int threads) throws IOException, InterruptedException {
+
+        Entry first = this.lookup(lib.getFile1(), threads);
+
+        if (!lib.isPairedEnd()) {
+            return first.stats.getNbBases();
+        }
+
+        if (first.uniform && !this.contains(lib.getFile2())) {
+            log.debug("Reads in " + lib.getFile1().getAbsolutePath() + " have uniform length, so assuming its mates in " +
+                    lib.getFile2().getAbsolutePath() + " have the same number of bases");
+            return 2 * first.stats.getNbBases();
+        }
+
+        return first.stats.getNbBases() + this.lookup(lib.getFile2(), threads).stats.getNbBases();
+    }
+
+    private synchronized boolean contains(File seqFile) throws IOException {
+
+        this.load();
+
+        Entry entry = this.entries.get(seqFile.getAbsolutePath());
+
+        return entry != null && entry.size == seqFile.length() && entry.mtime == seqFile.lastModified();
+    }
+
+    private Entry lookup(final File seqFile, final int threads) throws IOException, InterruptedException {
+
+        final String path = seqFile.getAbsolutePath();
+        final long size = seqFile.length();
+        final long mtime = seqFile.lastModified();
+        final String key = path + "\t" + size + "\t" + mtime;
+
+        // Only hold the lock while looking in the maps, so other files can be scanned at the same time
+        FutureTask<Entry> task = null;
+        Future<Entry> result;
+        synchronized (this) {
+
+            this.load();
+
+            Entry entry = this.entries.get(path);
+
+            if (entry != null && entry.size == size && entry.mtime == mtime) {
+                return entry;
+            }
+
+            result = this.pending.get(key);
+
+            if (result == null) {
+                task = new FutureTask<>(new Callable<Entry>() {
+                    @Override
+                    public Entry call() throws IOException, InterruptedException {
+                        return scan(seqFile, size, mtime, key, threads);
+                    }
+                });
+                this.pending.put(key, task);
+                result = task;
+            }
+        }
+
+        // This thread is the first to ask for the file, so it does the scan
+        if (task != null) {
+            task.run();
+        }
+
+        try {
+            return result.get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to scan " + path, cause);
+        }
+    }
+
+    private Entry scan(File seqFile, long size, long mtime, String key, int threads)
+            throws IOException, InterruptedException {
+
+        String path = seqFile.getAbsolutePath();
+
+        try {
+            log.info("Scanning " + path + " with " + threads + " threads to gather library statistics");
+
+            FastqStats stats = new FastqScanner(threads).scan(seqFile);
+
+            log.info("Library statistics for " + path + ": " + stats.toString());
+
+            Entry entry = new Entry(size, mtime, stats, stats.isUniform());
+
+            synchronized (this) {
+                this.entries.put(path, entry);
+                this.save();
+            }
+
+            return entry;
+        }
+        finally {
+            synchronized (this) {
+                this.pending.remove(key);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+
+        if (this.loaded) {
+            return;
+        }
+
+        this.loaded = true;
+
+        if (!this.cacheFile.exists()) {
+            return;
+        }
+
+        for (String line : FileUtils.readLines(this.cacheFile)) {
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] parts = line.split("\t", -1);
+            if (parts.length != 7) {
+                log.warn("Ignoring malformed line in library statistics cache " + this.cacheFile.getAbsolutePath() + ": " + line);
+                continue;
+            }
+
+            Map<Long, Long> histogram = new TreeMap<>();
+            for (String bin : parts[6].split(",")) {
+                if (!bin.isEmpty()) {
+                    String[] lc = bin.split(":");
+                    histogram.put(Long.parseLong(lc[0]), Long.parseLong(lc[1]));
+                }
+            }
+
+            this.entries.put(parts[0], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                    new FastqStats(histogram), Boolean.parseBoolean(parts[5])));
+        }
+    }
+
+    private void save() throws IOException {
+
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+
+        for (Map.Entry<String, Entry> e : this.entries.entrySet()) {
+
+            FastqStats stats = e.getValue().stats;
+
+            List<String> bins = new ArrayList<>();
+            for (Map.Entry<Long, Long> bin : stats.getLengthHistogram().entrySet()) {
+                bins.add(bin.getKey() + ":" + bin.getValue());
+            }
+
+            lines.add(StringUtils.join(new Object[]{
+                    e.getKey(),
+                    e.getValue().size,
+                    e.getValue().mtime,
+                    stats.getNbRecords(),
+                    stats.getNbBases(),
+                    e.getValue().uniform,
+                    StringUtils.join(bins, ",")
+            }, "\t"));
+        }
+
+        File parent = this.cacheFile.getAbsoluteFile().getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create directory for library statistics cache: " + parent.getAbsolutePath());
+        }
+
+        // Write to a temporary file then move it into place, so a failure never leaves a truncated cache behind.  The
+        // temporary file is unique, as scheduled subsampling jobs may save the same cache from several processes at once.
+        File tmp = File.createTempFile(this.cacheFile.getName() + ".", ".tmp", parent);
+        FileUtils.writeLines(tmp, lines);
+
+        Files.move(tmp.toPath(), this.cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long mtime;
+        private final FastqStats stats;
+        private final boolean uniform;
+
+        private Entry(long size, long mtime, FastqStats stats, boolean uniform) {
+            this.size = size;
+            this.mtime = mtime;
+            this.stats = stats;
+            this.uniform = uniform;
+        }
+    }
+}
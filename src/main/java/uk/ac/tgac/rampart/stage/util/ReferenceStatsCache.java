@@ -0,0 +1,287 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.fgpt.conan.service.ConanExecutorService;
+import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
+import uk.ac.tgac.conan.process.asm.stats.QuastV23;
+import uk.ac.tgac.rampart.RampartCLI;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches the QUAST report for reference genomes in a directory shared between jobs, so that the reference only has to
+ * be analysed once no matter how many jobs use it.  Entries are keyed on the MD5 checksum of the reference's contents
+ * and whether it was analysed as a eukaryote, so a reference can be moved or renamed without losing its entry.
+ *
+ * The analysis can be started early with {@link #prefetch}, which runs it in the background.  {@link #get} then waits
+ * for it to finish, or runs the analysis itself if nothing was prefetched or the prefetch failed.
+ *
+ * There is one instance per cache directory, shared across the JVM, see {@link #forDir(File)}.
+ */
+public class ReferenceStatsCache {
+
+    private static Logger log = LoggerFactory.getLogger(ReferenceStatsCache.class);
+
+    public static final File DEFAULT_CACHE_DIR = new File(RampartCLI.USER_DIR, "cache" + File.separator + "ref_quast");
+
+    private static final String REPORT_FILE_NAME = "report.txt";
+
+    private static final Map<String, ReferenceStatsCache> INSTANCES = new HashMap<>();
+
+    private final File cacheDir;
+    private final Map<String, Future<File>> pending;
+    private final Map<String, String> checksums;
+
+    private ReferenceStatsCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+        this.pending = new HashMap<>();
+        this.checksums = new HashMap<>();
+    }
+
+    /**
+     * Gets the cache stored in the given directory
+     * @param cacheDir The directory storing the cache
+     * @return The cache instance shared by all users of this directory
+     */
+    public static ReferenceStatsCache forDir(File cacheDir) {
+        synchronized (INSTANCES) {
+            String key = cacheDir.getAbsolutePath();
+            ReferenceStatsCache cache = INSTANCES.get(key);
+            if (cache == null) {
+                cache = new ReferenceStatsCache(cacheDir);
+                INSTANCES.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Gets the key for a reference in this cache.  The reference's checksum is remembered for as long as the file's
+     * path, size and modification time are unchanged, so large references are only read once.
+     * @param reference The reference genome
+     * @param eukaryote Whether the reference is analysed as a eukaryote
+     * @return The cache key
+     * @throws IOException Thrown if the reference could not be read
+     */
+    public synchronized String getKey(File reference, boolean eukaryote) throws IOException {
+
+        String fileKey = reference.getAbsolutePath() + "\t" + reference.length() + "\t" + reference.lastModified();
+
+        String checksum = this.checksums.get(fileKey);
+        if (checksum == null) {
+            checksum = md5(reference);
+            this.checksums.put(fileKey, checksum);
+        }
+
+        return "quast23-" + checksum + (eukaryote ? "-euk" : "-prok");
+    }
+
+    /**
+     * Gets the cached QUAST report for the given reference
+     * @param reference The reference genome
+     * @param eukaryote Whether the reference is analysed as a eukaryote
+     * @return The cached report, or null if the reference hasn't been analysed yet
+     * @throws IOException Thrown if the reference could not be read
+     */
+    public File getCachedReport(File reference, boolean eukaryote) throws IOException {
+
+        File report = new File(new File(this.cacheDir, this.getKey(reference, eukaryote)), REPORT_FILE_NAME);
+        return report.exists() ? report : null;
+    }
+
+    /**
+     * Starts analysing the reference in the background, unless it is already cached or being analysed
+     * @param ces The executor service to run QUAST with
+     * @param reference The reference genome
+     * @param eukaryote Whether to analyse the reference as a eukaryote
+     * @param outputDir The directory to run QUAST in
+     * @param jobName The name of the QUAST job
+     * @throws IOException Thrown if the reference could not be read
+     */
+    public synchronized void prefetch(final ConanExecutorService ces, final File reference, final boolean eukaryote,
+                                      final File outputDir, final String jobName) throws IOException {
+
+        final String key = this.getKey(reference, eukaryote);
+
+        if (this.getCachedReport(reference, eukaryote) != null || this.pending.containsKey(key)) {
+            return;
+        }
+
+        log.info("Starting background analysis of reference: " + reference.getAbsolutePath());
+
+        FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                return publish(key, runQuast(ces, reference, eukaryote, outputDir, jobName));
+            }
+        });
+
+        Thread thread = new Thread(task, "ref-quast-" + key);
+        thread.setDaemon(true);
+        thread.start();
+
+        this.pending.put(key, task);
+    }
+
+    /**
+     * Gets QUAST stats for the reference.  Uses the cached report if present, otherwise waits for any analysis started
+     * by {@link #prefetch}, otherwise analyses the reference now.  The report is also copied to the output directory,
+     * so the job has its own record of the stats it used.
+     * @param ces The executor service to run QUAST with
+     * @param reference The reference genome
+     * @param eukaryote Whether to analyse the reference as a eukaryote
+     * @param outputDir The directory to run QUAST in, or copy the cached report to
+     * @param jobName The name of the QUAST job
+     * @return The reference stats
+     * @throws IOException Thrown if the reference or report could not be read, or the cache could not be written
+     * @throws InterruptedException Thrown if interrupted while waiting for QUAST
+     * @throws ProcessExecutionException Thrown if QUAST failed
+     */
+    public QuastV23.AssemblyStats get(ConanExecutorService ces, File reference, boolean eukaryote, File outputDir,
+                                      String jobName) throws IOException, InterruptedException, ProcessExecutionException {
+
+        String key = this.getKey(reference, eukaryote);
+
+        Future<File> task;
+        synchronized (this) {
+            task = this.pending.remove(key);
+        }
+
+        File report = this.getCachedReport(reference, eukaryote);
+
+        if (report == null && task != null) {
+            log.info("Waiting for background analysis of reference to complete");
+            try {
+                report = task.get();
+            }
+            catch (ExecutionException e) {
+                log.warn("Background analysis of reference failed, trying again: " + e.getCause().getMessage());
+            }
+        }
+
+        if (report == null) {
+            report = this.publish(key, runQuast(ces, reference, eukaryote, outputDir, jobName));
+        }
+        else {
+            log.info("Using cached reference stats from: " + report.getAbsolutePath());
+        }
+
+        File localReport = new File(outputDir, REPORT_FILE_NAME);
+        if (!localReport.exists()) {
+            FileUtils.copyFile(report, localReport);
+        }
+
+        return new QuastV23.Report(report).getAssemblyStats(0);
+    }
+
+    private static File runQuast(ConanExecutorService ces, File reference, boolean eukaryote, File outputDir, String jobName)
+            throws IOException, InterruptedException, ProcessExecutionException {
+
+        List<File> inputFiles = new ArrayList<>();
+        inputFiles.add(reference);
+        QuastV23.Args refArgs = new QuastV23.Args();
+        refArgs.setInputFiles(inputFiles);
+        refArgs.setFindGenes(true);
+        refArgs.setThreads(1);
+        refArgs.setEukaryote(eukaryote);
+        refArgs.setOutputDir(outputDir);
+
+        QuastV23 refQuast = new QuastV23(ces, refArgs);
+
+        ces.executeProcess(refQuast, outputDir, jobName, 1, 2000, false);
+
+        File report = new File(outputDir, REPORT_FILE_NAME);
+        if (!report.exists()) {
+            throw new IOException("QUAST did not produce a report for reference: " + reference.getAbsolutePath());
+        }
+
+        return report;
+    }
+
+    /**
+     * Copies a report into the cache.  The report is written to a temporary directory first and then renamed, so other
+     * jobs sharing the cache never see a partial entry.
+     */
+    private File publish(String key, File report) throws IOException {
+
+        File entryDir = new File(this.cacheDir, key);
+        File cachedReport = new File(entryDir, REPORT_FILE_NAME);
+
+        if (!this.cacheDir.exists() && !this.cacheDir.mkdirs() && !this.cacheDir.exists()) {
+            throw new IOException("Couldn't create reference stats cache directory: " + this.cacheDir.getAbsolutePath());
+        }
+
+        File tmpDir = new File(this.cacheDir, key + ".tmp-" + UUID.randomUUID().toString());
+        FileUtils.copyFile(report, new File(tmpDir, REPORT_FILE_NAME));
+
+        if (!tmpDir.renameTo(entryDir)) {
+            // Most likely another job cached the same reference first
+            FileUtils.deleteDirectory(tmpDir);
+            if (!cachedReport.exists()) {
+                throw new IOException("Couldn't add reference stats to cache: " + entryDir.getAbsolutePath());
+            }
+        }
+
+        log.info("Cached reference stats in: " + entryDir.getAbsolutePath());
+
+        return cachedReport;
+    }
+
+    private static String md5(File file) throws IOException {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 not supported", e);
+        }
+
+        byte[] buffer = new byte[1024 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
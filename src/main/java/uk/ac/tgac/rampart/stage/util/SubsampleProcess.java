@@ -0,0 +1,253 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.lang.StringUtils;
+import uk.ac.ebi.fgpt.conan.core.param.ArgValidator;
+import uk.ac.ebi.fgpt.conan.core.param.DefaultParamMap;
+import uk.ac.ebi.fgpt.conan.core.param.ParameterBuilder;
+import uk.ac.ebi.fgpt.conan.core.param.PathParameter;
+import uk.ac.ebi.fgpt.conan.core.process.AbstractConanProcess;
+import uk.ac.ebi.fgpt.conan.core.process.AbstractProcessArgs;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
+import uk.ac.ebi.fgpt.conan.model.param.AbstractProcessParams;
+import uk.ac.ebi.fgpt.conan.model.param.ConanParameter;
+import uk.ac.ebi.fgpt.conan.model.param.ParamMap;
+import uk.ac.ebi.fgpt.conan.service.ConanExecutorService;
+import uk.ac.tgac.conan.core.data.Library;
+import uk.ac.tgac.rampart.util.LibrarySubsampler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs {@link LibrarySubsampler} as an external process, so that MASS can submit subsampling to the scheduler and make
+ * the assemblers depend on it.
+ */
+public class SubsampleProcess extends AbstractConanProcess {
+
+    public SubsampleProcess() {
+        this(null);
+    }
+
+    public SubsampleProcess(ConanExecutorService ces) {
+        this(ces, new Args());
+    }
+
+    public SubsampleProcess(ConanExecutorService ces, Args args) {
+        super(LibrarySubsampler.EXECUTABLE, args, new Params(), ces);
+    }
+
+    public Args getArgs() {
+        return (Args)this.getProcessArgs();
+    }
+
+    @Override
+    public String getCommand() {
+
+        Args args = this.getArgs();
+
+        return LibrarySubsampler.createCommand(args.getStore(), args.getLibrary(), args.getCoverages(),
+                args.getGenomeSize(), args.getThreads(), args.getStatsFile());
+    }
+
+    @Override
+    public String getName() {
+        return "Subsample";
+    }
+
+    @Override
+    public boolean isOperational(ExecutionContext executionContext) {
+
+        // This tool is part of RAMPART, so is always available
+        return true;
+    }
+
+
+    public static class Args extends AbstractProcessArgs {
+
+        private SubsampleStore store;
+        private Library library;
+        private List<Integer> coverages;
+        private long genomeSize;
+        private int threads;
+        private File statsFile;
+
+        public Args() {
+
+            super(new Params());
+
+            this.store = null;
+            this.library = null;
+            this.coverages = new ArrayList<>();
+            this.genomeSize = 0;
+            this.threads = 1;
+            this.statsFile = null;
+        }
+
+        public Params getParams() {
+            return (Params)this.params;
+        }
+
+        public SubsampleStore getStore() {
+            return store;
+        }
+
+        public void setStore(SubsampleStore store) {
+            this.store = store;
+        }
+
+        public Library getLibrary() {
+            return library;
+        }
+
+        public void setLibrary(Library library) {
+            this.library = library;
+        }
+
+        public List<Integer> getCoverages() {
+            return coverages;
+        }
+
+        public void setCoverages(List<Integer> coverages) {
+            this.coverages = coverages;
+        }
+
+        public long getGenomeSize() {
+            return genomeSize;
+        }
+
+        public void setGenomeSize(long genomeSize) {
+            this.genomeSize = genomeSize;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public File getStatsFile() {
+            return statsFile;
+        }
+
+        public void setStatsFile(File statsFile) {
+            this.statsFile = statsFile;
+        }
+
+        @Override
+        public void parseCommandLine(CommandLine cmdLine) {
+
+        }
+
+        @Override
+        public ParamMap getArgMap() {
+
+            Params params = this.getParams();
+
+            ParamMap pvp = new DefaultParamMap();
+
+            if (this.store != null) {
+                pvp.put(params.getStore(), this.store.getStoreDir().getAbsolutePath());
+            }
+
+            if (this.library != null) {
+                pvp.put(params.getName(), this.library.getName());
+            }
+
+            if (this.coverages != null && !this.coverages.isEmpty()) {
+                pvp.put(params.getCoverages(), StringUtils.join(this.coverages, ","));
+            }
+
+            return pvp;
+        }
+
+        @Override
+        protected void setOptionFromMapEntry(ConanParameter param, String value) {
+
+            Params params = this.getParams();
+
+            if (param.equals(params.getCoverages())) {
+                this.coverages = new ArrayList<>();
+                for (String cvg : value.split(",")) {
+                    this.coverages.add(Integer.parseInt(cvg));
+                }
+            }
+            else if (!param.equals(params.getStore()) && !param.equals(params.getName())) {
+                throw new IllegalArgumentException("Unknown param found: " + param);
+            }
+        }
+
+        @Override
+        protected void setArgFromMapEntry(ConanParameter param, String value) {
+
+        }
+    }
+
+    public static class Params extends AbstractProcessParams {
+
+        private ConanParameter store;
+        private ConanParameter name;
+        private ConanParameter coverages;
+
+        public Params() {
+
+            this.store = new PathParameter(
+                    LibrarySubsampler.OPT_STORE,
+                    "The subsample store directory",
+                    false);
+
+            this.name = new ParameterBuilder()
+                    .longName(LibrarySubsampler.OPT_NAME)
+                    .description("The name of the library to subsample")
+                    .argValidator(ArgValidator.OFF)
+                    .create();
+
+            this.coverages = new ParameterBuilder()
+                    .longName(LibrarySubsampler.OPT_COVERAGES)
+                    .description("Comma separated list of coverage levels to produce")
+                    .argValidator(ArgValidator.OFF)
+                    .create();
+        }
+
+        public ConanParameter getStore() {
+            return store;
+        }
+
+        public ConanParameter getName() {
+            return name;
+        }
+
+        public ConanParameter getCoverages() {
+            return coverages;
+        }
+
+        @Override
+        public ConanParameter[] getConanParametersAsArray() {
+            return new ConanParameter[] {
+                    this.store,
+                    this.name,
+                    this.coverages
+            };
+        }
+    }
+}
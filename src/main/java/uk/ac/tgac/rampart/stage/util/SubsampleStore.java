@@ -0,0 +1,326 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.tgac.conan.core.data.Library;
+import uk.ac.tgac.rampart.util.seq.FastqSubsampler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A store of subsampled libraries shared by all MASS jobs in a RAMPART run.  Each input library gets its own directory,
+ * named after the library and a hash of its first file's path, so the same library from different ECQ outputs never
+ * collides.  A manifest in each directory records which coverage levels have been produced, along with a fingerprint
+ * of the input files and the seed used, so a subsample is only ever produced once for a given key and is regenerated
+ * if the input changes.
+ *
+ * Production is serialised per library, both within this JVM and across processes via a lock file, and all missing
+ * coverage levels for a library are produced together in a single pass over the input.  When subsamples are produced by
+ * scheduled jobs, the store also remembers which job will produce each subsample, so that later jobs needing it can
+ * depend on that job rather than producing it again.
+ */
+public class SubsampleStore {
+
+    private static Logger log = LoggerFactory.getLogger(SubsampleStore.class);
+
+    public static final String MANIFEST_FILE = "manifest.txt";
+    public static final String LOCK_FILE = ".lock";
+
+    private static final ConcurrentMap<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * Provides the number of sequenced bases in a library, which is only requested if something needs producing.
+     */
+    public interface BaseCounter {
+        long countBases(Library lib) throws IOException, InterruptedException;
+    }
+
+    private final File storeDir;
+    private final long seed;
+    private final int threads;
+    private final Map<String, Integer> jobIds;
+
+    public SubsampleStore(File storeDir) {
+        this(storeDir, FastqSubsampler.DEFAULT_SEED, 1);
+    }
+
+    /**
+     * Creates a subsample store
+     * @param storeDir The directory containing the store
+     * @param seed The seed used to select reads
+     * @param threads The number of threads available for decompressing input libraries
+     */
+    public SubsampleStore(File storeDir, long seed, int threads) {
+        this.storeDir = storeDir;
+        this.seed = seed;
+        this.threads = threads;
+        this.jobIds = new HashMap<>();
+    }
+
+    public File getStoreDir() {
+        return storeDir;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the directory used to store subsamples of the given library
+     * @param lib The input library
+     * @return The directory for this library
+     */
+    public File getLibraryDir(Library lib) {
+        return new File(this.storeDir, lib.getName() + "-" + hash(lib.getFile1().getAbsolutePath()));
+    }
+
+    /**
+     * Describes the library subsampled to the given coverage.  This does not produce the subsample.
+     * @param lib The input library
+     * @param coverage The desired coverage
+     * @return A copy of the library pointing to the subsampled files
+     */
+    public Library getSubsampledLibrary(Library lib, int coverage) {
+
+        File libDir = this.getLibraryDir(lib);
+        String fileSuffix = "_cvg-" + coverage + ".fastq";
+
+        Library subsampledLib = lib.copy();
+        subsampledLib.setName(lib.getName() + "-" + coverage + "x");
+        subsampledLib.setFiles(
+                new File(libDir, lib.getFile1().getName() + fileSuffix),
+                lib.isPairedEnd() ? new File(libDir, lib.getFile2().getName() + fileSuffix) : null);
+
+        return subsampledLib;
+    }
+
+    /**
+     * Finds which of the requested coverage levels still need producing for the given library.  This only reads the
+     * manifest, so it is cheap and never waits for a subsample that is currently being produced.
+     * @param lib The input library
+     * @param coverages The coverage levels required
+     * @return The coverage levels that are missing or out of date
+     * @throws IOException Thrown if there was a problem reading the manifest
+     */
+    public List<Integer> getMissing(Library lib, List<Integer> coverages) throws IOException {
+
+        File libDir = this.getLibraryDir(lib);
+
+        return this.findMissing(lib, coverages, loadManifest(new File(libDir, MANIFEST_FILE)), fingerprint(lib));
+    }
+
+    /**
+     * Records the id of the scheduled job that will produce the given subsample
+     * @param lib The input library
+     * @param coverage The coverage level being produced
+     * @param jobId The id of the job producing it
+     */
+    public synchronized void setJobId(Library lib, int coverage, int jobId) {
+        this.jobIds.put(this.getSubsampledLibrary(lib, coverage).getFile1().getAbsolutePath(), jobId);
+    }
+
+    /**
+     * Gets the id of the scheduled job producing the given subsample, if one was submitted through this store
+     * @param lib The input library
+     * @param coverage The coverage level required
+     * @return The id of the job producing this subsample, or null if no job was submitted for it
+     */
+    public synchronized Integer getJobId(Library lib, int coverage) {
+        return this.jobIds.get(this.getSubsampledLibrary(lib, coverage).getFile1().getAbsolutePath());
+    }
+
+    /**
+     * Ensures the given library has been subsampled to every requested coverage level, producing any missing levels in a
+     * single pass over the input.
+     * @param lib The input library
+     * @param coverages The coverage levels required
+     * @param genomeSize The estimated genome size
+     * @param counter Used to count the sequenced bases if anything needs producing
+     * @return The coverage levels that were produced by this call
+     * @throws IOException Thrown if there was a problem reading or writing the subsamples
+     * @throws InterruptedException Thrown if interrupted while counting bases or waiting for another process
+     */
+    public List<Integer> subsample(Library lib, List<Integer> coverages, long genomeSize, BaseCounter counter)
+            throws IOException, InterruptedException {
+
+        File libDir = this.getLibraryDir(lib);
+        String key = libDir.getAbsolutePath();
+
+        LOCKS.putIfAbsent(key, new Object());
+
+        synchronized (LOCKS.get(key)) {
+
+            if (!libDir.exists() && !libDir.mkdirs()) {
+                throw new IOException("Couldn't create subsampling directory: " + libDir.getAbsolutePath());
+            }
+
+            try (RandomAccessFile lockFile = new RandomAccessFile(new File(libDir, LOCK_FILE), "rw");
+                 FileLock lock = lockFile.getChannel().lock()) {
+
+                File manifestFile = new File(libDir, MANIFEST_FILE);
+                Map<String, String> manifest = loadManifest(manifestFile);
+                String fingerprint = fingerprint(lib);
+
+                List<Integer> missing = this.findMissing(lib, coverages, manifest, fingerprint);
+
+                if (missing.isEmpty()) {
+                    log.info("Reusing existing subsamples of library: " + lib.getName() + " in " + libDir.getAbsolutePath());
+                    return missing;
+                }
+
+                long sequencedBases = counter.countBases(lib);
+                boolean paired = lib.isPairedEnd();
+
+                double[] probabilities = new double[missing.size()];
+                File[] outputs1 = new File[missing.size()];
+                File[] outputs2 = paired ? new File[missing.size()] : null;
+
+                for (int i = 0; i < missing.size(); i++) {
+
+                    int coverage = missing.get(i);
+                    Library subsampledLib = this.getSubsampledLibrary(lib, coverage);
+
+                    // Calculate the probability of keeping an entry (or pair)
+                    probabilities[i] = Math.min(1.0, (double)coverage * (double)genomeSize / (double)sequencedBases);
+
+                    log.debug("Estimated that library: " + lib.getName() + "; has approximately " + sequencedBases + " bases.  " +
+                            "Estimated genome size is: " + genomeSize + "; so we plan only to keep " +
+                            (probabilities[i] * 100.0) + "% of the reads to achieve approximately " + coverage + "X coverage");
+
+                    // Remove stale entries before producing, so a failure never leaves a valid looking manifest
+                    manifest.remove(subsampledLib.getName());
+
+                    outputs1[i] = subsampledLib.getFile1();
+                    if (paired) {
+                        outputs2[i] = subsampledLib.getFile2();
+                    }
+                }
+
+                saveManifest(manifestFile, manifest);
+
+                long[] kept = new FastqSubsampler(this.seed, this.threads).subsample(lib.getFile1(), paired ? lib.getFile2() : null,
+                        probabilities, outputs1, outputs2);
+
+                for (int i = 0; i < missing.size(); i++) {
+                    int coverage = missing.get(i);
+                    log.info("Subsampled library: " + lib.getName() + " to " + coverage + "X; kept " + kept[i] +
+                            (paired ? " pairs" : " reads"));
+                    manifest.put(this.getSubsampledLibrary(lib, coverage).getName(), this.entry(lib, coverage, fingerprint));
+                }
+
+                saveManifest(manifestFile, manifest);
+
+                return missing;
+            }
+        }
+    }
+
+    private List<Integer> findMissing(Library lib, List<Integer> coverages, Map<String, String> manifest, String fingerprint) {
+
+        List<Integer> missing = new ArrayList<>();
+        for (Integer cvg : coverages) {
+            Library subsampledLib = this.getSubsampledLibrary(lib, cvg);
+            String entry = this.entry(lib, cvg, fingerprint);
+            if (!missing.contains(cvg) && (!entry.equals(manifest.get(subsampledLib.getName())) ||
+                    !subsampledLib.getFile1().exists() ||
+                    (lib.isPairedEnd() && !subsampledLib.getFile2().exists()))) {
+                missing.add(cvg);
+            }
+        }
+
+        return missing;
+    }
+
+    private String entry(Library lib, int coverage, String fingerprint) {
+        return lib.getName() + "\t" + coverage + "\t" + this.seed + "\t" + fingerprint;
+    }
+
+    private static String fingerprint(Library lib) {
+        StringBuilder sb = new StringBuilder(fingerprint(lib.getFile1()));
+        if (lib.isPairedEnd()) {
+            sb.append("\t").append(fingerprint(lib.getFile2()));
+        }
+        return sb.toString();
+    }
+
+    private static String fingerprint(File file) {
+        return file.getAbsolutePath() + "\t" + file.length() + "\t" + file.lastModified();
+    }
+
+    private static Map<String, String> loadManifest(File manifestFile) throws IOException {
+
+        Map<String, String> manifest = new LinkedHashMap<>();
+
+        if (manifestFile.exists()) {
+            for (String line : FileUtils.readLines(manifestFile)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    manifest.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+
+        return manifest;
+    }
+
+    private static void saveManifest(File manifestFile, Map<String, String> manifest) throws IOException {
+
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, String> e : manifest.entrySet()) {
+            lines.add(e.getKey() + "\t" + e.getValue());
+        }
+
+        // The manifest is read without taking the lock, so readers must always see a complete file
+        File tmp = new File(manifestFile.getParentFile(), manifestFile.getName() + ".tmp");
+        FileUtils.writeLines(tmp, lines);
+
+        Files.move(tmp.toPath(), manifestFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                sb.append(String.format("%02x", digest[i] & 0xff));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util;
+
+import org.apache.commons.cli.*;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.StopWatch;
+import uk.ac.tgac.conan.process.asm.stats.QuastV23;
+import uk.ac.tgac.rampart.RampartJobFileSystem;
+import uk.ac.tgac.rampart.stage.Select;
+import uk.ac.tgac.rampart.stage.analyse.asm.selector.DefaultAssemblySelector;
+import uk.ac.tgac.rampart.stage.analyse.asm.selector.ParetoAssemblySelector;
+import uk.ac.tgac.rampart.stage.analyse.asm.selector.SelectionTargets;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Re-selects the best assembly in one or more finished RAMPART jobs using the stats saved by the MASS selection stage,
+ * without rerunning any analysis.  This makes it cheap to try out different weightings across many jobs.
+ */
+public class JobReselector {
+
+    // **** Constants ****
+    public static final String DESC = "Re-selects the best MASS assembly in finished RAMPART jobs using saved stats.";
+    public static final int DEFAULT_TOP = 5;
+    public static final String RESCORED_FILE_NAME = "rescored.tsv";
+    public static final String RESCORED_FRONT_FILE_NAME = "rescored_pareto_front.tsv";
+
+    // **** Option parameter names ****
+    public static final String OPT_WEIGHTINGS = "weightings";
+    public static final String OPT_PARETO = "pareto";
+    public static final String OPT_TOP = "top";
+    public static final String OPT_SAVE = "save";
+    public static final String OPT_EST_GENOME_SIZE = "est_genome_size";
+    public static final String OPT_EST_GC = "est_gc";
+    public static final String OPT_EST_GENES = "est_genes";
+    public static final String OPT_VERBOSE = "verbose";
+    public static final String OPT_HELP = "help";
+
+    // **** Options ****
+    private List<File> jobDirs;
+    private File weightingsFile;
+    private boolean pareto;
+    private int top;
+    private boolean save;
+    private long estGenomeSize;
+    private double estGcPercentage;
+    private int estNbGenes;
+    private boolean verbose;
+    private boolean help;
+
+    private PrintStream out;
+
+    public JobReselector() {
+        this.jobDirs = new ArrayList<>();
+        this.jobDirs.add(new File("").getAbsoluteFile());
+        this.weightingsFile = Select.Args.DEFAULT_WEIGHTINGS_FILE;
+        this.pareto = false;
+        this.top = DEFAULT_TOP;
+        this.save = false;
+        this.estGenomeSize = 0;
+        this.estGcPercentage = 0.0;
+        this.estNbGenes = 0;
+        this.verbose = false;
+        this.help = false;
+        this.out = System.out;
+    }
+
+    public JobReselector(String[] args) throws ParseException {
+
+        this();
+
+        // Parse the command line arguments
+        CommandLine cmdLine = new PosixParser().parse(createOptions(), args, true);
+
+        // Extract optional boolean flags
+        this.help = cmdLine.hasOption(OPT_HELP);
+        this.verbose = cmdLine.hasOption(OPT_VERBOSE);
+        this.pareto = cmdLine.hasOption(OPT_PARETO);
+        this.save = cmdLine.hasOption(OPT_SAVE);
+
+        try {
+            if (cmdLine.hasOption(OPT_WEIGHTINGS)) {
+                this.weightingsFile = new File(cmdLine.getOptionValue(OPT_WEIGHTINGS));
+            }
+            if (cmdLine.hasOption(OPT_TOP)) {
+                this.top = Integer.parseInt(cmdLine.getOptionValue(OPT_TOP));
+            }
+            if (cmdLine.hasOption(OPT_EST_GENOME_SIZE)) {
+                this.estGenomeSize = Long.parseLong(cmdLine.getOptionValue(OPT_EST_GENOME_SIZE));
+            }
+            if (cmdLine.hasOption(OPT_EST_GC)) {
+                this.estGcPercentage = Double.parseDouble(cmdLine.getOptionValue(OPT_EST_GC));
+            }
+            if (cmdLine.hasOption(OPT_EST_GENES)) {
+                this.estNbGenes = Integer.parseInt(cmdLine.getOptionValue(OPT_EST_GENES));
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid numeric option: " + e.getMessage());
+        }
+
+        // Any remaining arguments are job directories, if there are none then use the current working directory
+        if (!cmdLine.getArgList().isEmpty()) {
+            this.jobDirs.clear();
+            for (Object arg : cmdLine.getArgList()) {
+                this.jobDirs.add(new File((String) arg));
+            }
+        }
+    }
+
+    private static Options createOptions() {
+
+        // create Options object
+        Options options = new Options();
+
+        options.addOption(OptionBuilder.withArgName("file").withLongOpt(OPT_WEIGHTINGS).hasArg()
+                .withDescription("The weightings file to score assemblies with.  Default: " +
+                        Select.Args.DEFAULT_WEIGHTINGS_FILE.getAbsolutePath())
+                .create("w"));
+
+        options.addOption(OptionBuilder.withArgName("int").withLongOpt(OPT_TOP).hasArg()
+                .withDescription("The number of top ranked assemblies to list for each job.  Default: " + DEFAULT_TOP)
+                .create("n"));
+
+        options.addOption(OptionBuilder.withArgName("long").withLongOpt(OPT_EST_GENOME_SIZE).hasArg()
+                .withDescription("Estimated genome size, used for jobs without saved selection targets or reference")
+                .create());
+
+        options.addOption(OptionBuilder.withArgName("double").withLongOpt(OPT_EST_GC).hasArg()
+                .withDescription("Estimated GC percentage, used for jobs without saved selection targets or reference")
+                .create());
+
+        options.addOption(OptionBuilder.withArgName("int").withLongOpt(OPT_EST_GENES).hasArg()
+                .withDescription("Estimated number of genes, used for jobs without saved selection targets or reference")
+                .create());
+
+        options.addOption(new Option("p", OPT_PARETO, false, "Also report the Pareto front of assemblies."));
+        options.addOption(new Option("s", OPT_SAVE, false, "Save the re-scored assemblies to \"" + RESCORED_FILE_NAME +
+                "\" in each job's MASS selection directory.  The original results are left untouched."));
+        options.addOption(new Option("v", OPT_VERBOSE, false, "Output extra information while running."));
+        options.addOption(new Option("?", OPT_HELP, false, "Print this message."));
+
+        return options;
+    }
+
+    private static void printHelp() {
+
+        CommandLineHelper.printHelp(
+                System.err,
+                "rampart-select [options] [<job_dir> ...]",
+                "RAMPART assembly re-selection tool\n\n" +
+                "This tool re-scores the MASS assemblies of finished RAMPART jobs using the stats saved by the " +
+                "select_mass stage, so that different weightings can be tried without rerunning any analysis.\n\n" +
+                "If no job directories are specified then this tool will use the current working directory.\n\n",
+                createOptions());
+    }
+
+    public void execute() throws IOException {
+
+        if (this.help) {
+            printHelp();
+        }
+        else {
+            // Keep going if a job fails so that one bad job doesn't stop a large batch
+            int failed = 0;
+            for (File jobDir : this.jobDirs) {
+                try {
+                    this.reselect(jobDir);
+                }
+                catch (IOException e) {
+                    System.err.println("Error re-selecting " + jobDir.getAbsolutePath() + ": " + e.getMessage());
+                    failed++;
+                }
+            }
+
+            if (failed > 0) {
+                throw new IOException("Failed to re-select assemblies for " + failed + " of " + this.jobDirs.size() + " jobs");
+            }
+        }
+    }
+
+    /**
+     * Re-selects the best assembly from the saved stats of a RAMPART job
+     * @param jobDir The RAMPART job directory
+     * @return The newly selected assembly
+     * @throws IOException Thrown if the saved stats could not be read, or the rescored stats could not be written
+     */
+    public AssemblyStats reselect(File jobDir) throws IOException {
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+
+        RampartJobFileSystem jobFs = new RampartJobFileSystem(jobDir.getAbsoluteFile());
+        File selectDir = jobFs.getSelectMassDir();
+
+        // Load the saved stats, falling back to the TSV format written by older versions
+        File statsFile = new File(selectDir, Select.STATS_FILE_NAME);
+        if (!statsFile.exists()) {
+            statsFile = new File(selectDir, "scores.tsv");
+        }
+        if (!statsFile.exists()) {
+            throw new IOException("Could not find saved assembly stats in " + selectDir.getAbsolutePath() +
+                    ".  Has the select_mass stage completed for this job?");
+        }
+
+        AssemblyStatsTable table = new AssemblyStatsTable(statsFile);
+        if (table.isEmpty()) {
+            throw new IOException("No assemblies found in " + statsFile.getAbsolutePath());
+        }
+
+        SelectionTargets targets = this.loadTargets(jobFs);
+
+        AssemblyStats previous = table.getBest();
+        String previousName = previous.getDataset() + "-" + previous.getDesc();
+        int previousRow = previous.getRow();
+        double previousScore = previous.getFinalScore();
+
+        DefaultAssemblySelector selector = this.pareto ?
+                new ParetoAssemblySelector(this.weightingsFile) :
+                new DefaultAssemblySelector(this.weightingsFile);
+
+        AssemblyStats best = selector.selectAssembly(table, targets);
+
+        stopWatch.stop();
+
+        // Report
+        this.out.println(jobDir.getAbsolutePath());
+        this.out.println("  Previously selected: " + previousName + " (" + previousScore + ")");
+        this.out.println("  Now selected:        " + best.getDataset() + "-" + best.getDesc() + " (" + best.getFinalScore() + ")" +
+                (best.getRow() == previousRow ? "" : "  ** CHANGED **"));
+
+        if (this.top > 0) {
+            this.out.println("  Rank\tScore\tAssembly");
+            int rank = 1;
+            for (AssemblyStats stats : this.rank(table, this.top)) {
+                this.out.println("  " + rank++ + "\t" + stats.getFinalScore() + "\t" + stats.getDataset() + "-" + stats.getDesc());
+            }
+        }
+
+        if (this.pareto) {
+            List<String> names = new ArrayList<>();
+            for (AssemblyStats stats : ((ParetoAssemblySelector) selector).getFront()) {
+                names.add(stats.getDataset() + "-" + stats.getDesc());
+            }
+            this.out.println("  Pareto front: " + StringUtils.join(names, ", "));
+        }
+
+        if (this.verbose) {
+            this.out.println("  Re-scored " + table.size() + " assemblies from " + statsFile.getName() + " in " +
+                    stopWatch.getTime() + "ms");
+        }
+
+        if (this.save) {
+            table.saveTsv(new File(selectDir, RESCORED_FILE_NAME));
+            if (this.pareto) {
+                ((ParetoAssemblySelector) selector).saveFront(new File(selectDir, RESCORED_FRONT_FILE_NAME));
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Works out what to score the assemblies against.  Uses the targets saved by the selection stage if present,
+     * otherwise the reference stats if the reference was analysed, otherwise the estimates given on the command line.
+     */
+    protected SelectionTargets loadTargets(RampartJobFileSystem jobFs) throws IOException {
+
+        File selectDir = jobFs.getSelectMassDir();
+
+        File targetsFile = new File(selectDir, Select.TARGETS_FILE_NAME);
+        if (targetsFile.exists()) {
+            return SelectionTargets.load(targetsFile);
+        }
+
+        boolean cegmaEnabled = new File(jobFs.getAnalyseMassDir(), "cegma").exists();
+        boolean katEnabled = new File(jobFs.getAnalyseMassDir(), "kat").exists();
+
+        File refReport = new File(new File(selectDir, Select.REF_QUAST_DIR_NAME), "report.txt");
+        if (refReport.exists()) {
+            QuastV23.AssemblyStats refStats = new QuastV23.Report(refReport).getAssemblyStats(0);
+            return SelectionTargets.create(null, refStats, cegmaEnabled, katEnabled);
+        }
+
+        return new SelectionTargets(false, this.estGenomeSize, this.estGcPercentage, this.estNbGenes, cegmaEnabled, katEnabled);
+    }
+
+    private List<AssemblyStats> rank(AssemblyStatsTable table, int n) {
+
+        List<AssemblyStats> ranked = new ArrayList<>();
+        for (AssemblyStats stats : table) {
+            ranked.add(stats);
+        }
+
+        Collections.sort(ranked, new Comparator<AssemblyStats>() {
+            @Override
+            public int compare(AssemblyStats o1, AssemblyStats o2) {
+                return Double.compare(o2.getFinalScore(), o1.getFinalScore());
+            }
+        });
+
+        return ranked.subList(0, Math.min(n, ranked.size()));
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * The main entry point for RAMPART's assembly re-selector.
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+
+        // Process the command line
+        try {
+            new JobReselector(args).execute();
+        }
+        catch (IllegalArgumentException | ParseException e) {
+            System.err.println(e.getMessage());
+            printHelp();
+            System.exit(1);
+        }
+        catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.err.println(StringUtils.join(e.getStackTrace(), "\n"));
+            System.exit(2);
+        }
+    }
+
+}
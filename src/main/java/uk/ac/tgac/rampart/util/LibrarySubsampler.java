@@ -0,0 +1,271 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util;
+
+import org.apache.commons.cli.*;
+import org.apache.commons.lang.StringUtils;
+import uk.ac.tgac.conan.core.data.Library;
+import uk.ac.tgac.rampart.stage.util.LibraryStatsCache;
+import uk.ac.tgac.rampart.stage.util.SubsampleStore;
+import uk.ac.tgac.rampart.util.seq.FastqScanner;
+import uk.ac.tgac.rampart.util.seq.FastqSubsampler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Subsamples a library into a MASS subsample store, producing every requested coverage level in a single pass over the
+ * input.  MASS submits this tool as a scheduled job, so that subsampling happens on the cluster alongside the assemblers
+ * that need it, rather than on the node running RAMPART.
+ */
+public class LibrarySubsampler {
+
+    // **** Constants ****
+    public static final String EXECUTABLE = "rampart-subsample";
+
+    // **** Option parameter names ****
+    public static final String OPT_STORE = "store";
+    public static final String OPT_NAME = "name";
+    public static final String OPT_COVERAGES = "coverages";
+    public static final String OPT_GENOME_SIZE = "genome_size";
+    public static final String OPT_SEED = "seed";
+    public static final String OPT_THREADS = "threads";
+    public static final String OPT_STATS = "stats";
+    public static final String OPT_HELP = "help";
+
+    // **** Options ****
+    private File storeDir;
+    private String name;
+    private File file1;
+    private File file2;
+    private List<Integer> coverages;
+    private long genomeSize;
+    private long seed;
+    private int threads;
+    private File statsFile;
+    private boolean help;
+
+    public LibrarySubsampler() {
+        this.storeDir = null;
+        this.name = null;
+        this.file1 = null;
+        this.file2 = null;
+        this.coverages = new ArrayList<>();
+        this.genomeSize = 0;
+        this.seed = FastqSubsampler.DEFAULT_SEED;
+        this.threads = 1;
+        this.statsFile = null;
+        this.help = false;
+    }
+
+    public LibrarySubsampler(String[] args) throws ParseException {
+
+        this();
+
+        // Parse the command line arguments
+        CommandLine cmdLine = new PosixParser().parse(createOptions(), args, true);
+
+        this.help = cmdLine.hasOption(OPT_HELP);
+
+        if (this.help) {
+            return;
+        }
+
+        if (!cmdLine.hasOption(OPT_STORE) || !cmdLine.hasOption(OPT_NAME) || !cmdLine.hasOption(OPT_COVERAGES) ||
+                !cmdLine.hasOption(OPT_GENOME_SIZE)) {
+            throw new IllegalArgumentException("The store, name, coverages and genome_size options are all required");
+        }
+
+        this.storeDir = new File(cmdLine.getOptionValue(OPT_STORE));
+        this.name = cmdLine.getOptionValue(OPT_NAME);
+
+        if (cmdLine.hasOption(OPT_STATS)) {
+            this.statsFile = new File(cmdLine.getOptionValue(OPT_STATS));
+        }
+
+        try {
+            for (String cvg : cmdLine.getOptionValue(OPT_COVERAGES).split(",")) {
+                this.coverages.add(Integer.parseInt(cvg.trim()));
+            }
+            this.genomeSize = Long.parseLong(cmdLine.getOptionValue(OPT_GENOME_SIZE));
+            if (cmdLine.hasOption(OPT_SEED)) {
+                this.seed = Long.parseLong(cmdLine.getOptionValue(OPT_SEED));
+            }
+            if (cmdLine.hasOption(OPT_THREADS)) {
+                this.threads = Integer.parseInt(cmdLine.getOptionValue(OPT_THREADS));
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid numeric option: " + e.getMessage());
+        }
+
+        // The remaining arguments are the library's files
+        List files = cmdLine.getArgList();
+        if (files.isEmpty() || files.size() > 2) {
+            throw new IllegalArgumentException("Expected one file for a single end library, or two for a paired end library");
+        }
+
+        this.file1 = new File((String) files.get(0));
+        this.file2 = files.size() == 2 ? new File((String) files.get(1)) : null;
+    }
+
+    private static Options createOptions() {
+
+        // create Options object
+        Options options = new Options();
+
+        options.addOption(OptionBuilder.withArgName("dir").withLongOpt(OPT_STORE).hasArg()
+                .withDescription("The subsample store directory, shared by all MASS jobs in a RAMPART run")
+                .create("s"));
+
+        options.addOption(OptionBuilder.withArgName("string").withLongOpt(OPT_NAME).hasArg()
+                .withDescription("The name of the library to subsample")
+                .create("n"));
+
+        options.addOption(OptionBuilder.withArgName("list").withLongOpt(OPT_COVERAGES).hasArg()
+                .withDescription("Comma separated list of coverage levels to produce")
+                .create("c"));
+
+        options.addOption(OptionBuilder.withArgName("long").withLongOpt(OPT_GENOME_SIZE).hasArg()
+                .withDescription("Estimated genome size")
+                .create("g"));
+
+        options.addOption(OptionBuilder.withArgName("long").withLongOpt(OPT_SEED).hasArg()
+                .withDescription("The seed used to select reads.  Default: " + FastqSubsampler.DEFAULT_SEED)
+                .create());
+
+        options.addOption(OptionBuilder.withArgName("int").withLongOpt(OPT_THREADS).hasArg()
+                .withDescription("The number of threads to use for reading the library.  Default: 1")
+                .create("t"));
+
+        options.addOption(OptionBuilder.withArgName("file").withLongOpt(OPT_STATS).hasArg()
+                .withDescription("The RAMPART job's library statistics cache, used to avoid rescanning the library")
+                .create());
+
+        options.addOption(new Option("?", OPT_HELP, false, "Print this message."));
+
+        return options;
+    }
+
+    private static void printHelp() {
+
+        CommandLineHelper.printHelp(
+                System.err,
+                EXECUTABLE + " [options] <file1> [<file2>]",
+                "RAMPART library subsampler\n\n" +
+                "This tool subsamples a library to one or more coverage levels, storing the results in a MASS subsample " +
+                "store.  Levels already in the store are not produced again.  It is normally run by MASS rather than " +
+                "by hand.\n\n",
+                createOptions());
+    }
+
+    /**
+     * Builds the command line that runs this tool for the given library
+     * @param store The subsample store to produce the subsamples in
+     * @param lib The library to subsample
+     * @param coverages The coverage levels to produce
+     * @param genomeSize The estimated genome size
+     * @param threads The number of threads to use for reading the library
+     * @param statsFile The library statistics cache, or null if there isn't one
+     * @return The command line
+     */
+    public static String createCommand(SubsampleStore store, Library lib, List<Integer> coverages, long genomeSize,
+                                       int threads, File statsFile) {
+
+        List<String> parts = new ArrayList<>();
+        parts.add(EXECUTABLE);
+        parts.add("--" + OPT_STORE + " " + store.getStoreDir().getAbsolutePath());
+        parts.add("--" + OPT_NAME + " " + lib.getName());
+        parts.add("--" + OPT_COVERAGES + " " + StringUtils.join(coverages, ","));
+        parts.add("--" + OPT_GENOME_SIZE + " " + genomeSize);
+        parts.add("--" + OPT_SEED + " " + store.getSeed());
+        parts.add("--" + OPT_THREADS + " " + threads);
+
+        if (statsFile != null) {
+            parts.add("--" + OPT_STATS + " " + statsFile.getAbsolutePath());
+        }
+
+        parts.add(lib.getFile1().getAbsolutePath());
+
+        if (lib.isPairedEnd()) {
+            parts.add(lib.getFile2().getAbsolutePath());
+        }
+
+        return StringUtils.join(parts, " ");
+    }
+
+    /**
+     * Produces any requested coverage levels missing from the store
+     * @return The coverage levels that were produced
+     * @throws IOException Thrown if there was a problem reading the library or writing the subsamples
+     * @throws InterruptedException Thrown if interrupted while counting bases or waiting for another process
+     */
+    public List<Integer> execute() throws IOException, InterruptedException {
+
+        if (this.help) {
+            printHelp();
+            return new ArrayList<>();
+        }
+
+        Library lib = new Library();
+        lib.setName(this.name);
+        lib.setType(this.file2 != null ? Library.Type.PAIRED_END : Library.Type.SINGLE_END);
+        lib.setFiles(this.file1, this.file2);
+
+        SubsampleStore store = new SubsampleStore(this.storeDir, this.seed, this.threads);
+
+        return store.subsample(lib, this.coverages, this.genomeSize, new SubsampleStore.BaseCounter() {
+            @Override
+            public long countBases(Library lib) throws IOException, InterruptedException {
+
+                // Use the job wide cache if possible, so libraries scanned by earlier stages aren't scanned again
+                if (statsFile != null) {
+                    return LibraryStatsCache.forFile(statsFile).countBases(lib, threads);
+                }
+
+                FastqScanner scanner = new FastqScanner(threads);
+                return scanner.scan(lib.getFile1()).getNbBases() +
+                        (lib.isPairedEnd() ? scanner.scan(lib.getFile2()).getNbBases() : 0);
+            }
+        });
+    }
+
+    /**
+     * The main entry point for RAMPART's library subsampler.
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+
+        // Process the command line
+        try {
+            new LibrarySubsampler(args).execute();
+        }
+        catch (IllegalArgumentException | ParseException e) {
+            System.err.println(e.getMessage());
+            printHelp();
+            System.exit(1);
+        }
+        catch (Exception e) {
+            System.err.println(e.getMessage());
+            System.err.println(StringUtils.join(e.getStackTrace(), "\n"));
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * A buffered writer for ASCII text output which works directly on bytes.  Numbers are formatted into a scratch buffer
+ * rather than via {@link String}, so writing tab separated records does not allocate anything per line.
+ */
+public class AsciiWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private final byte[] digits;
+    private int count;
+    private long position;
+
+    public AsciiWriter(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    public AsciiWriter(OutputStream out) {
+        this.out = out;
+        this.buffer = new byte[BUFFER_SIZE];
+        this.digits = new byte[20];
+        this.count = 0;
+        this.position = 0;
+    }
+
+    public void write(int b) throws IOException {
+        if (this.count == this.buffer.length) {
+            this.flushBuffer();
+        }
+        this.buffer[this.count++] = (byte)b;
+        this.position++;
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        this.write(bytes, 0, bytes.length);
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+
+        this.position += length;
+
+        if (length >= this.buffer.length) {
+            this.flushBuffer();
+            this.out.write(bytes, offset, length);
+            return;
+        }
+
+        if (this.count + length > this.buffer.length) {
+            this.flushBuffer();
+        }
+
+        System.arraycopy(bytes, offset, this.buffer, this.count, length);
+        this.count += length;
+    }
+
+    /**
+     * Copies bytes from a buffer, which may be a memory-mapped region of another file
+     * @param buf The buffer to copy from
+     * @param from Index of the first byte to copy (inclusive)
+     * @param to Index after the last byte to copy (exclusive)
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void write(ByteBuffer buf, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            if (this.count == this.buffer.length) {
+                this.flushBuffer();
+            }
+            this.buffer[this.count++] = buf.get(i);
+        }
+        this.position += to - from;
+    }
+
+    /**
+     * Writes the decimal representation of a number
+     * @param n The number to write
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void writeNumber(long n) throws IOException {
+
+        if (n == Long.MIN_VALUE) {
+            this.write(Long.toString(n).getBytes());
+            return;
+        }
+
+        if (n < 0) {
+            this.write('-');
+            n = -n;
+        }
+
+        int i = this.digits.length;
+        do {
+            this.digits[--i] = (byte)('0' + (n % 10));
+            n /= 10;
+        } while (n > 0);
+
+        this.write(this.digits, i, this.digits.length - i);
+    }
+
+    /**
+     * The total number of bytes written to this writer so far
+     * @return The current output position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (this.count > 0) {
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+        }
+    }
+
+    public void flush() throws IOException {
+        this.flushBuffer();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flushBuffer();
+        }
+        finally {
+            this.out.close();
+        }
+    }
+}
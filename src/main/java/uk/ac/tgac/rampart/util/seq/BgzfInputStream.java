@@ -0,0 +1,285 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads BGZF (blocked gzip) input, inflating blocks in parallel.  Compressed blocks are read on the calling thread,
+ * which is cheap because the block size is given in each header, and inflated on a thread pool.  Decompressed blocks
+ * are always returned in order.  The stream fails if it finds a gzip member that is not a BGZF block, so callers
+ * should check the input with {@link #isBgzf(byte[], int)} first.
+ */
+public class BgzfInputStream extends InputStream {
+
+    private static final int FIXED_HEADER_SIZE = 12;
+    private static final int FOOTER_SIZE = 8;
+
+    private final InputStream in;
+    private final ExecutorService pool;
+    private final int maxPending;
+
+    private final Deque<Future<byte[]>> pending;
+    private boolean eof;
+
+    private byte[] buf;
+    private int pos;
+
+    /**
+     * Creates a BGZF stream which inflates blocks on the given pool
+     * @param in The compressed input
+     * @param pool The pool to inflate blocks on
+     * @param maxPending The maximum number of blocks to have in flight on the pool
+     */
+    public BgzfInputStream(InputStream in, ExecutorService pool, int maxPending) {
+        this.in = in;
+        this.pool = pool;
+        this.maxPending = Math.max(1, maxPending);
+        this.pending = new ArrayDeque<>();
+        this.eof = false;
+        this.buf = new byte[0];
+        this.pos = 0;
+    }
+
+    /**
+     * Checks whether the given bytes, taken from the start of a file, are the header of a BGZF block
+     * @param header The first bytes of the file
+     * @param length The number of valid bytes in header
+     * @return True if the header is a gzip header carrying the BGZF 'BC' extra subfield
+     */
+    public static boolean isBgzf(byte[] header, int length) {
+
+        if (length < FIXED_HEADER_SIZE || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b ||
+                header[2] != 8 || (header[3] & 4) == 0) {
+            return false;
+        }
+
+        int xlen = (header[10] & 0xff) | ((header[11] & 0xff) << 8);
+        return findBlockSize(header, FIXED_HEADER_SIZE, Math.min(length, FIXED_HEADER_SIZE + xlen)) >= 0;
+    }
+
+    private static int findBlockSize(byte[] extra, int from, int to) {
+        int i = from;
+        while (i + 4 <= to) {
+            int slen = (extra[i + 2] & 0xff) | ((extra[i + 3] & 0xff) << 8);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && slen == 2 && i + 6 <= to) {
+                return (extra[i + 4] & 0xff) | ((extra[i + 5] & 0xff) << 8);
+            }
+            i += 4 + slen;
+        }
+        return -1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.pos == this.buf.length && !this.advance()) {
+            return -1;
+        }
+        return this.buf[this.pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (this.pos == this.buf.length && !this.advance()) {
+            return -1;
+        }
+        int n = Math.min(len, this.buf.length - this.pos);
+        System.arraycopy(this.buf, this.pos, b, off, n);
+        this.pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return this.buf.length - this.pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> f : this.pending) {
+            f.cancel(true);
+        }
+        this.pending.clear();
+        this.in.close();
+    }
+
+    private boolean advance() throws IOException {
+
+        while (true) {
+
+            while (!this.eof && this.pending.size() < this.maxPending) {
+                byte[] block = this.readBlock();
+                if (block == null) {
+                    this.eof = true;
+                }
+                else {
+                    this.pending.add(this.pool.submit(new InflateTask(block)));
+                }
+            }
+
+            Future<byte[]> next = this.pending.poll();
+            if (next == null) {
+                return false;
+            }
+
+            try {
+                this.buf = next.get();
+                this.pos = 0;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while inflating BGZF block", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to inflate BGZF block", e.getCause());
+            }
+
+            // Skip empty blocks, such as the EOF marker
+            if (this.buf.length > 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads the next complete compressed block
+     * @return The block, or null at the end of the input
+     */
+    private byte[] readBlock() throws IOException {
+
+        byte[] header = new byte[FIXED_HEADER_SIZE];
+        int n = readFully(this.in, header, 0, FIXED_HEADER_SIZE);
+        if (n == 0) {
+            return null;
+        }
+        if (n < FIXED_HEADER_SIZE) {
+            throw new EOFException("Truncated BGZF block header");
+        }
+        if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8 || (header[3] & 4) == 0) {
+            throw new IOException("Not a BGZF block");
+        }
+
+        int xlen = (header[10] & 0xff) | ((header[11] & 0xff) << 8);
+        byte[] extra = new byte[xlen];
+        if (readFully(this.in, extra, 0, xlen) < xlen) {
+            throw new EOFException("Truncated BGZF block header");
+        }
+
+        int bsize = findBlockSize(extra, 0, xlen);
+        if (bsize < 0) {
+            throw new IOException("Gzip member is missing the BGZF block size");
+        }
+
+        int remaining = bsize + 1 - FIXED_HEADER_SIZE - xlen;
+        if (remaining < FOOTER_SIZE) {
+            throw new IOException("Invalid BGZF block size: " + bsize);
+        }
+
+        byte[] block = new byte[remaining];
+        if (readFully(this.in, block, 0, remaining) < remaining) {
+            throw new EOFException("Truncated BGZF block");
+        }
+
+        return block;
+    }
+
+    private static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(b, off + total, len - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static int getInt(byte[] b, int i) {
+        return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+    }
+
+    /**
+     * Inflates the compressed data and footer of a single block
+     */
+    private static class InflateTask implements Callable<byte[]> {
+
+        private final byte[] block;
+
+        private InflateTask(byte[] block) {
+            this.block = block;
+        }
+
+        @Override
+        public byte[] call() throws IOException {
+
+            int cdataLength = this.block.length - FOOTER_SIZE;
+            int crc = getInt(this.block, cdataLength);
+            int isize = getInt(this.block, cdataLength + 4);
+
+            byte[] data = new byte[isize];
+
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(this.block, 0, cdataLength);
+                int n = 0;
+                while (n < isize) {
+                    int r = inflater.inflate(data, n, isize - n);
+                    if (r == 0 && (inflater.finished() || inflater.needsInput())) {
+                        break;
+                    }
+                    n += r;
+                }
+                if (n != isize) {
+                    throw new IOException("BGZF block inflated to " + n + " bytes but expected " + isize);
+                }
+            }
+            catch (DataFormatException e) {
+                throw new IOException("Corrupt BGZF block", e);
+            }
+            finally {
+                inflater.end();
+            }
+
+            CRC32 check = new CRC32();
+            check.update(data, 0, isize);
+            if ((int)check.getValue() != crc) {
+                throw new IOException("BGZF block failed CRC check");
+            }
+
+            return data;
+        }
+    }
+}
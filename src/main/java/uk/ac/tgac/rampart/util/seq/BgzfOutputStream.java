@@ -0,0 +1,300 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes BGZF (blocked gzip) output, as used by samtools and htslib.  Data is cut into independent gzip blocks of at
+ * most {@link #BLOCK_SIZE} uncompressed bytes, so the result can be read by any gzip reader but also supports random
+ * access once indexed.  Blocks can optionally be compressed on a thread pool, in which case they are still written in
+ * order.  The block offsets needed for a samtools compatible .gzi index are recorded as the blocks are written.
+ */
+public class BgzfOutputStream extends OutputStream {
+
+    /**
+     * Maximum number of uncompressed bytes per block.  This matches bgzip, and guarantees that even incompressible data
+     * fits in the 64KB block limit.
+     */
+    public static final int BLOCK_SIZE = 0xff00;
+
+    private static final int MAX_BLOCK_SIZE = 0x10000;
+    private static final int HEADER_SIZE = 18;
+    private static final int FOOTER_SIZE = 8;
+
+    private static final byte[] EOF_BLOCK = new byte[] {
+            0x1f, (byte)0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte)0xff, 0x06, 0x00, 0x42, 0x43, 0x02, 0x00,
+            0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int maxPending;
+    private final int level;
+
+    private byte[] block;
+    private int count;
+
+    private final Deque<Future<byte[]>> pending;
+    private final Deque<Integer> pendingLengths;
+    private final List<long[]> index;
+    private long compressedOffset;
+    private long uncompressedOffset;
+    private boolean closed;
+
+    /**
+     * Creates a BGZF stream which compresses blocks on the calling thread
+     * @param out The stream to write compressed output to
+     */
+    public BgzfOutputStream(OutputStream out) {
+        this(out, null, 1);
+    }
+
+    /**
+     * Creates a BGZF stream which compresses blocks on the given pool
+     * @param out The stream to write compressed output to
+     * @param pool The pool to compress blocks on, or null to compress on the calling thread
+     * @param maxPending The maximum number of blocks to have in flight on the pool
+     */
+    public BgzfOutputStream(OutputStream out, ExecutorService pool, int maxPending) {
+        this(out, pool, maxPending, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public BgzfOutputStream(OutputStream out, ExecutorService pool, int maxPending, int level) {
+        this.out = out;
+        this.pool = pool;
+        this.maxPending = Math.max(maxPending, 1);
+        this.level = level;
+        this.block = new byte[BLOCK_SIZE];
+        this.count = 0;
+        this.pending = new ArrayDeque<>();
+        this.pendingLengths = new ArrayDeque<>();
+        this.index = new ArrayList<>();
+        this.compressedOffset = 0;
+        this.uncompressedOffset = 0;
+        this.closed = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        this.block[this.count++] = (byte)b;
+        if (this.count == BLOCK_SIZE) {
+            this.emitBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, BLOCK_SIZE - this.count);
+            System.arraycopy(bytes, offset, this.block, this.count, n);
+            this.count += n;
+            offset += n;
+            length -= n;
+            if (this.count == BLOCK_SIZE) {
+                this.emitBlock();
+            }
+        }
+    }
+
+    /**
+     * Completes the current block, even if it is not full, and writes out any blocks compressed so far
+     * @throws IOException Thrown if there was a problem writing to the underlying stream
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.count > 0) {
+            this.emitBlock();
+        }
+        while (!this.pending.isEmpty()) {
+            this.writeNext();
+        }
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (this.closed) {
+            return;
+        }
+
+        try {
+            this.flush();
+            this.out.write(EOF_BLOCK);
+        }
+        finally {
+            this.closed = true;
+            this.out.close();
+        }
+    }
+
+    private void emitBlock() throws IOException {
+
+        final byte[] data = this.block;
+        final int length = this.count;
+
+        if (this.pool == null) {
+            this.writeBlock(compress(data, length, this.level), length);
+            this.count = 0;
+            return;
+        }
+
+        // Hand this buffer to the pool and start filling a fresh one
+        this.block = new byte[BLOCK_SIZE];
+        this.count = 0;
+
+        final int compressionLevel = this.level;
+        this.pendingLengths.add(length);
+        this.pending.add(this.pool.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return compress(data, length, compressionLevel);
+            }
+        }));
+
+        if (this.pending.size() >= this.maxPending) {
+            this.writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+
+        try {
+            this.writeBlock(this.pending.removeFirst().get(), this.pendingLengths.removeFirst());
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing BGZF block");
+        }
+        catch (ExecutionException ee) {
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    private void writeBlock(byte[] compressed, int length) throws IOException {
+
+        // Like htslib, index the start of every block except the first, which is implicitly at offset zero
+        if (this.compressedOffset > 0) {
+            this.index.add(new long[]{this.compressedOffset, this.uncompressedOffset});
+        }
+
+        this.out.write(compressed);
+        this.compressedOffset += compressed.length;
+        this.uncompressedOffset += length;
+    }
+
+    /**
+     * Compresses a single block, complete with BGZF header and footer
+     */
+    static byte[] compress(byte[] data, int length, int level) {
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            byte[] buf = new byte[MAX_BLOCK_SIZE];
+            int cdataLength = 0;
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf, HEADER_SIZE + cdataLength, MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE - cdataLength);
+                if (n == 0 && cdataLength >= MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE) {
+                    throw new IllegalStateException("BGZF block exceeded maximum size");
+                }
+                cdataLength += n;
+            }
+
+            int blockSize = HEADER_SIZE + cdataLength + FOOTER_SIZE;
+
+            // Header
+            buf[0] = 0x1f;
+            buf[1] = (byte)0x8b;
+            buf[2] = 8;
+            buf[3] = 4;
+            buf[4] = buf[5] = buf[6] = buf[7] = 0;
+            buf[8] = 0;
+            buf[9] = (byte)0xff;
+            buf[10] = 6;
+            buf[11] = 0;
+            buf[12] = 'B';
+            buf[13] = 'C';
+            buf[14] = 2;
+            buf[15] = 0;
+            buf[16] = (byte)((blockSize - 1) & 0xff);
+            buf[17] = (byte)(((blockSize - 1) >> 8) & 0xff);
+
+            // Footer
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            int f = HEADER_SIZE + cdataLength;
+            putInt(buf, f, (int)crc.getValue());
+            putInt(buf, f + 4, length);
+
+            byte[] result = new byte[blockSize];
+            System.arraycopy(buf, 0, result, 0, blockSize);
+            return result;
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static void putInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte)value;
+        buf[offset + 1] = (byte)(value >>> 8);
+        buf[offset + 2] = (byte)(value >>> 16);
+        buf[offset + 3] = (byte)(value >>> 24);
+    }
+
+    /**
+     * Writes a samtools compatible .gzi index describing the blocks written so far.  This should be called after the
+     * stream has been closed.
+     * @param file The index file to create
+     * @throws IOException Thrown if there was a problem writing the index
+     */
+    public void writeGzi(File file) throws IOException {
+
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+
+            byte[] buf = new byte[8];
+            putLong(buf, this.index.size());
+            os.write(buf);
+
+            for (long[] entry : this.index) {
+                putLong(buf, entry[0]);
+                os.write(buf);
+                putLong(buf, entry[1]);
+                os.write(buf);
+            }
+        }
+    }
+
+    private static void putLong(byte[] buf, long value) {
+        for (int i = 0; i < 8; i++) {
+            buf[i] = (byte)(value >>> (8 * i));
+        }
+    }
+}
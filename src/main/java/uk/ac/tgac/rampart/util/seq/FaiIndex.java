@@ -0,0 +1,88 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A samtools compatible FastA index (.fai).  Offsets always refer to the uncompressed data, so the same index works for
+ * plain and BGZF compressed FastA files (the latter also needing a .gzi index).
+ */
+public class FaiIndex {
+
+    private final List<String> names;
+    private final List<long[]> entries;
+
+    public FaiIndex() {
+        this.names = new ArrayList<>();
+        this.entries = new ArrayList<>();
+    }
+
+    /**
+     * Adds an entry to the index
+     * @param name The sequence name (i.e. the header up to the first whitespace)
+     * @param length The number of bases in the sequence
+     * @param offset The offset of the first base in the (uncompressed) file
+     * @param lineBases The number of bases on each line
+     * @param lineWidth The number of bytes in each line, including the line break
+     */
+    public void add(String name, long length, long offset, long lineBases, long lineWidth) {
+        this.names.add(name);
+        this.entries.add(new long[]{length, offset, lineBases, lineWidth});
+    }
+
+    /**
+     * Adds all entries from another index, which describes data that was written at the given offset in this file
+     * @param other The index to copy entries from
+     * @param shift The offset at which the other index's data begins in this file
+     */
+    public void addAll(FaiIndex other, long shift) {
+        for (int i = 0; i < other.size(); i++) {
+            long[] entry = other.entries.get(i);
+            this.add(other.names.get(i), entry[0], entry[1] + shift, entry[2], entry[3]);
+        }
+    }
+
+    public int size() {
+        return this.names.size();
+    }
+
+    public void clear() {
+        this.names.clear();
+        this.entries.clear();
+    }
+
+    public void save(File file) throws IOException {
+
+        try (AsciiWriter writer = new AsciiWriter(file)) {
+            for (int i = 0; i < this.names.size(); i++) {
+                long[] entry = this.entries.get(i);
+                writer.write(this.names.get(i).getBytes());
+                for (long value : entry) {
+                    writer.write('\t');
+                    writer.writeNumber(value);
+                }
+                writer.write('\n');
+            }
+        }
+    }
+}
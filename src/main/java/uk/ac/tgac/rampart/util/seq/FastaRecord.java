@@ -0,0 +1,176 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A single record from a {@link MappedFastaReader}.  The header is held in memory but the sequence is not: it is
+ * described by its byte range in the file and is streamed from the mapped file each time it is scanned, so memory use
+ * does not depend on the length of the sequence.  Records returned by the reader are reused, so use {@link #copy()} to
+ * keep hold of one after moving on to the next.
+ */
+public class FastaRecord {
+
+    private final MappedFastaReader reader;
+
+    private byte[] header;
+    private int headerLength;
+    private long index;
+    private long start;
+    private long end;
+    private long length;
+
+    FastaRecord(MappedFastaReader reader) {
+        this.reader = reader;
+        this.header = new byte[256];
+        this.headerLength = 0;
+        this.index = -1;
+        this.start = 0;
+        this.end = 0;
+        this.length = 0;
+    }
+
+    void reset(long index) {
+        this.index = index;
+        this.headerLength = 0;
+        this.start = 0;
+        this.end = 0;
+        this.length = 0;
+    }
+
+    void appendHeader(byte b) {
+        if (this.headerLength == this.header.length) {
+            this.header = Arrays.copyOf(this.header, this.header.length * 2);
+        }
+        this.header[this.headerLength++] = b;
+    }
+
+    void trimHeader() {
+        while (this.headerLength > 0 && this.header[this.headerLength - 1] <= ' ') {
+            this.headerLength--;
+        }
+    }
+
+    void setSequence(long start, long end, long length) {
+        this.start = start;
+        this.end = end;
+        this.length = length;
+    }
+
+    /**
+     * The header of this record, without the leading '>', decoded using the platform's default charset
+     * @return The header
+     */
+    public String getHeader() {
+        return new String(this.header, 0, this.headerLength);
+    }
+
+    /**
+     * The raw header bytes.  Only the first {@link #getHeaderLength()} bytes are valid.
+     * @return The header bytes
+     */
+    public byte[] getHeaderBytes() {
+        return header;
+    }
+
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * The 0-based index of this record in the file
+     * @return The record index
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * The number of bases in this record, i.e. excluding line breaks and other whitespace
+     * @return The sequence length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * The file offset of the first byte after the header line
+     * @return Sequence start offset
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * The file offset just after the last byte belonging to this record
+     * @return Sequence end offset
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Streams every base in this record to the given handler, using the reader's own window
+     * @param handler The handler to receive the bases
+     * @throws IOException Thrown if there was a problem reading the file
+     */
+    public void scan(SequenceHandler handler) throws IOException {
+        this.reader.scan(this.reader.getWindow(), this.start, this.end, 0, this.length, handler);
+    }
+
+    /**
+     * Streams every base in this record to the given handler, using the supplied window.  This allows records to be
+     * scanned from threads other than the one driving the reader.
+     * @param window A window opened via {@link MappedFastaReader#newWindow()}
+     * @param handler The handler to receive the bases
+     * @throws IOException Thrown if there was a problem reading the file
+     */
+    public void scan(MappedWindow window, SequenceHandler handler) throws IOException {
+        this.reader.scan(window, this.start, this.end, 0, this.length, handler);
+    }
+
+    /**
+     * Streams bases in the 0-based, half open range [from, to) to the given handler
+     * @param window A window opened via {@link MappedFastaReader#newWindow()}
+     * @param from First base to stream (inclusive)
+     * @param to Last base to stream (exclusive)
+     * @param handler The handler to receive the bases
+     * @throws IOException Thrown if there was a problem reading the file
+     */
+    public void scan(MappedWindow window, long from, long to, SequenceHandler handler) throws IOException {
+        this.reader.scan(window, this.start, this.end, from, to, handler);
+    }
+
+    /**
+     * Creates a detached copy of this record which is not affected by further calls to {@link MappedFastaReader#next()}
+     * @return A copy of this record
+     */
+    public FastaRecord copy() {
+        FastaRecord copy = new FastaRecord(this.reader);
+        copy.header = Arrays.copyOf(this.header, Math.max(this.headerLength, 1));
+        copy.headerLength = this.headerLength;
+        copy.index = this.index;
+        copy.start = this.start;
+        copy.end = this.end;
+        copy.length = this.length;
+        return copy;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes FastA records, with each sequence on a single line, from byte slices such as those produced by
+ * {@link MappedFastaReader}.  Output is staged in a reusable buffer so no per-record objects are created when copying
+ * bases.  If an index is supplied, a .fai entry is recorded for each record as it is written.
+ */
+public class FastaWriter extends AsciiWriter implements SequenceHandler {
+
+    private final FaiIndex index;
+    private final StringBuilder name;
+    private boolean inHeader;
+    private boolean inName;
+    private long sequenceOffset;
+
+    public FastaWriter(File file) throws IOException {
+        this(new FileOutputStream(file), null);
+    }
+
+    public FastaWriter(OutputStream out) {
+        this(out, null);
+    }
+
+    public FastaWriter(OutputStream out, FaiIndex index) {
+        super(out);
+        this.index = index;
+        this.name = new StringBuilder();
+        this.inHeader = false;
+        this.inName = false;
+        this.sequenceOffset = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.inHeader) {
+            this.captureName(b);
+        }
+        super.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (this.inHeader) {
+            for (int i = offset; i < offset + length; i++) {
+                this.captureName(bytes[i]);
+            }
+        }
+        super.write(bytes, offset, length);
+    }
+
+    private void captureName(int b) {
+        if (this.inName) {
+            if (b <= ' ') {
+                this.inName = false;
+            }
+            else {
+                this.name.append((char)(b & 0xff));
+            }
+        }
+    }
+
+    /**
+     * Copies pre-formatted records, produced by another FastaWriter, into this writer.  The other writer's index
+     * entries are added to this writer's index with their offsets adjusted.
+     * @param formatted The formatted records
+     * @param formattedIndex The index describing the formatted records, may be null
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void append(byte[] formatted, FaiIndex formattedIndex) throws IOException {
+        long shift = this.getPosition();
+        this.write(formatted);
+        if (this.index != null && formattedIndex != null) {
+            this.index.addAll(formattedIndex, shift);
+        }
+    }
+
+    public FaiIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Starts a new record with the given header.  The leading '>' is added automatically.
+     * @param header The header to write
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void writeHeader(String header) throws IOException {
+        this.startHeader();
+        this.write(header.getBytes());
+        this.endHeader();
+    }
+
+    /**
+     * Starts a new record.  The caller is responsible for writing the header text and then calling
+     * {@link #endHeader()}.
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void startHeader() throws IOException {
+        this.write('>');
+        this.name.setLength(0);
+        this.inHeader = true;
+        this.inName = true;
+    }
+
+    /**
+     * Finishes the header line of the current record
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void endHeader() throws IOException {
+        this.inHeader = false;
+        this.inName = false;
+        this.write('\n');
+        this.sequenceOffset = this.getPosition();
+    }
+
+    /**
+     * Appends bases from the given buffer to the current record
+     * @param buf The buffer containing the bases
+     * @param from Index of the first base to write (inclusive)
+     * @param to Index after the last base to write (exclusive)
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void writeBases(ByteBuffer buf, int from, int to) throws IOException {
+        this.write(buf, from, to);
+    }
+
+    @Override
+    public void bases(ByteBuffer buffer, int from, int to, long offset) throws IOException {
+        this.write(buffer, from, to);
+    }
+
+    /**
+     * Finishes the current record
+     * @throws IOException Thrown if there was a problem writing to the output
+     */
+    public void endRecord() throws IOException {
+        if (this.index != null) {
+            long length = this.getPosition() - this.sequenceOffset;
+            this.index.add(this.name.toString(), length, this.sequenceOffset, length, length + 1);
+        }
+        this.write('\n');
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Counts the records and bases in a FastQ file without launching any external tools.  Uncompressed files are split
+ * into chunks which are counted in parallel using positional reads from a shared file channel.  Each chunk is aligned
+ * to the first record starting within it, which is found by looking for a line starting with '@' followed, two lines
+ * later, by a line starting with '+'.  This cannot be fooled by quality lines starting with '@', because a sequence
+ * line never starts with '+'.  Records are assumed to occupy four lines, as is the case for all Illumina output.
+ *
+ * Gzipped files cannot be split, so these are counted on the calling thread, with decompression handled by
+ * {@link SeqInputStreams}.
+ */
+public class FastqScanner {
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+    public static final long MIN_CHUNK_SIZE = 16L * 1024L * 1024L;
+
+    private final int threads;
+
+    public FastqScanner() {
+        this(1);
+    }
+
+    public FastqScanner(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Scans the given FastQ file
+     * @param file The FastQ file to scan, may be gzipped
+     * @return Statistics describing the reads in the file
+     * @throws IOException Thrown if there was a problem reading the file
+     * @throws InterruptedException Thrown if interrupted while waiting for the chunks to be counted
+     */
+    public FastqStats scan(File file) throws IOException, InterruptedException {
+
+        if (SeqInputStreams.isGzipped(file)) {
+            try (InputStream in = SeqInputStreams.open(file, this.threads)) {
+                FastqStats stats = new FastqStats();
+                count(in, 0, Long.MAX_VALUE, stats);
+                return stats;
+            }
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+
+            int nbChunks = (int)Math.max(1, Math.min((long)this.threads * 4, size / MIN_CHUNK_SIZE));
+
+            if (nbChunks == 1 || this.threads == 1) {
+                FastqStats stats = new FastqStats();
+                count(new PositionalInputStream(channel, 0), 0, Long.MAX_VALUE, stats);
+                return stats;
+            }
+
+            List<Callable<FastqStats>> tasks = new ArrayList<>(nbChunks);
+            long chunkSize = size / nbChunks;
+            for (int i = 0; i < nbChunks; i++) {
+                long start = i * chunkSize;
+                long end = i == nbChunks - 1 ? size : start + chunkSize;
+                tasks.add(new ChunkTask(channel, start, end));
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(this.threads, nbChunks));
+            try {
+                FastqStats stats = new FastqStats();
+                for (Future<FastqStats> result : pool.invokeAll(tasks)) {
+                    stats.merge(result.get());
+                }
+                return stats;
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to scan " + file.getAbsolutePath(), e.getCause());
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Finds the first record starting at or after the given position
+     * @param channel The file to search
+     * @param position The position from which to start searching
+     * @return The offset of the first record, or the file size if there are no further records
+     * @throws IOException Thrown if there was a problem reading the file
+     */
+    protected static long findRecordStart(FileChannel channel, long position) throws IOException {
+
+        if (position == 0) {
+            return 0;
+        }
+
+        InputStream in = new PositionalInputStream(channel, position - 1);
+        byte[] buf = new byte[64 * 1024];
+
+        // The first chars and offsets of the last three lines seen, indexed by line number modulo 3
+        long[] starts = new long[3];
+        int[] firsts = new int[3];
+        long line = -1;
+        long pos = position - 1;
+        boolean atLineStart = false;
+
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            for (int i = 0; i < n; i++, pos++) {
+                if (atLineStart) {
+                    line++;
+                    int slot = (int)(line % 3);
+                    starts[slot] = pos;
+                    firsts[slot] = buf[i];
+
+                    if (line >= 2 && buf[i] == '+' && firsts[(int)((line - 2) % 3)] == '@') {
+                        return starts[(int)((line - 2) % 3)];
+                    }
+                }
+                atLineStart = buf[i] == '\n';
+            }
+        }
+
+        return channel.size();
+    }
+
+    /**
+     * Counts records from a stream positioned at the start of a record, stopping at the first record starting at or
+     * beyond the end offset.
+     * @param in The stream to read from
+     * @param start The offset in the file of the first byte to be read from the stream
+     * @param end The offset at which to stop counting
+     * @param stats The statistics to update
+     * @throws IOException Thrown if there was a problem reading the stream
+     */
+    protected static void count(InputStream in, long start, long end, FastqStats stats) throws IOException {
+
+        byte[] buf = new byte[BUFFER_SIZE];
+        long pos = start;
+        int line = 0;
+        long length = 0;
+        boolean atLineStart = true;
+
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            for (int i = 0; i < n; i++, pos++) {
+                if (atLineStart) {
+                    if (line == 0 && pos >= end) {
+                        return;
+                    }
+                    atLineStart = false;
+                }
+
+                byte b = buf[i];
+                if (b == '\n') {
+                    if (line == 1) {
+                        stats.addRead(length);
+                    }
+                    line = (line + 1) & 3;
+                    length = 0;
+                    atLineStart = true;
+                }
+                else if (line == 1 && b != '\r') {
+                    length++;
+                }
+            }
+        }
+
+        // Handle a sequence line without a trailing newline
+        if (!atLineStart && line == 1) {
+            stats.addRead(length);
+        }
+    }
+
+    private static class ChunkTask implements Callable<FastqStats> {
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        private ChunkTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public FastqStats call() throws IOException {
+            FastqStats stats = new FastqStats();
+            long from = findRecordStart(this.channel, this.start);
+            if (from < this.end) {
+                count(new PositionalInputStream(this.channel, from), from, this.end, stats);
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Reads from a file channel using positional reads, so that many streams can safely share the same channel.
+     */
+    private static class PositionalInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+
+        private PositionalInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) <= 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = this.channel.read(ByteBuffer.wrap(b, off, len), this.position);
+            if (n > 0) {
+                this.position += n;
+            }
+            return n;
+        }
+    }
+}
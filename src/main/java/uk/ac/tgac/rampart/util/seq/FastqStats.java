@@ -0,0 +1,178 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Summary statistics gathered while scanning a FastQ file, including a histogram of read lengths.  Partial results
+ * from separate chunks of the same file can be combined with {@link #merge(FastqStats)}.
+ */
+public class FastqStats {
+
+    /** Reads shorter than this are counted in an array, longer reads in a sparse map */
+    public static final int MAX_DENSE_LENGTH = 64 * 1024;
+
+    private long nbRecords;
+    private long nbBases;
+    private long minLength;
+    private long maxLength;
+
+    private long[] lengthCounts;
+    private SortedMap<Long, Long> longLengthCounts;
+
+    public FastqStats() {
+        this.nbRecords = 0;
+        this.nbBases = 0;
+        this.minLength = Long.MAX_VALUE;
+        this.maxLength = 0;
+        this.lengthCounts = new long[0];
+        this.longLengthCounts = new TreeMap<>();
+    }
+
+    /**
+     * Creates statistics from a read length histogram
+     * @param histogram Map of read length to number of reads with that length
+     */
+    public FastqStats(Map<Long, Long> histogram) {
+        this();
+        for (Map.Entry<Long, Long> e : histogram.entrySet()) {
+            this.addReads(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Records a single read of the given length
+     * @param length The number of bases in the read
+     */
+    public void addRead(long length) {
+        this.addReads(length, 1);
+    }
+
+    /**
+     * Records several reads of the same length
+     * @param length The number of bases in each read
+     * @param count The number of reads
+     */
+    public void addReads(long length, long count) {
+
+        if (count <= 0) {
+            return;
+        }
+
+        this.nbRecords += count;
+        this.nbBases += length * count;
+
+        if (length < this.minLength) {
+            this.minLength = length;
+        }
+        if (length > this.maxLength) {
+            this.maxLength = length;
+        }
+
+        if (length < MAX_DENSE_LENGTH) {
+            if (length >= this.lengthCounts.length) {
+                this.lengthCounts = Arrays.copyOf(this.lengthCounts,
+                        (int)Math.min(MAX_DENSE_LENGTH, Math.max(length + 1, this.lengthCounts.length * 2L)));
+            }
+            this.lengthCounts[(int)length] += count;
+        }
+        else {
+            Long current = this.longLengthCounts.get(length);
+            this.longLengthCounts.put(length, current == null ? count : current + count);
+        }
+    }
+
+    /**
+     * Adds the counts from another set of statistics into this one
+     * @param other The statistics to merge
+     */
+    public void merge(FastqStats other) {
+        for (int i = 0; i < other.lengthCounts.length; i++) {
+            this.addReads(i, other.lengthCounts[i]);
+        }
+        for (Map.Entry<Long, Long> e : other.longLengthCounts.entrySet()) {
+            this.addReads(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * @return Map of read length to the number of reads with that length, in ascending order of length
+     */
+    public SortedMap<Long, Long> getLengthHistogram() {
+        SortedMap<Long, Long> histogram = new TreeMap<>();
+        for (int i = 0; i < this.lengthCounts.length; i++) {
+            if (this.lengthCounts[i] > 0) {
+                histogram.put((long)i, this.lengthCounts[i]);
+            }
+        }
+        histogram.putAll(this.longLengthCounts);
+        return histogram;
+    }
+
+    /**
+     * @return The most common read length, or 0 if there are no reads
+     */
+    public long getModalLength() {
+        long mode = 0;
+        long best = 0;
+        for (Map.Entry<Long, Long> e : this.getLengthHistogram().entrySet()) {
+            if (e.getValue() > best) {
+                best = e.getValue();
+                mode = e.getKey();
+            }
+        }
+        return mode;
+    }
+
+    public long getNbRecords() {
+        return nbRecords;
+    }
+
+    public long getNbBases() {
+        return nbBases;
+    }
+
+    public long getMinLength() {
+        return this.nbRecords == 0 ? 0 : minLength;
+    }
+
+    public long getMaxLength() {
+        return maxLength;
+    }
+
+    public double getMeanLength() {
+        return this.nbRecords == 0 ? 0.0 : (double)this.nbBases / (double)this.nbRecords;
+    }
+
+    /**
+     * @return True if every read in the file has the same length
+     */
+    public boolean isUniform() {
+        return this.getMinLength() == this.maxLength;
+    }
+
+    @Override
+    public String toString() {
+        return "Records: " + this.nbRecords + "; Bases: " + this.nbBases +
+                "; Min length: " + this.getMinLength() + "; Max length: " + this.maxLength;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Subsamples a FastQ library to several probabilities in a single pass.  Every read is assigned a pseudo-random value
+ * in [0,1) by hashing its ordinal within the file together with a seed, and is written to every output whose keep
+ * probability exceeds that value.  This has a few useful properties:
+ * <ul>
+ *     <li>The input is only read once regardless of the number of outputs requested</li>
+ *     <li>Outputs are nested, i.e. the reads kept at a low probability are a subset of those kept at a higher one</li>
+ *     <li>The result is deterministic for a given seed, so outputs can be safely regenerated</li>
+ *     <li>Both mates of a pair share the same ordinal, so they are always kept or discarded together</li>
+ * </ul>
+ * Records are assumed to occupy four lines.
+ */
+public class FastqSubsampler {
+
+    public static final long DEFAULT_SEED = 0x52414d50415254L;
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final double UNIT = 1.0 / (1L << 53);
+
+    private final long seed;
+    private final int threads;
+
+    public FastqSubsampler() {
+        this(DEFAULT_SEED);
+    }
+
+    public FastqSubsampler(long seed) {
+        this(seed, 1);
+    }
+
+    /**
+     * Creates a subsampler
+     * @param seed The seed used to select reads
+     * @param threads The number of threads available for decompressing each input file
+     */
+    public FastqSubsampler(long seed, int threads) {
+        this.seed = seed;
+        this.threads = Math.max(1, threads);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Subsamples a single end library
+     * @param input The input FastQ file, may be gzipped
+     * @param probabilities The probability of keeping a read for each output
+     * @param outputs The output file for each probability
+     * @return The number of reads written to each output
+     * @throws IOException Thrown if there was a problem reading or writing
+     */
+    public long[] subsample(File input, double[] probabilities, File[] outputs) throws IOException {
+        return this.subsample(input, null, probabilities, outputs, null);
+    }
+
+    /**
+     * Subsamples a paired end library, reading both files in lockstep
+     * @param input1 The first input FastQ file, may be gzipped
+     * @param input2 The second input FastQ file, or null if the library is single end
+     * @param probabilities The probability of keeping a pair for each output
+     * @param outputs1 The first output file for each probability
+     * @param outputs2 The second output file for each probability, or null if the library is single end
+     * @return The number of reads, or pairs, written to each output
+     * @throws IOException Thrown if there was a problem reading or writing
+     */
+    public long[] subsample(File input1, File input2, double[] probabilities, File[] outputs1, File[] outputs2)
+            throws IOException {
+
+        final boolean paired = input2 != null;
+        final int nbLevels = probabilities.length;
+
+        if (outputs1.length != nbLevels || (paired && (outputs2 == null || outputs2.length != nbLevels))) {
+            throw new IllegalArgumentException("Must provide one output file per probability");
+        }
+
+        long[] kept = new long[nbLevels];
+        OutputStream[] out1 = new OutputStream[nbLevels];
+        OutputStream[] out2 = paired ? new OutputStream[nbLevels] : null;
+
+        try (RecordReader reader1 = new RecordReader(SeqInputStreams.open(input1, this.threads));
+             RecordReader reader2 = paired ? new RecordReader(SeqInputStreams.open(input2, this.threads)) : null) {
+
+            for (int i = 0; i < nbLevels; i++) {
+                out1[i] = new BufferedOutputStream(new FileOutputStream(outputs1[i]), BUFFER_SIZE);
+                if (paired) {
+                    out2[i] = new BufferedOutputStream(new FileOutputStream(outputs2[i]), BUFFER_SIZE);
+                }
+            }
+
+            long ordinal = 0;
+            while (reader1.next()) {
+
+                if (paired && !reader2.next()) {
+                    throw new IOException("Paired files have different numbers of records: " +
+                            input1.getAbsolutePath() + "; " + input2.getAbsolutePath());
+                }
+
+                double u = this.uniform(ordinal++);
+
+                for (int i = 0; i < nbLevels; i++) {
+                    if (u < probabilities[i]) {
+                        reader1.writeTo(out1[i]);
+                        if (paired) {
+                            reader2.writeTo(out2[i]);
+                        }
+                        kept[i]++;
+                    }
+                }
+            }
+
+            if (paired && reader2.next()) {
+                throw new IOException("Paired files have different numbers of records: " +
+                        input1.getAbsolutePath() + "; " + input2.getAbsolutePath());
+            }
+        }
+        finally {
+            closeAll(out1);
+            if (paired) {
+                closeAll(out2);
+            }
+        }
+
+        return kept;
+    }
+
+    /**
+     * Returns the pseudo-random value in [0,1) assigned to the read with the given ordinal
+     * @param ordinal The 0-based index of the read in the file
+     * @return A value uniformly distributed in [0,1)
+     */
+    public double uniform(long ordinal) {
+        return (splitMix64(this.seed + ordinal * 0x9e3779b97f4a7c15L) >>> 11) * UNIT;
+    }
+
+    protected static long splitMix64(long z) {
+        z += 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void closeAll(OutputStream[] streams) throws IOException {
+        IOException error = null;
+        for (OutputStream out : streams) {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Reads the raw bytes of four line records into a reusable buffer.  A missing newline at the end of the file is
+     * added, so that records can be concatenated safely.
+     */
+    private static class RecordReader implements AutoCloseable {
+
+        private final InputStream in;
+        private final byte[] buf;
+        private int bufPos;
+        private int bufLen;
+
+        private byte[] record;
+        private int recordLen;
+
+        private RecordReader(InputStream in) {
+            this.in = in;
+            this.buf = new byte[BUFFER_SIZE];
+            this.bufPos = 0;
+            this.bufLen = 0;
+            this.record = new byte[1024];
+            this.recordLen = 0;
+        }
+
+        private boolean next() throws IOException {
+
+            this.recordLen = 0;
+            int lines = 0;
+
+            while (lines < 4) {
+                if (this.bufPos == this.bufLen) {
+                    this.bufLen = this.in.read(this.buf);
+                    this.bufPos = 0;
+                    if (this.bufLen <= 0) {
+                        this.bufLen = 0;
+                        if (this.recordLen == 0) {
+                            return false;
+                        }
+                        if (lines < 3) {
+                            throw new IOException("Truncated FastQ record found at end of file");
+                        }
+                        this.append((byte) '\n');
+                        return true;
+                    }
+                }
+
+                // Copy up to and including the next newline
+                int start = this.bufPos;
+                int end = start;
+                while (end < this.bufLen && this.buf[end] != '\n') {
+                    end++;
+                }
+                if (end < this.bufLen) {
+                    end++;
+                    lines++;
+                }
+                this.append(this.buf, start, end - start);
+                this.bufPos = end;
+
+                // Ignore blank lines between records
+                if (lines == 1 && this.recordLen == 1) {
+                    this.recordLen = 0;
+                    lines = 0;
+                }
+            }
+
+            return true;
+        }
+
+        private void append(byte b) {
+            this.ensureCapacity(1);
+            this.record[this.recordLen++] = b;
+        }
+
+        private void append(byte[] b, int off, int len) {
+            this.ensureCapacity(len);
+            System.arraycopy(b, off, this.record, this.recordLen, len);
+            this.recordLen += len;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (this.recordLen + extra > this.record.length) {
+                this.record = Arrays.copyOf(this.record, Math.max(this.record.length * 2, this.recordLen + extra));
+            }
+        }
+
+        private void writeTo(OutputStream out) throws IOException {
+            out.write(this.record, 0, this.recordLen);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+}
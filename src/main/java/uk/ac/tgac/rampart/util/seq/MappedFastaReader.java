@@ -0,0 +1,238 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads FastA files through a sliding memory-mapped window.  Each call to {@link #next()} locates the next record and
+ * counts its bases, but never copies the sequence onto the heap.  Instead the returned {@link FastaRecord} can be
+ * scanned as a series of byte slices straight out of the mapped file.  This means scaffolds of any length can be
+ * processed with a fixed memory footprint, and throughput is bounded by the disk rather than by line parsing and
+ * string building.
+ *
+ * Whitespace is ignored within sequences and lines are trimmed before being checked for a '>' character, which is
+ * consistent with the line based parsing used previously.  Any sequence appearing before the first header is returned
+ * as a record with an empty header.
+ */
+public class MappedFastaReader implements Closeable {
+
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final MappedWindow window;
+    private final FastaRecord record;
+
+    private long pos;
+    private long index;
+
+    public MappedFastaReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFastaReader(File file, int windowSize) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = this.channel.size();
+        this.windowSize = windowSize;
+        this.window = new MappedWindow(this.channel, this.size, windowSize);
+        this.record = new FastaRecord(this);
+        this.pos = 0;
+        this.index = 0;
+    }
+
+    /**
+     * Moves to the next record in the file
+     * @return The next record, or null if there are no more records.  The returned object is reused by subsequent calls.
+     * @throws IOException Thrown if there was a problem reading the file
+     */
+    public FastaRecord next() throws IOException {
+        return this.next(null);
+    }
+
+    /**
+     * Moves to the next record in the file, streaming its bases to the given handler while searching for the end of the
+     * record.  This lets callers process a record in the same pass that finds it.
+     * @param handler The handler to receive the bases of the record, may be null
+     * @return The next record, or null if there are no more records.  The returned object is reused by subsequent calls.
+     * @throws IOException Thrown if there was a problem reading the file
+     */
+    public FastaRecord next(SequenceHandler handler) throws IOException {
+
+        long p = this.pos;
+
+        // Skip any whitespace before the next header
+        while (p < this.size && this.window.get(p) <= ' ') {
+            p++;
+        }
+
+        if (p >= this.size) {
+            this.pos = p;
+            return null;
+        }
+
+        this.record.reset(this.index++);
+
+        if (this.window.get(p) == '>') {
+            p++;
+            while (p < this.size) {
+                byte b = this.window.get(p);
+                if (b == '\n') {
+                    break;
+                }
+                this.record.appendHeader(b);
+                p++;
+            }
+            this.record.trimHeader();
+        }
+
+        // Find the start of the next record (a '>' at the start of a line, ignoring leading whitespace) and count the
+        // bases on the way
+        long start = p;
+        long length = 0;
+        boolean lineStart = true;
+        boolean found = false;
+
+        while (p < this.size && !found) {
+
+            ByteBuffer buf = this.window.cover(p);
+            long windowStart = this.window.getStart();
+            int i = (int)(p - windowStart);
+            int limit = (int)(this.window.getEnd() - windowStart);
+
+            int runStart = -1;
+
+            for (; i < limit; i++) {
+                byte b = buf.get(i);
+                if (b > ' ') {
+                    if (b == '>' && lineStart) {
+                        found = true;
+                        break;
+                    }
+                    if (runStart < 0) {
+                        runStart = i;
+                    }
+                    length++;
+                    lineStart = false;
+                }
+                else {
+                    if (runStart >= 0) {
+                        if (handler != null) {
+                            handler.bases(buf, runStart, i, length - (i - runStart));
+                        }
+                        runStart = -1;
+                    }
+                    if (b == '\n') {
+                        lineStart = true;
+                    }
+                }
+            }
+
+            if (runStart >= 0 && handler != null) {
+                handler.bases(buf, runStart, i, length - (i - runStart));
+            }
+
+            p = windowStart + i;
+        }
+
+        this.record.setSequence(start, p, length);
+        this.pos = p;
+
+        return this.record;
+    }
+
+    /**
+     * Opens a new window over this file, which can be used to scan records from another thread
+     * @return A new window
+     */
+    public MappedWindow newWindow() {
+        return new MappedWindow(this.channel, this.size, this.windowSize);
+    }
+
+    /**
+     * The window used by this reader.  Only use this from the thread driving the reader.
+     * @return This reader's window
+     */
+    public MappedWindow getWindow() {
+        return window;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Streams the bases found between the file offsets start and end, restricted to the 0-based base coordinates
+     * [from, to), to the handler.
+     */
+    void scan(MappedWindow w, long start, long end, long from, long to, SequenceHandler handler) throws IOException {
+
+        long p = start;
+        long base = 0;
+
+        while (p < end && base < to) {
+
+            ByteBuffer buf = w.cover(p);
+            long windowStart = w.getStart();
+            int i = (int)(p - windowStart);
+            int limit = (int)(Math.min(end, w.getEnd()) - windowStart);
+
+            while (i < limit && base < to) {
+
+                // Skip line breaks and other whitespace
+                while (i < limit && buf.get(i) <= ' ') {
+                    i++;
+                }
+
+                int runStart = i;
+                while (i < limit && buf.get(i) > ' ') {
+                    i++;
+                }
+
+                int runLength = i - runStart;
+                if (runLength > 0) {
+
+                    // Clip the run to the requested range
+                    long runFrom = Math.max(base, from);
+                    long runTo = Math.min(base + runLength, to);
+                    if (runFrom < runTo) {
+                        handler.bases(buf, runStart + (int)(runFrom - base), runStart + (int)(runTo - base), runFrom);
+                    }
+                    base += runLength;
+                }
+            }
+
+            p = windowStart + i;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+        this.file.close();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A sliding, read-only, memory-mapped view over part of a file.  Only one window is mapped at any time, so the amount
+ * of address space held by a reader is bounded by the window size regardless of how large the file is.  Instances are
+ * not thread safe, but several windows may safely be opened over the same channel.
+ */
+public class MappedWindow {
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+
+    private MappedByteBuffer buffer;
+    private long start;
+    private long end;
+
+    public MappedWindow(FileChannel channel, long fileSize, int windowSize) {
+
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+
+        this.channel = channel;
+        this.fileSize = fileSize;
+        this.windowSize = windowSize;
+        this.buffer = null;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    /**
+     * Makes sure the given file position is mapped, remapping the window so that it starts at that position if necessary.
+     * The byte at the requested position can then be found at index {@code position - getStart()} in the returned buffer.
+     * @param position The absolute position in the file
+     * @return The mapped buffer covering the requested position
+     * @throws IOException Thrown if the region could not be mapped
+     */
+    public ByteBuffer cover(long position) throws IOException {
+
+        if (this.buffer == null || position < this.start || position >= this.end) {
+
+            if (position < 0 || position >= this.fileSize) {
+                throw new IOException("Position " + position + " is outside file of size " + this.fileSize);
+            }
+
+            long size = Math.min(this.windowSize, this.fileSize - position);
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            this.start = position;
+            this.end = position + size;
+        }
+
+        return this.buffer;
+    }
+
+    /**
+     * Returns the byte at the given absolute position in the file
+     * @param position The absolute position in the file
+     * @return The byte at that position
+     * @throws IOException Thrown if the region could not be mapped
+     */
+    public byte get(long position) throws IOException {
+        return this.cover(position).get((int)(position - this.start));
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads from another stream on a background thread, handing buffers to the consumer through a bounded queue.  This
+ * pipelines an expensive source, such as gzip inflation, with whatever parsing the consumer is doing, so the two run
+ * on separate cores.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    public static final int DEFAULT_QUEUE_SIZE = 4;
+
+    private static final byte[] END = new byte[0];
+
+    private final InputStream in;
+    private final BlockingQueue<byte[]> queue;
+    private final Thread reader;
+
+    private volatile IOException error;
+    private volatile boolean closed;
+
+    private byte[] buf;
+    private int pos;
+    private boolean eof;
+
+    public ReadAheadInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Starts reading ahead from the given stream
+     * @param in The stream to read from
+     * @param bufferSize The size of each buffer handed to the consumer
+     * @param queueSize The maximum number of full buffers waiting for the consumer
+     */
+    public ReadAheadInputStream(final InputStream in, final int bufferSize, int queueSize) {
+        this.in = in;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.buf = END;
+        this.pos = 0;
+        this.eof = false;
+        this.closed = false;
+
+        this.reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    try {
+                        while (!closed) {
+                            byte[] b = new byte[bufferSize];
+                            int n = 0;
+                            while (n < bufferSize) {
+                                int r = in.read(b, n, bufferSize - n);
+                                if (r < 0) {
+                                    break;
+                                }
+                                n += r;
+                            }
+                            if (n > 0) {
+                                queue.put(n == bufferSize ? b : Arrays.copyOf(b, n));
+                            }
+                            if (n < bufferSize) {
+                                break;
+                            }
+                        }
+                    }
+                    finally {
+                        // Only this thread reads from the stream, so only this thread closes it
+                        in.close();
+                    }
+                }
+                catch (IOException e) {
+                    error = e;
+                }
+                catch (InterruptedException e) {
+                    // Consumer closed the stream
+                    return;
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                try {
+                    queue.put(END);
+                }
+                catch (InterruptedException e) {
+                    // Consumer closed the stream
+                }
+            }
+        }, "read-ahead");
+
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.pos == this.buf.length && !this.advance()) {
+            return -1;
+        }
+        return this.buf[this.pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (this.pos == this.buf.length && !this.advance()) {
+            return -1;
+        }
+        int n = Math.min(len, this.buf.length - this.pos);
+        System.arraycopy(this.buf, this.pos, b, off, n);
+        this.pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return this.buf.length - this.pos;
+    }
+
+    /**
+     * Stops the read-ahead thread and waits for it to close the underlying stream.  The underlying stream is closed by
+     * the read-ahead thread, so it is never closed while a read is in progress.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.reader.interrupt();
+
+        try {
+            this.reader.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing input", e);
+        }
+    }
+
+    private boolean advance() throws IOException {
+
+        if (this.eof) {
+            return false;
+        }
+
+        try {
+            this.buf = this.queue.take();
+            this.pos = 0;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for input", e);
+        }
+
+        if (this.buf == END) {
+            this.eof = true;
+            if (this.error != null) {
+                throw this.error;
+            }
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Breaks a scaffold into its components in a single pass over the bases.  Any run of at least minN 'N' or 'n'
+ * characters is recorded as a gap component, and the stretches between gaps are recorded as contig components.
+ * Shorter runs of N's are left inside their contigs.  Component coordinates are 0-based and half open, and are stored
+ * in primitive arrays that are reused from one scaffold to the next, so splitting allocates nothing in the steady state.
+ *
+ * Usage: call {@link #reset(int)}, stream the scaffold through {@link #bases(ByteBuffer, int, int, long)}, then call
+ * {@link #finish(long)} before reading the components.
+ */
+public class ScaffoldSplitter implements SequenceHandler {
+
+    private int minN;
+    private long runStart;
+    private long lastEnd;
+
+    private long[] starts;
+    private long[] ends;
+    private boolean[] gaps;
+    private int size;
+    private int nbContigs;
+
+    public ScaffoldSplitter(int minN) {
+        this.starts = new long[16];
+        this.ends = new long[16];
+        this.gaps = new boolean[16];
+        this.reset(minN);
+    }
+
+    /**
+     * Prepares this splitter for a new scaffold
+     * @param minN The minimum length of a run of N's for it to be treated as a gap
+     */
+    public void reset(int minN) {
+
+        if (minN <= 0) {
+            throw new IllegalArgumentException("Minimum gap length must be positive");
+        }
+
+        this.minN = minN;
+        this.runStart = -1;
+        this.lastEnd = 0;
+        this.size = 0;
+        this.nbContigs = 0;
+    }
+
+    @Override
+    public void bases(ByteBuffer buffer, int from, int to, long offset) {
+
+        long base = offset;
+        for (int i = from; i < to; i++, base++) {
+            byte b = buffer.get(i);
+            if (b == 'N' || b == 'n') {
+                if (this.runStart < 0) {
+                    this.runStart = base;
+                }
+            }
+            else if (this.runStart >= 0) {
+                this.closeRun(base);
+            }
+        }
+    }
+
+    /**
+     * Completes the component list for the current scaffold
+     * @param length The total length of the scaffold
+     */
+    public void finish(long length) {
+
+        if (this.runStart >= 0) {
+            this.closeRun(length);
+        }
+
+        if (this.lastEnd < length) {
+            this.add(this.lastEnd, length, false);
+        }
+    }
+
+    private void closeRun(long end) {
+
+        if (end - this.runStart >= this.minN) {
+            if (this.runStart > this.lastEnd) {
+                this.add(this.lastEnd, this.runStart, false);
+            }
+            this.add(this.runStart, end, true);
+            this.lastEnd = end;
+        }
+
+        this.runStart = -1;
+    }
+
+    private void add(long start, long end, boolean gap) {
+
+        if (this.size == this.starts.length) {
+            int capacity = this.size * 2;
+            this.starts = Arrays.copyOf(this.starts, capacity);
+            this.ends = Arrays.copyOf(this.ends, capacity);
+            this.gaps = Arrays.copyOf(this.gaps, capacity);
+        }
+
+        this.starts[this.size] = start;
+        this.ends[this.size] = end;
+        this.gaps[this.size] = gap;
+        this.size++;
+
+        if (!gap) {
+            this.nbContigs++;
+        }
+    }
+
+    /**
+     * Creates a copy of the components found in the current scaffold, so that they can be used after this splitter
+     * has moved on to the next scaffold
+     * @return A copy of this splitter's state
+     */
+    public ScaffoldSplitter copy() {
+        ScaffoldSplitter copy = new ScaffoldSplitter(this.minN);
+        int capacity = Math.max(this.size, 1);
+        copy.starts = Arrays.copyOf(this.starts, capacity);
+        copy.ends = Arrays.copyOf(this.ends, capacity);
+        copy.gaps = Arrays.copyOf(this.gaps, capacity);
+        copy.size = this.size;
+        copy.nbContigs = this.nbContigs;
+        copy.runStart = this.runStart;
+        copy.lastEnd = this.lastEnd;
+        return copy;
+    }
+
+    /**
+     * The number of components (contigs and gaps) found in the current scaffold
+     * @return The number of components
+     */
+    public int getNbComponents() {
+        return this.size;
+    }
+
+    /**
+     * The number of contig (i.e. non-gap) components found in the current scaffold
+     * @return The number of contigs
+     */
+    public int getNbContigs() {
+        return this.nbContigs;
+    }
+
+    public long getStart(int component) {
+        return this.starts[component];
+    }
+
+    public long getEnd(int component) {
+        return this.ends[component];
+    }
+
+    public long getLength(int component) {
+        return this.ends[component] - this.starts[component];
+    }
+
+    public boolean isGap(int component) {
+        return this.gaps[component];
+    }
+}
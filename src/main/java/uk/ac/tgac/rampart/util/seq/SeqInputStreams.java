@@ -0,0 +1,123 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens sequence files for the in-process read scanners, picking the fastest decoder for the file's format:
+ * <ul>
+ *     <li>Uncompressed files are read directly</li>
+ *     <li>BGZF files are inflated block by block on a pool of threads</li>
+ *     <li>Other gzip files, including multi-member files, are inflated on a read-ahead thread, so that inflation and
+ *     parsing happen on separate cores</li>
+ * </ul>
+ * Any threads are released when the returned stream is closed.
+ */
+public class SeqInputStreams {
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final int HEADER_PEEK = 512;
+
+    private SeqInputStreams() {
+    }
+
+    /**
+     * Opens the given sequence file
+     * @param file The file to open, may be gzipped or BGZF compressed
+     * @param threads The number of threads available for decoding
+     * @return A stream over the uncompressed contents of the file
+     * @throws IOException Thrown if the file could not be opened
+     */
+    public static InputStream open(File file, int threads) throws IOException {
+
+        byte[] header = new byte[HEADER_PEEK];
+        int n = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int r;
+            while (n < header.length && (r = in.read(header, n, header.length - n)) > 0) {
+                n += r;
+            }
+        }
+
+        boolean gzipped = n >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b;
+
+        if (!gzipped) {
+            return new FileInputStream(file);
+        }
+
+        if (threads > 1 && BgzfInputStream.isBgzf(header, n)) {
+            final ExecutorService pool = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("bgzf-inflate"));
+            InputStream in = new BgzfInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE),
+                    pool, threads * 4);
+            return new FilterInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        pool.shutdownNow();
+                    }
+                }
+            };
+        }
+
+        InputStream gzip = new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE);
+
+        return threads > 1 ? new ReadAheadInputStream(gzip) : gzip;
+    }
+
+    /**
+     * Checks for the gzip magic number at the start of the file
+     * @param file The file to check
+     * @return True if the file is gzipped, which includes BGZF
+     * @throws IOException Thrown if the file could not be read
+     */
+    public static boolean isGzipped(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        private DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, this.name);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the bases of a sequence as a series of slices over a mapped buffer.  Slices never contain line breaks or
+ * other whitespace.  The buffer is only valid for the duration of the call, so implementations must copy anything they
+ * need to keep.
+ */
+public interface SequenceHandler {
+
+    /**
+     * Called for each contiguous run of bases in the sequence
+     * @param buffer The buffer containing the bases
+     * @param from The index of the first base in the buffer (inclusive)
+     * @param to The index after the last base in the buffer (exclusive)
+     * @param offset The 0-based coordinate of the first base within the sequence
+     * @throws IOException Thrown if the handler could not process the bases
+     */
+    void bases(ByteBuffer buffer, int from, int to, long offset) throws IOException;
+}
@@ -0,0 +1,203 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A streaming implementation of the 64 bit xxHash algorithm.  xxHash is not cryptographic, but it is fast enough that
+ * fingerprinting a file costs little more than reading it, which makes it suitable for spotting files with identical
+ * content.  Instances are not thread safe.
+ */
+public class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE = 32;
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final long seed;
+
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long totalLength;
+
+    // Holds the tail of the input that doesn't yet fill a whole stripe
+    private final ByteBuffer pending;
+
+    public XxHash64() {
+        this(0L);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        this.pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+        this.reset();
+    }
+
+    public void reset() {
+        this.v1 = this.seed + PRIME1 + PRIME2;
+        this.v2 = this.seed + PRIME2;
+        this.v3 = this.seed;
+        this.v4 = this.seed - PRIME1;
+        this.totalLength = 0;
+        this.pending.clear();
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        this.update(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    /**
+     * Adds all the remaining bytes in the buffer to the hash.  The buffer's position is moved to its limit.
+     * @param buffer The bytes to add
+     */
+    public void update(ByteBuffer buffer) {
+
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        this.totalLength += buffer.remaining();
+
+        // Complete any partially filled stripe first
+        if (this.pending.position() > 0) {
+            while (this.pending.hasRemaining() && buffer.hasRemaining()) {
+                this.pending.put(buffer.get());
+            }
+
+            if (this.pending.hasRemaining()) {
+                buffer.order(order);
+                return;
+            }
+
+            this.pending.flip();
+            this.stripe(this.pending);
+            this.pending.clear();
+        }
+
+        while (buffer.remaining() >= STRIPE) {
+            this.stripe(buffer);
+        }
+
+        this.pending.put(buffer);
+
+        buffer.order(order);
+    }
+
+    private void stripe(ByteBuffer buffer) {
+        this.v1 = round(this.v1, buffer.getLong());
+        this.v2 = round(this.v2, buffer.getLong());
+        this.v3 = round(this.v3, buffer.getLong());
+        this.v4 = round(this.v4, buffer.getLong());
+    }
+
+    /**
+     * Returns the hash of all bytes added since this object was created or last reset.  More bytes may be added
+     * afterwards.
+     * @return The 64 bit hash
+     */
+    public long getValue() {
+
+        long h;
+
+        if (this.totalLength >= STRIPE) {
+            h = Long.rotateLeft(this.v1, 1) + Long.rotateLeft(this.v2, 7) +
+                    Long.rotateLeft(this.v3, 12) + Long.rotateLeft(this.v4, 18);
+            h = mergeRound(h, this.v1);
+            h = mergeRound(h, this.v2);
+            h = mergeRound(h, this.v3);
+            h = mergeRound(h, this.v4);
+        }
+        else {
+            h = this.seed + PRIME5;
+        }
+
+        h += this.totalLength;
+
+        ByteBuffer tail = this.pending.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        tail.flip();
+
+        while (tail.remaining() >= 8) {
+            h ^= round(0, tail.getLong());
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+
+        if (tail.remaining() >= 4) {
+            h ^= (tail.getInt() & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+        }
+
+        while (tail.hasRemaining()) {
+            h ^= (tail.get() & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME1 + PRIME4;
+    }
+
+    /**
+     * Hashes the entire contents of a file, reading it through a single reusable buffer
+     * @param file The file to hash.  Symbolic links are followed.
+     * @return The 64 bit hash of the file's contents
+     * @throws IOException Thrown if the file could not be read
+     */
+    public static long hash(File file) throws IOException {
+
+        XxHash64 hasher = new XxHash64();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                hasher.update(buffer);
+                buffer.clear();
+            }
+        }
+
+        return hasher.getValue();
+    }
+}
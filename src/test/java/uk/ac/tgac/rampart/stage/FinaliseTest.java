@@ -19,6 +19,7 @@
 package uk.ac.tgac.rampart.stage;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -26,9 +27,17 @@ import uk.ac.ebi.fgpt.conan.core.context.DefaultExecutionContext;
 import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
 import uk.ac.ebi.fgpt.conan.service.exception.ProcessExecutionException;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -64,4 +73,245 @@ public class FinaliseTest {
         assertTrue(result.getExitCode() == 0);
         //assertTrue(new File(outputDir, "TGAC_TS_V1.tar.gz").exists());
     }
+
+    @Test
+    public void testAgp() throws InterruptedException, ProcessExecutionException, IOException {
+
+        File test1File = FileUtils.toFile(this.getClass().getResource("/tools/finalise/test1.fa"));
+
+        // The second scaffold has a run of 24 Ns between its two contigs, and a single N which is below min_n
+        List<String> expected = Arrays.asList(
+                "TGAC_TS_V1_scaffold_1-size_33\t1\t33\t1\tW\tTGAC_TS_V1_contig_1-size_33\t1\t33\t+",
+                "TGAC_TS_V1_scaffold_2-size_84\t1\t28\t1\tW\tTGAC_TS_V1_contig_2-size_28\t1\t28\t+",
+                "TGAC_TS_V1_scaffold_2-size_84\t29\t52\t2\tN\t24\tscaffold\tyes\tpaired-ends",
+                "TGAC_TS_V1_scaffold_2-size_84\t53\t84\t3\tW\tTGAC_TS_V1_contig_3-size_32\t1\t32\t+");
+
+        for (int threads : new int[] { 1, 4 }) {
+
+            Finalise.Args args = new Finalise.Args();
+            args.setInputFile(test1File);
+            args.setOutputDir(temp.newFolder("agp" + threads));
+            args.setMinN(5);
+            args.setOutputPrefix("TGAC_TS_V1");
+            args.setCompress(false);
+            args.setThreads(threads);
+
+            new Finalise(null, args).execute(new DefaultExecutionContext());
+
+            assertEquals(expected, FileUtils.readLines(args.getAGPFile()));
+        }
+    }
+
+    @Test
+    public void testParallel() throws InterruptedException, ProcessExecutionException, IOException {
+
+        File test1File = FileUtils.toFile(this.getClass().getResource("/tools/finalise/test1.fa"));
+
+        Finalise.Args seqArgs = new Finalise.Args();
+        seqArgs.setInputFile(test1File);
+        seqArgs.setOutputDir(temp.newFolder("sequential"));
+        seqArgs.setMinN(5);
+        seqArgs.setOutputPrefix("TGAC_TS_V1");
+        seqArgs.setCompress(false);
+
+        Finalise.Args parArgs = new Finalise.Args();
+        parArgs.setInputFile(test1File);
+        parArgs.setOutputDir(temp.newFolder("parallel"));
+        parArgs.setMinN(5);
+        parArgs.setOutputPrefix("TGAC_TS_V1");
+        parArgs.setCompress(false);
+        parArgs.setThreads(4);
+
+        new Finalise(null, seqArgs).execute(new DefaultExecutionContext());
+        new Finalise(null, parArgs).execute(new DefaultExecutionContext());
+
+        assertEquals(FileUtils.readFileToString(seqArgs.getScaffoldsFile()), FileUtils.readFileToString(parArgs.getScaffoldsFile()));
+        assertEquals(FileUtils.readFileToString(seqArgs.getContigsFile()), FileUtils.readFileToString(parArgs.getContigsFile()));
+        assertEquals(FileUtils.readFileToString(seqArgs.getAGPFile()), FileUtils.readFileToString(parArgs.getAGPFile()));
+        assertEquals(FileUtils.readFileToString(seqArgs.getTranslationFile()), FileUtils.readFileToString(parArgs.getTranslationFile()));
+    }
+
+    @Test
+    public void testCompressed() throws InterruptedException, ProcessExecutionException, IOException {
+
+        File test1File = FileUtils.toFile(this.getClass().getResource("/tools/finalise/test1.fa"));
+
+        Finalise.Args plainArgs = new Finalise.Args();
+        plainArgs.setInputFile(test1File);
+        plainArgs.setOutputDir(temp.newFolder("plain"));
+        plainArgs.setMinN(5);
+        plainArgs.setOutputPrefix("TGAC_TS_V1");
+        plainArgs.setCompress(false);
+
+        Finalise.Args bgzfArgs = new Finalise.Args();
+        bgzfArgs.setInputFile(test1File);
+        bgzfArgs.setOutputDir(temp.newFolder("bgzf"));
+        bgzfArgs.setMinN(5);
+        bgzfArgs.setOutputPrefix("TGAC_TS_V1");
+        bgzfArgs.setCompress(true);
+        bgzfArgs.setCompressThreads(2);
+
+        new Finalise(null, plainArgs).execute(new DefaultExecutionContext());
+        new Finalise(null, bgzfArgs).execute(new DefaultExecutionContext());
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(bgzfArgs.getScaffoldsFile()))) {
+            assertEquals(FileUtils.readFileToString(plainArgs.getScaffoldsFile()), IOUtils.toString(in));
+        }
+
+        assertEquals(FileUtils.readFileToString(plainArgs.getScaffoldsIndexFile()), FileUtils.readFileToString(bgzfArgs.getScaffoldsIndexFile()));
+        assertTrue(bgzfArgs.getScaffoldsGziFile().exists());
+        assertTrue(bgzfArgs.getContigsGziFile().exists());
+    }
+
+    /**
+     * Creates an assembly with thousands of scaffolds, so that parallel runs use many batches, and a single scaffold
+     * longer than {@link Finalise#MAX_BUFFERED_LENGTH}, which is streamed rather than buffered
+     */
+    private File createLargeAssembly() throws IOException {
+
+        File assembly = temp.newFile("large.fa");
+        Random rnd = new Random(1);
+
+        try (Writer out = new BufferedWriter(new FileWriter(assembly))) {
+            for (int i = 0; i < 6000; i++) {
+
+                long length = i == 3000 ? Finalise.MAX_BUFFERED_LENGTH + 1000 : 200 + rnd.nextInt(1000);
+
+                out.write(">seq" + i + " some description\n");
+                for (long j = 0; j < length; j++) {
+                    // Add the odd gap, long enough to split the scaffold
+                    if (j % 400 == 399 && rnd.nextInt(4) == 0) {
+                        for (int k = 0; k < 20; k++) {
+                            out.write('N');
+                        }
+                    }
+                    out.write("ACGT".charAt(rnd.nextInt(4)));
+                    if (j % 60 == 59) {
+                        out.write('\n');
+                    }
+                }
+                out.write('\n');
+            }
+        }
+
+        return assembly;
+    }
+
+    private Finalise.Args finalise(File input, String dirName, int threads, boolean compress)
+            throws InterruptedException, ProcessExecutionException, IOException {
+
+        Finalise.Args args = new Finalise.Args();
+        args.setInputFile(input);
+        args.setOutputDir(temp.newFolder(dirName));
+        args.setMinN(5);
+        args.setOutputPrefix("TGAC_TS_V1");
+        args.setCompress(compress);
+        args.setThreads(threads);
+        args.setCompressThreads(threads);
+
+        new Finalise(null, args).execute(new DefaultExecutionContext());
+
+        return args;
+    }
+
+    @Test
+    public void testParallelLarge() throws InterruptedException, ProcessExecutionException, IOException {
+
+        File assembly = createLargeAssembly();
+
+        Finalise.Args seqArgs = finalise(assembly, "sequential", 1, false);
+        Finalise.Args parArgs = finalise(assembly, "parallel", 4, false);
+
+        assertArrayEquals(FileUtils.readFileToByteArray(seqArgs.getScaffoldsFile()), FileUtils.readFileToByteArray(parArgs.getScaffoldsFile()));
+        assertArrayEquals(FileUtils.readFileToByteArray(seqArgs.getContigsFile()), FileUtils.readFileToByteArray(parArgs.getContigsFile()));
+        assertArrayEquals(FileUtils.readFileToByteArray(seqArgs.getAGPFile()), FileUtils.readFileToByteArray(parArgs.getAGPFile()));
+        assertArrayEquals(FileUtils.readFileToByteArray(seqArgs.getTranslationFile()), FileUtils.readFileToByteArray(parArgs.getTranslationFile()));
+        assertArrayEquals(FileUtils.readFileToByteArray(seqArgs.getScaffoldsIndexFile()), FileUtils.readFileToByteArray(parArgs.getScaffoldsIndexFile()));
+        assertArrayEquals(FileUtils.readFileToByteArray(seqArgs.getContigsIndexFile()), FileUtils.readFileToByteArray(parArgs.getContigsIndexFile()));
+
+        // Scaffolds keep their input order, including the one that was streamed
+        List<String> scaffolds = new ArrayList<>();
+        for (String line : FileUtils.readLines(parArgs.getTranslationFile())) {
+            if (line.contains("_scaffold_")) {
+                scaffolds.add(line);
+            }
+        }
+        assertEquals(6000, scaffolds.size());
+        for (int i = 0; i < scaffolds.size(); i++) {
+            assertTrue(scaffolds.get(i).startsWith("TGAC_TS_V1_scaffold_" + (i + 1) + "-size_"));
+            assertTrue(scaffolds.get(i).endsWith("\tseq" + i + " some description"));
+        }
+        String longest = scaffolds.get(3000);
+        assertTrue(Long.parseLong(longest.substring(longest.indexOf("-size_") + 6, longest.indexOf('\t'))) > Finalise.MAX_BUFFERED_LENGTH);
+    }
+
+    @Test
+    public void testCompressedLarge() throws InterruptedException, ProcessExecutionException, IOException {
+
+        File assembly = createLargeAssembly();
+
+        Finalise.Args plainArgs = finalise(assembly, "plain", 1, false);
+        Finalise.Args bgzfArgs = finalise(assembly, "bgzf", 4, true);
+
+        byte[] scaffolds = FileUtils.readFileToByteArray(plainArgs.getScaffoldsFile());
+        byte[] contigs = FileUtils.readFileToByteArray(plainArgs.getContigsFile());
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(bgzfArgs.getScaffoldsFile()))) {
+            assertArrayEquals(scaffolds, IOUtils.toByteArray(in));
+        }
+        try (InputStream in = new GZIPInputStream(new FileInputStream(bgzfArgs.getContigsFile()))) {
+            assertArrayEquals(contigs, IOUtils.toByteArray(in));
+        }
+
+        assertEquals(FileUtils.readFileToString(plainArgs.getScaffoldsIndexFile()), FileUtils.readFileToString(bgzfArgs.getScaffoldsIndexFile()));
+        assertEquals(FileUtils.readFileToString(plainArgs.getContigsIndexFile()), FileUtils.readFileToString(bgzfArgs.getContigsIndexFile()));
+
+        checkGzi(bgzfArgs.getScaffoldsFile(), bgzfArgs.getScaffoldsGziFile(), scaffolds);
+        checkGzi(bgzfArgs.getContigsFile(), bgzfArgs.getContigsGziFile(), contigs);
+    }
+
+    /**
+     * Checks the .gzi index lists the start of every BGZF block but the first, and that each block it points to
+     * decompresses to the expected part of the uncompressed file
+     */
+    private static void checkGzi(File bgzf, File gzi, byte[] uncompressed) throws IOException {
+
+        byte[] index = FileUtils.readFileToByteArray(gzi);
+        ByteBuffer gziBuf = ByteBuffer.wrap(index).order(ByteOrder.LITTLE_ENDIAN);
+
+        int nbEntries = (int) gziBuf.getLong();
+        assertEquals(8 + nbEntries * 16, index.length);
+        assertTrue(nbEntries > 10);
+
+        byte[] data = FileUtils.readFileToByteArray(bgzf);
+        ByteBuffer bgzfBuf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Walk the blocks, each of which records its own compressed and uncompressed size
+        long compressedOffset = 0;
+        long uncompressedOffset = 0;
+        int entry = 0;
+        while (compressedOffset < data.length) {
+
+            int blockSize = (bgzfBuf.getShort((int) compressedOffset + 16) & 0xffff) + 1;
+            int dataSize = bgzfBuf.getInt((int) compressedOffset + blockSize - 4);
+
+            if (dataSize > 0 && compressedOffset > 0) {
+                assertEquals(compressedOffset, gziBuf.getLong());
+                assertEquals(uncompressedOffset, gziBuf.getLong());
+                entry++;
+
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data, (int) compressedOffset, blockSize))) {
+                    assertArrayEquals(
+                            Arrays.copyOfRange(uncompressed, (int) uncompressedOffset, (int) uncompressedOffset + dataSize),
+                            IOUtils.toByteArray(in));
+                }
+            }
+
+            compressedOffset += blockSize;
+            uncompressedOffset += dataSize;
+        }
+
+        assertEquals(nbEntries, entry);
+        assertEquals(uncompressed.length, uncompressedOffset);
+    }
 }
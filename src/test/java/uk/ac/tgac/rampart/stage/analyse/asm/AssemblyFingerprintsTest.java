@@ -0,0 +1,84 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class AssemblyFingerprintsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File assembly(String dir, String name, String seq) throws IOException {
+        File file = new File(temp.getRoot(), dir + "/" + name);
+        FileUtils.writeStringToFile(file, ">seq1\n" + seq + "\n");
+        return file;
+    }
+
+    private File link(String dir, File target) throws IOException {
+        File file = new File(temp.getRoot(), dir + "/" + target.getName());
+        file.getParentFile().mkdirs();
+        Files.createSymbolicLink(file.toPath(), target.toPath());
+        return file;
+    }
+
+    @Test
+    public void testScaffoldsSameAsLongest() throws IOException {
+
+        // Two runs produce identical scaffolds, and the longest assembly of each run is a link to its scaffolds
+        File contigs1 = assembly("contigs", "mj1-k31.fa", "ACGTACGT");
+        File contigs2 = assembly("contigs", "mj1-k41.fa", "ACGTACGTAA");
+        File scaffolds1 = assembly("scaffolds", "mj1-k31.fa", "ACGTACGTNNNNACGT");
+        File scaffolds2 = assembly("scaffolds", "mj1-k41.fa", "ACGTACGTNNNNACGT");
+        File longest1 = link("longest", scaffolds1);
+        File longest2 = link("longest", scaffolds2);
+
+        Map<String, List<File>> levels = new LinkedHashMap<>();
+        levels.put("longest", Arrays.asList(longest1, longest2));
+        levels.put("scaffolds", Arrays.asList(scaffolds1, scaffolds2));
+        levels.put("contigs", Arrays.asList(contigs1, contigs2));
+
+        File fingerprintsFile = new File(temp.getRoot(), AssemblyFingerprints.FILE_NAME);
+
+        Map<String, List<File>> unique = AssemblyFingerprints.distinctByLevel(levels, "longest", fingerprintsFile);
+
+        // Duplicates are only removed within a level, so every level keeps the files needed for its own report
+        assertEquals(Arrays.asList(longest1), unique.get("longest"));
+        assertEquals(Arrays.asList(scaffolds1), unique.get("scaffolds"));
+        assertEquals(Arrays.asList(contigs1, contigs2), unique.get("contigs"));
+
+        // Only the longest assemblies' fingerprints are saved, for Select to fan the results out to duplicates
+        AssemblyFingerprints saved = AssemblyFingerprints.load(fingerprintsFile);
+        assertEquals(2, saved.getNbFiles());
+        assertEquals(1, saved.getNbUnique());
+        assertEquals(longest1.getAbsoluteFile(), saved.getCanonical(longest2.getAbsoluteFile()));
+    }
+}
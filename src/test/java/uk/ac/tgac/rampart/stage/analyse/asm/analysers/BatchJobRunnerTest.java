@@ -0,0 +1,77 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchJobRunnerTest {
+
+    @Test
+    public void testPartition() {
+
+        List<List<Integer>> parts = BatchJobRunner.partition(Arrays.asList(1, 2, 3, 4, 5), 2);
+        assertEquals(3, parts.size());
+        assertEquals(Arrays.asList(1, 2), parts.get(0));
+        assertEquals(Arrays.asList(5), parts.get(2));
+
+        // A size of 0 or less keeps everything together
+        assertEquals(1, BatchJobRunner.partition(Arrays.asList(1, 2, 3), 0).size());
+        assertEquals(1, BatchJobRunner.partition(Arrays.asList(1, 2, 3), -1).size());
+
+        assertEquals(1, BatchJobRunner.partition(Arrays.asList(1, 2, 3), 10).size());
+    }
+
+    @Test
+    public void testLocalSlots() {
+
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // Never more slots than jobs or cores, and always at least one
+        assertEquals(1, BatchJobRunner.localSlots(1, 0, 1));
+        assertTrue(BatchJobRunner.localSlots(1, 0, 1000) <= cores);
+        assertEquals(Math.min(cores, 1000), BatchJobRunner.localSlots(1, 0, 1000));
+
+        // A job wanting more cores or memory than the machine has still gets a slot
+        assertEquals(1, BatchJobRunner.localSlots(cores + 1, 0, 10));
+        assertEquals(1, BatchJobRunner.localSlots(1, Integer.MAX_VALUE, 10));
+
+        // Memory limits the slots as well as cores
+        assertTrue(BatchJobRunner.localSlots(1, Integer.MAX_VALUE / 2, 1000) <= BatchJobRunner.localSlots(1, 0, 1000));
+    }
+
+    @Test
+    public void testWaitFor() {
+
+        // Without a limit nothing waits
+        assertEquals(-1, BatchJobRunner.waitFor(0, 0));
+        assertEquals(-1, BatchJobRunner.waitFor(5, 0));
+
+        // The first max_jobs jobs start straight away, the rest follow the job max_jobs places before them
+        assertEquals(-1, BatchJobRunner.waitFor(0, 3));
+        assertEquals(-1, BatchJobRunner.waitFor(2, 3));
+        assertEquals(0, BatchJobRunner.waitFor(3, 3));
+        assertEquals(4, BatchJobRunner.waitFor(7, 3));
+        assertEquals(6, BatchJobRunner.waitFor(7, 1));
+    }
+}
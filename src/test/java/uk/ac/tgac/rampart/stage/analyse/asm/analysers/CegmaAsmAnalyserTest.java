@@ -18,14 +18,28 @@
 
 package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+import uk.ac.tgac.rampart.stage.util.AnalysisCache;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 public class CegmaAsmAnalyserTest {
 
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
     //@Test
     public void testUpdate() throws IOException {
 
@@ -45,4 +59,34 @@ public class CegmaAsmAnalyserTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCachedReportRenamed() throws IOException {
+
+        AnalysisCache cache = new AnalysisCache(new File(temp.getRoot(), "cache"));
+        String key = AnalysisCache.createKey("CEGMA", "v", new ArrayList<String>(), Arrays.asList("abc"));
+
+        File asm = new File(temp.getRoot(), "asm-1.fa");
+
+        // A fresh run leaves a report named after the assembly in the assembly's output directory
+        File runDir = temp.newFolder("run");
+        File report = new File(runDir, "asm-1.fa.completeness_report");
+        FileUtils.writeStringToFile(report, "report");
+
+        File workDir = temp.newFolder("work");
+        CegmaAsmAnalyser.publishReport(cache, key, report, workDir);
+
+        // It is cached under a fixed name so the entry doesn't depend on what the assembly is called
+        assertEquals(Arrays.asList(CegmaAsmAnalyser.CACHED_REPORT_NAME), Arrays.asList(cache.getEntry(key).list()));
+        assertFalse(new File(workDir, CegmaAsmAnalyser.CACHED_REPORT_NAME).exists());
+
+        // Restoring gives the report the name a fresh run would have given it
+        File outDir = temp.newFolder("out");
+        File restored = CegmaAsmAnalyser.restoreReport(cache, key, asm, outDir);
+        assertEquals(new File(outDir, "asm-1.fa.completeness_report"), restored);
+        assertEquals("report", FileUtils.readFileToString(restored));
+        assertEquals(Arrays.asList(restored.getName()), Arrays.asList(outDir.list()));
+
+        assertNull(CegmaAsmAnalyser.restoreReport(cache,
+                AnalysisCache.createKey("CEGMA", "v", new ArrayList<String>(), Arrays.asList("def")), asm, outDir));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.tgac.rampart.stage.analyse.asm.AnalyseAssembliesArgs;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContiguityAsmAnalyserTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    // Sequences of 2000 (incl. 200 Ns), 1500, 1200 and 800 bases, plus a 499 base run of Gs and a 100 base run of Ns
+    // which are both below the length filter
+    private File assembly = FileUtils.toFile(this.getClass().getResource("/tools/contiguity/ds-asm1.fa"));
+
+    // Composition of the sequences that pass the length filter
+    private static final double GC_PERCENTAGE = 100.0 * 2800.0 / 5300.0;
+    private static final double N_PERCENTAGE = 100.0 * 200.0 / 5500.0;
+
+    private File analyse() throws Exception {
+
+        AnalyseAssembliesArgs.ToolArgs args = new AnalyseAssembliesArgs.ToolArgs();
+        args.setThreads(2);
+
+        ContiguityAsmAnalyser analyser = new ContiguityAsmAnalyser();
+        analyser.setArgs(args);
+
+        File outputDir = new File(temp.getRoot(), "contiguity");
+        analyser.execute(Arrays.asList(assembly), outputDir, "test", null);
+
+        return outputDir;
+    }
+
+    @Test
+    public void testReport() throws Exception {
+
+        List<String> lines = FileUtils.readLines(new File(analyse(), ContiguityAsmAnalyser.REPORT_NAME));
+
+        assertEquals(2, lines.size());
+
+        String[] parts = lines.get(1).split("\t");
+
+        assertEquals("ds-asm1", parts[0]);
+        assertEquals(6, Long.parseLong(parts[1]));      // nb_seqs
+        assertEquals(3, Long.parseLong(parts[2]));      // nb_seqs_gt_1k
+        assertEquals(2000, Long.parseLong(parts[3]));   // max_len
+        assertEquals(1500, Long.parseLong(parts[4]));   // N50
+        assertEquals(2, Long.parseLong(parts[5]));      // L50
+        assertEquals(6099, Long.parseLong(parts[6]));   // nb_bases
+        assertEquals(4700, Long.parseLong(parts[7]));   // nb_bases_gt_1k
+
+        // Including the short sequences would give 3299 / 5799 GC and 300 / 5599 N
+        assertEquals(GC_PERCENTAGE, Double.parseDouble(parts[8]), 1e-9);
+        assertEquals(N_PERCENTAGE, Double.parseDouble(parts[9]), 1e-9);
+    }
+
+    @Test
+    public void testUpdateTable() throws Exception {
+
+        File reportDir = analyse();
+
+        AssemblyStatsTable table = new AssemblyStatsTable();
+        AssemblyStats stats = new AssemblyStats();
+        stats.setDataset("ds");
+        stats.setDesc("asm1");
+        table.add(stats);
+
+        new ContiguityAsmAnalyser().updateTable(table, reportDir);
+
+        AssemblyStats updated = table.findStatsByFilename("ds-asm1");
+
+        assertEquals(6, updated.getContiguity().getNbSeqs());
+        assertEquals(3, updated.getContiguity().getNbSeqsGt1K());
+        assertEquals(2000, updated.getContiguity().getMaxLen());
+        assertEquals(1500, updated.getContiguity().getN50());
+        assertEquals(2, updated.getContiguity().getL50());
+        assertEquals(6099, updated.getConservation().getNbBases());
+        assertEquals(4700, updated.getConservation().getNbBasesGt1K());
+        assertEquals(GC_PERCENTAGE, updated.getConservation().getGcPercentage(), 1e-9);
+        assertEquals(N_PERCENTAGE, updated.getProblems().getnPercentage(), 1e-9);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KatCompMatrixTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    // Error k-mers in rows 1 and 2, main peak at row 4, and the last row holds everything beyond
+    private static final String MATRIX =
+            "0 5 0 0\n" +
+            "100 10 0 0\n" +
+            "20 5 0 0\n" +
+            "10 80 5 0\n" +
+            "5 150 10 0\n" +
+            "1 2 3 4";
+
+    @Test
+    public void testLoad() throws IOException {
+
+        File mx = temp.newFile("katcomp-1-1_main.mx");
+        FileUtils.write(mx, "# Title:test\n# Rows:6\n# Columns:4\n# Transpose:0\n###\n" + MATRIX + "\n");
+
+        KatCompMatrix matrix = KatCompMatrix.load(mx);
+
+        assertTrue(matrix.getNbRows() == 6);
+        assertTrue(matrix.getNbColumns() == 4);
+        assertTrue(matrix.get(4, 1) == 150L);
+        assertTrue(matrix.getErrorCutoff() == 2);
+        assertTrue(matrix.getPeak() == 4);
+
+        // 259 of the 295 read k-mers from row 2 onwards are in the assembly.  Of the 274 assembly k-mers, 15 aren't
+        // supported by the reads and 15 have the wrong copy number.
+        assertEquals(100.0 * 259 / 295, matrix.getCompleteness(), 1e-9);
+        assertEquals(100.0 * 30 / 274, matrix.getCnError(), 1e-9);
+
+        // Same result without a header or a final new line
+        File bare = temp.newFile("bare_main.mx");
+        FileUtils.write(bare, MATRIX);
+
+        KatCompMatrix bareMatrix = KatCompMatrix.load(bare);
+
+        assertTrue(bareMatrix.getNbRows() == 6);
+        assertEquals(matrix.getCompleteness(), bareMatrix.getCompleteness(), 0.0);
+        assertEquals(matrix.getCnError(), bareMatrix.getCnError(), 0.0);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.tgac.conan.process.asm.stats.QuastV23;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QuastReportMergerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File shard(String name, String tsv) throws IOException {
+        File dir = temp.newFolder(name);
+        FileUtils.write(new File(dir, QuastReportMerger.TSV_REPORT_NAME), tsv);
+        FileUtils.write(new File(dir, QuastReportMerger.TXT_REPORT_NAME), "All statistics are based on contigs of size >= 500 bp\n\nAssembly  a\n");
+        return dir;
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+
+        File s1 = shard("s1", "Assembly\tg1-a\tg1-b\n# contigs (>= 0 bp)\t10\t2000\nN50\t123456\t7\n");
+        File s2 = shard("s2", "Assembly\tg2-long_name\n# contigs (>= 0 bp)\t5\nNA50\t99\nN50\t1\n");
+
+        File out = temp.newFolder("out");
+        QuastReportMerger.merge(Arrays.asList(s1, s2), out);
+
+        List<String> tsv = FileUtils.readLines(new File(out, QuastReportMerger.TSV_REPORT_NAME));
+        assertEquals(4, tsv.size());
+        assertEquals("Assembly\tg1-a\tg1-b\tg2-long_name", tsv.get(0));
+        assertEquals("N50\t123456\t7\t1", tsv.get(2));
+        assertEquals("NA50\t-\t-\t99", tsv.get(3));
+
+        List<String> txt = FileUtils.readLines(new File(out, QuastReportMerger.TXT_REPORT_NAME));
+        assertTrue(txt.get(0).startsWith("All statistics"));
+        assertEquals("Assembly             g1-a    g1-b  g2-long_name", txt.get(2));
+        assertEquals("N50                  123456  7     1           ", txt.get(4));
+    }
+
+    private File resource(String path) {
+        return FileUtils.toFile(this.getClass().getResource(path));
+    }
+
+    @Test
+    public void testMergedReportMatchesSingleRun() throws IOException {
+
+        // The same three assemblies, analysed in a single run and in two shards
+        File single = new File(resource("/tools/quast/single"), QuastReportMerger.TXT_REPORT_NAME);
+
+        File out = temp.newFolder("merged");
+        QuastReportMerger.merge(Arrays.asList(resource("/tools/quast/shard-1"), resource("/tools/quast/shard-2")), out);
+        File merged = new File(out, QuastReportMerger.TXT_REPORT_NAME);
+
+        assertEquals(FileUtils.readLines(single), FileUtils.readLines(merged));
+
+        List<QuastV23.AssemblyStats> expected = new QuastV23.Report(single).getStatList();
+        List<QuastV23.AssemblyStats> actual = new QuastV23.Report(merged).getStatList();
+
+        assertEquals(3, expected.size());
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+
+            QuastV23.AssemblyStats e = expected.get(i);
+            QuastV23.AssemblyStats a = actual.get(i);
+
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getNbContigsGt0(), a.getNbContigsGt0());
+            assertEquals(e.getNbContigsGt1k(), a.getNbContigsGt1k());
+            assertEquals(e.getTotalLengthGt0(), a.getTotalLengthGt0());
+            assertEquals(e.getTotalLengthGt1k(), a.getTotalLengthGt1k());
+            assertEquals(e.getLargestContig(), a.getLargestContig());
+            assertEquals(e.getGcPc(), a.getGcPc(), 0.0);
+            assertEquals(e.getN50(), a.getN50());
+            assertEquals(e.getL50(), a.getL50());
+            assertEquals(e.getNsPer100k(), a.getNsPer100k(), 0.0);
+            assertEquals(e.getNbGenes(), a.getNbGenes());
+        }
+    }
+
+    @Test
+    public void testExtractThenMerge() throws IOException {
+
+        File single = resource("/tools/quast/single");
+        String[] names = new String[] { "ds-k61-contigs", "ds-k71-contigs", "ds-k81-scaffolds" };
+
+        List<File> assemblyDirs = new ArrayList<>();
+        for (String name : names) {
+            File assemblyDir = new File(temp.getRoot(), name);
+            assertTrue(QuastReportMerger.extract(single, name, assemblyDir));
+            assemblyDirs.add(assemblyDir);
+        }
+
+        assertFalse(QuastReportMerger.extract(single, "ds-k91-contigs", new File(temp.getRoot(), "ds-k91-contigs")));
+
+        List<String> tsv = FileUtils.readLines(new File(assemblyDirs.get(2), QuastReportMerger.TSV_REPORT_NAME));
+        assertEquals("Assembly\tds-k81-scaffolds", tsv.get(0));
+        assertEquals("N50\t27790", tsv.get(9));
+
+        // Putting the assemblies back together gives the original report
+        File out = temp.newFolder("merged");
+        QuastReportMerger.merge(assemblyDirs, out);
+
+        for (String report : new String[] { QuastReportMerger.TSV_REPORT_NAME, QuastReportMerger.TXT_REPORT_NAME }) {
+            assertEquals(FileUtils.readLines(new File(single, report)), FileUtils.readLines(new File(out, report)));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.analysers;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionContext;
+import uk.ac.ebi.fgpt.conan.model.context.ExecutionResult;
+import uk.ac.ebi.fgpt.conan.service.ConanExecutorService;
+import uk.ac.tgac.rampart.stage.analyse.asm.AnalyseAssembliesArgs;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReportIngesterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    /**
+     * Pretends to read one report per assembly, taking a random amount of time, and sets the N50 of each assembly to
+     * the given value
+     */
+    private static class FakeAnalyser implements AssemblyAnalyser {
+
+        private final long n50;
+        private final int nbReports;
+        private final Random random = new Random(1);
+
+        private FakeAnalyser(long n50, int nbReports) {
+            this.n50 = n50;
+            this.nbReports = nbReports;
+        }
+
+        @Override
+        public List<Callable<TableUpdate>> createReportReaders(File reportDir) {
+
+            List<Callable<TableUpdate>> readers = new ArrayList<>();
+
+            for (int i = 0; i < nbReports; i++) {
+                final String name = "ds-asm" + i;
+                final long sleep = random.nextInt(5);
+                readers.add(new Callable<TableUpdate>() {
+                    @Override
+                    public TableUpdate call() throws Exception {
+                        Thread.sleep(sleep);
+                        return new TableUpdate() {
+                            @Override
+                            public void apply(AssemblyStatsTable table) throws IOException {
+                                AssemblyStats stats = table.findStatsByFilename(name);
+                                if (stats == null) {
+                                    throw new IOException("Couldn't find assembly stats entry for " + name);
+                                }
+                                stats.getContiguity().setN50(n50);
+                            }
+                        };
+                    }
+                });
+            }
+
+            return readers;
+        }
+
+        @Override
+        public void updateTable(AssemblyStatsTable table, File reportDir) throws IOException {
+            ReportIngester.ingest(table, this, reportDir);
+        }
+
+        @Override
+        public boolean isOperational(ExecutionContext executionContext) {
+            return true;
+        }
+
+        @Override
+        public List<ExecutionResult> execute(List<File> assemblies, File outputDir, String jobPrefix, ConanExecutorService ces) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void setArgs(AnalyseAssembliesArgs.ToolArgs args) {
+        }
+
+        @Override
+        public boolean isFast() {
+            return true;
+        }
+
+        @Override
+        public void setConanExecutorService(ConanExecutorService ces) {
+        }
+
+        @Override
+        public String getName() {
+            return "Fake" + n50;
+        }
+    }
+
+    private static AssemblyStatsTable createTable(int size) {
+
+        AssemblyStatsTable table = new AssemblyStatsTable();
+        for (int i = 0; i < size; i++) {
+            AssemblyStats stats = new AssemblyStats();
+            stats.setIndex(i);
+            stats.setDataset("ds");
+            stats.setDesc("asm" + i);
+            table.add(stats);
+        }
+        return table;
+    }
+
+    @Test
+    public void testLaterAnalyserWins() throws IOException, InterruptedException {
+
+        AssemblyStatsTable table = createTable(50);
+
+        List<AssemblyAnalyser> analysers = Arrays.<AssemblyAnalyser>asList(new FakeAnalyser(1, 50), new FakeAnalyser(2, 50));
+        List<File> reportDirs = Arrays.asList(new File("a"), new File("b"));
+
+        ReportIngester.ingest(table, analysers, reportDirs, 8);
+
+        for (AssemblyStats stats : table) {
+            assertTrue(stats.getContiguity().getN50() == 2);
+        }
+    }
+
+    @Test
+    public void testMissingAssembly() throws InterruptedException {
+
+        AssemblyStatsTable table = createTable(5);
+
+        List<AssemblyAnalyser> analysers = Arrays.<AssemblyAnalyser>asList(new FakeAnalyser(1, 6));
+        List<File> reportDirs = Arrays.asList(new File("a"));
+
+        boolean reported = false;
+        try {
+            ReportIngester.ingest(table, analysers, reportDirs, 4);
+        }
+        catch (IOException e) {
+            reported = e.getMessage().contains("ds-asm5");
+        }
+
+        assertTrue(reported);
+    }
+
+    @Test
+    public void testContiguityAppliedFirst() throws IOException, InterruptedException {
+
+        AssemblyStatsTable table = createTable(1);
+
+        File contiguityDir = temp.newFolder("contiguity");
+        FileUtils.writeLines(new File(contiguityDir, ContiguityAsmAnalyser.REPORT_NAME), Arrays.asList(
+                "assembly\tnb_seqs\tnb_seqs_gt_1k\tmax_len\tN50\tL50\tnb_bases\tnb_bases_gt_1k\tGC%\tN%",
+                "ds-asm0\t6\t3\t2000\t1500\t2\t6099\t4700\t52.8\t3.6"));
+
+        // CONTIGUITY is listed last, but the other analyser's N50 should still be kept
+        List<AssemblyAnalyser> analysers = Arrays.<AssemblyAnalyser>asList(new FakeAnalyser(7, 1), new ContiguityAsmAnalyser());
+        List<File> reportDirs = Arrays.asList(new File("a"), contiguityDir);
+
+        ReportIngester.ingest(table, analysers, reportDirs, 4);
+
+        AssemblyStats stats = table.findStatsByFilename("ds-asm0");
+        assertEquals(7, stats.getContiguity().getN50());
+        assertEquals(2000, stats.getContiguity().getMaxLen());
+    }
+
+    @Test
+    public void testListener() throws IOException, InterruptedException {
+
+        final AssemblyStatsTable table = createTable(20);
+
+        List<AssemblyAnalyser> analysers = Arrays.<AssemblyAnalyser>asList(new FakeAnalyser(1, 20), new FakeAnalyser(2, 20));
+        List<File> reportDirs = Arrays.asList(new File("a"), new File("b"));
+
+        // The listener sees every update as soon as it is applied, each of which raises one assembly's N50 by one
+        final long[] calls = new long[2];
+        ReportIngester.ingest(table, analysers, reportDirs, 8, new ReportIngester.Listener() {
+            @Override
+            public void updated(AssemblyStatsTable t) {
+                long total = 0;
+                for (AssemblyStats stats : t) {
+                    total += stats.getContiguity().getN50();
+                }
+                assertEquals(calls[1] + 1, total);
+                calls[0]++;
+                calls[1] = total;
+            }
+        });
+
+        assertEquals(40, calls[0]);
+        assertEquals(40, calls[1]);
+    }
+}
@@ -18,8 +18,11 @@
 package uk.ac.tgac.rampart.stage.analyse.asm.selector;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsFile;
 import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
 
 import java.io.File;
@@ -36,6 +39,9 @@ import static org.junit.Assert.assertTrue;
  */
 public class AssemblyStatsTableTest {
 
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
     private File statsFile1 = FileUtils.toFile(this.getClass().getResource("/tools/stats/stats1.txt"));
     private File statsFile2 = FileUtils.toFile(this.getClass().getResource("/tools/stats/stats2.txt"));
 
@@ -54,4 +60,43 @@ public class AssemblyStatsTableTest {
 
         assertTrue(bestStats.getFinalScore() == 94.5);
     }
+
+    @Test
+    public void testFindStats() throws IOException {
+
+        AssemblyStatsTable table = new AssemblyStatsTable(statsFile1);
+
+        AssemblyStats stats = table.findStatsByFilename("SICKLE-85");
+
+        assertTrue(stats == table.get(1));
+        assertTrue(table.findStats("sickle", "91") == table.get(2));
+        assertTrue(table.findStats("sickle", "99") == null);
+
+        // Changes made through a row should be visible in the table and its index
+        stats.setDesc("85-renamed");
+        stats.getContiguity().setN50(1000L);
+
+        assertTrue(table.findStatsByFilename("sickle-85") == null);
+        assertTrue(table.findStatsByFilename("sickle-85-renamed").getContiguity().getN50() == 1000L);
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+
+        AssemblyStatsTable table = new AssemblyStatsTable(statsFile1);
+
+        File binFile = new File(temp.getRoot(), "scores.bin");
+        table.save(binFile);
+
+        AssemblyStatsFile statsFile = AssemblyStatsFile.open(binFile);
+        assertTrue(statsFile.getNbRows() == 3);
+        assertTrue(statsFile.getDouble(statsFile.findColumn("final_score"), 1) == 87.2);
+
+        File tsv1 = new File(temp.getRoot(), "scores1.tsv");
+        File tsv2 = new File(temp.getRoot(), "scores2.tsv");
+        table.saveTsv(tsv1);
+        new AssemblyStatsTable(binFile).saveTsv(tsv2);
+
+        assertTrue(FileUtils.contentEquals(tsv1, tsv2));
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.selector;
+
+import org.junit.Test;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultAssemblySelectorTest {
+
+    private static File weightingsFile() throws URISyntaxException {
+        return new File(DefaultAssemblySelectorTest.class.getResource("/data/weightings.tab").toURI());
+    }
+
+    private static AssemblyStatsTable createTable(int size) {
+
+        AssemblyStatsTable table = new AssemblyStatsTable();
+        for (int i = 0; i < size; i++) {
+            AssemblyStats stats = new AssemblyStats();
+            stats.setIndex(i);
+            stats.setDataset("ds");
+            stats.setDesc("asm" + i);
+            table.add(stats);
+        }
+        return table;
+    }
+
+    @Test
+    public void testRescoreAsReportsArrive() throws IOException, URISyntaxException {
+
+        AssemblyStatsTable table = createTable(30);
+        SelectionTargets targets = new SelectionTargets(false, 1000000, 45.0, 0, false, false);
+
+        // Score before any metrics are known, as Select does before reading the reports
+        DefaultAssemblySelector incremental = new ParetoAssemblySelector(weightingsFile());
+        incremental.selectAssembly(table, targets);
+
+        // Fill in the metrics one analyser and one assembly at a time, rescoring after each update
+        Random random = new Random(7);
+        for (AssemblyStats stats : table) {
+            stats.getContiguity().setNbSeqs(100 + random.nextInt(1000));
+            stats.getContiguity().setN50(1000 + random.nextInt(50000));
+            stats.getContiguity().setMaxLen(50000 + random.nextInt(200000));
+            incremental.rescore();
+        }
+        for (AssemblyStats stats : table) {
+            stats.getConservation().setNbBases(900000 + random.nextInt(200000));
+            stats.getConservation().setGcPercentage(40.0 + random.nextInt(100) / 10.0);
+            stats.getProblems().setnPercentage(random.nextInt(50) / 10.0);
+            incremental.rescore();
+        }
+
+        double[] scores = new double[table.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = table.get(i).getFinalScore();
+        }
+        int best = incremental.rescore().getRow();
+        int frontSize = ((ParetoAssemblySelector) incremental).getFront().size();
+        assertTrue(scores[best] > 0.0);
+
+        // The running ranking ends up the same as scoring the finished table from scratch
+        ParetoAssemblySelector fresh = new ParetoAssemblySelector(weightingsFile());
+        assertEquals(best, fresh.selectAssembly(table, targets).getRow());
+        assertEquals(frontSize, fresh.getFront().size());
+
+        for (int i = 0; i < scores.length; i++) {
+            assertEquals(scores[i], table.get(i).getFinalScore(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.selector;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.ContiguityMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertTrue;
+
+public class MetricMatrixTest {
+
+    private File statsFile1 = FileUtils.toFile(this.getClass().getResource("/tools/stats/stats1.txt"));
+
+    private static final double[] WEIGHTS = new double[] { 0.1, 0.2, 0.3, 0.1, 0.1, 0.2 };
+
+    private static double[] fullScores(AssemblyStatsTable table) {
+        ContiguityMetrics.Matrix matrix = new ContiguityMetrics.Matrix(table);
+        matrix.normalise();
+        matrix.weight(WEIGHTS);
+        return matrix.calcScores().clone();
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+
+        AssemblyStatsTable table = new AssemblyStatsTable(statsFile1);
+
+        ContiguityMetrics.Matrix matrix = new ContiguityMetrics.Matrix(table);
+
+        assertTrue(Arrays.equals(matrix.update(WEIGHTS), fullScores(table)));
+
+        // Change within the current range of the column
+        table.get(1).getContiguity().setN50(20000L);
+        assertTrue(Arrays.equals(matrix.update(WEIGHTS), fullScores(table)));
+
+        // New row that extends the range of the column
+        AssemblyStats stats = new AssemblyStats();
+        stats.setDataset("sickle");
+        stats.setDesc("95");
+        stats.getContiguity().setN50(50000L);
+        table.add(stats);
+        assertTrue(Arrays.equals(matrix.update(WEIGHTS), fullScores(table)));
+    }
+
+    @Test
+    public void testUpdateIndependentOfWorkingMatrix() throws IOException {
+
+        AssemblyStatsTable table = new AssemblyStatsTable(statsFile1);
+
+        ContiguityMetrics.Matrix matrix = new ContiguityMetrics.Matrix(table);
+        matrix.update(WEIGHTS);
+
+        // Scaling and weighting the working matrix in place must not leak into the next update
+        matrix.normalise();
+        matrix.weight(WEIGHTS);
+        matrix.calcScores();
+
+        table.get(1).getContiguity().setN50(20000L);
+        assertTrue(Arrays.equals(matrix.update(WEIGHTS), fullScores(table)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUpdateWithoutTable() {
+
+        new ContiguityMetrics.Matrix(3).update(WEIGHTS);
+    }
+
+    @Test
+    public void testCalcScoresRepeatable() throws IOException {
+
+        AssemblyStatsTable table = new AssemblyStatsTable(statsFile1);
+
+        ContiguityMetrics.Matrix matrix = new ContiguityMetrics.Matrix(table);
+        matrix.normalise();
+        matrix.weight(WEIGHTS);
+
+        double[] first = matrix.calcScores().clone();
+
+        assertTrue(Arrays.equals(first, matrix.calcScores()));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.selector;
+
+import org.junit.Test;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStats;
+import uk.ac.tgac.rampart.stage.analyse.asm.stats.AssemblyStatsTable;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class ParetoAssemblySelectorTest {
+
+    private static AssemblyStatsTable createTable(double[][] scores) {
+
+        AssemblyStatsTable table = new AssemblyStatsTable();
+        for (int i = 0; i < scores.length; i++) {
+            AssemblyStats stats = new AssemblyStats();
+            stats.setIndex(i);
+            stats.setDesc("asm" + i);
+            stats.setDataset("ds");
+            table.add(stats);
+        }
+
+        double[][] columns = new double[3][scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            for (int j = 0; j < 3; j++) {
+                columns[j][i] = scores[i][j];
+            }
+        }
+        table.addGroupScores(columns[0], columns[1], columns[2]);
+
+        return table;
+    }
+
+    private static boolean dominates(double[] a, double[] b) {
+        boolean better = false;
+        for (int j = 0; j < a.length; j++) {
+            if (a[j] < b[j]) {
+                return false;
+            }
+            better |= a[j] > b[j];
+        }
+        return better;
+    }
+
+    @Test
+    public void testFindFront() {
+
+        AssemblyStatsTable table = createTable(new double[][] {
+                { 0.9, 0.1, 0.5 },      // On the front, best contiguity
+                { 0.5, 0.5, 0.5 },      // On the front
+                { 0.4, 0.4, 0.4 },      // Dominated by 1
+                { 0.5, 0.5, 0.5 },      // Duplicate of 1, also on the front
+                { 0.1, 0.9, 0.1 },      // On the front, best problems
+                { 0.5, 0.5, 0.4 }       // Dominated by 1 in conservation only
+        });
+
+        List<AssemblyStats> front = ParetoAssemblySelector.findFront(table);
+
+        assertTrue(front.size() == 4);
+        assertTrue(front.get(0).getIndex() == 0);
+        assertTrue(front.get(1).getIndex() == 1);
+        assertTrue(front.get(2).getIndex() == 3);
+        assertTrue(front.get(3).getIndex() == 4);
+    }
+
+    @Test
+    public void testFindFrontMatchesPairwise() {
+
+        Random random = new Random(42);
+        double[][] scores = new double[500][3];
+        for (double[] s : scores) {
+            for (int j = 0; j < 3; j++) {
+                // Coarse values so that there are plenty of ties
+                s[j] = random.nextInt(20) / 20.0;
+            }
+        }
+
+        List<AssemblyStats> front = ParetoAssemblySelector.findFront(createTable(scores));
+
+        int k = 0;
+        for (int i = 0; i < scores.length; i++) {
+            boolean dominated = false;
+            for (int j = 0; j < scores.length && !dominated; j++) {
+                dominated = dominates(scores[j], scores[i]);
+            }
+
+            if (!dominated) {
+                assertTrue(front.get(k++).getIndex() == i);
+            }
+        }
+        assertTrue(k == front.size());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.analyse.asm.selector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class WeightingRobustnessTest {
+
+    // Two metrics in one group.  Assembly 1 is best with the given weightings, assembly 2 is a close second.
+    private static final double[][] VALUES = new double[][] {
+            { 0.0, 1.0, 0.8 },
+            { 0.0, 0.6, 0.7 }
+    };
+
+    private static WeightingRobustness create() {
+        return new WeightingRobustness(VALUES, new double[] { 0.5, 0.5 }, new int[] { 0, 0 }, new double[] { 1.0 });
+    }
+
+    @Test
+    public void testNoSpread() {
+
+        WeightingRobustness.Report report = create().run(100, 0.0, WeightingRobustness.DEFAULT_SEED, 1);
+
+        assertTrue(report.getWins(1) == 100);
+        assertTrue(report.getMeanRank(1) == 1.0);
+        assertTrue(report.getWorstRank(0) == 3);
+    }
+
+    @Test
+    public void testDeterministic() {
+
+        WeightingRobustness.Report single = create().run(1000, 0.5, WeightingRobustness.DEFAULT_SEED, 1);
+        WeightingRobustness.Report multi = create().run(1000, 0.5, WeightingRobustness.DEFAULT_SEED, 4);
+
+        for (int i = 0; i < VALUES[0].length; i++) {
+            assertTrue(single.getWins(i) == multi.getWins(i));
+            assertTrue(single.getMeanRank(i) == multi.getMeanRank(i));
+        }
+
+        // The close second should win some of the perturbed weightings, the worst assembly none
+        assertTrue(single.getWins(2) > 0);
+        assertTrue(single.getWins(0) == 0);
+        assertTrue(single.getWins(0) + single.getWins(1) + single.getWins(2) == 1000);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.analyse.asm.stats;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class NucleotideCompositionTest {
+
+    private static void assertCounts(NucleotideComposition nc, long a, long c, long g, long t, long n, long unknown) {
+        assertEquals(a, nc.getNbA());
+        assertEquals(c, nc.getNbC());
+        assertEquals(g, nc.getNbG());
+        assertEquals(t, nc.getNbT());
+        assertEquals(n, nc.getNbN());
+        assertEquals(unknown, nc.getNbUnknown());
+    }
+
+    @Test
+    public void testLookup() {
+
+        // Upper and lower case bases, the other IUPAC codes, gaps and a byte outside the ASCII range
+        byte[] seq = "AaCcGgTtNnRYKMSWBDHVrykmswbdhv-*.".getBytes(StandardCharsets.US_ASCII);
+        byte[] withHighByte = new byte[seq.length + 1];
+        System.arraycopy(seq, 0, withHighByte, 0, seq.length);
+        withHighByte[seq.length] = (byte) 0xff;
+
+        NucleotideComposition nc = new NucleotideComposition();
+        nc.add(withHighByte, 0, withHighByte.length);
+        assertCounts(nc, 2, 2, 2, 2, 2, 24);
+        assertEquals(withHighByte.length, nc.getTotal());
+
+        // Strings go through the same table
+        assertCounts(new NucleotideComposition("AaCcGgTtNnRYKMSWBDHVrykmswbdhv-*."), 2, 2, 2, 2, 2, 23);
+    }
+
+    @Test
+    public void testByteBufferSlice() {
+
+        byte[] bytes = "xxACGTNNacgtRxx".getBytes(StandardCharsets.US_ASCII);
+
+        // A heap buffer sliced from the middle of an array has a non-zero array offset
+        ByteBuffer wrapped = ByteBuffer.wrap(bytes, 2, 11);
+        ByteBuffer heap = wrapped.slice();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+
+        NucleotideComposition fromHeap = new NucleotideComposition();
+        fromHeap.add(heap, 0, 11);
+        assertCounts(fromHeap, 2, 2, 2, 2, 2, 1);
+
+        NucleotideComposition fromDirect = new NucleotideComposition();
+        fromDirect.add(direct, 2, 13);
+        assertCounts(fromDirect, 2, 2, 2, 2, 2, 1);
+
+        // Absolute gets leave the buffer's position alone
+        assertEquals(0, heap.position());
+        assertEquals(bytes.length, direct.position());
+    }
+
+    @Test
+    public void testAddComposition() {
+
+        NucleotideComposition nc = new NucleotideComposition("ACGTN-");
+        nc.add(new NucleotideComposition("aacc**"));
+
+        assertCounts(nc, 3, 3, 1, 1, 1, 3);
+        assertEquals(12, nc.getTotal());
+    }
+
+    @Test
+    public void testCountThreads() {
+
+        int length = 3 * NucleotideComposition.MIN_CHUNK_SIZE + 12345;
+        byte[] alphabet = "ACGTNacgtnRY-".getBytes(StandardCharsets.US_ASCII);
+
+        ByteBuffer seq = ByteBuffer.allocateDirect(length);
+        Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            seq.put(i, alphabet[random.nextInt(alphabet.length)]);
+        }
+
+        int from = 17;
+        NucleotideComposition single = NucleotideComposition.count(seq, from, length, 1);
+        NucleotideComposition multi = NucleotideComposition.count(seq, from, length, 4);
+
+        assertCounts(multi, single.getNbA(), single.getNbC(), single.getNbG(), single.getNbT(), single.getNbN(),
+                single.getNbUnknown());
+        assertEquals(length - from, multi.getTotal());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testKey() {
+
+        List<String> settings = Arrays.asList("k=31", "merge=true");
+        List<String> fingerprints = Arrays.asList("abc", "def");
+
+        String key = AnalysisCache.createKey("KAT", "kat-2.0", settings, fingerprints);
+
+        // The same inputs always give the same key, named after the analyser
+        assertEquals(key, AnalysisCache.createKey("KAT", "kat-2.0", new ArrayList<>(settings), new ArrayList<>(fingerprints)));
+        assertEquals(key, AnalysisCache.createKey("kat", "kat-2.0", settings, fingerprints));
+        assertTrue(key.startsWith("kat-"));
+
+        // Changing anything that affects the results changes the key
+        assertNotEquals(key, AnalysisCache.createKey("QUAST", "kat-2.0", settings, fingerprints));
+        assertNotEquals(key, AnalysisCache.createKey("KAT", "kat-2.1", settings, fingerprints));
+        assertNotEquals(key, AnalysisCache.createKey("KAT", "kat-2.0", Arrays.asList("k=27", "merge=true"), fingerprints));
+        assertNotEquals(key, AnalysisCache.createKey("KAT", "kat-2.0", settings, Arrays.asList("def", "abc")));
+
+        // Settings and fingerprints can't be confused with each other
+        assertNotEquals(
+                AnalysisCache.createKey("KAT", "v", Arrays.asList("a"), new ArrayList<String>()),
+                AnalysisCache.createKey("KAT", "v", new ArrayList<String>(), Arrays.asList("a")));
+    }
+
+    @Test
+    public void testPublishRestore() throws IOException {
+
+        AnalysisCache cache = new AnalysisCache(new File(temp.getRoot(), "cache"));
+        String key = AnalysisCache.createKey("QUAST", "v", new ArrayList<String>(), Arrays.asList("abc"));
+
+        assertNull(cache.getEntry(key));
+        assertNull(cache.restore(key, temp.newFolder("empty")));
+
+        File src = temp.newFolder("src");
+        File report = new File(src, "report.txt");
+        File tsv = new File(src, "report.tsv");
+        FileUtils.writeStringToFile(report, "N50\t100\n");
+        FileUtils.writeStringToFile(tsv, "Assembly\tasm\n");
+
+        // Files that don't exist are skipped
+        File entry = cache.publish(key, Arrays.asList(report, tsv, new File(src, "missing.txt")));
+        assertEquals(cache.getEntry(key), entry);
+        assertEquals(2, entry.list().length);
+
+        // Nothing but the entry itself is left in the cache directory
+        assertEquals(1, cache.getCacheDir().list().length);
+
+        File out = new File(temp.getRoot(), "out");
+        List<File> restored = cache.restore(key, out);
+        assertEquals(2, restored.size());
+        assertEquals("N50\t100\n", FileUtils.readFileToString(new File(out, "report.txt")));
+        assertEquals("Assembly\tasm\n", FileUtils.readFileToString(new File(out, "report.tsv")));
+
+        // An existing entry is left alone
+        FileUtils.writeStringToFile(report, "N50\t200\n");
+        cache.publish(key, Arrays.asList(report));
+        cache.restore(key, out);
+        assertEquals("N50\t100\n", FileUtils.readFileToString(new File(out, "report.txt")));
+
+        // No entry is made when none of the files exist
+        String other = AnalysisCache.createKey("QUAST", "v", new ArrayList<String>(), Arrays.asList("def"));
+        assertNull(cache.publish(other, Arrays.asList(new File(src, "missing.txt"))));
+        assertNull(cache.getEntry(other));
+        assertFalse(new File(cache.getCacheDir(), other).exists());
+        assertEquals(1, cache.getCacheDir().list().length);
+    }
+}
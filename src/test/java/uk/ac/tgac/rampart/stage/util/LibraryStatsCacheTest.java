@@ -0,0 +1,126 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.tgac.conan.core.data.Library;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LibraryStatsCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File reads(String name, int... lengths) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lengths.length; i++) {
+            StringBuilder seq = new StringBuilder();
+            StringBuilder qual = new StringBuilder();
+            for (int j = 0; j < lengths[i]; j++) {
+                seq.append("ACGT".charAt(j % 4));
+                qual.append('I');
+            }
+            sb.append("@read").append(i).append("\n").append(seq).append("\n+\n").append(qual).append("\n");
+        }
+        File file = temp.newFile(name);
+        FileUtils.writeStringToFile(file, sb.toString());
+        return file;
+    }
+
+    @Test
+    public void testUniform() throws IOException, InterruptedException {
+
+        LibraryStatsCache cache = LibraryStatsCache.forFile(new File(temp.getRoot(), "stats.tsv"));
+
+        File uniform = reads("uniform.fq", 50, 50, 50);
+        File mixed = reads("mixed.fq", 50, 40, 50);
+
+        assertTrue(cache.isUniform(uniform, 1));
+        assertFalse(cache.isUniform(mixed, 1));
+        assertEquals(140, cache.get(mixed, 1).getNbBases());
+
+        // The flag is saved with the rest of the statistics
+        List<String> lines = FileUtils.readLines(cache.getCacheFile());
+        assertEquals(3, lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            String[] parts = line.split("\t", -1);
+            assertEquals(7, parts.length);
+            assertEquals(Boolean.toString(parts[0].equals(uniform.getAbsolutePath())), parts[5]);
+        }
+    }
+
+    @Test
+    public void testLoad() throws IOException, InterruptedException {
+
+        File seqFile = reads("reads.fq", 50, 50);
+        File other = reads("other.fq", 50, 50);
+        File cacheFile = new File(temp.getRoot(), "stats.tsv");
+
+        // Pretend an earlier run scanned these files, but write one of them in the wrong format
+        FileUtils.writeLines(cacheFile, Arrays.asList(
+                "#path\tsize\tmtime\trecords\tbases\tuniform\thistogram",
+                seqFile.getAbsolutePath() + "\t" + seqFile.length() + "\t" + seqFile.lastModified() + "\t10\t1000\ttrue\t100:10",
+                other.getAbsolutePath() + "\t" + other.length() + "\t" + other.lastModified() + "\t10\t1000\t100:10"));
+
+        LibraryStatsCache cache = LibraryStatsCache.forFile(cacheFile);
+
+        // Taken from the cache rather than the file
+        assertEquals(1000, cache.get(seqFile, 1).getNbBases());
+
+        // Malformed lines are ignored, so the file is rescanned
+        assertEquals(100, cache.get(other, 1).getNbBases());
+    }
+
+    @Test
+    public void testCountBases() throws IOException, InterruptedException {
+
+        LibraryStatsCache cache = LibraryStatsCache.forFile(new File(temp.getRoot(), "stats.tsv"));
+
+        // The second file deliberately has shorter reads than the first, to show whether it was scanned
+        Library lib = new Library();
+        lib.setName("pe1");
+        lib.setType(Library.Type.PAIRED_END);
+        lib.setFiles(reads("pe1_1.fq", 50, 50, 50), reads("pe1_2.fq", 40, 40, 40));
+
+        // The first file has uniform reads, so the second is assumed to mirror it rather than scanned
+        assertEquals(300, cache.countBases(lib, 1));
+
+        // Once the second file has been scanned anyway, its exact count is used
+        assertEquals(120, cache.get(lib.getFile2(), 1).getNbBases());
+        assertEquals(270, cache.countBases(lib, 1));
+
+        Library se = new Library();
+        se.setName("se1");
+        se.setType(Library.Type.SINGLE_END);
+        se.setFiles(reads("se1.fq", 50, 40), null);
+
+        assertEquals(90, cache.countBases(se, 1));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.stage.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.tgac.conan.core.data.Library;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SubsampleStoreTest {
+
+    private static final long GENOME_SIZE = 100;
+    private static final List<Integer> COVERAGES = Arrays.asList(10, 20);
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File storeDir;
+    private Library lib;
+    private int nbCounts;
+
+    private final SubsampleStore.BaseCounter counter = new SubsampleStore.BaseCounter() {
+        @Override
+        public long countBases(Library lib) {
+            nbCounts++;
+            return 2 * 500 * 8;
+        }
+    };
+
+    private File reads(String name, int mate) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("@read").append(i).append("/").append(mate).append("\nACGTACGT\n+\nIIIIIIII\n");
+        }
+        File file = temp.newFile(name);
+        FileUtils.writeStringToFile(file, sb.toString());
+        return file;
+    }
+
+    @Before
+    public void setup() throws IOException {
+
+        this.storeDir = temp.newFolder("store");
+
+        this.lib = new Library();
+        this.lib.setName("pe1");
+        this.lib.setType(Library.Type.PAIRED_END);
+        this.lib.setFiles(reads("pe1_1.fq", 1), reads("pe1_2.fq", 2));
+
+        this.nbCounts = 0;
+    }
+
+    @Test
+    public void testReuse() throws IOException, InterruptedException {
+
+        assertEquals(COVERAGES, new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter));
+        assertEquals(1, nbCounts);
+
+        File subsample = new SubsampleStore(storeDir).getSubsampledLibrary(lib, 10).getFile1();
+        assertTrue(subsample.exists());
+        long mtime = subsample.lastModified();
+
+        // A second job with the same settings gets the existing subsamples, without counting bases again
+        assertTrue(new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter).isEmpty());
+        assertEquals(1, nbCounts);
+        assertEquals(mtime, subsample.lastModified());
+    }
+
+    @Test
+    public void testNewCoverage() throws IOException, InterruptedException {
+
+        new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter);
+
+        // Only the coverage level that isn't in the manifest is produced
+        assertEquals(Arrays.asList(30), new SubsampleStore(storeDir).subsample(lib, Arrays.asList(10, 30), GENOME_SIZE, counter));
+        assertEquals(2, nbCounts);
+    }
+
+    @Test
+    public void testSourceModified() throws IOException, InterruptedException {
+
+        new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter);
+
+        // Same size, later modification time
+        assertTrue(lib.getFile1().setLastModified(lib.getFile1().lastModified() + 10000));
+        assertEquals(COVERAGES, new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter));
+        assertTrue(new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter).isEmpty());
+    }
+
+    @Test
+    public void testSourceResized() throws IOException, InterruptedException {
+
+        new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter);
+
+        // Different size, same modification time
+        for (File file : new File[] { lib.getFile1(), lib.getFile2() }) {
+            long mtime = file.lastModified();
+            FileUtils.writeStringToFile(file, "@extra\nACGT\n+\nIIII\n", true);
+            assertTrue(file.setLastModified(mtime));
+        }
+
+        assertEquals(COVERAGES, new SubsampleStore(storeDir).subsample(lib, COVERAGES, GENOME_SIZE, counter));
+    }
+
+    @Test
+    public void testSeedChanged() throws IOException, InterruptedException {
+
+        new SubsampleStore(storeDir, 1, 1).subsample(lib, COVERAGES, GENOME_SIZE, counter);
+
+        assertEquals(COVERAGES, new SubsampleStore(storeDir, 2, 1).subsample(lib, COVERAGES, GENOME_SIZE, counter));
+        assertTrue(new SubsampleStore(storeDir, 2, 1).subsample(lib, COVERAGES, GENOME_SIZE, counter).isEmpty());
+    }
+
+    @Test
+    public void testGetMissing() throws IOException, InterruptedException {
+
+        SubsampleStore store = new SubsampleStore(storeDir);
+
+        assertEquals(COVERAGES, store.getMissing(lib, COVERAGES));
+
+        store.subsample(lib, Arrays.asList(10), GENOME_SIZE, counter);
+
+        assertEquals(Arrays.asList(20), store.getMissing(lib, COVERAGES));
+        assertEquals(Arrays.asList(20), new SubsampleStore(storeDir).getMissing(lib, COVERAGES));
+
+        // A different seed means nothing in the store is usable
+        assertEquals(COVERAGES, new SubsampleStore(storeDir, 2, 1).getMissing(lib, COVERAGES));
+    }
+
+    @Test
+    public void testJobIds() {
+
+        SubsampleStore store = new SubsampleStore(storeDir);
+
+        assertNull(store.getJobId(lib, 10));
+
+        store.setJobId(lib, 10, 42);
+
+        assertEquals(Integer.valueOf(42), store.getJobId(lib, 10));
+        assertNull(store.getJobId(lib, 20));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.tgac.conan.core.data.Library;
+import uk.ac.tgac.rampart.stage.util.SubsampleStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LibrarySubsamplerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File reads(String name, int mate) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("@read").append(i).append("/").append(mate).append("\nACGTACGT\n+\nIIIIIIII\n");
+        }
+        File file = temp.newFile(name);
+        FileUtils.writeStringToFile(file, sb.toString());
+        return file;
+    }
+
+    @Test
+    public void testCommand() throws Exception {
+
+        SubsampleStore store = new SubsampleStore(temp.newFolder("store"), 7, 1);
+
+        Library lib = new Library();
+        lib.setName("pe1");
+        lib.setType(Library.Type.PAIRED_END);
+        lib.setFiles(reads("pe1_1.fq", 1), reads("pe1_2.fq", 2));
+
+        String command = LibrarySubsampler.createCommand(store, lib, Arrays.asList(10, 20), 100, 2,
+                new File(temp.getRoot(), "library_stats.tsv"));
+
+        String[] parts = command.split(" ");
+        assertEquals(LibrarySubsampler.EXECUTABLE, parts[0]);
+
+        // Running the command produces the subsamples in the store, as MASS expects
+        assertEquals(Arrays.asList(10, 20), new LibrarySubsampler(Arrays.copyOfRange(parts, 1, parts.length)).execute());
+
+        assertTrue(store.getMissing(lib, Arrays.asList(10, 20)).isEmpty());
+        assertTrue(store.getSubsampledLibrary(lib, 20).getFile2().exists());
+
+        // The library was counted through the job's statistics cache
+        assertTrue(new File(temp.getRoot(), "library_stats.tsv").exists());
+    }
+
+    @Test
+    public void testSingleEnd() throws Exception {
+
+        File storeDir = temp.newFolder("store");
+        File reads = reads("se1.fq", 1);
+
+        LibrarySubsampler subsampler = new LibrarySubsampler(new String[] {
+                "--store", storeDir.getAbsolutePath(), "--name", "se1", "--coverages", "10", "--genome_size", "100",
+                reads.getAbsolutePath()});
+
+        assertEquals(Arrays.asList(10), subsampler.execute());
+
+        // Nothing left to do the second time around
+        assertTrue(subsampler.execute().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingOption() throws Exception {
+        new LibrarySubsampler(new String[] {"--store", temp.getRoot().getAbsolutePath(), "reads.fq"});
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FastqScannerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static String reads() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            int len = 20 + (i % 13);
+            sb.append("@read").append(i).append("\n");
+            for (int j = 0; j < len; j++) sb.append("ACGT".charAt(j % 4));
+            sb.append("\n+\n");
+            // Quality lines starting with '@' must not be mistaken for headers
+            for (int j = 0; j < len; j++) sb.append(i % 3 == 0 ? '@' : 'I');
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testScan() throws IOException, InterruptedException {
+
+        File fq = temp.newFile("reads.fq");
+        FileUtils.writeStringToFile(fq, reads());
+
+        FastqStats stats = new FastqScanner(2).scan(fq);
+
+        assertEquals(100, stats.getNbRecords());
+        assertEquals(20, stats.getMinLength());
+        assertEquals(32, stats.getMaxLength());
+        assertFalse(stats.isUniform());
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+
+        File fq = temp.newFile("chunks.fq");
+        FileUtils.writeStringToFile(fq, reads());
+
+        FastqStats expected = new FastqStats();
+        FastqScanner.count(new FileInputStream(fq), 0, Long.MAX_VALUE, expected);
+
+        // Splitting at any point must give the same totals as a single pass
+        try (RandomAccessFile raf = new RandomAccessFile(fq, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            for (long split = 1; split < size; split += 7) {
+                FastqStats stats = new FastqStats();
+
+                long second = FastqScanner.findRecordStart(channel, split);
+
+                try (FileInputStream in = new FileInputStream(fq)) {
+                    FastqScanner.count(in, 0, second, stats);
+                }
+                try (FileInputStream in = new FileInputStream(fq)) {
+                    in.getChannel().position(second);
+                    FastqScanner.count(in, second, Long.MAX_VALUE, stats);
+                }
+
+                assertEquals(expected.getNbRecords(), stats.getNbRecords());
+                assertEquals(expected.getNbBases(), stats.getNbBases());
+            }
+        }
+    }
+
+    @Test
+    public void testGzip() throws IOException, InterruptedException {
+
+        File gz = temp.newFile("reads.fq.gz");
+        try (OutputStream out = new GZIPOutputStream(FileUtils.openOutputStream(gz))) {
+            out.write(reads().getBytes());
+        }
+
+        FastqStats stats = new FastqScanner(2).scan(gz);
+
+        assertEquals(100, stats.getNbRecords());
+    }
+}
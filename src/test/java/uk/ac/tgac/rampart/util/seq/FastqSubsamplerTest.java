@@ -0,0 +1,95 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastqSubsamplerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File reads(String name, int mate) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("@read").append(i).append("/").append(mate).append("\nACGTACGT\n+\nIIIIIIII\n");
+        }
+        File file = temp.newFile(name);
+        FileUtils.writeStringToFile(file, sb.toString());
+        return file;
+    }
+
+    private static Set<String> headers(File file) throws IOException {
+        Set<String> headers = new HashSet<>();
+        List<String> lines = FileUtils.readLines(file);
+        for (int i = 0; i < lines.size(); i += 4) {
+            headers.add(lines.get(i).substring(0, lines.get(i).length() - 2));
+        }
+        return headers;
+    }
+
+    @Test
+    public void testNestedPairs() throws IOException {
+
+        File in1 = reads("in_1.fq", 1);
+        File in2 = reads("in_2.fq", 2);
+
+        File[] out1 = new File[] { new File(temp.getRoot(), "out_50_1.fq"), new File(temp.getRoot(), "out_10_1.fq") };
+        File[] out2 = new File[] { new File(temp.getRoot(), "out_50_2.fq"), new File(temp.getRoot(), "out_10_2.fq") };
+
+        long[] kept = new FastqSubsampler().subsample(in1, in2, new double[] { 0.5, 0.1 }, out1, out2);
+
+        assertTrue(kept[0] > 800 && kept[0] < 1200);
+        assertTrue(kept[1] > 100 && kept[1] < 300);
+
+        Set<String> high = headers(out1[0]);
+        Set<String> low = headers(out1[1]);
+
+        assertEquals(kept[0], high.size());
+        assertTrue(high.containsAll(low));
+
+        // Mates are kept together
+        assertEquals(high, headers(out2[0]));
+        assertEquals(low, headers(out2[1]));
+    }
+
+    @Test
+    public void testDeterministic() throws IOException {
+
+        File in = reads("in.fq", 1);
+        File a = new File(temp.getRoot(), "a.fq");
+        File b = new File(temp.getRoot(), "b.fq");
+
+        new FastqSubsampler(42).subsample(in, new double[] { 0.3 }, new File[] { a });
+        new FastqSubsampler(42).subsample(in, new double[] { 0.3 }, new File[] { b });
+
+        assertTrue(FileUtils.contentEquals(a, b));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappedFastaReaderTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static String readAll(FastaRecord record) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        record.scan(new SequenceHandler() {
+            @Override
+            public void bases(ByteBuffer buffer, int from, int to, long offset) {
+                for (int i = from; i < to; i++) {
+                    sb.append((char) buffer.get(i));
+                }
+            }
+        });
+        return sb.toString();
+    }
+
+    @Test
+    public void testMultiLineSmallWindow() throws IOException {
+
+        File fa = temp.newFile("multi.fa");
+        FileUtils.writeStringToFile(fa, ">seq1 desc\r\nACGT\r\nNNAC\r\n>seq2\nGG\n\nTT\n>empty\n>seq3\nA");
+
+        // A tiny window forces records and lines to straddle window boundaries
+        try (MappedFastaReader reader = new MappedFastaReader(fa, 3)) {
+
+            FastaRecord r1 = reader.next();
+            assertEquals("seq1 desc", r1.getHeader());
+            assertEquals(8, r1.getLength());
+            assertEquals("ACGTNNAC", readAll(r1));
+
+            FastaRecord r2 = reader.next();
+            assertEquals("seq2", r2.getHeader());
+            assertEquals("GGTT", readAll(r2));
+
+            FastaRecord r3 = reader.next();
+            assertEquals("empty", r3.getHeader());
+            assertEquals(0, r3.getLength());
+
+            FastaRecord r4 = reader.next();
+            assertEquals("seq3", r4.getHeader());
+            assertEquals("A", readAll(r4));
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testTest1() throws IOException {
+
+        File test1File = FileUtils.toFile(this.getClass().getResource("/tools/finalise/test1.fa"));
+
+        int count = 0;
+        try (MappedFastaReader reader = new MappedFastaReader(test1File)) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+
+        assertEquals(2, count);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReadAheadInputStreamTest {
+
+    /**
+     * An endless, slow stream that returns a byte at a time and records any read made after it was closed
+     */
+    private static class SlowStream extends InputStream {
+
+        private volatile boolean closed = false;
+        private volatile boolean readAfterClose = false;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.closed) {
+                this.readAfterClose = true;
+                throw new IOException("Stream closed");
+            }
+            try {
+                Thread.sleep(5);
+            }
+            catch (InterruptedException e) {
+                // Blocking file reads aren't interruptible either
+            }
+            b[off] = 'A';
+            return 1;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+
+    @Test
+    public void testReadAll() throws IOException {
+
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+
+        try (InputStream in = new ReadAheadInputStream(new ByteArrayInputStream(data), 1000, 2)) {
+            assertArrayEquals(data, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testEarlyClose() throws IOException {
+
+        SlowStream slow = new SlowStream();
+
+        InputStream in = new ReadAheadInputStream(slow, 16, 2);
+        assertEquals(16, in.read(new byte[16]));
+        in.close();
+
+        assertTrue(slow.closed);
+
+        // Give a still running reader the chance to misbehave
+        try {
+            Thread.sleep(50);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        assertFalse(slow.readAfterClose);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package uk.ac.tgac.rampart.util.seq;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScaffoldSplitterTest {
+
+    private static ScaffoldSplitter split(String seq, int minN) {
+        ScaffoldSplitter splitter = new ScaffoldSplitter(minN);
+        byte[] bytes = seq.getBytes();
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+        // Feed the sequence through in two slices to check runs spanning slices are handled
+        int mid = bytes.length / 2;
+        splitter.bases(buf, 0, mid, 0);
+        splitter.bases(buf, mid, bytes.length, mid);
+        splitter.finish(bytes.length);
+        return splitter;
+    }
+
+    @Test
+    public void testSplit() {
+
+        ScaffoldSplitter splitter = split("ACGTNNACGTNNNNNNACnnnnnnGT", 5);
+
+        assertEquals(5, splitter.getNbComponents());
+
+        assertFalse(splitter.isGap(0));
+        assertEquals(0, splitter.getStart(0));
+        assertEquals(10, splitter.getEnd(0));
+
+        assertTrue(splitter.isGap(1));
+        assertEquals(6, splitter.getLength(1));
+
+        assertFalse(splitter.isGap(2));
+        assertEquals(2, splitter.getLength(2));
+
+        assertTrue(splitter.isGap(3));
+        assertEquals(18, splitter.getStart(3));
+        assertEquals(24, splitter.getEnd(3));
+
+        assertFalse(splitter.isGap(4));
+        assertEquals(26, splitter.getEnd(4));
+    }
+
+    @Test
+    public void testNoGaps() {
+
+        ScaffoldSplitter splitter = split("ACGTNNNNACGT", 5);
+
+        assertEquals(1, splitter.getNbComponents());
+        assertEquals(12, splitter.getLength(0));
+    }
+}
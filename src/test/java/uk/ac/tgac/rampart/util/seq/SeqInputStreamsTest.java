@@ -0,0 +1,96 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SeqInputStreamsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static byte[] data() {
+        // Several BGZF blocks worth of compressible data
+        byte[] data = new byte[300000];
+        Random rnd = new Random(1);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)"ACGT\n".charAt(rnd.nextInt(5));
+        }
+        return data;
+    }
+
+    private static byte[] readAll(File file, int threads) throws IOException {
+        try (InputStream in = SeqInputStreams.open(file, threads)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    @Test
+    public void testBgzf() throws IOException {
+
+        byte[] data = data();
+        File bgzf = temp.newFile("data.bgz");
+        try (OutputStream out = new BgzfOutputStream(FileUtils.openOutputStream(bgzf))) {
+            out.write(data);
+        }
+
+        assertArrayEquals(data, readAll(bgzf, 1));
+        assertArrayEquals(data, readAll(bgzf, 4));
+    }
+
+    @Test
+    public void testMultiMemberGzip() throws IOException {
+
+        byte[] data = data();
+        File gz = temp.newFile("data.gz");
+        try (OutputStream out = FileUtils.openOutputStream(gz)) {
+            GZIPOutputStream first = new GZIPOutputStream(out);
+            first.write(data, 0, 1000);
+            first.finish();
+            GZIPOutputStream second = new GZIPOutputStream(out);
+            second.write(data, 1000, data.length - 1000);
+            second.finish();
+        }
+
+        assertArrayEquals(data, readAll(gz, 1));
+        assertArrayEquals(data, readAll(gz, 4));
+    }
+
+    @Test
+    public void testPlain() throws IOException {
+
+        byte[] data = data();
+        File plain = temp.newFile("data.txt");
+        FileUtils.writeByteArrayToFile(plain, data);
+
+        assertArrayEquals(data, readAll(plain, 4));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * RAMPART - Robust Automatic MultiPle AssembleR Toolkit
+ * Copyright (C) 2015  Daniel Mapleson - TGAC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.ac.tgac.rampart.util.seq;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class XxHash64Test {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static long hash(byte[] bytes) {
+        XxHash64 hasher = new XxHash64();
+        hasher.update(bytes, 0, bytes.length);
+        return hasher.getValue();
+    }
+
+    private static byte[] seq() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) sb.append("ACGT");
+        sb.append("A");
+        return sb.toString().getBytes();
+    }
+
+    @Test
+    public void testKnownValues() {
+
+        assertEquals(0xEF46DB3751D8E999L, hash(new byte[0]));
+        assertEquals(0x44BC2CF5AD770999L, hash("abc".getBytes()));
+        assertEquals(0xAD0AF63BBA361211L, hash(seq()));
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+
+        byte[] bytes = seq();
+        Random rng = new Random(1);
+
+        XxHash64 hasher = new XxHash64();
+        int pos = 0;
+        while (pos < bytes.length) {
+            int len = Math.min(bytes.length - pos, rng.nextInt(40));
+            hasher.update(bytes, pos, len);
+            pos += len;
+        }
+
+        assertEquals(hash(bytes), hasher.getValue());
+
+        File file = temp.newFile("seq.fa");
+        FileUtils.writeByteArrayToFile(file, bytes);
+        assertEquals(hash(bytes), XxHash64.hash(file));
+
+        bytes[200] = 'N';
+        assertTrue(hash(bytes) != hasher.getValue());
+    }
+}